@@ -0,0 +1,82 @@
+/*
+ * A stress test of the garbage collected runtime (gcruntime.o), written as
+ * a C cs411main. Build and run it with "make gctest.run".
+ *
+ * It keeps a list of objects alive, some of them only through pointers
+ * into their middle or just past their end, and allocates far more than
+ * the machine's memory in garbage around it. Then it checks that nothing
+ * live was freed and that all new memory is zero.
+ */
+
+#include "runtime.h"
+
+#include <stdio.h>
+#include <stdlib.h>
+
+#define NODES 1000
+#define ROUNDS 2000
+#define BIG (1L << 20)   /* elements in each large garbage array (8MB) */
+
+/* A list node: next, value and an array, like a MiniJava object with three fields */
+struct node {
+    struct node *next;
+    long value;
+    long *data;
+};
+
+static int failures = 0;
+
+static void check(int ok, const char *what, long i) {
+    if (!ok && failures++ < 10)
+        printf("FAILED: %s (%ld)\n", what, i);
+}
+
+static struct node *cons(long value, struct node *next) {
+    struct node *n = (struct node *) cs411newobject(sizeof(struct node));
+    check(n->next == NULL && n->value == 0 && n->data == NULL, "new object is zero", value);
+    n->next = next;
+    n->value = value;
+    n->data = cs411newarray(value % 16);
+    if (value % 16 > 0)
+        n->data[value % 16 - 1] = value;
+    return n;
+}
+
+static void check_list(struct node *list) {
+    long i;
+    for (i = NODES; i > 0; i--, list = list->next) {
+        check(list != NULL && list->value == i, "list node", i);
+        check(list->data[-1] == i % 16, "array length", i);
+        if (i % 16 > 0)
+            check(list->data[i % 16 - 1] == i, "array element", i);
+    }
+}
+
+void cs411main() {
+    struct node *list = NULL;
+    long *empty = cs411newarray(0);
+    long *middle = (long *) cs411newobject(4 * sizeof(long)) + 2;
+    long i, j;
+
+    for (i = 1; i <= NODES; i++)
+        list = cons(i, list);
+    middle[-2] = 11;
+    middle[1] = 14;
+
+    for (i = 0; i < ROUNDS; i++) {
+        long *big = cs411newarray(BIG);
+        check(big[-1] == BIG && big[0] == 0 && big[BIG - 1] == 0, "new array is zero", i);
+        big[0] = i;
+        big[BIG - 1] = i;
+        /* Small garbage: objects that point to each other, and arrays */
+        for (j = 0; j < 100; j++)
+            cons(j, list);
+    }
+
+    check_list(list);
+    check(empty[-1] == 0, "empty array", 0);
+    check(middle[-2] == 11 && middle[1] == 14, "interior pointer", 0);
+    printf(failures == 0 ? "ok\n" : "%d failures\n", failures);
+    if (failures > 0)
+        exit(1);
+}
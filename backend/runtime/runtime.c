@@ -2,8 +2,15 @@
 
 #include <stdio.h>
 #include <stdlib.h>
+#include <unistd.h>
 #include <sys/resource.h>
 
+static void out_flush(void);
+
+#ifdef MJ_GC
+static void gc_init(void *stack_bottom);
+#endif
+
 /*
  * The runtime defines a main function which calls the compiler generated main
  * function.
@@ -21,10 +28,31 @@ int main() {
 	exit(1);
     }
 
+    atexit(out_flush);
+#ifdef MJ_GC
+    /* The collector scans the stack up to here: that covers cs411main's frame */
+    gc_init(__builtin_frame_address(0));
+#endif
     cs411main();
     return 0;
 }
 
+/*
+ * The calling convention between compiled code and the runtime is the
+ * System V one: compiled code treats %rax, %rcx, %rdx, %rsi, %rdi and %r8 to
+ * %r11 as clobbered by every call (X86_64Muncher lists them as defined by
+ * a call instruction) and keeps %rsp 16 byte aligned at calls. So the
+ * entry points can be plain C functions, which is how runtime.o and
+ * gcruntime.o define them.
+ *
+ * Built with MJ_TRAMPOLINES (runtime-tramp.o and gcruntime-tramp.o), each
+ * entry point is instead a trampoline that saves all the argument and
+ * scratch registers around a call to the C function, which is named with a
+ * "real" suffix. That costs 20 instructions per call. driver.Runner links with these
+ * when its trampolines flag is set.
+ */
+#ifdef MJ_TRAMPOLINES
+
 #ifdef __APPLE__
 #define EXTRA "_"
 #else
@@ -59,22 +87,106 @@ TRAMP(cs411newobject)
 TRAMP(cs411newarray)
 TRAMP(cs411error)
 
+#define ENTRY(x) x##real
+
+#else
+
+#define ENTRY(x) x
+
+#endif
+
+#define OUT_SIZE (1L << 16)
+#define OUT_LINE (21L)    /* the longest line, "-9223372036854775808\n" */
+
+/*
+ * What the program printed that hasn't been written to stdout yet. It is
+ * written when it is full, at exit, and before an error message.
+ */
+static char out_buf[OUT_SIZE];
+static long out_len;
+
+static void out_flush(void) {
+    long done = 0, n;
+    while (done < out_len) {
+	n = write(1, out_buf + done, out_len - done);
+	if (n <= 0)
+	    break;
+	done += n;
+    }
+    out_len = 0;
+}
+
 /*
  * The runtime defines a function to print an integer.
  */
-void cs411printlnreal(long i) {
-    printf("%ld\n", i);
+void ENTRY(cs411println)(long i) {
+    char digits[OUT_LINE];
+    unsigned long u = i < 0 ? -(unsigned long) i : (unsigned long) i;
+    int n = 0;
+    if (out_len > OUT_SIZE - OUT_LINE)
+	out_flush();
+    do {
+	digits[n++] = '0' + u % 10;
+	u /= 10;
+    } while (u != 0);
+    if (i < 0)
+	out_buf[out_len++] = '-';
+    while (n > 0)
+	out_buf[out_len++] = digits[--n];
+    out_buf[out_len++] = '\n';
+}
+
+/*
+ * The allocation pointer and limit. Compiled code allocates an object of n
+ * words inline when n + 1 words fit between them: it stores n in the first
+ * word, moves the pointer past the object and uses the words after the
+ * first. Both allocators keep the memory below the limit zeroed, and leave
+ * both NULL when the next object must come from cs411newobject.
+ */
+long *cs411allocptr, *cs411alloclimit;
+
+#ifndef MJ_GC
+
+#define CHUNK_WORDS (8192L)    /* words of each chunk that objects are bumped from */
+
+static void alloc_fail(long words) {
+    fprintf(stderr, "Out of memory: can't allocate %ld words\n", words);
+    exit(1);
+}
+
+/*
+ * Allocate a zeroed block of words words, after a word that holds words.
+ * Small blocks are bumped from the current chunk, and when that is full,
+ * from a new one (the rest of the old chunk is never used).
+ */
+static long* alloc_words(long words) {
+    long n = words + 1;
+    long* block;
+    if (words < 0)
+	alloc_fail(words);
+    if (n > CHUNK_WORDS / 8) {
+	block = calloc(n, sizeof(long));
+	if (block == NULL)
+	    alloc_fail(words);
+    } else {
+	if (cs411allocptr == NULL || n > cs411alloclimit - cs411allocptr) {
+	    cs411allocptr = calloc(CHUNK_WORDS, sizeof(long));
+	    if (cs411allocptr == NULL)
+		alloc_fail(words);
+	    cs411alloclimit = cs411allocptr + CHUNK_WORDS;
+	}
+	block = cs411allocptr;
+	cs411allocptr += n;
+    }
+    block[0] = words;
+    return block + 1;
 }
 
 /*
  * Allocate memory for an object and initialize it.
  */
-char* cs411newobjectreal(long numbytes) {
-    char* object = malloc(numbytes);
-    int i;
-    for (i=0; i<numbytes; i++)
-	object[i] = 0;
-    return object;
+char* ENTRY(cs411newobject)(long numbytes) {
+    return (char *) alloc_words((numbytes + 7) / 8);
 }
 
 /*
@@ -84,17 +196,315 @@ char* cs411newobjectreal(long numbytes) {
  * array. The element at index[-1] position is the 
  * length of the array.
  */
-long* cs411newarrayreal(long numElements) {
-    long* arr = malloc((numElements+1)*sizeof(long));
-    int i;
-    arr[0] = numElements;
-    arr++;
-    for (i=0; i<numElements; i++) {
-	arr[i] = 0;
+long* ENTRY(cs411newarray)(long numElements) {
+    return alloc_words(numElements);
+}
+
+#else
+
+#include <string.h>
+#include <sys/mman.h>
+
+/*
+ * The garbage collected allocator, built into gcruntime.o.
+ *
+ * Objects and arrays come from one arena, which is reserved up front but
+ * only backed by memory as it is used. Every block starts with a size word,
+ * the number of words after it: for an array that is the length at arr[-1],
+ * and an object gets a hidden word in the same place. Bitmaps with one bit
+ * per word record where blocks start, which blocks are arrays, and which
+ * are marked.
+ *
+ * Allocation bumps cs411allocptr through the current hole (a free run of
+ * the arena), usually inline in the compiled code, which doesn't set the
+ * block's start bit: gc_parse walks the size words of the blocks bumped
+ * since it last ran and sets them, before the collector needs them. When no hole is left below the heap limit, a conservative
+ * mark-sweep collection runs. Any word of the stack between the collector
+ * and the cs411main frame, of the callee-saved registers, or of a live object,
+ * that points into (or just past the end of) a block keeps that block alive.
+ * Arrays only hold ints, so they are not scanned. The sweep zeroes dead
+ * blocks, so allocated memory is always zero, and makes the runs between
+ * live blocks the new holes. The limit doubles while the heap is more than
+ * half full after a collection.
+ */
+
+#define GC_ARENA_WORDS ((16L << 30) / 8)    /* address space reserved for the heap */
+#define GC_INITIAL_LIMIT ((64L << 20) / 8)  /* heap size of the first collection */
+#define GC_LARGE_WORDS (512L)               /* blocks that don't end the current hole */
+#define GC_RELEASE_WORDS (8192L)            /* dead blocks whose pages go back to the OS */
+
+#define GC_BIT(map, w) ((map)[(w) >> 6] & (1UL << ((w) & 63)))
+#define GC_SET(map, w) ((map)[(w) >> 6] |= (1UL << ((w) & 63)))
+#define GC_CLEAR(map, w) ((map)[(w) >> 6] &= ~(1UL << ((w) & 63)))
+
+struct gc_hole {
+    long start, end;
+};
+
+static long *gc_arena;
+static unsigned long *gc_starts, *gc_arrays, *gc_marks;
+static long *gc_stack_bottom;
+static long gc_page;
+static long gc_limit;       /* words of the arena in use before the next collection */
+static long gc_top;         /* end of the highest block */
+static long gc_parsed;      /* start bits are set below here in the current hole */
+static struct gc_hole *gc_holes;
+static long gc_nholes, gc_maxholes, gc_hole;
+static long *gc_work;       /* mark stack */
+static long gc_nwork, gc_maxwork;
+static long gc_collections, gc_live;
+
+static void *gc_reserve(long bytes) {
+    void *p = mmap(NULL, bytes, PROT_READ | PROT_WRITE,
+                   MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE, -1, 0);
+    if (p == MAP_FAILED) {
+        perror("mmap");
+        exit(1);
+    }
+    return p;
+}
+
+static void gc_stats(void) {
+    fprintf(stderr, "GC: %ld collections, %ld bytes live, heap limit %ld bytes\n",
+            gc_collections, gc_live * 8, gc_limit * 8);
+}
+
+static void gc_init(void *stack_bottom) {
+    gc_arena = gc_reserve(GC_ARENA_WORDS * 8);
+    gc_starts = gc_reserve(GC_ARENA_WORDS / 8);
+    gc_arrays = gc_reserve(GC_ARENA_WORDS / 8);
+    gc_marks = gc_reserve(GC_ARENA_WORDS / 8);
+    gc_stack_bottom = stack_bottom;
+    gc_page = sysconf(_SC_PAGESIZE);
+    gc_limit = GC_INITIAL_LIMIT;
+    cs411allocptr = gc_arena;
+    cs411alloclimit = gc_arena + gc_limit;
+    gc_parsed = 0;
+    gc_hole = -1;
+    if (getenv("MJ_GC_STATS"))
+        atexit(gc_stats);
+}
+
+static void gc_fail(long words) {
+    fprintf(stderr, "Out of memory: can't allocate %ld words\n", words);
+    exit(1);
+}
+
+static void gc_add_hole(long start, long end) {
+    if (gc_nholes == gc_maxholes) {
+        gc_maxholes = gc_maxholes ? 2 * gc_maxholes : 256;
+        gc_holes = realloc(gc_holes, gc_maxholes * sizeof(struct gc_hole));
+    }
+    gc_holes[gc_nholes].start = start;
+    gc_holes[gc_nholes].end = end;
+    gc_nholes++;
+}
+
+/*
+ * Set the start bits of the blocks allocated in the current hole since the
+ * last call.
+ */
+static void gc_parse(void) {
+    long b, end;
+    if (cs411allocptr == NULL)
+        return;
+    end = cs411allocptr - gc_arena;
+    for (b = gc_parsed; b < end; b += gc_arena[b] + 1)
+        GC_SET(gc_starts, b);
+    gc_parsed = end;
+    if (end > gc_top)
+        gc_top = end;
+}
+
+/*
+ * Find n words in one of the holes after the current one. A small block
+ * makes that hole the current one (the rest of the old hole is lost until
+ * the next collection); a large one is cut from the front of it.
+ */
+static long gc_find_hole(long n) {
+    long i, b;
+    for (i = gc_hole + 1; i < gc_nholes; i++) {
+        if (gc_holes[i].end - gc_holes[i].start < n)
+            continue;
+        b = gc_holes[i].start;
+        if (n >= GC_LARGE_WORDS) {
+            gc_holes[i].start += n;
+        } else {
+            gc_hole = i;
+            cs411allocptr = gc_arena + b + n;
+            cs411alloclimit = gc_arena + gc_holes[i].end;
+            gc_parsed = b + n;
+        }
+        return b;
+    }
+    return -1;
+}
+
+static void gc_mark_word(unsigned long p) {
+    long w, b, i;
+    unsigned long bits;
+    if (p <= (unsigned long) gc_arena || p > (unsigned long) (gc_arena + gc_top))
+        return;
+    /* Look up p - 1, so that a pointer just past the end of a block counts */
+    w = (p - 1 - (unsigned long) gc_arena) >> 3;
+    i = w >> 6;
+    bits = gc_starts[i] & (~0UL >> (63 - (w & 63)));
+    while (bits == 0) {
+        if (i == 0)
+            return;
+        bits = gc_starts[--i];
     }
-    return arr;
+    b = (i << 6) + 63 - __builtin_clzl(bits);
+    if (w > b + gc_arena[b] || GC_BIT(gc_marks, b))
+        return;
+    GC_SET(gc_marks, b);
+    if (GC_BIT(gc_arrays, b))
+        return;
+    if (gc_nwork == gc_maxwork) {
+        gc_maxwork = gc_maxwork ? 2 * gc_maxwork : 1024;
+        gc_work = realloc(gc_work, gc_maxwork * sizeof(long));
+    }
+    gc_work[gc_nwork++] = b;
 }
 
+static void gc_mark_range(long *from, long *to) {
+    for (; from < to; from++)
+        gc_mark_word(*from);
+}
+
+static void gc_zero(long b, long n) {
+    char *from = (char *) (gc_arena + b);
+    char *to = (char *) (gc_arena + b + n);
+#ifdef __linux__
+    /* Pages given back to the system read as zero when they are next used */
+    if (n >= GC_RELEASE_WORDS) {
+        char *pfrom = (char *) (((unsigned long) from + gc_page - 1) & -gc_page);
+        char *pto = (char *) ((unsigned long) to & -gc_page);
+        memset(from, 0, pfrom - from);
+        madvise(pfrom, pto - pfrom, MADV_DONTNEED);
+        from = pto;
+    }
+#endif
+    memset(from, 0, to - from);
+}
+
+static void gc_sweep(void) {
+    long i, b, n, end = 0;
+    unsigned long bits;
+    gc_nholes = 0;
+    gc_live = 0;
+    for (i = 0; i < (gc_top + 63) >> 6; i++) {
+        for (bits = gc_starts[i]; bits != 0; bits &= bits - 1) {
+            b = (i << 6) + __builtin_ctzl(bits);
+            n = gc_arena[b] + 1;
+            if (GC_BIT(gc_marks, b)) {
+                if (b > end)
+                    gc_add_hole(end, b);
+                end = b + n;
+                gc_live += n;
+            } else {
+                GC_CLEAR(gc_starts, b);
+                GC_CLEAR(gc_arrays, b);
+                gc_zero(b, n);
+            }
+        }
+    }
+    gc_top = end;
+}
+
+/*
+ * Double the heap limit, making the new space a hole. Fails at the end of
+ * the arena.
+ */
+static int gc_grow(void) {
+    long old = gc_limit;
+    if (gc_limit == GC_ARENA_WORDS)
+        return 0;
+    gc_limit = gc_limit * 2 < GC_ARENA_WORDS ? gc_limit * 2 : GC_ARENA_WORDS;
+    if (gc_nholes > 0 && gc_holes[gc_nholes - 1].end == old)
+        gc_holes[gc_nholes - 1].end = gc_limit;
+    else
+        gc_add_hole(old, gc_limit);
+    return 1;
+}
+
+static void __attribute__((noinline)) gc_collect(void) {
+    long regs[6];
+    long b;
+    /* The MiniJava code's pointers may still be in callee-saved registers */
+    asm volatile("movq %%rbx, 0(%0)\n\t"
+                 "movq %%rbp, 8(%0)\n\t"
+                 "movq %%r12, 16(%0)\n\t"
+                 "movq %%r13, 24(%0)\n\t"
+                 "movq %%r14, 32(%0)\n\t"
+                 "movq %%r15, 40(%0)"
+                 : : "r" (regs) : "memory");
+    gc_parse();
+    memset(gc_marks, 0, ((gc_top + 63) >> 6) * sizeof(long));
+    /* The stack from here up (the registers, the callers' saved registers and frames) */
+    gc_mark_range(regs, gc_stack_bottom);
+    while (gc_nwork > 0) {
+        b = gc_work[--gc_nwork];
+        gc_mark_range(gc_arena + b + 1, gc_arena + b + 1 + gc_arena[b]);
+    }
+    gc_sweep();
+    gc_collections++;
+    if (gc_top < gc_limit)
+        gc_add_hole(gc_top, gc_limit);
+    gc_hole = -1;
+    cs411allocptr = cs411alloclimit = NULL;
+    while (2 * gc_live > gc_limit && gc_grow())
+        ;
+}
+
+/*
+ * Allocate a zeroed block with room for words words after its size word.
+ */
+static long *gc_alloc(long words, int array) {
+    long n = words + 1;
+    long b;
+    if (words < 0 || n > GC_ARENA_WORDS)
+        gc_fail(words);
+    gc_parse();
+    if (cs411allocptr != NULL && n <= cs411alloclimit - cs411allocptr) {
+        b = cs411allocptr - gc_arena;
+        cs411allocptr += n;
+        gc_parsed = b + n;
+    } else if ((b = gc_find_hole(n)) < 0) {
+        gc_collect();
+        while ((b = gc_find_hole(n)) < 0)
+            if (!gc_grow())
+                gc_fail(words);
+    }
+    gc_arena[b] = words;
+    GC_SET(gc_starts, b);
+    if (array)
+        GC_SET(gc_arrays, b);
+    if (b + n > gc_top)
+        gc_top = b + n;
+    return gc_arena + b + 1;
+}
+
+/*
+ * Allocate memory for an object and initialize it.
+ */
+char* ENTRY(cs411newobject)(long numbytes) {
+    return (char *) gc_alloc((numbytes + 7) / 8, 0);
+}
+
+/*
+ * Allocate memory for an array and initialize it.
+ *
+ * The returned pointer points to element 0 of the
+ * array. The element at index[-1] position is the
+ * length of the array.
+ */
+long* ENTRY(cs411newarray)(long numElements) {
+    return gc_alloc(numElements, 1);
+}
+
+#endif
+
 char *errors[] = {
     "No error",
     "Index out of bounds",
@@ -103,8 +513,9 @@ char *errors[] = {
 /*
  * Report a failure - the integer code indicates the type of failure.
  */
-void cs411errorreal(long code) {
+void ENTRY(cs411error)(long code) {
     /*    fprintf(stdout, "MiniJava failure %ld: %s\n", code, (code >= 0 && code < sizeof(errors) / sizeof(char *)) ? errors[code] : "Invalid error code"); */
+    out_flush();
     fprintf(stdout, "MiniJava failure %ld\n", code);
     exit(0);
 }
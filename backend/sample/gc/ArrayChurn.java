@@ -0,0 +1,26 @@
+class Main {
+    public static void main(String[] args) {
+        // 2000 arrays of 8MB each: far more than fits in memory at once
+        System.out.println(new Churn().run(2000, 1000000));
+    }
+}
+
+class Churn {
+    public int run(int n, int size) {
+        int i;
+        int sum;
+        int[] arr;
+        i = 0;
+        sum = 0;
+        while (i < n) {
+            arr = new int[size];
+            // A new array is all zeros, even where an old one was
+            sum = sum + arr[1] + arr[size - 1];
+            arr[1] = i;
+            arr[size - 1] = i + 1;
+            sum = sum + arr[size - 1];
+            i = i + 1;
+        }
+        return sum;
+    }
+}
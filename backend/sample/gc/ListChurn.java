@@ -0,0 +1,66 @@
+class Main {
+    public static void main(String[] args) {
+        // 10000 nodes with 800KB arrays, of which only the last 20 stay live
+        System.out.println(new Queue().run(10000, 20, 100000));
+    }
+}
+
+class Queue {
+    public int run(int rounds, int keep, int size) {
+        int i;
+        int ignore;
+        Node list;
+        Node end;
+        end = new Node().end();
+        list = end;
+        i = 0;
+        while (i < rounds) {
+            list = new Node().cons(i, size, list);
+            ignore = list.truncate(keep, end);
+            i = i + 1;
+        }
+        return list.sum();
+    }
+}
+
+class Node {
+    Node next;
+    int[] data;
+    boolean last;
+
+    public Node end() {
+        last = true;
+        return this;
+    }
+
+    public Node cons(int v, int size, Node n) {
+        next = n;
+        data = new int[size];
+        data[0] = v;
+        data[size - 1] = v;
+        last = false;
+        return this;
+    }
+
+    // Drop everything after the first k nodes
+    public int truncate(int k, Node end) {
+        int r;
+        if (last)
+            r = 0;
+        else if (k < 2) {
+            next = end;
+            r = 0;
+        } else
+            r = next.truncate(k - 1, end);
+        return r;
+    }
+
+    public int sum() {
+        int s;
+        if (last)
+            s = 0;
+        else
+            s = data[0] + data[data.length - 1] + next.sum();
+        return s;
+    }
+}
@@ -0,0 +1,139 @@
+package analysis;
+
+import java.util.EnumSet;
+
+import util.Phase;
+import util.Profile;
+
+import codegen.AssemProc;
+import codegen.assem.Instr;
+import analysis.implementation.InterferenceGraphImplementation;
+
+/**
+ * The flow graph, liveness and interference graph of one procedure's body.
+ * Each is computed the first time it is asked for, and kept until the body
+ * changes (the {@link AssemProc#getVersion() version} of the procedure
+ * tells) or a {@link Pass} that doesn't preserve it has run.
+ * <p>
+ * Without caching, every request computes the analysis again, from scratch
+ * (as if it called FlowGraph.build itself).
+ */
+public class Analyses {
+
+    private final AssemProc proc;
+    private final boolean caching;
+
+    /**
+     * The version of proc that the analyses we have are of.
+     */
+    private int version;
+
+    private FlowGraph<Instr> flowGraph;
+    private Liveness<Instr> liveness;
+    private InterferenceGraph interference;
+
+    /**
+     * How many times each analysis was computed.
+     */
+    private final int[] computed = new int[Analysis.values().length];
+
+    public Analyses(AssemProc proc) {
+        this(proc, true);
+    }
+
+    public Analyses(AssemProc proc, boolean caching) {
+        this.proc = proc;
+        this.caching = caching;
+        this.version = proc.getVersion();
+    }
+
+    public FlowGraph<Instr> flowGraph() {
+        refresh();
+        return getFlowGraph();
+    }
+
+    /**
+     * Liveness of the flow graph {@link Liveness#g}, which is the same as
+     * {@link #flowGraph()} if we are caching.
+     */
+    public Liveness<Instr> liveness() {
+        refresh();
+        return getLiveness();
+    }
+
+    public InterferenceGraph interference() {
+        refresh();
+        if (interference == null) {
+            Liveness<Instr> live = getLiveness();
+            Profile.Span span = Profile.begin(Phase.INTERFERENCE, proc.getLabel());
+            interference = new InterferenceGraphImplementation<Instr>(live);
+            Profile.end(span);
+            computed[Analysis.INTERFERENCE.ordinal()]++;
+        }
+        return interference;
+    }
+
+    private FlowGraph<Instr> getFlowGraph() {
+        if (flowGraph == null) {
+            Profile.Span span = Profile.begin(Phase.FLOW_GRAPH, proc.getLabel());
+            flowGraph = FlowGraph.build(proc.getBody());
+            Profile.end(span);
+            computed[Analysis.FLOW_GRAPH.ordinal()]++;
+        }
+        return flowGraph;
+    }
+
+    private Liveness<Instr> getLiveness() {
+        if (liveness == null) {
+            FlowGraph<Instr> fg = getFlowGraph();
+            Profile.Span span = Profile.begin(Phase.LIVENESS, proc.getLabel());
+            liveness = Liveness.build(fg);
+            Profile.end(span);
+            computed[Analysis.LIVENESS.ordinal()]++;
+        }
+        return liveness;
+    }
+
+    /**
+     * Compute the analyses that aren't there yet. (Without caching, there
+     * is no point: they would be computed again when asked for.)
+     */
+    public void require(EnumSet<Analysis> analyses) {
+        if (!caching)
+            return;
+        if (analyses.contains(Analysis.INTERFERENCE))
+            interference();
+        else if (analyses.contains(Analysis.LIVENESS))
+            liveness();
+        else if (analyses.contains(Analysis.FLOW_GRAPH))
+            flowGraph();
+    }
+
+    /**
+     * Forget the analyses that aren't in preserved, and the ones computed
+     * from them.
+     */
+    public void keepOnly(EnumSet<Analysis> preserved) {
+        if (!preserved.contains(Analysis.FLOW_GRAPH))
+            flowGraph = null;
+        if (flowGraph == null || !preserved.contains(Analysis.LIVENESS))
+            liveness = null;
+        if (liveness == null || !preserved.contains(Analysis.INTERFERENCE))
+            interference = null;
+    }
+
+    private void refresh() {
+        if (!caching || version != proc.getVersion()) {
+            keepOnly(EnumSet.noneOf(Analysis.class));
+            version = proc.getVersion();
+        }
+    }
+
+    /**
+     * How many times an analysis was computed.
+     */
+    public int computed(Analysis analysis) {
+        return computed[analysis.ordinal()];
+    }
+
+}
@@ -0,0 +1,14 @@
+package analysis;
+
+/**
+ * The analyses of a procedure body that {@link Analyses} computes and keeps.
+ * Each one is computed from the ones before it, so it is out of date as soon
+ * as any of them is.
+ */
+public enum Analysis {
+
+    FLOW_GRAPH,    // FlowGraph.build of the body
+    LIVENESS,      // Liveness.build of the flow graph
+    INTERFERENCE   // The interference graph, from the liveness
+
+}
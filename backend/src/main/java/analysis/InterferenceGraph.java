@@ -3,16 +3,30 @@ package analysis;
 import ir.temp.Color;
 import ir.temp.Temp;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import util.DefaultIndentable;
+import util.IdMap;
 import util.IndentingWriter;
 import util.List;
+import util.TriangularBitMatrix;
 
 import util.graph.Graph;
 import util.graph.Node;
 
 
+/**
+ * An interference graph. Interference is symmetric, so every edge is
+ * stored only once: addEdge(a, b) and addEdge(b, a) are the same edge, and
+ * a node's succ() and pred() are both the list of nodes it interferes with.
+ * <p>
+ * Rather than the linked lists used by {@link Graph}, the edges are kept
+ * in a triangular bit matrix (for O(1) membership tests) plus a growable int
+ * array of neighbours per node. Both are indexed by the node keys, which are
+ * dense since every node of the graph is created by this graph. Nodes are
+ * found by the id of their Temp rather than through a hash map.
+ */
 abstract public class InterferenceGraph extends Graph<Temp> {
 
     public class Move extends DefaultIndentable {
@@ -37,6 +51,25 @@ abstract public class InterferenceGraph extends Graph<Temp> {
 
     public String name = "Unknown";
 
+    private final TriangularBitMatrix matrix = new TriangularBitMatrix();
+
+    /**
+     * Neighbours of each node, indexed by node key. Only the first
+     * adjCount[key] entries are used.
+     */
+    private int[][] adj = new int[16][];
+    private int[] adjCount = new int[16];
+
+    /**
+     * The nodes, indexed by key.
+     */
+    private InterferenceNode[] byKey = new InterferenceNode[16];
+
+    /**
+     * The nodes, indexed by Temp id (used instead of the nodeMap of Graph).
+     */
+    private final IdMap<Temp, Node<Temp>> byTemp = new IdMap<Temp, Node<Temp>>();
+
     /**
      * This default implementation will work, but you should
      * override it to provide a better implementation.
@@ -49,15 +82,147 @@ abstract public class InterferenceGraph extends Graph<Temp> {
         return 1;
     }
 
+    /**
+     * Nodes of an interference graph. Their adjacency is answered from the
+     * graph's bit matrix and neighbour arrays.
+     */
+    private class InterferenceNode extends Node<Temp> {
+
+        private final int key;
+
+        /**
+         * The neighbours as a List, created on demand and thrown away when
+         * an edge is added or removed.
+         */
+        private List<Node<Temp>> neighbours;
+
+        InterferenceNode(Temp content) {
+            super(InterferenceGraph.this, content);
+            this.key = getKey();
+            if (key >= byKey.length) {
+                int size = Math.max(key + 1, byKey.length * 2);
+                byKey = Arrays.copyOf(byKey, size);
+                adj = Arrays.copyOf(adj, size);
+                adjCount = Arrays.copyOf(adjCount, size);
+            }
+            byKey[key] = this;
+            adj[key] = new int[4];
+            byTemp.put(content, this);
+        }
+
+        private List<Node<Temp>> neighbours() {
+            if (neighbours == null) {
+                List<Node<Temp>> l = List.empty();
+                int[] a = adj[key];
+                for (int i = 0; i < adjCount[key]; i++)
+                    l.add(byKey[a[i]]);
+                neighbours = l;
+            }
+            return neighbours;
+        }
+
+        @Override
+        public List<Node<Temp>> succ() {
+            return neighbours();
+        }
+
+        @Override
+        public List<Node<Temp>> pred() {
+            return neighbours();
+        }
+
+        @Override
+        public int outDegree() {
+            return adjCount[key];
+        }
+
+        @Override
+        public int inDegree() {
+            return adjCount[key];
+        }
+
+        @Override
+        public boolean goesTo(Node<Temp> n) {
+            return interferes(this, n);
+        }
+
+        @Override
+        public boolean comesFrom(Node<Temp> n) {
+            return interferes(this, n);
+        }
+
+        @Override
+        public String toString() {
+            // Create nodes that print nicer.
+            return wrappee().toString();
+        }
+    }
+
     @Override
     protected Node<Temp> makeNode(Temp content) {
-        // Create nodes that print nicer.
-        return new Node<Temp>(this, content) {
-            @Override
-            public String toString() {
-                return wrappee().toString();
+        return new InterferenceNode(content);
+    }
+
+    @Override
+    public Node<Temp> nodeFor(Temp content) {
+        Node<Temp> node = byTemp.get(content);
+        return node != null ? node : newNode(content);
+    }
+
+    @Override
+    public void makeAlias(Temp content, Node<Temp> node) {
+        if (!byTemp.containsKey(content))
+            byTemp.put(content, node);
+    }
+
+    /**
+     * O(1) test whether two nodes of this graph interfere.
+     */
+    public boolean interferes(Node<Temp> a, Node<Temp> b) {
+        return matrix.get(a.getKey(), b.getKey());
+    }
+
+    @Override
+    public void addEdge(Node<Temp> from, Node<Temp> to) {
+        int a = from.getKey();
+        int b = to.getKey();
+        if (byKey[a] != from || byKey[b] != to)
+            throw new Error("Graph.addEdge using nodes from the wrong graph");
+        if (!matrix.set(a, b))
+            return;
+        addNeighbour(a, b);
+        addNeighbour(b, a);
+    }
+
+    private void addNeighbour(int a, int b) {
+        int[] list = adj[a];
+        if (adjCount[a] == list.length)
+            adj[a] = list = Arrays.copyOf(list, list.length * 2);
+        list[adjCount[a]++] = b;
+        byKey[a].neighbours = null;
+    }
+
+    @Override
+    public void rmEdge(Node<Temp> from, Node<Temp> to) {
+        int a = from.getKey();
+        int b = to.getKey();
+        if (!matrix.clear(a, b))
+            return;
+        removeNeighbour(a, b);
+        removeNeighbour(b, a);
+    }
+
+    private void removeNeighbour(int a, int b) {
+        int[] list = adj[a];
+        int count = adjCount[a];
+        for (int i = 0; i < count; i++) {
+            if (list[i] == b) {
+                System.arraycopy(list, i + 1, list, i, count - i - 1);
+                adjCount[a]--;
+                break;
             }
-        };
+        }
+        byKey[a].neighbours = null;
     }
 
     abstract public String dotString(int K, Map<Temp, Color> xcolorMap);
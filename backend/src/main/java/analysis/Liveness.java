@@ -9,6 +9,8 @@ import util.IndentingWriter;
 import util.List;
 
 import util.graph.Node;
+import analysis.implementation.BitSetLiveness;
+import analysis.implementation.LivenessImplementation;
 
 
 /**
@@ -37,6 +39,32 @@ public abstract class Liveness<N> extends DefaultIndentable {
      */
     public abstract List<Temp> liveOut(Node<N> node);
 
+    /**
+     * The Temps that are live *before* the execution of a given node. Only
+     * used for debugging output.
+     */
+    protected abstract List<Temp> liveIn(Node<N> node);
+
+    /**
+     * Which implementation {@link #build(FlowGraph)} creates.
+     */
+    public static LivenessMode mode = LivenessMode.BITSET;
+
+    /**
+     * Compute liveness for a flowgraph with a concrete implementation of the
+     * class, as selected by {@link #mode}.
+     */
+    public static <N> Liveness<N> build(FlowGraph<N> graph) {
+        switch (mode) {
+            case ACTIVE_SET:
+                return new LivenessImplementation<N>(graph);
+            case BITSET:
+                return new BitSetLiveness<N>(graph);
+            default:
+                throw new Error("Unknown liveness mode: " + mode);
+        }
+    }
+
     /**
      * Print a human-readable dump for debugging.
      */
@@ -77,5 +105,57 @@ public abstract class Liveness<N> extends DefaultIndentable {
         }
     }
 
-    public abstract String dotString(String name);
+    private String shortList(List<Temp> l) {
+        java.util.List<String> reall = new java.util.ArrayList<String>();
+        for (Temp t : l) {
+            reall.add(t.toString());
+        }
+        Collections.sort(reall);
+        return String.valueOf(reall);
+    }
+
+    private String dotLabel(Node<N> n) {
+        return shortList(liveIn(n)) +
+                "\\n" +
+                n +
+                ": " +
+                n.wrappee() +
+                "\\n" +
+                shortList(liveOut(n));
+    }
+
+    private double fontSize() {
+        return (Math.max(30, Math.sqrt(Math.sqrt(g.nodes().size() + 1)) * g.nodes().size() * 1.2));
+    }
+
+    private double lineWidth() {
+        return (Math.max(3.0, Math.sqrt(g.nodes().size() + 1) * 1.4));
+    }
+
+    private double arrowSize() {
+        return Math.max(2.0, Math.sqrt(Math.sqrt(g.nodes().size() + 1)));
+    }
+
+    public String dotString(String name) {
+        StringBuilder out = new StringBuilder();
+        out.append("digraph \"Flow graph\" {\n");
+        out.append("labelloc=\"t\";\n");
+        out.append("fontsize=").append(fontSize()).append(";\n");
+        out.append("label=\"").append(name).append("\";\n");
+
+        out.append("  graph [size=\"6.5, 9\", ratio=fill];\n");
+        for (Node<N> n : g.nodes()) {
+            out.append("  \"").append(dotLabel(n)).append("\" [fontsize=").append(fontSize());
+            out.append(", style=\"setlinewidth(").append(lineWidth()).append(")\", color=").append(g.isMove(n) ? "green" : "blue");
+            out.append("]\n");
+        }
+        for (Node<N> n : g.nodes()) {
+            for (Node<N> o : n.succ()) {
+                out.append("  \"").append(dotLabel(n)).append("\" -> \"").append(dotLabel(o)).append("\" [arrowhead = normal, arrowsize=").append(arrowSize()).append(", style=\"setlinewidth(").append(lineWidth()).append(")\"];\n");
+            }
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
 }
@@ -0,0 +1,12 @@
+package analysis;
+
+/**
+ * There is a choice of two implementations of the liveness analysis. See
+ * {@link Liveness#build(FlowGraph)}.
+ */
+public enum LivenessMode {
+
+    ACTIVE_SET,    // One ActiveSet per flow graph node, kept up to date by listeners
+    BITSET         // Worklist over basic blocks with long[] bitsets
+
+}
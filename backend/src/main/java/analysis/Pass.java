@@ -0,0 +1,48 @@
+package analysis;
+
+import java.util.EnumSet;
+
+import codegen.AssemProc;
+
+/**
+ * A step of the back end that a {@link PassManager} runs on each procedure.
+ * A pass says which analyses it needs (the pass manager computes them
+ * before running it, unless it has them already) and which ones are still
+ * good after it ran. Changing the body of the procedure makes all of them
+ * out of date anyway.
+ */
+public abstract class Pass {
+
+    public static final EnumSet<Analysis> NONE = EnumSet.noneOf(Analysis.class);
+    public static final EnumSet<Analysis> ALL = EnumSet.allOf(Analysis.class);
+
+    private final String name;
+    private final EnumSet<Analysis> needs;
+    private final EnumSet<Analysis> preserves;
+
+    public Pass(String name, EnumSet<Analysis> needs, EnumSet<Analysis> preserves) {
+        this.name = name;
+        this.needs = needs;
+        this.preserves = preserves;
+    }
+
+    public EnumSet<Analysis> needs() {
+        return needs;
+    }
+
+    public EnumSet<Analysis> preserves() {
+        return preserves;
+    }
+
+    /**
+     * Do the work, getting the analyses from analyses (rather than
+     * computing them).
+     */
+    public abstract void run(AssemProc proc, Analyses analyses);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,88 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import util.DefaultIndentable;
+import util.IndentingWriter;
+
+import codegen.AssemData;
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+
+/**
+ * Runs {@link Pass}es over the procedures of an assembly. It keeps the
+ * {@link Analyses} of each procedure from one pass to the next, so that a
+ * flow graph (say) is only computed again when a pass changed the
+ * procedure, or said it doesn't preserve it.
+ */
+public class PassManager extends DefaultIndentable {
+
+    /**
+     * Whether new pass managers keep analyses from one pass (or one round
+     * of register allocation) to the next.
+     */
+    public static boolean caching = true;
+
+    private final boolean cache;
+    private final java.util.List<Pass> ran = new ArrayList<Pass>();
+    private final Map<AssemProc, Analyses> analyses = new IdentityHashMap<AssemProc, Analyses>();
+
+    public PassManager() {
+        this(caching);
+    }
+
+    public PassManager(boolean caching) {
+        this.cache = caching;
+    }
+
+    public Analyses analyses(AssemProc proc) {
+        Analyses a = analyses.get(proc);
+        if (a == null) {
+            a = new Analyses(proc, cache);
+            analyses.put(proc, a);
+        }
+        return a;
+    }
+
+    /**
+     * Run a pass on each procedure.
+     */
+    public void run(Pass pass, Assembly assembly) {
+        for (AssemFragment frag : assembly) {
+            if (frag instanceof AssemProc)
+                run(pass, (AssemProc) frag);
+            else if (!(frag instanceof AssemData))
+                throw new Error("PassManager doesn't know how to handle such fragments");
+        }
+        ran.add(pass);
+    }
+
+    public void run(Pass pass, AssemProc proc) {
+        Analyses a = analyses(proc);
+        a.require(pass.needs());
+        pass.run(proc, a);
+        a.keepOnly(pass.preserves());
+    }
+
+    /**
+     * How many times an analysis was computed, over all procedures.
+     */
+    public int computed(Analysis analysis) {
+        int n = 0;
+        for (Analyses a : analyses.values())
+            n += a.computed(analysis);
+        return n;
+    }
+
+    @Override
+    public void dump(IndentingWriter out) {
+        out.print("Passes: " + ran + (cache ? "" : " (not caching)"));
+        for (Analysis analysis : Analysis.values())
+            out.print(", " + analysis + ": " + computed(analysis));
+        out.println();
+    }
+
+}
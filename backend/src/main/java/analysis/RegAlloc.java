@@ -5,6 +5,8 @@ import codegen.AssemData;
 import codegen.AssemFragment;
 import codegen.AssemProc;
 import codegen.Assembly;
+import analysis.implementation.CoalescingRegAlloc;
+import analysis.implementation.LinearScanRegAlloc;
 import analysis.implementation.SpillingRegAlloc;
 
 /**
@@ -37,8 +39,35 @@ import analysis.implementation.SpillingRegAlloc;
  */
 public abstract class RegAlloc extends DefaultIndentable {
 
+    /**
+     * Which implementation {@link #doit(AssemProc)} uses.
+     */
+    public static RegAllocMode mode = RegAllocMode.COALESCING;
+
     public static RegAlloc doit(AssemProc proc) {
-        return new SpillingRegAlloc(proc);
+        return doit(proc, mode);
+    }
+
+    public static RegAlloc doit(AssemProc proc, RegAllocMode mode) {
+        return doit(proc, mode, new Analyses(proc));
+    }
+
+    /**
+     * Allocate registers, getting the flow graph, liveness and interference
+     * graph of the procedure from analyses (which keeps them up to date as
+     * the allocator rewrites the procedure).
+     */
+    public static RegAlloc doit(AssemProc proc, RegAllocMode mode, Analyses analyses) {
+        switch (mode) {
+            case SPILLING:
+                return new SpillingRegAlloc(proc, analyses);
+            case COALESCING:
+                return new CoalescingRegAlloc(proc, analyses);
+            case LINEAR_SCAN:
+                return new LinearScanRegAlloc(proc, analyses);
+            default:
+                throw new Error("Unknown register allocation mode: " + mode);
+        }
     }
 
     /**
@@ -52,9 +81,13 @@ public abstract class RegAlloc extends DefaultIndentable {
      * @param assembly
      */
     public static void doit(Assembly assembly) {
+        doit(assembly, mode);
+    }
+
+    public static void doit(Assembly assembly, RegAllocMode mode) {
         for (AssemFragment frag : assembly) {
             if (frag instanceof AssemProc)
-                doit((AssemProc) frag);
+                doit((AssemProc) frag, mode);
             else if (!(frag instanceof AssemData)) {
                 throw new Error("RegAlloc doesn't know how to handle such fragments");
             } // Else ignore it
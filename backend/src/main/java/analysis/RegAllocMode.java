@@ -0,0 +1,12 @@
+package analysis;
+
+/**
+ * The register allocators to choose from in {@link RegAlloc#doit(codegen.AssemProc)}.
+ */
+public enum RegAllocMode {
+
+    SPILLING,      // Color in arbitrary order, rewrite spills and try again
+    COALESCING,    // Iterated register coalescing (George and Appel)
+    LINEAR_SCAN    // Linear scan over live intervals: fast to compile, worse code
+
+}
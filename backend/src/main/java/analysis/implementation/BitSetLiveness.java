@@ -0,0 +1,331 @@
+package analysis.implementation;
+
+import ir.temp.Temp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import util.IdMap;
+import util.List;
+
+import analysis.FlowGraph;
+import analysis.Liveness;
+import util.graph.Node;
+
+
+/**
+ * A liveness analysis that solves the data flow equations with a worklist
+ * over basic blocks, rather than with a network of {@link util.ActiveSet}s.
+ * <p>
+ * Temps are numbered densely as they are encountered, so that live-in and
+ * live-out sets can be represented as <code>long[]</code> bitsets. The
+ * flow graph nodes are grouped into basic blocks (maximal chains of nodes
+ * with a single successor / single predecessor) and only the blocks take
+ * part in the fixpoint iteration. Blocks are visited in post-order of the
+ * flow graph, which is reverse post-order for the backwards liveness problem,
+ * so that most blocks see their successors' final live-in sets the first
+ * time around.
+ * <p>
+ * Once the block level solution is known, the live-out set of every
+ * individual node is recovered with a single backwards pass through its block.
+ */
+public class BitSetLiveness<N> extends Liveness<N> {
+
+    /**
+     * Dense numbering of the Temps that occur in the flow graph.
+     */
+    private final IdMap<Temp, Integer> tempIds = new IdMap<Temp, Integer>();
+    private final java.util.List<Temp> temps = new ArrayList<Temp>();
+
+    /**
+     * Use and def sets of the flow graph nodes (as Temp indices), indexed by
+     * node key.
+     */
+    private int[][] uses;
+    private int[][] defs;
+
+    /**
+     * Live out set for each flow graph node, indexed by node key.
+     */
+    private long[][] nodeOut;
+
+    /**
+     * The liveOut sets as Lists, created on demand.
+     */
+    private List<Temp>[] nodeOutList;
+
+    private int words;
+
+    public BitSetLiveness(FlowGraph<N> graph) {
+        super(graph);
+        number();
+        solve(buildBlocks());
+    }
+
+    /**
+     * Assign a dense index to every node and every Temp, and record the
+     * def/use sets of each node as arrays of Temp indices.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void number() {
+        int size = 0;
+        for (Node<N> node : g.nodes())
+            size = Math.max(size, node.getKey() + 1);
+        uses = new int[size][];
+        defs = new int[size][];
+        for (Node<N> node : g.nodes()) {
+            int n = node.getKey();
+            uses[n] = idsOf(g.use(node));
+            defs[n] = idsOf(g.def(node));
+        }
+        words = (temps.size() + 63) >>> 6;
+        nodeOut = new long[size][];
+        nodeOutList = new List[size];
+    }
+
+    private int[] idsOf(List<Temp> l) {
+        int[] ids = new int[l.size()];
+        int i = 0;
+        for (Temp t : l)
+            ids[i++] = idOf(t);
+        return ids;
+    }
+
+    private int idOf(Temp t) {
+        Integer id = tempIds.get(t);
+        if (id == null) {
+            id = temps.size();
+            tempIds.put(t, id);
+            temps.add(t);
+        }
+        return id;
+    }
+
+    /**
+     * A basic block of flow graph nodes. The nodes are stored in
+     * execution order.
+     */
+    private class Block {
+        final int index;
+        final java.util.List<Node<N>> body = new ArrayList<Node<N>>();
+        final java.util.List<Block> succs = new ArrayList<Block>();
+        final java.util.List<Block> preds = new ArrayList<Block>();
+        long[] gen;
+        long[] kill;
+        long[] in;
+        long[] out;
+
+        Block(int index) {
+            this.index = index;
+        }
+
+        Node<N> last() {
+            return body.get(body.size() - 1);
+        }
+    }
+
+    private boolean isLeader(Node<N> node) {
+        if (node.pred().size() != 1)
+            return true;
+        Node<N> pred = node.pred().head();
+        return pred == node || pred.succ().size() != 1;
+    }
+
+    private java.util.List<Block> buildBlocks() {
+        java.util.List<Block> blocks = new ArrayList<Block>();
+        int[] blockOf = new int[uses.length];
+        Arrays.fill(blockOf, -1);
+        // Leaders first, in program order, then anything left over (only
+        // possible for cycles that have no entry).
+        for (int pass = 0; pass < 2; pass++) {
+            for (Node<N> node : g.nodes()) {
+                if (blockOf[node.getKey()] >= 0 || (pass == 0 && !isLeader(node)))
+                    continue;
+                Block b = new Block(blocks.size());
+                blocks.add(b);
+                Node<N> current = node;
+                while (true) {
+                    b.body.add(current);
+                    blockOf[current.getKey()] = b.index;
+                    if (current.succ().size() != 1)
+                        break;
+                    Node<N> next = current.succ().head();
+                    if (blockOf[next.getKey()] >= 0 || isLeader(next))
+                        break;
+                    current = next;
+                }
+            }
+        }
+        for (Block b : blocks) {
+            for (Node<N> s : b.last().succ()) {
+                Block succ = blocks.get(blockOf[s.getKey()]);
+                b.succs.add(succ);
+                succ.preds.add(b);
+            }
+        }
+        for (Block b : blocks) {
+            b.gen = new long[words];
+            b.kill = new long[words];
+            b.in = new long[words];
+            b.out = new long[words];
+            for (int i = b.body.size() - 1; i >= 0; i--) {
+                int n = b.body.get(i).getKey();
+                for (int d : defs[n]) {
+                    clear(b.gen, d);
+                    set(b.kill, d);
+                }
+                for (int u : uses[n])
+                    set(b.gen, u);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the blocks in post-order of a depth first traversal starting
+     * from the entry block. Unreachable blocks are appended at the end.
+     */
+    private int[] postOrder(java.util.List<Block> blocks) {
+        int[] order = new int[blocks.size()];
+        int count = 0;
+        boolean[] visited = new boolean[blocks.size()];
+        int[] stack = new int[blocks.size()];
+        int[] nextSucc = new int[blocks.size()];
+        for (Block root : blocks) {
+            if (visited[root.index])
+                continue;
+            int sp = 0;
+            stack[sp++] = root.index;
+            visited[root.index] = true;
+            while (sp > 0) {
+                Block b = blocks.get(stack[sp - 1]);
+                if (nextSucc[b.index] < b.succs.size()) {
+                    Block s = b.succs.get(nextSucc[b.index]++);
+                    if (!visited[s.index]) {
+                        visited[s.index] = true;
+                        stack[sp++] = s.index;
+                    }
+                } else {
+                    order[count++] = b.index;
+                    sp--;
+                }
+            }
+        }
+        return order;
+    }
+
+    private void solve(java.util.List<Block> blocks) {
+        int nblocks = blocks.size();
+        // Circular worklist: each block is on it at most once.
+        int[] queue = new int[nblocks + 1];
+        boolean[] queued = new boolean[nblocks];
+        int head = 0;
+        int tail = 0;
+        for (int b : postOrder(blocks)) {
+            queue[tail++] = b;
+            queued[b] = true;
+        }
+        while (head != tail) {
+            Block b = blocks.get(queue[head]);
+            head = (head + 1) % queue.length;
+            queued[b.index] = false;
+
+            // out[b] = U { in[s] | s in succ[b] }
+            for (Block s : b.succs)
+                or(b.out, s.in);
+            // in[b] = gen[b] U (out[b] - kill[b])
+            boolean changed = false;
+            for (int w = 0; w < words; w++) {
+                long in = b.gen[w] | (b.out[w] & ~b.kill[w]);
+                if (in != b.in[w]) {
+                    b.in[w] = in;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                for (Block p : b.preds) {
+                    if (!queued[p.index]) {
+                        queued[p.index] = true;
+                        queue[tail] = p.index;
+                        tail = (tail + 1) % queue.length;
+                    }
+                }
+            }
+        }
+
+        // Push the block solution down to the individual nodes.
+        for (Block b : blocks) {
+            long[] live = b.out.clone();
+            for (int i = b.body.size() - 1; i >= 0; i--) {
+                int n = b.body.get(i).getKey();
+                nodeOut[n] = live.clone();
+                for (int d : defs[n])
+                    clear(live, d);
+                for (int u : uses[n])
+                    set(live, u);
+            }
+        }
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void or(long[] into, long[] from) {
+        for (int w = 0; w < into.length; w++)
+            into[w] |= from[w];
+    }
+
+    private List<Temp> toList(long[] bits) {
+        List<Temp> result = List.empty();
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                result.add(temps.get((w << 6) + bit));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Temp> liveOut(Node<N> node) {
+        int n = node.getKey();
+        List<Temp> result = nodeOutList[n];
+        if (result == null) {
+            result = toList(nodeOut[n]);
+            nodeOutList[n] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Cheaper than liveOut(node).contains(t), since it doesn't need to
+     * materialize the list.
+     */
+    public boolean isLiveOut(Node<N> node, Temp t) {
+        Integer id = tempIds.get(t);
+        return id != null && get(nodeOut[node.getKey()], id);
+    }
+
+    @Override
+    protected List<Temp> liveIn(Node<N> node) {
+        int n = node.getKey();
+        long[] in = nodeOut[n].clone();
+        for (int d : defs[n])
+            clear(in, d);
+        for (int u : uses[n])
+            set(in, u);
+        return toList(in);
+    }
+
+}
@@ -0,0 +1,631 @@
+package analysis.implementation;
+
+import ir.frame.Frame;
+import ir.temp.Color;
+import ir.temp.Temp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import util.IdMap;
+import util.IdSet;
+import util.IndentingWriter;
+import util.List;
+import util.Phase;
+import util.Profile;
+import util.TriangularBitMatrix;
+
+import codegen.AssemProc;
+import codegen.assem.A_MOVE;
+import codegen.assem.Instr;
+
+import analysis.Analyses;
+import analysis.FlowGraph;
+import analysis.Liveness;
+import analysis.RegAlloc;
+import util.graph.Node;
+
+/**
+ * Iterated register coalescing (George and Appel), as described in chapter 11
+ * of the book.
+ * <p>
+ * Unlike {@link SimpleRegAlloc}, simplification really removes nodes from the
+ * graph, and the moves collected while building the interference graph are
+ * coalesced whenever the Briggs test (for two temps) or the George test (for a
+ * temp and a register) says it is safe to do so. Coalesced moves end up with
+ * the same color for source and destination, so they are commented out
+ * when the procedure is printed.
+ * <p>
+ * Actual spills are rewritten with the {@link Rewriter}, after which the whole
+ * process is repeated until no more spills occur.
+ * <p>
+ * Temps are numbered densely at the start of each round, so that all the
+ * work lists and node sets can be indexed by int.
+ */
+public class CoalescingRegAlloc extends RegAlloc {
+
+    // Node states. Every node is in exactly one of these.
+    private static final int PRECOLORED = 0;
+    private static final int INITIAL = 1;
+    private static final int SIMPLIFY = 2;
+    private static final int FREEZE = 3;
+    private static final int SPILL = 4;
+    private static final int SPILLED = 5;
+    private static final int COALESCED = 6;
+    private static final int COLORED = 7;
+    private static final int SELECT = 8;
+
+    // Move states. Every move is in exactly one of these.
+    private static final int M_WORKLIST = 0;
+    private static final int M_ACTIVE = 1;
+    private static final int M_COALESCED = 2;
+    private static final int M_CONSTRAINED = 3;
+    private static final int M_FROZEN = 4;
+
+    private final AssemProc proc;
+    private final Analyses analyses;
+    private final Frame frame;
+    private final List<Color> colors;
+    private final int K;
+
+    private final StringBuilder trace = new StringBuilder();
+    private int iteration = 0;
+
+    /**
+     * Temps created by the spill code. These have very short live ranges and
+     * spilling them would not help.
+     */
+    private final IdSet<Temp> noSpill = new IdSet<Temp>();
+
+    /**
+     * All the temps that were actually spilled, over all the rounds.
+     */
+    private List<Temp> spilled = List.empty();
+
+    private int movesTotal;
+    private int movesEliminated;
+
+    // Per round state (see build()).
+    private IdMap<Temp, Integer> ids;
+    private java.util.List<Temp> temps;
+    private int[] state;
+    private int[] degree;
+    private int[] alias;
+    private Color[] color;
+    private double[] useCount;
+    private java.util.List<java.util.List<Integer>> adjList;
+    private TriangularBitMatrix adjSet;
+    private java.util.List<java.util.List<Integer>> moveList;
+
+    private java.util.List<int[]> moves; // {src, dst}
+    private int[] moveState;
+
+    private LinkedHashSet<Integer> simplifyWorklist;
+    private LinkedHashSet<Integer> freezeWorklist;
+    private LinkedHashSet<Integer> spillWorklist;
+    private LinkedHashSet<Integer> worklistMoves;
+    private LinkedHashSet<Integer> activeMoves;
+    private java.util.List<Integer> selectStack;
+    private java.util.List<Integer> spilledNodes;
+    private int coalescedCount;
+
+    public CoalescingRegAlloc(AssemProc proc) {
+        this(proc, new Analyses(proc));
+    }
+
+    public CoalescingRegAlloc(AssemProc proc, Analyses analyses) {
+        this.proc = proc;
+        this.analyses = analyses;
+        this.frame = proc.getFrame();
+        this.colors = List.empty();
+        for (Temp reg : frame.registers())
+            colors.add(reg.getColor());
+        this.K = colors.size();
+
+        while (true) {
+            iteration++;
+            Profile.Span span = Profile.begin(Phase.REGALLOC, proc.getLabel(), iteration);
+            build();
+            makeWorklist();
+            do {
+                if (!simplifyWorklist.isEmpty())
+                    simplify();
+                else if (!worklistMoves.isEmpty())
+                    coalesce();
+                else if (!freezeWorklist.isEmpty())
+                    freeze();
+                else if (!spillWorklist.isEmpty())
+                    selectSpill();
+            } while (!(simplifyWorklist.isEmpty() && worklistMoves.isEmpty()
+                    && freezeWorklist.isEmpty() && spillWorklist.isEmpty()));
+            assignColors();
+            traceRound();
+            if (spilledNodes.isEmpty()) {
+                Profile.end(span);
+                break;
+            }
+            rewriteProgram();
+            Profile.end(span);
+        }
+
+        // Paint the Temps in permanent paint now.
+        for (int n = 0; n < temps.size(); n++) {
+            if (state[n] != PRECOLORED)
+                temps.get(n).paint(color[n]);
+        }
+        countMoves();
+        trace.append("Moves eliminated: ").append(movesEliminated).append(" of ").append(movesTotal)
+                .append(", spilled temps: ").append(spilled.size())
+                .append(", rounds: ").append(iteration).append("\n");
+    }
+
+    /**
+     * Build the interference graph, with the nodes and moves numbered densely.
+     */
+    private void build() {
+        Liveness<Instr> liveness = analyses.liveness();
+        FlowGraph<Instr> fg = liveness.g;
+
+        ids = new IdMap<Temp, Integer>();
+        temps = new ArrayList<Temp>();
+        for (Node<Instr> node : fg.nodes()) {
+            for (Temp t : fg.def(node))
+                idOf(t);
+            for (Temp t : fg.use(node))
+                idOf(t);
+        }
+        int size = temps.size();
+        state = new int[size];
+        degree = new int[size];
+        alias = new int[size];
+        color = new Color[size];
+        useCount = new double[size];
+        adjList = new ArrayList<java.util.List<Integer>>(size);
+        moveList = new ArrayList<java.util.List<Integer>>(size);
+        adjSet = new TriangularBitMatrix(size);
+        for (int n = 0; n < size; n++) {
+            adjList.add(new ArrayList<Integer>());
+            moveList.add(new ArrayList<Integer>());
+            color[n] = temps.get(n).getColor();
+            if (color[n] != null) {
+                state[n] = PRECOLORED;
+                degree[n] = Integer.MAX_VALUE;
+            } else {
+                state[n] = INITIAL;
+            }
+        }
+
+        moves = new ArrayList<int[]>();
+        worklistMoves = new LinkedHashSet<Integer>();
+        activeMoves = new LinkedHashSet<Integer>();
+        for (Node<Instr> node : fg.nodes()) {
+            for (Temp t : fg.def(node))
+                useCount[idOf(t)]++;
+            for (Temp t : fg.use(node))
+                useCount[idOf(t)]++;
+            if (fg.isMove(node)) {
+                A_MOVE move = (A_MOVE) node.wrappee();
+                int src = idOf(move.src);
+                int dst = idOf(move.dst);
+                int m = moves.size();
+                moves.add(new int[]{src, dst});
+                moveList.get(src).add(m);
+                if (dst != src)
+                    moveList.get(dst).add(m);
+                worklistMoves.add(m);
+                for (Temp live : liveness.liveOut(node)) {
+                    int l = idOf(live);
+                    if (l != src)
+                        addEdge(l, dst);
+                }
+            } else {
+                for (Temp def : fg.def(node)) {
+                    int d = idOf(def);
+                    for (Temp live : liveness.liveOut(node))
+                        addEdge(idOf(live), d);
+                    for (Temp other : fg.def(node))
+                        addEdge(idOf(other), d);
+                }
+            }
+        }
+        moveState = new int[moves.size()];
+
+        simplifyWorklist = new LinkedHashSet<Integer>();
+        freezeWorklist = new LinkedHashSet<Integer>();
+        spillWorklist = new LinkedHashSet<Integer>();
+        selectStack = new ArrayList<Integer>();
+        spilledNodes = new ArrayList<Integer>();
+        coalescedCount = 0;
+    }
+
+    private int idOf(Temp t) {
+        Integer id = ids.get(t);
+        if (id == null) {
+            id = temps.size();
+            ids.put(t, id);
+            temps.add(t);
+        }
+        return id;
+    }
+
+    private boolean adjacent(int u, int v) {
+        return adjSet.get(u, v);
+    }
+
+    private void addEdge(int u, int v) {
+        if (!adjSet.set(u, v))
+            return;
+        if (state[u] != PRECOLORED) {
+            adjList.get(u).add(v);
+            degree[u]++;
+        }
+        if (state[v] != PRECOLORED) {
+            adjList.get(v).add(u);
+            degree[v]++;
+        }
+    }
+
+    private void makeWorklist() {
+        for (int n = 0; n < temps.size(); n++) {
+            if (state[n] != INITIAL)
+                continue;
+            if (degree[n] >= K) {
+                state[n] = SPILL;
+                spillWorklist.add(n);
+            } else if (moveRelated(n)) {
+                state[n] = FREEZE;
+                freezeWorklist.add(n);
+            } else {
+                state[n] = SIMPLIFY;
+                simplifyWorklist.add(n);
+            }
+        }
+    }
+
+    /**
+     * The nodes adjacent to n that are still in the graph.
+     */
+    private java.util.List<Integer> adjacent(int n) {
+        java.util.List<Integer> result = new ArrayList<Integer>();
+        for (int m : adjList.get(n))
+            if (state[m] != SELECT && state[m] != COALESCED)
+                result.add(m);
+        return result;
+    }
+
+    /**
+     * The moves of n that might still be coalesced.
+     */
+    private java.util.List<Integer> nodeMoves(int n) {
+        java.util.List<Integer> result = new ArrayList<Integer>();
+        for (int m : moveList.get(n))
+            if (moveState[m] == M_ACTIVE || moveState[m] == M_WORKLIST)
+                result.add(m);
+        return result;
+    }
+
+    private boolean moveRelated(int n) {
+        for (int m : moveList.get(n))
+            if (moveState[m] == M_ACTIVE || moveState[m] == M_WORKLIST)
+                return true;
+        return false;
+    }
+
+    private static int pop(LinkedHashSet<Integer> set) {
+        Iterator<Integer> it = set.iterator();
+        int n = it.next();
+        it.remove();
+        return n;
+    }
+
+    private void simplify() {
+        int n = pop(simplifyWorklist);
+        state[n] = SELECT;
+        selectStack.add(n);
+        for (int m : adjacent(n))
+            decrementDegree(m);
+    }
+
+    private void decrementDegree(int m) {
+        if (state[m] == PRECOLORED)
+            return;
+        int d = degree[m]--;
+        if (d == K) {
+            java.util.List<Integer> nodes = adjacent(m);
+            nodes.add(m);
+            enableMoves(nodes);
+            spillWorklist.remove(m);
+            if (moveRelated(m)) {
+                state[m] = FREEZE;
+                freezeWorklist.add(m);
+            } else {
+                state[m] = SIMPLIFY;
+                simplifyWorklist.add(m);
+            }
+        }
+    }
+
+    private void enableMoves(Iterable<Integer> nodes) {
+        for (int n : nodes) {
+            for (int m : nodeMoves(n)) {
+                if (moveState[m] == M_ACTIVE) {
+                    activeMoves.remove(m);
+                    moveState[m] = M_WORKLIST;
+                    worklistMoves.add(m);
+                }
+            }
+        }
+    }
+
+    private void coalesce() {
+        int m = pop(worklistMoves);
+        int x = getAlias(moves.get(m)[0]);
+        int y = getAlias(moves.get(m)[1]);
+        int u, v;
+        if (state[y] == PRECOLORED) {
+            u = y;
+            v = x;
+        } else {
+            u = x;
+            v = y;
+        }
+        if (u == v) {
+            moveState[m] = M_COALESCED;
+            coalescedCount++;
+            addWorkList(u);
+        } else if (state[v] == PRECOLORED || adjacent(u, v)) {
+            moveState[m] = M_CONSTRAINED;
+            addWorkList(u);
+            addWorkList(v);
+        } else if (state[u] == PRECOLORED ? george(u, v) : briggs(u, v)) {
+            moveState[m] = M_COALESCED;
+            coalescedCount++;
+            combine(u, v);
+            addWorkList(u);
+        } else {
+            moveState[m] = M_ACTIVE;
+            activeMoves.add(m);
+        }
+    }
+
+    private void addWorkList(int u) {
+        if (state[u] != PRECOLORED && !moveRelated(u) && degree[u] < K) {
+            freezeWorklist.remove(u);
+            state[u] = SIMPLIFY;
+            simplifyWorklist.add(u);
+        }
+    }
+
+    /**
+     * George: v can be merged into register u if every neighbour of v
+     * is insignificant or already interferes with u.
+     */
+    private boolean george(int u, int v) {
+        for (int t : adjacent(v))
+            if (!(degree[t] < K || state[t] == PRECOLORED || adjacent(t, u)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Briggs: u and v can be merged if the combined node has fewer than K
+     * neighbours of significant degree.
+     */
+    private boolean briggs(int u, int v) {
+        Set<Integer> nodes = new HashSet<Integer>(adjacent(u));
+        nodes.addAll(adjacent(v));
+        int k = 0;
+        for (int n : nodes)
+            if (degree[n] >= K)
+                k++;
+        return k < K;
+    }
+
+    private int getAlias(int n) {
+        while (state[n] == COALESCED)
+            n = alias[n];
+        return n;
+    }
+
+    private void combine(int u, int v) {
+        if (state[v] == FREEZE)
+            freezeWorklist.remove(v);
+        else
+            spillWorklist.remove(v);
+        state[v] = COALESCED;
+        alias[v] = u;
+        moveList.get(u).addAll(moveList.get(v));
+        java.util.List<Integer> vs = new ArrayList<Integer>();
+        vs.add(v);
+        enableMoves(vs);
+        for (int t : adjacent(v)) {
+            addEdge(t, u);
+            decrementDegree(t);
+        }
+        if (degree[u] >= K && state[u] == FREEZE) {
+            freezeWorklist.remove(u);
+            state[u] = SPILL;
+            spillWorklist.add(u);
+        }
+    }
+
+    private void freeze() {
+        int u = pop(freezeWorklist);
+        state[u] = SIMPLIFY;
+        simplifyWorklist.add(u);
+        freezeMoves(u);
+    }
+
+    private void freezeMoves(int u) {
+        for (int m : nodeMoves(u)) {
+            int x = moves.get(m)[0];
+            int y = moves.get(m)[1];
+            int v = getAlias(y) == getAlias(u) ? getAlias(x) : getAlias(y);
+            if (moveState[m] == M_ACTIVE)
+                activeMoves.remove(m);
+            else
+                worklistMoves.remove(m);
+            moveState[m] = M_FROZEN;
+            if (state[v] == FREEZE && !moveRelated(v) && degree[v] < K) {
+                freezeWorklist.remove(v);
+                state[v] = SIMPLIFY;
+                simplifyWorklist.add(v);
+            }
+        }
+    }
+
+    /**
+     * Spill heuristic: fewest uses and defs per interfering neighbour.
+     * Temps introduced by earlier spill code are only chosen as a last resort.
+     */
+    private double spillCost(int n) {
+        double cost = useCount[n] / Math.max(1, degree[n]);
+        if (noSpill.contains(temps.get(n)))
+            cost += 1e6;
+        return cost;
+    }
+
+    private void selectSpill() {
+        int m = -1;
+        for (int n : spillWorklist)
+            if (m < 0 || spillCost(n) < spillCost(m))
+                m = n;
+        spillWorklist.remove(m);
+        state[m] = SIMPLIFY;
+        simplifyWorklist.add(m);
+        freezeMoves(m);
+    }
+
+    private void assignColors() {
+        while (!selectStack.isEmpty()) {
+            int n = selectStack.remove(selectStack.size() - 1);
+            Set<Color> used = new HashSet<Color>();
+            for (int w : adjList.get(n)) {
+                int a = getAlias(w);
+                if (state[a] == COLORED || state[a] == PRECOLORED)
+                    used.add(color[a]);
+            }
+            Color ok = null;
+            for (Color c : colors) {
+                if (!used.contains(c)) {
+                    ok = c;
+                    break;
+                }
+            }
+            if (ok == null) {
+                state[n] = SPILLED;
+                spilledNodes.add(n);
+            } else {
+                state[n] = COLORED;
+                color[n] = ok;
+            }
+        }
+        for (int n = 0; n < temps.size(); n++)
+            if (state[n] == COALESCED)
+                color[n] = color[getAlias(n)];
+    }
+
+    /**
+     * Allocate spill slots for the actually spilled temps (sharing a slot
+     * between spilled temps that don't interfere), and rewrite the
+     * procedure body to load and store them.
+     */
+    private void rewriteProgram() {
+        Map<Temp, Color> spillMap = new HashMap<Temp, Color>();
+        List<Temp> spilledNow = List.empty();
+        java.util.List<Color> slots = new ArrayList<Color>();
+        Map<Color, java.util.List<Integer>> slotUsers = new HashMap<Color, java.util.List<Integer>>();
+        for (int n : spilledNodes) {
+            Temp t = temps.get(n);
+            spilledNow.add(t);
+            spilled.add(t);
+            Color slot = null;
+            for (Color c : slots) {
+                boolean ok = true;
+                java.util.List<Integer> users = slotUsers.get(c);
+                if (users != null)
+                    for (int other : users)
+                        if (adjacent(n, other))
+                            ok = false;
+                if (ok) {
+                    slot = c;
+                    break;
+                }
+            }
+            if (slot == null) {
+                slot = new SpillColor(frame);
+                slots.add(slot);
+            }
+            if (!slotUsers.containsKey(slot))
+                slotUsers.put(slot, new ArrayList<Integer>());
+            slotUsers.get(slot).add(n);
+            spillMap.put(t, slot);
+        }
+
+        proc.setAsm(new Rewriter(proc).rewrite(spilledNow, spillMap));
+        for (Instr instr : proc.getBody()) {
+            for (Temp t : instr.def())
+                if (!ids.containsKey(t))
+                    noSpill.add(t);
+            for (Temp t : instr.use())
+                if (!ids.containsKey(t))
+                    noSpill.add(t);
+        }
+    }
+
+    private void countMoves() {
+        for (Instr instr : proc.getBody()) {
+            if (instr instanceof A_MOVE) {
+                A_MOVE move = (A_MOVE) instr;
+                movesTotal++;
+                if (move.dst.getColor() != null && move.dst.getColor().equals(move.src.getColor()))
+                    movesEliminated++;
+            }
+        }
+    }
+
+    private void traceRound() {
+        trace.append("Register allocation iteration ").append(iteration).append("\n");
+        trace.append("  temps: ").append(temps.size())
+                .append(", moves: ").append(moves.size())
+                .append(", coalesced: ").append(coalescedCount)
+                .append(", spilled:");
+        for (int n : spilledNodes)
+            trace.append(" ").append(temps.get(n));
+        trace.append("\n");
+    }
+
+    /**
+     * Number of moves in the final code whose source and destination ended
+     * up in the same register.
+     */
+    public int getMovesEliminated() {
+        return movesEliminated;
+    }
+
+    public int getMovesTotal() {
+        return movesTotal;
+    }
+
+    /**
+     * All the temps that were spilled to memory, over all the rounds.
+     */
+    public List<Temp> getSpilled() {
+        return spilled;
+    }
+
+    @Override
+    public void dump(IndentingWriter out) {
+        out.print(trace);
+    }
+
+    @Override
+    public String getTrace() {
+        return trace.toString();
+    }
+}
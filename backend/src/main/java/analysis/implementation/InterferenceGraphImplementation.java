@@ -12,17 +12,26 @@ import ir.temp.Color;
 import ir.temp.Temp;
 import analysis.FlowGraph;
 import analysis.InterferenceGraph;
+import analysis.Liveness;
 import util.graph.Node;
 
 public class InterferenceGraphImplementation<N> extends InterferenceGraph {
 
     private FlowGraph<N> fg;
-    private LivenessImplementation<N> liveness;
+    private Liveness<N> liveness;
     private List<Move> moves = List.empty();
 
     public InterferenceGraphImplementation(FlowGraph<N> fg) {
-        this.fg = fg;
-        this.liveness = new LivenessImplementation<N>(fg);
+        this(Liveness.build(fg));
+    }
+
+    /**
+     * The interference graph of the flow graph that liveness was computed
+     * for.
+     */
+    public InterferenceGraphImplementation(Liveness<N> liveness) {
+        this.fg = liveness.g;
+        this.liveness = liveness;
         // Add nodes
         for (Node<N> node : fg.nodes()) {
             for (Temp def : fg.def(node)) {
@@ -44,10 +53,7 @@ public class InterferenceGraphImplementation<N> extends InterferenceGraph {
                 for (Temp liveOut : liveness.liveOut(node)) {
                     if (!liveOut.equals(move.src) &&
                         !liveOut.equals(move.dst)) {
-                        Node<Temp> liveOutT = nodeFor(liveOut);
-                        Node<Temp> movDstT = nodeFor(move.dst);
-                        addEdge(liveOutT, movDstT);
-                        addEdge(movDstT, liveOutT);
+                        addEdge(nodeFor(liveOut), nodeFor(move.dst));
                     }
                 }
             } else { //non move direction
@@ -57,10 +63,7 @@ public class InterferenceGraphImplementation<N> extends InterferenceGraph {
                 for (Temp def : fg.def(node)) {
                     for (Temp liveOut : liveness.liveOut(node)) {
                         if (!def.equals(liveOut)) {
-                            Node<Temp> defT = nodeFor(def);
-                            Node<Temp> liveOutT = nodeFor(liveOut);
-                            addEdge(defT, liveOutT);
-                            addEdge(liveOutT, defT);
+                            addEdge(nodeFor(def), nodeFor(liveOut));
                         }
                     }
                 }
@@ -0,0 +1,344 @@
+package analysis.implementation;
+
+import ir.frame.Frame;
+import ir.temp.Color;
+import ir.temp.Temp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import util.IdMap;
+import util.IdSet;
+import util.IndentingWriter;
+import util.List;
+import util.Phase;
+import util.Profile;
+
+import codegen.AssemProc;
+import codegen.assem.A_MOVE;
+import codegen.assem.Instr;
+
+import analysis.Analyses;
+import analysis.FlowGraph;
+import analysis.Liveness;
+import analysis.RegAlloc;
+import util.graph.Node;
+
+/**
+ * A linear scan register allocator (Poletto and Sarkar). Much cheaper than
+ * graph coloring since it never builds an interference graph, at the price of
+ * somewhat worse code.
+ * <p>
+ * Each instruction i of the body gets two positions: 2i where it reads its
+ * operands and 2i+1 where it writes its results. A Temp's live interval is
+ * the range from the first to the last position where it is defined, used
+ * or live, ignoring any holes. Registers (precolored Temps) are not given a
+ * single interval; instead we remember the exact ranges in which each
+ * register is busy, and a Temp may only be assigned a register that is not
+ * busy anywhere in its interval.
+ * <p>
+ * When we run out of registers, the interval that ends last is spilled. The
+ * spilled interval is split at its spill points: the {@link Rewriter} replaces
+ * it by a tiny interval around each use (a load) and each definition (a
+ * store), after which the scan is repeated. These tiny intervals are never
+ * chosen for spilling again.
+ */
+public class LinearScanRegAlloc extends RegAlloc {
+
+    private final AssemProc proc;
+    private final Analyses analyses;
+    private final Frame frame;
+    private final List<Color> colors;
+
+    private final StringBuilder trace = new StringBuilder();
+    private int iteration = 0;
+
+    /**
+     * Temps created by the spill code.
+     */
+    private final IdSet<Temp> noSpill = new IdSet<Temp>();
+
+    /**
+     * All the temps that were actually spilled, over all the rounds.
+     */
+    private List<Temp> spilled = List.empty();
+
+    /**
+     * The (tentative) register assigned to each interval.
+     */
+    private Map<Temp, Color> colorMap;
+
+    /**
+     * The live range of a Temp, as positions in the instruction list.
+     */
+    private static class Interval {
+        final Temp temp;
+        int start = Integer.MAX_VALUE;
+        int end = Integer.MIN_VALUE;
+        Color color;
+        Temp hint; // Source of a move that defines this Temp
+
+        Interval(Temp temp) {
+            this.temp = temp;
+        }
+
+        void cover(int pos) {
+            start = Math.min(start, pos);
+            end = Math.max(end, pos);
+        }
+
+        @Override
+        public String toString() {
+            return temp + "[" + start + "," + end + "]";
+        }
+    }
+
+    /**
+     * The ranges in which a register is busy. Built in increasing order
+     * of position, adjacent ranges are merged.
+     */
+    private static class FixedRanges {
+        final java.util.List<int[]> ranges = new ArrayList<int[]>();
+
+        void cover(int from, int to) {
+            if (!ranges.isEmpty()) {
+                int[] last = ranges.get(ranges.size() - 1);
+                if (from <= last[1] + 1) {
+                    last[1] = Math.max(last[1], to);
+                    return;
+                }
+            }
+            ranges.add(new int[]{from, to});
+        }
+
+        boolean intersects(int from, int to) {
+            // Binary search for the first range that ends at or after from.
+            int lo = 0;
+            int hi = ranges.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ranges.get(mid)[1] < from)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo < ranges.size() && ranges.get(lo)[0] <= to;
+        }
+    }
+
+    public LinearScanRegAlloc(AssemProc proc) {
+        this(proc, new Analyses(proc));
+    }
+
+    public LinearScanRegAlloc(AssemProc proc, Analyses analyses) {
+        this.proc = proc;
+        this.analyses = analyses;
+        this.frame = proc.getFrame();
+        this.colors = List.empty();
+        for (Temp reg : frame.registers())
+            colors.add(reg.getColor());
+
+        java.util.List<Interval> spills;
+        do {
+            iteration++;
+            Profile.Span span = Profile.begin(Phase.REGALLOC, proc.getLabel(), iteration);
+            spills = scan();
+            trace.append("Register allocation iteration ").append(iteration)
+                    .append("\n  spilled: ").append(spills).append("\n");
+            if (!spills.isEmpty())
+                rewrite(spills);
+            Profile.end(span);
+        } while (!spills.isEmpty());
+
+        // Paint the Temps in permanent paint now.
+        for (Map.Entry<Temp, Color> entry : colorMap.entrySet())
+            entry.getKey().paint(entry.getValue());
+        trace.append("Spilled temps: ").append(spilled.size()).append(", rounds: ").append(iteration).append("\n");
+    }
+
+    /**
+     * Compute intervals and assign registers. Returns the intervals that had
+     * to be spilled.
+     */
+    private java.util.List<Interval> scan() {
+        Liveness<Instr> liveness = analyses.liveness();
+        FlowGraph<Instr> fg = liveness.g;
+
+        IdMap<Temp, Interval> intervals = new IdMap<Temp, Interval>();
+        Map<Color, FixedRanges> fixed = new HashMap<Color, FixedRanges>();
+        for (Color c : colors)
+            fixed.put(c, new FixedRanges());
+
+        // The flow graph nodes are created in the order of the body.
+        int i = 0;
+        for (Node<Instr> node : fg.nodes()) {
+            int use = 2 * i;
+            int def = 2 * i + 1;
+            for (Temp t : fg.use(node))
+                cover(intervals, fixed, t, use, use);
+            for (Temp t : fg.def(node))
+                cover(intervals, fixed, t, def, def);
+            for (Temp t : liveness.liveOut(node))
+                cover(intervals, fixed, t, def, def + 1);
+            if (fg.isMove(node)) {
+                A_MOVE move = (A_MOVE) node.wrappee();
+                Interval dst = intervals.get(move.dst);
+                if (dst != null && dst.hint == null)
+                    dst.hint = move.src;
+            }
+            i++;
+        }
+
+        java.util.List<Interval> unhandled = new ArrayList<Interval>(intervals.size());
+        for (Temp t : intervals)
+            unhandled.add(intervals.get(t));
+        Collections.sort(unhandled, (a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : a.temp.compareTo(b.temp));
+
+        colorMap = new HashMap<Temp, Color>();
+        java.util.List<Interval> active = new ArrayList<Interval>(); // sorted by end
+        java.util.List<Interval> spills = new ArrayList<Interval>();
+        for (Interval current : unhandled) {
+            // Expire intervals that ended before this one starts.
+            while (!active.isEmpty() && active.get(0).end < current.start)
+                active.remove(0);
+
+            Set<Color> busy = new HashSet<Color>();
+            for (Interval a : active)
+                busy.add(a.color);
+
+            Color free = null;
+            Color hinted = current.hint == null ? null : colorOf(current.hint);
+            if (hinted != null && fixed.containsKey(hinted) && isFree(hinted, current, busy, fixed))
+                free = hinted;
+            for (Color c : colors) {
+                if (free != null)
+                    break;
+                if (isFree(c, current, busy, fixed))
+                    free = c;
+            }
+
+            if (free == null) {
+                // Spill the active interval that ends last, if its register
+                // can be used for the current interval; otherwise spill current.
+                Interval victim = null;
+                for (Interval a : active) {
+                    if (noSpill.contains(a.temp) || fixed.get(a.color).intersects(current.start, current.end))
+                        continue;
+                    if (victim == null || a.end > victim.end)
+                        victim = a;
+                }
+                boolean spillCurrent = victim == null
+                        || (victim.end <= current.end && !noSpill.contains(current.temp));
+                if (spillCurrent) {
+                    if (noSpill.contains(current.temp))
+                        throw new Error("Linear scan: no register for spill temp " + current + " in " + proc.getLabel());
+                    spills.add(current);
+                    continue;
+                }
+                active.remove(victim);
+                colorMap.remove(victim.temp);
+                spills.add(victim);
+                free = victim.color;
+            }
+
+            current.color = free;
+            colorMap.put(current.temp, free);
+            int at = 0;
+            while (at < active.size() && active.get(at).end <= current.end)
+                at++;
+            active.add(at, current);
+        }
+        return spills;
+    }
+
+    private Color colorOf(Temp t) {
+        Color c = t.getColor();
+        return c != null ? c : colorMap.get(t);
+    }
+
+    private static boolean isFree(Color c, Interval current, Set<Color> busy, Map<Color, FixedRanges> fixed) {
+        return !busy.contains(c) && !fixed.get(c).intersects(current.start, current.end);
+    }
+
+    private static void cover(IdMap<Temp, Interval> intervals, Map<Color, FixedRanges> fixed,
+                              Temp t, int from, int to) {
+        Color c = t.getColor();
+        if (c != null) {
+            FixedRanges ranges = fixed.get(c);
+            if (ranges != null)
+                ranges.cover(from, to);
+            return;
+        }
+        Interval interval = intervals.get(t);
+        if (interval == null) {
+            interval = new Interval(t);
+            intervals.put(t, interval);
+        }
+        interval.cover(from);
+        interval.cover(to);
+    }
+
+    /**
+     * Give each spilled interval a slot in the frame (sharing slots between
+     * intervals that don't overlap) and rewrite the body.
+     */
+    private void rewrite(java.util.List<Interval> spills) {
+        Map<Temp, Color> spillMap = new HashMap<Temp, Color>();
+        List<Temp> spilledNow = List.empty();
+        java.util.List<SpillColor> slots = new ArrayList<SpillColor>();
+        java.util.List<Integer> slotEnd = new ArrayList<Integer>();
+        Collections.sort(spills, (a, b) -> Integer.compare(a.start, b.start));
+        for (Interval interval : spills) {
+            int slot = 0;
+            while (slot < slots.size() && slotEnd.get(slot) >= interval.start)
+                slot++;
+            if (slot == slots.size()) {
+                slots.add(new SpillColor(frame));
+                slotEnd.add(interval.end);
+            } else {
+                slotEnd.set(slot, interval.end);
+            }
+            spillMap.put(interval.temp, slots.get(slot));
+            spilledNow.add(interval.temp);
+            spilled.add(interval.temp);
+        }
+
+        IdSet<Temp> before = new IdSet<Temp>();
+        for (Instr instr : proc.getBody()) {
+            for (Temp t : instr.def())
+                before.add(t);
+            for (Temp t : instr.use())
+                before.add(t);
+        }
+        proc.setAsm(new Rewriter(proc).rewrite(spilledNow, spillMap));
+        for (Instr instr : proc.getBody()) {
+            for (Temp t : instr.def())
+                if (!before.contains(t))
+                    noSpill.add(t);
+            for (Temp t : instr.use())
+                if (!before.contains(t))
+                    noSpill.add(t);
+        }
+    }
+
+    /**
+     * All the temps that were spilled to memory, over all the rounds.
+     */
+    public List<Temp> getSpilled() {
+        return spilled;
+    }
+
+    @Override
+    public void dump(IndentingWriter out) {
+        out.print(trace);
+    }
+
+    @Override
+    public String getTrace() {
+        return trace.toString();
+    }
+}
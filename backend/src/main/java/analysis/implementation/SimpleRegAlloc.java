@@ -7,15 +7,20 @@ import ir.temp.Temp;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
 import util.IndentingWriter;
 import util.List;
+import util.Phase;
+import util.Profile;
 
 import codegen.AssemProc;
 import codegen.assem.Instr;
 
+import analysis.Analyses;
+import analysis.Analysis;
 import analysis.FlowGraph;
 import analysis.InterferenceGraph;
 import analysis.RegAlloc;
@@ -24,6 +29,7 @@ import util.graph.Node;
 public class SimpleRegAlloc extends RegAlloc {
 
     private AssemProc proc;
+    private Analyses analyses;
     private String trace = "";
     private FlowGraph<Instr> fg;
     private InterferenceGraph ig;
@@ -72,7 +78,12 @@ public class SimpleRegAlloc extends RegAlloc {
     }
 
     public SimpleRegAlloc(AssemProc proc, int iteration) {
+        this(proc, iteration, new Analyses(proc));
+    }
+
+    public SimpleRegAlloc(AssemProc proc, int iteration, Analyses analyses) {
         this.proc = proc;
+        this.analyses = analyses;
         this.iteration = iteration;
         this.trace += proc.toString();
         this.frame = proc.getFrame();
@@ -82,14 +93,18 @@ public class SimpleRegAlloc extends RegAlloc {
         for (Temp reg : registers)
             colors.add(reg.getColor());
 
+        Profile.Span span = Profile.begin(Phase.REGALLOC, proc.getLabel(), iteration);
         build();
         this.trace += "\n" + "Flow graph:\n" + fg.toString();
         this.trace += ig.toString();
 
         List<Temp> ordering = simplify();
 
-        build(); // must rebuild the graph, since simplify should destroy it.
+        // must rebuild the graph, since simplify should destroy it.
+        analyses.keepOnly(EnumSet.of(Analysis.FLOW_GRAPH, Analysis.LIVENESS));
+        build();
         color(ordering);
+        Profile.end(span);
     }
 
     private void color(List<Temp> toColor) {
@@ -135,8 +150,8 @@ public class SimpleRegAlloc extends RegAlloc {
      * Start by building the interference graph for the procedure body.
      */
     private void build() {
-        this.fg = FlowGraph.build(proc.getBody());
-        this.ig = fg.getInterferenceGraph();
+        this.fg = analyses.flowGraph();
+        this.ig = analyses.interference();
         this.ig.name = proc.getLabel().toString() + " round " + iteration;
     }
 
@@ -9,6 +9,7 @@ import util.IndentingWriter;
 
 import codegen.AssemProc;
 
+import analysis.Analyses;
 import analysis.RegAlloc;
 
 
@@ -21,7 +22,11 @@ public class SpillingRegAlloc extends RegAlloc {
     private StringBuilder trace = new StringBuilder();
 
     public SpillingRegAlloc(AssemProc proc) {
-        SimpleRegAlloc simple = new SimpleRegAlloc(proc, 1);
+        this(proc, new Analyses(proc));
+    }
+
+    public SpillingRegAlloc(AssemProc proc, Analyses analyses) {
+        SimpleRegAlloc simple = new SimpleRegAlloc(proc, 1, analyses);
         int lastSpilled = Integer.MAX_VALUE;
         int iteration = 1;
         int sameSize = 0;
@@ -35,7 +40,7 @@ public class SpillingRegAlloc extends RegAlloc {
             trace.append("Register allocation iteration ").append(iteration).append("\n").append(simple.toString());
             iteration++;
             proc.setAsm(new Rewriter(proc).rewrite(simple.getSpilled(), simple.getColorMap()));
-            simple = new SimpleRegAlloc(proc, iteration);
+            simple = new SimpleRegAlloc(proc, iteration, analyses);
         }
 
         // The last allocation should be good, with no spills!
@@ -3,6 +3,8 @@ package codegen;
 import translate.ProcFragment;
 import util.IndentingWriter;
 import util.List;
+import util.Phase;
+import util.Profile;
 
 import static util.List.list;
 import static util.List.cons;
@@ -36,6 +38,12 @@ public class AssemProc extends AssemFragment {
     private ProcFragment procIR;
     private List<Instr> asmBody;
 
+    /**
+     * Counts the changes to asmBody, so that analyses of it (see
+     * analysis.Analyses) can tell when they are out of date.
+     */
+    private int version;
+
     public AssemProc(ProcFragment procIR) {
         this.frame = procIR.getFrame();
         this.procIR = procIR;
@@ -66,6 +74,7 @@ public class AssemProc extends AssemFragment {
     public void remove(Instr instr) {
         // Should check that this doesn't break things horribly
         asmBody = asmBody.delete(instr);
+        version++;
     }
 
     public void replace(Instr oldi, Instr newi) {
@@ -74,6 +83,7 @@ public class AssemProc extends AssemFragment {
         assert (!(newi instanceof A_LABEL));
 
         asmBody = asmBody.replace(oldi, newi);
+        version++;
     }
 
     public Label getLabel() {
@@ -84,6 +94,13 @@ public class AssemProc extends AssemFragment {
         return asmBody;
     }
 
+    /**
+     * A number that changes whenever the body does.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     public Frame getFrame() {
         return frame;
     }
@@ -113,16 +130,20 @@ public class AssemProc extends AssemFragment {
 
     public void rewrite() {
         List<IRStm> body = procIR.getTraceScheduledBody();
+        Profile.Span span = Profile.begin(Phase.MUNCH, getLabel());
         Muncher m = newMuncher();
         for (IRStm stm : body) {
             m.munch(stm);
         }
         this.asmBody = procEntryExit2(m.getInstructions());
+        Profile.end(span);
+        version++;
     }
 
     public void setAsm(List<Instr> body) {
         asmBody = body;
         procIR = null;
+        version++;
     }
 
 }
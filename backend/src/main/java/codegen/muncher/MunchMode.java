@@ -0,0 +1,17 @@
+package codegen.muncher;
+
+/**
+ * How {@link MuncherRules} select the rule to apply to an IR node.
+ */
+public enum MunchMode {
+    /**
+     * Apply the first matching rule, trying rules with bigger patterns first
+     * (maximal munch).
+     */
+    PRIORITY,
+    /**
+     * Apply the rule of a minimum cost tiling of the IR tree, found by
+     * dynamic programming over the rule costs.
+     */
+    MIN_COST
+}
@@ -1,11 +1,14 @@
 package codegen.muncher;
 
+import java.util.ArrayList;
+
 import util.DefaultIndentable;
 import util.IndentingWriter;
 import util.List;
 import ir.tree.IRNode;
 import codegen.patterns.Matched;
 import codegen.patterns.Pat;
+import codegen.patterns.Wildcard;
 
 /**
  * Create a Catalog of munch rules and add them to your Muncher.
@@ -20,7 +23,7 @@ public abstract class MunchRule<N extends IRNode, R> extends DefaultIndentable {
         private MunchRule<N, R> trigger;
 
         private ExplodedRule(Pat<N> pat, MunchRule<N, R> trigger) {
-            super(pat);
+            super(pat, trigger.getCost());
             this.trigger = trigger;
         }
 
@@ -31,12 +34,28 @@ public abstract class MunchRule<N extends IRNode, R> extends DefaultIndentable {
     }
 
     public MunchRule(Pat<N> pat) {
+        this(pat, 1);
+    }
+
+    /**
+     * @param cost An estimate of the cost of the code emitted by this rule
+     *             (typically the number of instructions), not counting the
+     *             code for the sub trees that the trigger munches.
+     */
+    public MunchRule(Pat<N> pat, int cost) {
         this.pat = pat;
+        this.cost = cost;
     }
 
     private Pat<N> pat;
+    private int cost;
     private int matched = 0;
 
+    /**
+     * The wildcards in the pattern, computed on demand.
+     */
+    private Pat<?>[] wildcards;
+
     /**
      * This method is called when a rules gets triggered (because
      * it's pattern is matched).
@@ -48,16 +67,61 @@ public abstract class MunchRule<N extends IRNode, R> extends DefaultIndentable {
      */
     protected abstract R trigger(Muncher m, Matched match);
 
-    public Matched match(N to) {
-        Matched result = pat.tryMatch(to);
-        if (result != null) matched++;
+    /**
+     * Match this rule's pattern, putting the bindings in a reused Matched.
+     *
+     * @return whether the pattern matched.
+     */
+    public boolean match(N to, Matched bindings) {
+        boolean result = pat.tryMatch(to, bindings);
+        if (result) matched++;
         return result;
     }
 
+    /**
+     * Like match, but doesn't count as a use of the rule. Used to try out
+     * rules when looking for the cheapest one.
+     */
+    boolean probe(N to, Matched bindings) {
+        return pat.tryMatch(to, bindings);
+    }
+
     public int getPriority() {
         return pat.size();
     }
 
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * The kind of IR node this rule can match, see {@link Pat#opcode()}.
+     */
+    public Object opcode() {
+        return pat.opcode();
+    }
+
+    /**
+     * The wildcards of the (atomic) pattern of this rule. The sub trees bound
+     * to them are the parts of the IR tree that this rule doesn't cover.
+     */
+    public Pat<?>[] wildcards() {
+        if (wildcards == null) {
+            java.util.List<Pat<?>> found = new ArrayList<Pat<?>>();
+            collectWildcards(pat, found);
+            wildcards = found.toArray(new Pat<?>[found.size()]);
+        }
+        return wildcards;
+    }
+
+    private static void collectWildcards(Pat<?> p, java.util.List<Pat<?>> found) {
+        if (p instanceof Wildcard)
+            found.add(p);
+        else
+            for (Pat<?> child : p.children())
+                collectWildcards(child, found);
+    }
+
     @Override
     public void dump(IndentingWriter out) {
         out.print(pat);
@@ -1,13 +1,20 @@
 package codegen.muncher;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import util.DefaultIndentable;
 import util.IndentingWriter;
 import util.List;
 import ir.frame.Frame;
 import ir.temp.Temp;
 import ir.tree.IRExp;
+import ir.tree.IRNode;
 import ir.tree.IRStm;
 import codegen.assem.Instr;
+import codegen.patterns.Matched;
 
 public abstract class Muncher extends DefaultIndentable {
 
@@ -18,12 +25,35 @@ public abstract class Muncher extends DefaultIndentable {
     private boolean doTrace = false;
 
     private MuncherRules<IRStm, Void> stmMunchers;
-    private MuncherRules<IRExp, Temp> expMunchers;
+    /**
+     * Also used by the MuncherRules, to find the cost of munching sub trees.
+     */
+    MuncherRules<IRExp, Temp> expMunchers;
     private MuncherRules<IRExp, Void> dataMunchers;
 
     private long nesting = 0;
     private Frame frame;
 
+    /**
+     * The tiles chosen by each of the MuncherRules for the nodes of the
+     * statement that is being munched (the MuncherRules themselves are shared
+     * by all munchers, so they keep no state).
+     */
+    private final Map<MuncherRules<?, ?>, Map<IRNode, Object>> tilings = new HashMap<MuncherRules<?, ?>, Map<IRNode, Object>>();
+
+    /**
+     * Reused pattern bindings, one for each level of nesting (a trigger
+     * still needs its bindings while it munches the children), and one
+     * for each level of the tree while rules are being tried out for the
+     * cheapest tiling.
+     */
+    private Matched[] bindings = new Matched[16];
+    private Matched[] probeBindings = new Matched[16];
+
+    public boolean isTracing() {
+        return doTrace;
+    }
+
     public void trace(String s) {
         if (!doTrace) return;
         for (int i = 0; i < nesting - 1; ++i)
@@ -79,6 +109,7 @@ public abstract class Muncher extends DefaultIndentable {
      * The implementation of this method should call "emit" to add instructions.
      */
     public void munch(IRStm stm) {
+        startTree();
         nesting++;
         stmMunchers.munch(this, stm);
         nesting--;
@@ -88,6 +119,7 @@ public abstract class Muncher extends DefaultIndentable {
      * Like munch(IStm) but munches an IRExp.
      */
     public Temp munch(IRExp exp) {
+        startTree();
         nesting++;
         Temp t = expMunchers.munch(this, exp);
         nesting--;
@@ -98,11 +130,51 @@ public abstract class Muncher extends DefaultIndentable {
      * Like munch(IRExp) but munches an IRExp to static data.
      */
     public void munchData(IRExp exp) {
+        startTree();
         nesting++;
         dataMunchers.munch(this, exp);
         nesting--;
     }
 
+    /**
+     * Forget the tiles of the previous tree when we start munching a new one.
+     */
+    private void startTree() {
+        if (nesting == 0)
+            for (Map<IRNode, Object> tiling : tilings.values())
+                tiling.clear();
+    }
+
+    /**
+     * The bindings for the rule triggered at the current level of nesting.
+     */
+    Matched bindings() {
+        bindings = frame(bindings, (int) nesting);
+        return bindings[(int) nesting];
+    }
+
+    Matched probeBindings(int depth) {
+        probeBindings = frame(probeBindings, depth);
+        return probeBindings[depth];
+    }
+
+    private static Matched[] frame(Matched[] frames, int level) {
+        if (level >= frames.length)
+            frames = Arrays.copyOf(frames, Math.max(level + 1, frames.length * 2));
+        if (frames[level] == null)
+            frames[level] = new Matched();
+        return frames;
+    }
+
+    Map<IRNode, Object> tiling(MuncherRules<?, ?> rules) {
+        Map<IRNode, Object> tiling = tilings.get(rules);
+        if (tiling == null) {
+            tiling = new IdentityHashMap<IRNode, Object>();
+            tilings.put(rules, tiling);
+        }
+        return tiling;
+    }
+
     /**
      * After the munching is complete, retrieve the accumulated instructions with this
      * method.
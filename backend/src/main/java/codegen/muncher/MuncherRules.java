@@ -3,9 +3,14 @@ package codegen.muncher;
 import static util.List.cons;
 import static util.List.list;
 
+import ir.tree.BINOP;
+import ir.tree.IRExp;
 import ir.tree.IRNode;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import util.DefaultIndentable;
@@ -13,6 +18,8 @@ import util.IndentingWriter;
 import util.List;
 
 import codegen.patterns.Matched;
+import codegen.patterns.Pat;
+import codegen.patterns.Wildcard;
 
 
 /**
@@ -20,6 +27,12 @@ import codegen.patterns.Matched;
  * <p>
  * It can be used to find and trigger a matching MunchRule for a given IRNode.
  * <p>
+ * Rules are indexed by the kind of node at the root of their pattern, so
+ * that only the rules that can possibly match a node are tried. Depending
+ * on {@link #mode}, the rule that is triggered is either the first one that
+ * matches (rules with bigger patterns come first), or the one that gives the
+ * cheapest tiling of the whole IR tree according to the rule costs.
+ * <p>
  * After filling the table with MunchRules an instance of this class does not hold
  * any state during the munching process. So you do not need to create a new Table of
  * MunchRules each time you want to use it (it is advisable to only build one instance
@@ -41,26 +54,152 @@ public class MuncherRules<N extends IRNode, R> extends DefaultIndentable {
      */
     private Set<String> ruleSignatures = new HashSet<String>();
 
+    /**
+     * Rules that can match nodes of a given kind (see {@link #opcode(IRNode)}),
+     * in priority order. Computed on demand.
+     */
+    private Map<Object, java.util.List<MunchRule<N, R>>> index = new HashMap<Object, java.util.List<MunchRule<N, R>>>();
+
+    /**
+     * How to choose which of the matching rules to apply.
+     */
+    public static MunchMode mode = MunchMode.MIN_COST;
+
+    /**
+     * Cost of IR trees that can't be munched.
+     */
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    /**
+     * The cheapest rule to munch some IR node with, and the cost of the
+     * resulting tiling of that node's tree.
+     */
+    private static final class Tile {
+        final MunchRule<?, ?> rule;
+        final int cost;
+
+        Tile(MunchRule<?, ?> rule, int cost) {
+            this.rule = rule;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Marks IR nodes that none of the rules can munch.
+     */
+    private static final Tile NO_TILE = new Tile(null, INFINITE);
+
+    @SuppressWarnings("unchecked")
     R munch(Muncher muncher, N node) {
-        //This selection / trigger mechanism is a naive linear scan of all the rules. In "real"
-        //compilers a more sophisticated algorithm would be used to speed up the matching process.
-        muncher.trace("Munching " + node.onOneLine());
-        for (MunchRule<N, R> rule : rules) {
-            // muncher.trace("  Trying rule " + rule.brief());
-            Matched match = rule.match(node);
-            if (match != null) {
-                muncher.trace("    Matched " + rule.brief() + " with bindings " + match);
-                return rule.trigger(muncher, match);
+        if (muncher.isTracing())
+            muncher.trace("Munching " + node.onOneLine());
+        Matched match = muncher.bindings();
+        MunchRule<N, R> rule = null;
+        if (mode == MunchMode.MIN_COST) {
+            rule = (MunchRule<N, R>) tile(muncher, node, 0).rule;
+            if (rule != null && !rule.match(node, match))
+                rule = null;
+        } else {
+            for (MunchRule<N, R> candidate : candidates(node)) {
+                if (candidate.match(node, match)) {
+                    rule = candidate;
+                    break;
+                }
             }
         }
-        throw new Error("No matching munch rule for this node:\n" + node);
+        if (rule == null)
+            throw new Error("No matching munch rule for this node:\n" + node);
+        if (muncher.isTracing())
+            muncher.trace("    Matched " + rule.brief() + " with bindings " + match);
+        return rule.trigger(muncher, match);
+    }
+
+    /**
+     * The cost of the cheapest tiling of an IR tree.
+     *
+     * @param depth how deep we are in the tree being labeled (to find a free
+     *              Matched to probe the rules with).
+     */
+    int cost(Muncher muncher, N node, int depth) {
+        return tile(muncher, node, depth).cost;
+    }
+
+    /**
+     * Find the cheapest way to munch a node. The cost of using a rule is the
+     * cost of the rule itself, plus the cost of munching the IR expressions
+     * bound to its wildcards (which the rule's trigger is expected to munch
+     * with the muncher's expression rules).
+     * <p>
+     * The results are remembered (in the muncher) until it starts munching
+     * the next statement, so each node of a statement is considered once
+     * (dynamic programming).
+     */
+    private Tile tile(Muncher muncher, N node, int depth) {
+        Map<IRNode, Object> memo = muncher.tiling(this);
+        Tile best = (Tile) memo.get(node);
+        if (best != null)
+            return best;
+        best = NO_TILE;
+        Matched match = muncher.probeBindings(depth);
+        java.util.List<MunchRule<N, R>> candidates = candidates(node);
+        for (int i = 0; i < candidates.size(); i++) {
+            MunchRule<N, R> rule = candidates.get(i);
+            if (rule.getCost() >= best.cost || !rule.probe(node, match))
+                continue;
+            int cost = rule.getCost();
+            for (Pat<?> wildcard : rule.wildcards()) {
+                Object bound = match.get(wildcard);
+                if (bound instanceof IRExp) {
+                    int subCost = muncher.expMunchers.cost(muncher, (IRExp) bound, depth + 1);
+                    cost = subCost >= best.cost - cost ? best.cost : cost + subCost;
+                    if (cost >= best.cost)
+                        break;
+                }
+            }
+            if (cost < best.cost)
+                best = new Tile(rule, cost);
+        }
+        memo.put(node, best);
+        return best;
+    }
+
+    /**
+     * The rules that might match a node, in priority order.
+     */
+    private java.util.List<MunchRule<N, R>> candidates(N node) {
+        Object opcode = opcode(node);
+        java.util.List<MunchRule<N, R>> candidates = index.get(opcode);
+        if (candidates == null) {
+            candidates = new ArrayList<MunchRule<N, R>>();
+            for (MunchRule<N, R> rule : rules) {
+                Object ruleOpcode = rule.opcode();
+                if (ruleOpcode == null || ruleOpcode == opcode
+                        || (ruleOpcode instanceof Class && ((Class<?>) ruleOpcode).isInstance(node)))
+                    candidates.add(rule);
+            }
+            index.put(opcode, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * The kind of an IR node, for indexing the rules: its class, or its
+     * operator if it is a BINOP.
+     */
+    private static Object opcode(IRNode node) {
+        if (node instanceof BINOP)
+            return ((BINOP) node).getOp();
+        return node.getClass();
     }
 
     public void add(MunchRule<N, R> _munchRule) {
         if (_munchRule.isAtomic()) {
             if (!ruleSignatures.contains(_munchRule.signature())) {
+                for (Pat<?> wildcard : _munchRule.wildcards())
+                    ((Wildcard<?>) wildcard).slot();
                 rules = insert(_munchRule, rules);
                 ruleSignatures.add(_munchRule.signature());
+                index.clear();
             }
         } else
             for (MunchRule<N, R> munchRule : _munchRule.explode())
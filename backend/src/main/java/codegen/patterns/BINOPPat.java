@@ -29,13 +29,13 @@ public class BINOPPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched matched)
-            throws codegen.patterns.Pat.Failed, ClassCastException {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof BINOP))
+            return false;
         BINOP binop = (BINOP) toMatch;
-        if (op != binop.getOp()) fail();
-        l.match(binop.getLeft(), matched);
-        r.match(binop.getRight(), matched);
-        //matched.put(this, toMatch);
+        return op == binop.getOp()
+                && l.match(binop.getLeft(), matched)
+                && r.match(binop.getRight(), matched);
     }
 
     @SuppressWarnings("unchecked")
@@ -52,4 +52,9 @@ public class BINOPPat extends Pat<IRExp> {
         return List.list((Pat<?>) l, r);
     }
 
+    @Override
+    public Object opcode() {
+        return op;
+    }
+
 }
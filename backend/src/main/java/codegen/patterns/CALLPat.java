@@ -16,12 +16,12 @@ public class CALLPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched matched)
-            throws Failed, ClassCastException {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof CALL))
+            return false;
         CALL call = (CALL) toMatch;
-        func.match(call.getFunc(), matched);
-        args.match(call.getArgs(), matched);
-        //matched.put(this, toMatch);
+        return func.match(call.getFunc(), matched)
+                && args.match(call.getArgs(), matched);
     }
 
     @Override
@@ -47,4 +47,9 @@ public class CALLPat extends Pat<IRExp> {
         return List.list((Pat<?>) func, args);
     }
 
+    @Override
+    public Object opcode() {
+        return CALL.class;
+    }
+
 }
@@ -24,15 +24,15 @@ public class CMOVEPat extends Pat<IRStm> {
     }
 
     @Override
-    public void match(IRStm toMatch, Matched matched)
-            throws Failed, ClassCastException {
+    public boolean match(IRStm toMatch, Matched matched) {
+        if (!(toMatch instanceof CMOVE))
+            return false;
         CMOVE cmove = (CMOVE) toMatch;
-        op.match(cmove.getOp(), matched);
-        l.match(cmove.getLeft(), matched);
-        r.match(cmove.getRight(), matched);
-        d.match(cmove.getDst(), matched);
-        s.match(cmove.getSrc(), matched);
-        //matched.put(this, toMatch);
+        return op.match(cmove.getOp(), matched)
+                && l.match(cmove.getLeft(), matched)
+                && r.match(cmove.getRight(), matched)
+                && d.match(cmove.getDst(), matched)
+                && s.match(cmove.getSrc(), matched);
     }
 
     @Override
@@ -68,4 +68,9 @@ public class CMOVEPat extends Pat<IRStm> {
                 (Pat<?>) op, l, r, d, s);
     }
 
+    @Override
+    public Object opcode() {
+        return CMOVE.class;
+    }
+
 }
@@ -14,10 +14,11 @@ public class CONSTPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched matched)
-            throws Failed, ClassCastException {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof CONST))
+            return false;
         CONST cnst = (CONST) toMatch;
-        value.match(cnst.getValue(), matched);
+        return value.match(cnst.getValue(), matched);
     }
 
     @Override
@@ -38,4 +39,9 @@ public class CONSTPat extends Pat<IRExp> {
         return List.list(new Pat<?>[]{value});
     }
 
+    @Override
+    public Object opcode() {
+        return CONST.class;
+    }
+
 }
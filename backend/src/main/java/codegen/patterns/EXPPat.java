@@ -15,11 +15,11 @@ public class EXPPat extends Pat<IRStm> {
     }
 
     @Override
-    public void match(IRStm toMatch, Matched m)
-            throws codegen.patterns.Pat.Failed, ClassCastException {
+    public boolean match(IRStm toMatch, Matched matched) {
+        if (!(toMatch instanceof EXP))
+            return false;
         EXP e = (EXP) toMatch;
-        exp.match(e.exp, m);
-        //m.put(this, toMatch);
+        return exp.match(e.exp, matched);
     }
 
     @Override
@@ -40,4 +40,9 @@ public class EXPPat extends Pat<IRStm> {
         return List.list(new Pat<?>[]{exp});
     }
 
+    @Override
+    public Object opcode() {
+        return EXP.class;
+    }
+
 }
@@ -22,9 +22,8 @@ public class IntPat extends Pat<Integer> {
     }
 
     @Override
-    public void match(Integer toMatch, Matched matched)
-            throws Failed, ClassCastException {
-        if (toMatch != value) fail();
+    public boolean match(Integer toMatch, Matched matched) {
+        return toMatch == value;
     }
 
     @Override
@@ -15,11 +15,11 @@ public class JUMPPat extends Pat<IRStm> {
     }
 
     @Override
-    public void match(IRStm toMatch, Matched m)
-            throws Failed, ClassCastException {
+    public boolean match(IRStm toMatch, Matched matched) {
+        if (!(toMatch instanceof JUMP))
+            return false;
         JUMP jump = (JUMP) toMatch;
-        exp.match(jump.getExp(), m);
-        //m.put(this, toMatch);
+        return exp.match(jump.getExp(), matched);
     }
 
     @Override
@@ -40,4 +40,9 @@ public class JUMPPat extends Pat<IRStm> {
         return List.list(new Pat<?>[]{exp});
     }
 
+    @Override
+    public Object opcode() {
+        return JUMP.class;
+    }
+
 }
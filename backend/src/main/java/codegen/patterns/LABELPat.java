@@ -15,11 +15,11 @@ public class LABELPat extends Pat<IRStm> {
     }
 
     @Override
-    public void match(IRStm toMatch, Matched matched)
-            throws Failed, ClassCastException {
+    public boolean match(IRStm toMatch, Matched matched) {
+        if (!(toMatch instanceof LABEL))
+            return false;
         LABEL label = (LABEL) toMatch;
-        l.match(label.getLabel(), matched);
-        //matched.put(this, toMatch);
+        return l.match(label.getLabel(), matched);
     }
 
     @Override
@@ -40,4 +40,9 @@ public class LABELPat extends Pat<IRStm> {
         return List.list(new Pat<?>[]{l});
     }
 
+    @Override
+    public Object opcode() {
+        return LABEL.class;
+    }
+
 }
@@ -14,11 +14,11 @@ public class MEMPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched m)
-            throws Failed, ClassCastException {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof MEM))
+            return false;
         MEM mem = (MEM) toMatch;
-        exp.match(mem.exp, m);
-        //m.put(this, toMatch);
+        return exp.match(mem.exp, matched);
     }
 
     @Override
@@ -39,4 +39,9 @@ public class MEMPat extends Pat<IRExp> {
         return List.list(new Pat<?>[]{exp});
     }
 
+    @Override
+    public Object opcode() {
+        return MEM.class;
+    }
+
 }
@@ -17,12 +17,12 @@ public class MOVEPat extends Pat<IRStm> {
     }
 
     @Override
-    public void match(IRStm toMatch, Matched m)
-            throws codegen.patterns.Pat.Failed, ClassCastException {
+    public boolean match(IRStm toMatch, Matched matched) {
+        if (!(toMatch instanceof MOVE))
+            return false;
         MOVE move = (MOVE) toMatch;
-        dst.match(move.dst, m);
-        src.match(move.src, m);
-        //m.put(this, toMatch);
+        return dst.match(move.dst, matched)
+                && src.match(move.src, matched);
     }
 
     @Override
@@ -46,4 +46,9 @@ public class MOVEPat extends Pat<IRStm> {
         return List.list((Pat<?>) dst, (Pat<?>) src);
     }
 
+    @Override
+    public Object opcode() {
+        return MOVE.class;
+    }
+
 }
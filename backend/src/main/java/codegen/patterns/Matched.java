@@ -1,41 +1,59 @@
 package codegen.patterns;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import util.DefaultIndentable;
 
 
 /**
  * Whenever a wildcard pattern matches a particular node,
- * a map entry associating the wildcard to its value is
- * added to a map. This map is returned as the result of a
- * successful matching operation.
+ * the node is stored in the wildcard's slot of a Matched.
+ * This is how the result of a successful matching operation
+ * is returned.
+ * <p>
+ * A Matched is just an array with one slot per wildcard, so it can be
+ * reused for many matching operations (see {@link #clear()}); the
+ * Muncher keeps one for each level of nesting.
  */
 public class Matched {
 
-    private Map<Wildcard<?>, Object> map = new HashMap<Wildcard<?>, Object>();
+    private Object[] slots = new Object[Math.max(Wildcard.slotCount(), 8)];
 
     public <T> void put(Wildcard<T> pat, T matched) {
-        assert (!map.containsKey(pat));
-        map.put(pat, matched);
+        int slot = pat.slot();
+        if (slot >= slots.length)
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+        slots[slot] = matched;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(Pat<T> pat) {
-        return (T) map.get(pat);
+        if (!(pat instanceof Wildcard))
+            return null;
+        int slot = ((Wildcard<T>) pat).slot();
+        return slot < slots.length ? (T) slots[slot] : null;
+    }
+
+    /**
+     * Forget all bindings, so this can be used for another match.
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
     }
 
     public String toString() {
         StringBuffer sb = new StringBuffer();
-        for (Wildcard<?> w : map.keySet()) {
-            sb.append(w);
+        for (int slot = 0; slot < slots.length; slot++) {
+            Object o = slots[slot];
+            if (o == null)
+                continue;
+            sb.append("_");
+            sb.append(slot);
             sb.append("->");
-            Object o = map.get(w);
             if (o instanceof DefaultIndentable) {
                 sb.append(((DefaultIndentable) o).onOneLine());
             } else {
-                sb.append(map.get(w));
+                sb.append(o);
             }
             sb.append(", ");
         }
@@ -15,10 +15,11 @@ public class NAMEPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched matched)
-            throws Failed, ClassCastException {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof NAME))
+            return false;
         NAME name = (NAME) toMatch;
-        l.match(name.getLabel(), matched);
+        return l.match(name.getLabel(), matched);
     }
 
     @Override
@@ -38,4 +39,10 @@ public class NAMEPat extends Pat<IRExp> {
     public List<Pat<?>> children() {
         return List.list(new Pat<?>[]{l});
     }
+
+    @Override
+    public Object opcode() {
+        return NAME.class;
+    }
+
 }
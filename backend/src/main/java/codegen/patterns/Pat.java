@@ -39,12 +39,19 @@ public abstract class Pat<N> extends DefaultIndentable {
      */
     public Matched tryMatch(N toMatch) {
         Matched m = new Matched();
-        try {
-            match(toMatch, m);
-            return m;
-        } catch (ClassCastException | Failed ignored) {
-        }
-        return null;
+        return tryMatch(toMatch, m) ? m : null;
+    }
+
+    /**
+     * Like tryMatch(N), but puts the bindings in a given (reused) Matched,
+     * rather than allocating a new one.
+     *
+     * @return whether the match succeeded. If not, the contents of matched are
+     * undefined.
+     */
+    public boolean tryMatch(N toMatch, Matched matched) {
+        matched.clear();
+        return match(toMatch, matched);
     }
 
     /**
@@ -109,19 +116,15 @@ public abstract class Pat<N> extends DefaultIndentable {
     }
 
     /**
-     * This method should only be called recursively by another match methods. To make the matcher
-     * methods easier to implement, we will catch any {@link ClassCastException} and treat it as a
-     * failure to match.
+     * This method should only be called recursively by another match methods.
+     * Failure to match is signalled by the return value (rather than by an
+     * exception), since most attempts to match a rule fail.
      *
      * @param toMatch
-     * @param matched a List which should be initially empty to accumulate the children of a matched pattern.
-     * @throws Failed
+     * @param matched accumulates the nodes matched by the wildcards of the pattern.
+     * @return whether the pattern matched.
      */
-    public abstract void match(N toMatch, Matched matched) throws Failed, ClassCastException;
-
-    public static class Failed extends Exception {
-        private static final long serialVersionUID = 1L;
-    }
+    public abstract boolean match(N toMatch, Matched matched);
 
     //// Methods for creating patterns:
 
@@ -132,8 +135,14 @@ public abstract class Pat<N> extends DefaultIndentable {
         return new Wildcard<N>();
     }
 
-    protected void fail() throws Failed {
-        throw new Failed();
+    /**
+     * The kind of IR node this pattern can match at its root, so that rules
+     * can be indexed by the root of their pattern: a subclass of IRNode,
+     * the operator for BINOP patterns, or null if this pattern puts no
+     * restriction on the root (e.g. a wildcard).
+     */
+    public Object opcode() {
+        return null;
     }
 
     public boolean isFixedSize() {
@@ -32,16 +32,16 @@ public class TEMPPat extends Pat<IRExp> {
     }
 
     @Override
-    public void match(IRExp toMatch, Matched matched)
-            throws Failed {
+    public boolean match(IRExp toMatch, Matched matched) {
+        if (!(toMatch instanceof TEMP))
+            return false;
         TEMP temp = (TEMP) toMatch;
 
         Color color = temp.getColor();
         if (color != null && !temp.getColor().isRegister())
-            fail();
+            return false;
 
-        t.match(temp.temp, matched);
-        //matched.put(this, toMatch);
+        return t.match(temp.temp, matched);
     }
 
     @Override
@@ -62,4 +62,9 @@ public class TEMPPat extends Pat<IRExp> {
         return List.list(new Pat<?>[]{t});
     }
 
+    @Override
+    public Object opcode() {
+        return TEMP.class;
+    }
+
 }
@@ -5,11 +5,34 @@ import util.List;
 
 /**
  * A pattern that matches anything (like a "wildcard")
+ * <p>
+ * Each wildcard gets a slot number when the first rule that uses it is
+ * registered. The node matched by the wildcard is stored in that slot of
+ * a {@link Matched}.
  */
 public class Wildcard<N> extends Pat<N> {
     private static int id = 0;
     private int myID = id++;
 
+    private static int slots = 0;
+    private int slot = -1;
+
+    /**
+     * The slot of this wildcard in a {@link Matched}.
+     */
+    public int slot() {
+        if (slot < 0)
+            slot = slots++;
+        return slot;
+    }
+
+    /**
+     * The number of slots handed out so far.
+     */
+    static int slotCount() {
+        return slots;
+    }
+
     @Override
     public void dump(IndentingWriter out) {
         out.print("*" + myID);
@@ -21,8 +44,9 @@ public class Wildcard<N> extends Pat<N> {
     }
 
     @Override
-    public void match(N toMatch, Matched matched) throws Failed {
+    public boolean match(N toMatch, Matched matched) {
         matched.put(this, toMatch);
+        return true;
     }
 
     @Override
@@ -0,0 +1,348 @@
+package codegen.x86_64;
+
+import ir.temp.Color;
+import ir.temp.Temp;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import util.IndentingWriter;
+import util.List;
+
+import x86_64sim.Program;
+import x86_64sim.args.Arg;
+import x86_64sim.args.IdLiteralArg;
+import x86_64sim.args.LiteralArg;
+import x86_64sim.args.MemoryArg;
+import x86_64sim.args.RegisterArg;
+import x86_64sim.args.RipMemoryArg;
+import x86_64sim.instruction.Instructions;
+
+import codegen.AssemData;
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.assem.A_LABEL;
+import codegen.assem.A_MOVE;
+import codegen.assem.Instr;
+
+/**
+ * Lowers an {@link Assembly} straight into an x86_64sim {@link Program},
+ * without printing it and parsing it back.
+ * <p>
+ * Each distinct assem template (e.g. "movq    8(`s0), `d0") is decoded once
+ * into a mnemonic and operand descriptions. Lowering an instruction then only
+ * substitutes the registers of its Temps (their colors, or their names if
+ * they haven't been allocated) and its jump targets. The result executes the
+ * same as the parsed text of the assembly, so the text path is still
+ * used for .s files.
+ */
+public class SimLowering {
+
+    private final Program program = new Program();
+
+    /**
+     * The decoded templates.
+     */
+    private final Map<String, Line[]> templates = new HashMap<String, Line[]>();
+
+    public static Program lower(Assembly assembly) {
+        SimLowering lowering = new SimLowering();
+        for (AssemFragment frag : assembly)
+            lowering.lower(frag);
+        return lowering.program;
+    }
+
+    private void lower(AssemFragment frag) {
+        if (frag instanceof AssemProc) {
+            AssemProc proc = (AssemProc) frag;
+            program.doText();
+            program.add(proc.getLabel().toString());
+            StringWriter entry = new StringWriter();
+            proc.getFrame().entrySequence(new IndentingWriter(entry));
+            lowerText(entry.toString());
+            for (Instr instr : proc.getBody())
+                lower(instr);
+            StringWriter exit = new StringWriter();
+            proc.getFrame().exitSequence(new IndentingWriter(exit));
+            lowerText(exit.toString());
+        } else if (frag instanceof AssemData) {
+            program.doData();
+            for (Instr instr : ((AssemData) frag).getBody())
+                lower(instr);
+        } else {
+            throw new Error("Unknown fragment " + frag.getClass().getName());
+        }
+    }
+
+    /**
+     * Lower a bit of assembly text that has no operand placeholders (the
+     * entry and exit sequences of a frame).
+     */
+    private void lowerText(String text) {
+        for (Line line : decode(text))
+            line.lower(program, null);
+    }
+
+    private void lower(Instr instr) {
+        if (instr instanceof A_LABEL) {
+            program.add(((A_LABEL) instr).getLabel().toString());
+            return;
+        }
+        if (instr instanceof A_MOVE) {
+            // Same as A_MOVE.dump: moves between the same register are commented out.
+            A_MOVE move = (A_MOVE) instr;
+            Color color = move.dst.getColor();
+            if (color != null && color.equals(move.src.getColor()))
+                return;
+        }
+        for (Line line : decode(instr.assem))
+            line.lower(program, instr);
+    }
+
+    private Line[] decode(String template) {
+        Line[] lines = templates.get(template);
+        if (lines == null) {
+            java.util.List<Line> decoded = new ArrayList<Line>();
+            for (String text : template.split("\n")) {
+                Line line = decodeLine(text);
+                if (line != null)
+                    decoded.add(line);
+            }
+            lines = decoded.toArray(new Line[decoded.size()]);
+            templates.put(template, lines);
+        }
+        return lines;
+    }
+
+    private static Line decodeLine(String text) {
+        int comment = text.indexOf('#');
+        if (comment >= 0)
+            text = text.substring(0, comment);
+        text = text.trim();
+        if (text.isEmpty())
+            return null;
+        int space = 0;
+        while (space < text.length() && !Character.isWhitespace(text.charAt(space)))
+            space++;
+        String mnemonic = text.substring(0, space);
+        String rest = text.substring(space).trim();
+        if (mnemonic.equals(".quad"))
+            return new Quad(rest);
+        java.util.List<String> operands = splitOperands(rest);
+        if (operands.size() == 1 && (mnemonic.startsWith("j") || mnemonic.equals("call"))
+                && !operands.get(0).startsWith("*"))
+            return new Branch(mnemonic, target(operands.get(0)));
+        Operand[] decoded = new Operand[operands.size()];
+        for (int i = 0; i < decoded.length; i++)
+            decoded[i] = operand(operands.get(i));
+        return new Op(mnemonic, decoded);
+    }
+
+    /**
+     * Split operands at the commas that are not inside parentheses.
+     */
+    private static java.util.List<String> splitOperands(String text) {
+        java.util.List<String> operands = new ArrayList<String>();
+        if (text.isEmpty())
+            return operands;
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (c == ',' && depth == 0) {
+                operands.add(text.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        operands.add(text.substring(start).trim());
+        return operands;
+    }
+
+    private static Operand operand(String text) {
+        if (text.startsWith("$")) {
+            String value = text.substring(1);
+            if (isInteger(value))
+                return new Literal(new LiteralArg(Long.parseLong(value)));
+            return new Literal(new IdLiteralArg(value));
+        }
+        if (text.startsWith("*"))
+            return new Register(register(text.substring(1)));
+        int open = text.indexOf('(');
+        if (open < 0)
+            return new Register(register(text));
+        String offset = text.substring(0, open).trim();
+        String[] inside = text.substring(open + 1, text.lastIndexOf(')')).split(",");
+        if (inside[0].trim().equals("%rip"))
+            return new Literal(new RipMemoryArg(offset));
+        Reg base = inside[0].trim().isEmpty() ? null : register(inside[0]);
+        Reg index = inside.length > 1 ? register(inside[1]) : null;
+        long scale = inside.length > 2 ? Long.parseLong(inside[2].trim()) : 1;
+        return new Memory(offset.isEmpty() ? 0 : Long.parseLong(offset), base, index, scale);
+    }
+
+    private static boolean isInteger(String text) {
+        int start = text.startsWith("-") ? 1 : 0;
+        if (start == text.length())
+            return false;
+        for (int i = start; i < text.length(); i++)
+            if (!Character.isDigit(text.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private static Reg register(String text) {
+        text = text.trim();
+        if (text.startsWith("`"))
+            return new Reg(text.charAt(1), Character.digit(text.charAt(2), 10), null);
+        return new Reg(' ', 0, text);
+    }
+
+    private static Reg target(String text) {
+        if (text.startsWith("`j"))
+            return new Reg('j', Character.digit(text.charAt(2), 10), null);
+        return new Reg(' ', 0, text);
+    }
+
+    /**
+     * A register (or for branches, a label): either fixed, or the
+     * n-th source, destination or jump target of the instruction.
+     */
+    private static class Reg {
+        final char kind;
+        final int n;
+        final String fixed;
+
+        Reg(char kind, int n, String fixed) {
+            this.kind = kind;
+            this.n = n;
+            this.fixed = fixed;
+        }
+
+        String resolve(Instr instr) {
+            switch (kind) {
+                case 's':
+                    return name(instr.use(), n);
+                case 'd':
+                    return name(instr.def(), n);
+                case 'j':
+                    return instr.jumps().get(n).toString();
+                default:
+                    return fixed;
+            }
+        }
+
+        private static String name(List<Temp> temps, int n) {
+            Temp temp = temps.get(n);
+            Color color = temp.getColor();
+            return color != null ? color.toString() : temp.getName();
+        }
+    }
+
+    private static abstract class Operand {
+        abstract Arg resolve(Instr instr);
+    }
+
+    private static class Literal extends Operand {
+        final Arg arg;
+
+        Literal(Arg arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        Arg resolve(Instr instr) {
+            return arg;
+        }
+    }
+
+    private static class Register extends Operand {
+        final Reg reg;
+
+        Register(Reg reg) {
+            this.reg = reg;
+        }
+
+        @Override
+        Arg resolve(Instr instr) {
+            return new RegisterArg(reg.resolve(instr));
+        }
+    }
+
+    private static class Memory extends Operand {
+        final long offset;
+        final Reg base, index;
+        final long scale;
+
+        Memory(long offset, Reg base, Reg index, long scale) {
+            this.offset = offset;
+            this.base = base;
+            this.index = index;
+            this.scale = scale;
+        }
+
+        @Override
+        Arg resolve(Instr instr) {
+            return new MemoryArg(offset,
+                    base == null ? null : base.resolve(instr),
+                    index == null ? null : index.resolve(instr),
+                    scale);
+        }
+    }
+
+    private static abstract class Line {
+        abstract void lower(Program program, Instr instr);
+    }
+
+    private static class Op extends Line {
+        final String mnemonic;
+        final Operand[] operands;
+
+        Op(String mnemonic, Operand[] operands) {
+            this.mnemonic = mnemonic;
+            this.operands = operands;
+        }
+
+        @Override
+        void lower(Program program, Instr instr) {
+            Arg[] args = new Arg[operands.length];
+            for (int i = 0; i < args.length; i++)
+                args[i] = operands[i].resolve(instr);
+            program.add(Instructions.make(mnemonic, args));
+        }
+    }
+
+    private static class Branch extends Line {
+        final String mnemonic;
+        final Reg target;
+
+        Branch(String mnemonic, Reg target) {
+            this.mnemonic = mnemonic;
+            this.target = target;
+        }
+
+        @Override
+        void lower(Program program, Instr instr) {
+            program.add(Instructions.branch(mnemonic, target.resolve(instr)));
+        }
+    }
+
+    private static class Quad extends Line {
+        final String value;
+
+        Quad(String value) {
+            this.value = value;
+        }
+
+        @Override
+        void lower(Program program, Instr instr) {
+            program.doQuad(value);
+        }
+    }
+}
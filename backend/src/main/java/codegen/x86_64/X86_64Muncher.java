@@ -14,10 +14,12 @@ import util.List;
 import ir.frame.Frame;
 import ir.temp.Label;
 import ir.temp.Temp;
+import ir.tree.CONST;
 import ir.tree.IR;
 import ir.tree.IRExp;
 import ir.tree.IRStm;
 import ir.tree.CJUMP.RelOp;
+import translate.Translator;
 import codegen.assem.A_LABEL;
 import codegen.assem.A_MOVE;
 import codegen.assem.A_OPER;
@@ -45,6 +47,19 @@ public class X86_64Muncher extends Muncher {
      */
     private static final List<Temp> noTemps = List.empty();
 
+    /**
+     * Whether {@code new} of an object allocates inline (see
+     * {@link #munchNewObject}) rather than always calling the runtime.
+     */
+    public static boolean inlineAllocation = true;
+
+    /**
+     * The runtime's allocation pointer and limit: objects that fit between
+     * them can be allocated without calling the runtime.
+     */
+    private static final Label ALLOC_PTR = Label.get("cs411allocptr");
+    private static final Label ALLOC_LIMIT = Label.get("cs411alloclimit");
+
     private static MuncherRules<IRStm, Void> sm = new MuncherRules<IRStm, Void>();
     private static MuncherRules<IRExp, Temp> em = new MuncherRules<IRExp, Temp>();
     private static MuncherRules<IRExp, Void> dm = new MuncherRules<IRExp, Void>();
@@ -81,12 +96,12 @@ public class X86_64Muncher extends Muncher {
 
         final Pat<Integer> _scale_ = new Wildcard<Integer>() {
             @Override
-            public void match(Integer toMatch, Matched matched) throws Failed {
+            public boolean match(Integer toMatch, Matched matched) {
                 int value = (Integer) toMatch;
                 if (value == 1 || value == 2 || value == 4 || value == 8)
-                    super.match(toMatch, matched);
+                    return super.match(toMatch, matched);
                 else
-                    fail();
+                    return false;
             }
 
             public void dump(IndentingWriter out) {
@@ -95,15 +110,17 @@ public class X86_64Muncher extends Muncher {
         };
 
         // A basic set of small tiles.
+        // The number after the pattern of a rule is its cost: the number of
+        // instructions it emits (not counting those for the sub trees it munches).
 
-        dm.add(new MunchRule<IRExp, Void>(CONST(_i_)) {
+        dm.add(new MunchRule<IRExp, Void>(CONST(_i_), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_QUAD(c.get(_i_)));
                 return null;
             }
         });
-        dm.add(new MunchRule<IRExp, Void>(NAME(_lab_)) {
+        dm.add(new MunchRule<IRExp, Void>(NAME(_lab_), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_QUAD(c.get(_lab_)));
@@ -111,21 +128,21 @@ public class X86_64Muncher extends Muncher {
             }
         });
 
-        sm.add(new MunchRule<IRStm, Void>(LABEL(_lab_)) {
+        sm.add(new MunchRule<IRStm, Void>(LABEL(_lab_), 1) {
             @Override
             protected Void trigger(Muncher m, Matched children) {
                 m.emit(A_LABEL(children.get(_lab_)));
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(JUMP(_e_)) {
+        sm.add(new MunchRule<IRStm, Void>(JUMP(_e_), 1) {
             protected Void trigger(Muncher m, Matched children) {
                 // Expression shouldn't need to emit indirect jumps.
                 // (assuming there's a rule to match JUMP(NAME(*))
                 throw new Error("Not implemented");
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(EXP(_e_)) {
+        sm.add(new MunchRule<IRStm, Void>(EXP(_e_), 0) {
             @Override
             protected Void trigger(Muncher m, Matched children) {
                 IRExp exp = children.get(_e_);
@@ -133,7 +150,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), _e_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), _e_), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_MOV(c.get(_t_),
@@ -141,7 +158,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_l_), _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_l_), _r_), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp d = m.munch(c.get(_l_));
@@ -150,14 +167,14 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(JUMP(NAME(_lab_))) {
+        sm.add(new MunchRule<IRStm, Void>(JUMP(NAME(_lab_)), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_JMP(c.get(_lab_)));
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, _l_, _r_, _thn_, _els_)) {
+        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, _l_, _r_, _thn_, _els_), 2) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_CMP(m.munch(c.get(_l_)), m.munch(c.get(_r_))));
@@ -165,7 +182,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, _l_, _r_, TEMP(_t_), _e_)) {
+        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, _l_, _r_, TEMP(_t_), _e_), 2) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_CMP(m.munch(c.get(_l_)), m.munch(c.get(_r_))));
@@ -173,14 +190,14 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(CALL(_l_, _es_)) {
+        em.add(new MunchRule<IRExp, Temp>(CALL(_l_, _es_), 1) {
             @Override
             protected Temp trigger(Muncher m, Matched children) {
                 // Expressions shouldn't need to emit indirect calls ( unless we implement VMT and inheritance )
                 throw new Error("Not implemented");
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(CONST(_i_)) {
+        em.add(new MunchRule<IRExp, Temp>(CONST(_i_), 1) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp t = new Temp();
@@ -188,7 +205,7 @@ public class X86_64Muncher extends Muncher {
                 return t;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(PLUS(_l_, _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(PLUS(_l_, _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -197,7 +214,7 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MINUS(_l_, _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(MINUS(_l_, _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -206,7 +223,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MUL(_l_, _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(MUL(_l_, _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -215,13 +232,13 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(TEMP(_t_)) {
+        em.add(new MunchRule<IRExp, Temp>(TEMP(_t_), 0) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 return c.get(_t_);
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(NAME(_lab_)) {
+        em.add(new MunchRule<IRExp, Temp>(NAME(_lab_), 1) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp t = new Temp();
@@ -229,7 +246,7 @@ public class X86_64Muncher extends Muncher {
                 return t;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(_e_)) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(_e_), 1) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp r = new Temp();
@@ -237,24 +254,21 @@ public class X86_64Muncher extends Muncher {
                 return r;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(CALL(NAME(_lab_), _es_)) {
+        em.add(new MunchRule<IRExp, Temp>(CALL(NAME(_lab_), _es_), 1) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
-                Frame frame = m.getFrame();
                 Label name = c.get(_lab_);
                 List<IRExp> args = c.get(_es_);
-                for (int i = args.size() - 1; i >= 0; i--) {
-                    IRExp outArg = frame.getOutArg(i).exp(frame.FP());
-                    m.munch(IR.MOVE(outArg, args.get(i)));
-                }
-                m.emit(A_CALL(name, args.size()));
-                return RV;
+                if (inlineAllocation && name == Translator.L_NEW_OBJECT
+                        && args.size() == 1 && args.head() instanceof CONST)
+                    return munchNewObject(m, ((CONST) args.head()).getValue());
+                return munchCall(m, name, args);
             }
         });
 
         // ADDITIONAL MUNCH RULES
 
-        em.add(new MunchRule<IRExp, Temp>(PLUS(MEM(_l_), _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(PLUS(MEM(_l_), _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -263,7 +277,7 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MUL(MEM(_l_), _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(MUL(MEM(_l_), _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -272,7 +286,7 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MINUS(MEM(_l_), _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(MINUS(MEM(_l_), _r_), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -281,7 +295,7 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(DIV(MEM(_l_), _r_)) {
+        em.add(new MunchRule<IRExp, Temp>(DIV(MEM(_l_), _r_), 5) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -290,21 +304,21 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), CONST(_i_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), CONST(_i_)), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_MOV(c.get(_t_), c.get(_i_)));
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), MEM(_e_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), MEM(_e_)), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_MOV_FROM_MEM(c.get(_t_), m.munch(c.get(_e_))));
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_l_), MEM(_r_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_l_), MEM(_r_)), 2) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp t = new Temp();
@@ -313,14 +327,14 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_e_), TEMP(_t_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(_e_), TEMP(_t_)), 1) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 m.emit(A_MOV_TO_MEM(m.munch(c.get(_e_)), c.get(_t_)));
                 return null;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(PLUS(TEMP(_t_), CONST(_i_))) {
+        em.add(new MunchRule<IRExp, Temp>(PLUS(TEMP(_t_), CONST(_i_)), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -331,7 +345,7 @@ public class X86_64Muncher extends Muncher {
         });
 
 
-        em.add(new MunchRule<IRExp, Temp>(MEM(MINUS(_l_, CONST(_i_)))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(MINUS(_l_, CONST(_i_))), 4) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -343,7 +357,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(MEM(_l_), CONST(_i_)))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(MEM(_l_), CONST(_i_))), 4) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -355,7 +369,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(MINUS(MEM(_l_), CONST(_i_)))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(MINUS(MEM(_l_), CONST(_i_))), 4) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -367,7 +381,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), MEM(MINUS(_l_, CONST(_i_))))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(TEMP(_t_), MEM(MINUS(_l_, CONST(_i_)))), 5) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -380,7 +394,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(TEMP(_t_)), CONST(_i_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(TEMP(_t_)), CONST(_i_)), 2) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -389,7 +403,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(PLUS(_l_, CONST(_i_))), _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(PLUS(_l_, CONST(_i_))), _r_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -399,7 +413,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(MINUS(_l_, CONST(_i_))), _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(MINUS(_l_, CONST(_i_))), _r_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -409,7 +423,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(MUL(_l_, CONST(_i_))), _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(MUL(_l_, CONST(_i_))), _r_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -419,7 +433,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(DIV(_l_, CONST(_i_))), _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(DIV(_l_, CONST(_i_))), _r_), 6) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -429,7 +443,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(TEMP(_t_), CONST(_i_)))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(TEMP(_t_), CONST(_i_))), 3) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -439,7 +453,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MUL(TEMP(_t_), CONST(_i_))) {
+        em.add(new MunchRule<IRExp, Temp>(MUL(TEMP(_t_), CONST(_i_)), 2) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -448,7 +462,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(MUL(TEMP(_t_), CONST(_i_)))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(MUL(TEMP(_t_), CONST(_i_))), 3) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -458,7 +472,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(PLUS(MEM(_e_), CONST(_i_))) {
+        em.add(new MunchRule<IRExp, Temp>(PLUS(MEM(_e_), CONST(_i_)), 3) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp sum = new Temp();
@@ -469,7 +483,7 @@ public class X86_64Muncher extends Muncher {
                 return sum;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, TEMP(_t_), MEM(_e_), _thn_, _els_)) {
+        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, TEMP(_t_), MEM(_e_), _thn_, _els_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -479,7 +493,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, TEMP(_t_), CONST(_i_), _thn_, _els_)) {
+        sm.add(new MunchRule<IRStm, Void>(CJUMP(_relOp_, TEMP(_t_), CONST(_i_), _thn_, _els_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -490,7 +504,7 @@ public class X86_64Muncher extends Muncher {
             }
         });
 
-        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, MEM(_l_), _r_, TEMP(_t_), _e_)) {
+        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, MEM(_l_), _r_, TEMP(_t_), _e_), 2) {
             @Override
             protected  Void trigger(Muncher m, Matched c) {
                 Temp l = m.munch(c.get(_l_));
@@ -501,7 +515,7 @@ public class X86_64Muncher extends Muncher {
             }
         });
 
-        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, _l_, MEM(_r_), TEMP(_t_), _e_)) {
+        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, _l_, MEM(_r_), TEMP(_t_), _e_), 2) {
             @Override
             protected  Void trigger(Muncher m, Matched c) {
                 Temp l = m.munch(c.get(_l_));
@@ -512,7 +526,7 @@ public class X86_64Muncher extends Muncher {
             }
         });
 
-        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, TEMP(_t_), MEM(_e_), _l_, _r_)) {
+        sm.add(new MunchRule<IRStm, Void>(CMOVE(_relOp_, TEMP(_t_), MEM(_e_), _l_, _r_), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp tmp = new Temp();
@@ -522,7 +536,7 @@ public class X86_64Muncher extends Muncher {
                 return null;
             }
         });
-        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(MEM(_l_), _r_))) {
+        em.add(new MunchRule<IRExp, Temp>(MEM(PLUS(MEM(_l_), _r_)), 3) {
             @Override
             protected Temp trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -532,7 +546,7 @@ public class X86_64Muncher extends Muncher {
                 return res;
             }
         });
-        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(TEMP(_t_)), PLUS(_l_, _r_))) {
+        sm.add(new MunchRule<IRStm, Void>(MOVE(MEM(TEMP(_t_)), PLUS(_l_, _r_)), 3) {
             @Override
             protected Void trigger(Muncher m, Matched c) {
                 Temp res = new Temp();
@@ -545,6 +559,46 @@ public class X86_64Muncher extends Muncher {
         });
     }
 
+    private static Temp munchCall(Muncher m, Label name, List<IRExp> args) {
+        Frame frame = m.getFrame();
+        for (int i = args.size() - 1; i >= 0; i--) {
+            IRExp outArg = frame.getOutArg(i).exp(frame.FP());
+            m.munch(IR.MOVE(outArg, args.get(i)));
+        }
+        m.emit(A_CALL(name, args.size()));
+        return RV;
+    }
+
+    /**
+     * Allocate an object of a known size without a call, by bumping the
+     * runtime's allocation pointer, unless that would pass the limit (then
+     * call cs411newobject). The runtime keeps the memory below the limit
+     * zeroed. Each object is preceded by a word holding its size in words,
+     * which is where the garbage collected runtime expects it.
+     */
+    private static Temp munchNewObject(Muncher m, int size) {
+        int words = (size + 7) / 8;
+        Temp block = new Temp();
+        Temp next = new Temp();
+        Temp object = new Temp();
+        Label fast = Label.generate("alloc");
+        Label slow = Label.generate("allocSlow");
+        Label done = Label.generate("allocDone");
+        m.emit(A_MOV_FROM_GLOBAL(block, ALLOC_PTR));
+        m.emit(A_LEA(next, block, 8 * (words + 1)));
+        m.emit(A_CMP_GLOBAL(next, ALLOC_LIMIT));
+        m.emit(A_CJUMP(RelOp.UGT, slow, fast));
+        m.emit(A_LABEL(fast));
+        m.emit(A_MOV_TO_GLOBAL(ALLOC_PTR, next));
+        m.emit(A_MOV_TO_MEM(block, words));
+        m.emit(A_LEA(object, block, 8));
+        m.emit(A_JMP(done));
+        m.emit(A_LABEL(slow));
+        m.emit(A_MOV(object, munchCall(m, Translator.L_NEW_OBJECT, list(IR.CONST(size)))));
+        m.emit(A_LABEL(done));
+        return object;
+    }
+
     ///////// Helper methods to generate X86 assembly instructions //////////////////////////////////////
 
     private static Instr A_QUAD(int i) {
@@ -702,6 +756,26 @@ public class X86_64Muncher extends Muncher {
         return new A_OPER("movq    `s1, (`s0)", noTemps, list(ptr, s));
     }
 
+    private static Instr A_MOV_TO_MEM(Temp ptr, int value) {
+        return new A_OPER("movq    $" + value + ", (`s0)", noTemps, list(ptr));
+    }
+
+    private static Instr A_MOV_FROM_GLOBAL(Temp d, Label global) {
+        return new A_OPER("movq    " + global + "(%rip), `d0", list(d), noTemps);
+    }
+
+    private static Instr A_MOV_TO_GLOBAL(Label global, Temp s) {
+        return new A_OPER("movq    `s0, " + global + "(%rip)", noTemps, list(s));
+    }
+
+    private static Instr A_CMP_GLOBAL(Temp l, Label global) {
+        return new A_OPER("cmpq    " + global + "(%rip), `s0", noTemps, list(l));
+    }
+
+    private static Instr A_LEA(Temp d, Temp base, int offset) {
+        return new A_OPER("leaq    " + offset + "(`s0), `d0", list(d), list(base));
+    }
+
     private static Instr A_MOV_FROM_MEM(Temp d, Temp ptr) {
         return new A_OPER("movq    (`s0), `d0", list(d), list(ptr));
     }
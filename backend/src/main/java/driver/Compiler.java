@@ -2,6 +2,7 @@ package driver;
 
 import ir.frame.Frame;
 import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
 
 import java.io.File;
 import java.io.IOException;
@@ -9,11 +10,14 @@ import java.io.IOException;
 import translate.Fragments;
 import translate.Translator;
 import util.IndentingWriter;
+import util.Phase;
+import util.Profile;
 
 import codegen.Assembly;
 import codegen.CodeGenerator;
 
 import analysis.RegAlloc;
+import analysis.RegAllocMode;
 
 
 /**
@@ -25,6 +29,41 @@ public class Compiler {
 
     private CodeGenerator codegenerator = new CodeGenerator();
 
+    /**
+     * Trade code quality for compile speed. When set, registers are allocated
+     * by linear scan rather than by graph coloring.
+     */
+    private boolean fastCompile;
+
+    /**
+     * Where to write a {@link Profile} of each compilation, as JSON, or null
+     * not to profile.
+     */
+    private File profile;
+
+    /**
+     * Whether profiles also commit JFR events.
+     */
+    private boolean profileEvents;
+
+    public Compiler() {
+        this(false);
+    }
+
+    public Compiler(boolean fastCompile) {
+        this.fastCompile = fastCompile;
+    }
+
+    /**
+     * Time each phase of the compilations from now on, and write the times
+     * to report (replacing the report of the compilation before). If events
+     * is true, also commit a JFR event for each phase.
+     */
+    public void setProfile(File report, boolean events) {
+        this.profile = report;
+        this.profileEvents = events;
+    }
+
     /**
      * This determines the target architecture. The "default" implementation
      * is X86. Override to emit code for a different target architecture (this
@@ -42,23 +81,44 @@ public class Compiler {
      * @param assemOut where to write the assembly code.
      */
     public void compile(File program, File assemOut) throws Exception {
-        Fragments irCode = Translator.translate(getFrameFactory(), program);
-        compileIR(assemOut, irCode);
+        if (profile != null)
+            Profile.start(profileEvents);
+        try {
+            Temp.newNumbering();
+            Fragments irCode = Translator.translate(getFrameFactory(), program);
+            compileIR(assemOut, irCode);
+        } finally {
+            writeProfile();
+        }
     }
 
     public void compile(String program, File assemOut) throws Exception {
-        Fragments irCode = Translator.translate(getFrameFactory(), program);
-        compileIR(assemOut, irCode);
+        if (profile != null)
+            Profile.start(profileEvents);
+        try {
+            Temp.newNumbering();
+            Fragments irCode = Translator.translate(getFrameFactory(), program);
+            compileIR(assemOut, irCode);
+        } finally {
+            writeProfile();
+        }
+    }
+
+    private void writeProfile() {
+        if (profile != null)
+            Profile.stop().write(profile);
     }
 
     private void compileIR(File assemOut, Fragments irCode) throws IOException {
         Assembly assembly = codegenerator.apply(irCode);
-        RegAlloc.doit(assembly);
+        RegAlloc.doit(assembly, fastCompile ? RegAllocMode.LINEAR_SCAN : RegAlloc.mode);
+        Profile.Span span = Profile.begin(Phase.EMIT, null);
         IndentingWriter out = new IndentingWriter(assemOut);
         try {
             assembly.dump(out);
         } finally {
             out.close();
+            Profile.end(span);
         }
     }
 
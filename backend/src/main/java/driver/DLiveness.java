@@ -21,7 +21,6 @@ import codegen.assem.Instr;
 
 import analysis.FlowGraph;
 import analysis.Liveness;
-import analysis.implementation.LivenessImplementation;
 
 
 public class DLiveness {
@@ -61,8 +60,7 @@ public class DLiveness {
 		System.out.println("liveness information for : "
 				   + proc.getLabel());
 		FlowGraph<Instr> flowGraph = FlowGraph.build(proc.getBody());
-		Liveness<Instr> live =
-		    new LivenessImplementation<Instr>(flowGraph);
+		Liveness<Instr> live = Liveness.build(flowGraph);
 		System.out.println(live);
 		
 		File out = new File("live-" + proc.getLabel() + ".dot");
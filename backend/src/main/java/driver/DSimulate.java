@@ -11,6 +11,7 @@ import x86_64sim.Sim;
 
 import codegen.Assembly;
 import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
 
 public class DSimulate {
 
@@ -25,9 +26,8 @@ public class DSimulate {
 	Fragments translated = Translator.translate(architecture, program);
 	CodeGenerator cogen = new CodeGenerator();
 	Assembly assembly = cogen.apply(translated);
-	String sProgram = assembly.toString();
-	// System.out.println("Program:\n" + sProgram);
-	String output = Sim.ulate(sProgram, false).result;
+	// System.out.println("Program:\n" + assembly);
+	String output = Sim.ulate(SimLowering.lower(assembly), false).result;
 	System.out.println("Program output:\n" + output);
     }
     /**
@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -24,15 +25,16 @@ import codegen.AssemFragment;
 import codegen.AssemProc;
 import codegen.Assembly;
 import codegen.CodeGenerator;
-import codegen.assem.Instr;
+import codegen.x86_64.SimLowering;
 
 import parser.Parser;
 import parser.ParseException;
-import analysis.FlowGraph;
+import analysis.Analyses;
+import analysis.Analysis;
 import analysis.InterferenceGraph;
-import analysis.Liveness;
+import analysis.Pass;
+import analysis.PassManager;
 import analysis.RegAlloc;
-import analysis.implementation.LivenessImplementation;
 import util.graph.Node;
 import ast.Program;
 
@@ -44,6 +46,8 @@ import typechecker.TypeChecked;
 import typechecker.TypeCheckerException;
 import typechecker.implementation.TypeCheckerImplementation;
 import util.IndentingWriter;
+import util.Phase;
+import util.Profile;
 import util.RunCommand;
 import util.Utils;
 import x86_64sim.Sim;
@@ -133,7 +137,38 @@ public class DoItAll {
         setup();
     }
 
+    /**
+     * Compile input, doing the stages that args asks for. With
+     * "profile=..." it also times each phase, and writes the times, as
+     * JSON, next to the input file (or prints them, without a file). Add
+     * "verbose" to print them anyway, and "jfr" to commit a JFR event for
+     * each phase as well.
+     */
     public void go(String input) {
+        String flags = args.get("profile");
+        if (flags == null) {
+            compile(input);
+            return;
+        }
+        Profile.start(flags.contains("jfr"));
+        try {
+            compile(input);
+        } finally {
+            Profile profile = Profile.stop();
+            if (file == null || flags.contains("verbose")) {
+                System.out.println("Profile:");
+                System.out.print(profile);
+            }
+            if (file != null) {
+                String profileFileName = Utils.changeSuffix(file, "profile.json");
+                profile.write(new File(profileFileName));
+                if (flags.contains("verbose"))
+                    System.out.println("Wrote to " + profileFileName);
+            }
+        }
+    }
+
+    private void compile(String input) {
         Program program = null;
         TypeCheckerImplementation tc = null;
         TypeChecked typechecked = null;
@@ -255,99 +290,71 @@ public class DoItAll {
         } else
             return;
 
+        PassManager passes = new PassManager();
         flags = args.get("flow");
         if (flags != null && flags.contains("verbose")) {
-            for (AssemFragment frag : assembly) {
-                if (frag instanceof AssemProc) {
-                    AssemProc proc = (AssemProc) frag;
+            passes.run(new Pass("flow", EnumSet.of(Analysis.FLOW_GRAPH), Pass.ALL) {
+                @Override
+                public void run(AssemProc proc, Analyses analyses) {
                     System.out.println("\n\nFlow graph for : " + proc.getLabel());
-                    analysis.FlowGraph<Instr> flowGraph = analysis.FlowGraph.build(proc.getBody());
-                    System.out.println(flowGraph);
+                    System.out.println(analyses.flowGraph());
                 }
-            }
+            }, assembly);
         }
 
         flags = args.get("live");
         if (flags != null && flags.contains("verbose")) {
-            for (AssemFragment frag : assembly) {
-                if (frag instanceof AssemProc) {
-                    AssemProc proc = (AssemProc) frag;
+            passes.run(new Pass("live", EnumSet.of(Analysis.LIVENESS), Pass.ALL) {
+                @Override
+                public void run(AssemProc proc, Analyses analyses) {
                     System.out.println("\n\nLiveness information for : " + proc.getLabel());
-                    analysis.FlowGraph<Instr> flowGraph = analysis.FlowGraph.build(proc.getBody());
-                    Liveness<Instr> live = new LivenessImplementation<Instr>(flowGraph);
-                    System.out.println(live);
+                    System.out.println(analyses.liveness());
                 }
-            }
+            }, assembly);
         }
 
         flags = args.get("interference");
         if (flags != null && flags.contains("verbose")) {
-            for (AssemFragment frag : assembly) {
-                if (frag instanceof AssemProc) {
-                    AssemProc proc = (AssemProc) frag;
+            passes.run(new Pass("interference", EnumSet.of(Analysis.INTERFERENCE), Pass.ALL) {
+                @Override
+                public void run(AssemProc proc, Analyses analyses) {
                     System.out.println("\n\nInterference graph for : " + proc.getLabel());
-                    analysis.FlowGraph<Instr> flowGraph = analysis.FlowGraph.build(proc.getBody());
-                    InterferenceGraph interf = flowGraph.getInterferenceGraph();
-                    System.out.println(interf);
+                    System.out.println(analyses.interference());
                 }
-            }
+            }, assembly);
         }
 
         flags = args.get("register");
         if (flags != null) {
+            final String registerFlags = flags;
             if (flags.contains("verbose"))
                 System.out.println("Doing register allocation");
 
-            for (AssemFragment frag : assembly) {
-                if (frag instanceof AssemProc) {
-                    AssemProc proc = (AssemProc) frag;
-                    if (flags.contains("verbose"))
+            // Allocating registers only changes the analyses by rewriting
+            // the body, which makes them out of date anyway.
+            passes.run(new Pass("register", Pass.NONE, Pass.ALL) {
+                @Override
+                public void run(AssemProc proc, Analyses analyses) {
+                    if (registerFlags.contains("verbose"))
                         System.out.println("Fragment: " + proc.getLabel());
 
-                    RegAlloc alloc = RegAlloc.doit(proc);
+                    RegAlloc alloc = RegAlloc.doit(proc, RegAlloc.mode, analyses);
 
-                    if (flags.contains("veryverbose")) {
+                    if (registerFlags.contains("veryverbose")) {
                         System.out.println(alloc.getTrace());
-                    } else if (flags.contains("verbose")) {
-                        InterferenceGraph ig = FlowGraph.build(proc.getBody()).getInterferenceGraph();
-                        Map<String, Set<String>> regToTemp = new HashMap<String, Set<String>>();
-                        Map<String, String> tempToReg = new HashMap<String, String>();
-                        for (Node<Temp> node : ig.nodes()) {
-                            Temp t = node.wrappee();
-                            Color color = t.getColor();
-                            if (!t.getName().equals(color.toString()))
-                                remember(regToTemp, tempToReg, color.toString(), t.getName());
-                        }
-                        System.out.println("Temp to register map:");
-                        List<String> keys = new ArrayList<String>(tempToReg.keySet());
-                        Collections.sort(keys);
-                        for (String temp : keys) {
-                            String reg = tempToReg.get(temp);
-                            System.out.println(temp + " -> " + reg);
-                        }
-
-                        System.out.println();
-                        System.out.println("Register to temps:");
-
-                        keys = new ArrayList<String>(regToTemp.keySet());
-                        Collections.sort(keys);
-                        for (String reg : keys) {
-                            Set<String> temps = regToTemp.get(reg);
-                            System.out.println(reg + ": " + temps);
-                        }
-                        System.out.println();
-                        System.out.println("final code for : " + proc.getLabel());
-                        System.out.println(proc);
+                    } else if (registerFlags.contains("verbose")) {
+                        printRegisters(proc, analyses.interference());
                     }
                 }
-            }
+            }, assembly);
+            if (flags.contains("verbose"))
+                System.out.print(passes);
         }
         flags = args.get("simulate");
         if (flags != null) {
-            String sProgram = assembly.toString();
             if (flags.contains("verbose"))
                 System.out.println("Simulating X86_64 code");
-            String output = Sim.ulate(sProgram, flags.contains("verbose")).result;
+            String output = Sim.ulate(SimLowering.lower(assembly), flags.contains("verbose")).result;
             System.out.println("Program output:\n" + output);
             checkAnswer(output);
         }
@@ -357,6 +364,7 @@ public class DoItAll {
             String assemFileName = Utils.changeSuffix(file, "s");
             assemFile = new File(assemFileName);
             IndentingWriter out = null;
+            Profile.Span span = Profile.begin(Phase.EMIT, null);
             try {
                 out = new IndentingWriter(assemFile);
                 assembly.dump(out);
@@ -366,6 +374,7 @@ public class DoItAll {
                 System.out.println("Can't write assembly code to " + assemFileName);
             } finally {
                 if (out != null) out.close();
+                Profile.end(span);
             }
         } else
             return;
@@ -383,6 +392,37 @@ public class DoItAll {
         }
     }
 
+    private static void printRegisters(AssemProc proc, InterferenceGraph ig) {
+        Map<String, Set<String>> regToTemp = new HashMap<String, Set<String>>();
+        Map<String, String> tempToReg = new HashMap<String, String>();
+        for (Node<Temp> node : ig.nodes()) {
+            Temp t = node.wrappee();
+            Color color = t.getColor();
+            if (!t.getName().equals(color.toString()))
+                remember(regToTemp, tempToReg, color.toString(), t.getName());
+        }
+        System.out.println("Temp to register map:");
+        List<String> keys = new ArrayList<String>(tempToReg.keySet());
+        Collections.sort(keys);
+        for (String temp : keys) {
+            String reg = tempToReg.get(temp);
+            System.out.println(temp + " -> " + reg);
+        }
+
+        System.out.println();
+        System.out.println("Register to temps:");
+
+        keys = new ArrayList<String>(regToTemp.keySet());
+        Collections.sort(keys);
+        for (String reg : keys) {
+            Set<String> temps = regToTemp.get(reg);
+            System.out.println(reg + ": " + temps);
+        }
+        System.out.println();
+        System.out.println("final code for : " + proc.getLabel());
+        System.out.println(proc);
+    }
+
     private static void remember(Map<String, Set<String>> regToTemp,
                                  Map<String, String> tempToReg, String reg, String temp) {
         Set<String> s = regToTemp.get(reg);
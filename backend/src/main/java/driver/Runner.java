@@ -8,6 +8,20 @@ import util.RunCommand;
 
 public class Runner {
 
+    /**
+     * Which runtime library {@link #runtimeLib()} links with. Both are built
+     * by the Makefile in the runtime directory.
+     */
+    public static RuntimeMode mode = RuntimeMode.MALLOC;
+
+    /**
+     * Link with the runtime whose entry points save and restore all the
+     * caller-saved registers (runtime-tramp.o or gcruntime-tramp.o). The
+     * compiled code never relies on that, so by default the entry points
+     * are plain C functions.
+     */
+    public static boolean trampolines = false;
+
     /**
      * Use gcc and as to create an object file, link it into
      * an executable and then run it.
@@ -89,8 +103,26 @@ public class Runner {
             return result.getOutput();
     }
 
+    /**
+     * The runtime library to link with. It isn't checked in, since it is
+     * specific to the platform: "make -C runtime all" builds it.
+     */
     protected File runtimeLib() {
-        return new File("runtime/runtime.o");
+        String suffix = trampolines ? "-tramp.o" : ".o";
+        File lib;
+        switch (mode) {
+            case MALLOC:
+                lib = new File("runtime/runtime" + suffix);
+                break;
+            case GC:
+                lib = new File("runtime/gcruntime" + suffix);
+                break;
+            default:
+                throw new Error("Unknown runtime: " + mode);
+        }
+        if (!lib.exists())
+            throw new Error("Missing runtime library " + lib + ": build it with make -C runtime all");
+        return lib;
     }
 
 }
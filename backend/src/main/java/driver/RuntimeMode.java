@@ -0,0 +1,11 @@
+package driver;
+
+/**
+ * The runtime libraries {@link Runner} can link programs with.
+ */
+public enum RuntimeMode {
+
+    MALLOC,    // runtime.o: allocate with malloc, never free
+    GC         // gcruntime.o: allocate from an arena with a conservative mark-sweep collector
+
+}
@@ -0,0 +1,42 @@
+package test.analysis;
+
+import ir.temp.Temp;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+
+import codegen.AssemProc;
+import codegen.assem.Instr;
+import analysis.FlowGraph;
+import analysis.implementation.BitSetLiveness;
+import analysis.implementation.LivenessImplementation;
+import util.graph.Node;
+
+/**
+ * Checks that the bitset liveness analysis computes exactly the same
+ * liveOut sets as the ActiveSet based implementation, for every
+ * procedure of every test program.
+ */
+public class TestBitSetLiveness extends TestFlowGraphs {
+
+    @Override
+    protected void test(AssemProc proc) {
+        FlowGraph<Instr> flowGraph = FlowGraph.build(proc.getBody());
+        LivenessImplementation<Instr> expected = new LivenessImplementation<Instr>(flowGraph);
+        BitSetLiveness<Instr> actual = new BitSetLiveness<Instr>(flowGraph);
+        for (Node<Instr> node : flowGraph.nodes()) {
+            Assertions.assertEquals(asSet(expected.liveOut(node)), asSet(actual.liveOut(node)),
+                    "liveOut of " + node + ": " + node.wrappee());
+        }
+    }
+
+    private static Set<Temp> asSet(Iterable<Temp> temps) {
+        Set<Temp> set = new HashSet<Temp>();
+        for (Temp t : temps)
+            set.add(t);
+        return set;
+    }
+
+}
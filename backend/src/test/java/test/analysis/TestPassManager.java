@@ -0,0 +1,55 @@
+package test.analysis;
+
+import java.util.EnumSet;
+
+import codegen.AssemProc;
+import codegen.assem.A_LABEL;
+import codegen.assem.Instr;
+import analysis.Analyses;
+import analysis.Analysis;
+import analysis.FlowGraph;
+import analysis.InterferenceGraph;
+import analysis.Liveness;
+
+/**
+ * Checks that the {@link Analyses} of each procedure are computed once, kept
+ * while they are preserved, and computed again when the body changes. Then
+ * allocates registers and checks them, as {@link TestRegAlloc} does.
+ */
+public class TestPassManager extends TestRegAlloc {
+
+    @Override
+    protected void test(AssemProc proc) {
+        Analyses analyses = new Analyses(proc);
+        FlowGraph<Instr> fg = analyses.flowGraph();
+        Liveness<Instr> liveness = analyses.liveness();
+        InterferenceGraph ig = analyses.interference();
+        assert (liveness.g == fg);
+        assert (analyses.flowGraph() == fg);
+        assert (analyses.liveness() == liveness);
+        assert (analyses.interference() == ig);
+
+        analyses.keepOnly(EnumSet.of(Analysis.FLOW_GRAPH, Analysis.INTERFERENCE));
+        assert (analyses.flowGraph() == fg);
+        // Interference is computed from liveness, which wasn't preserved.
+        assert (analyses.liveness() != liveness);
+        assert (analyses.interference() != ig);
+        for (Analysis analysis : Analysis.values())
+            assert (analyses.computed(analysis) == (analysis == Analysis.FLOW_GRAPH ? 1 : 2));
+
+        for (Instr instr : proc.getBody()) {
+            if (!(instr instanceof A_LABEL)) {
+                proc.replace(instr, instr);
+                break;
+            }
+        }
+        assert (analyses.flowGraph() != fg);
+        assert (analyses.computed(Analysis.FLOW_GRAPH) == 2);
+
+        Analyses uncached = new Analyses(proc, false);
+        assert (uncached.flowGraph() != uncached.flowGraph());
+
+        super.test(proc);
+    }
+
+}
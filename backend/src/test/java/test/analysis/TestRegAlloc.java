@@ -7,6 +7,7 @@ import codegen.AssemProc;
 import analysis.FlowGraph;
 import analysis.InterferenceGraph;
 import analysis.RegAlloc;
+import analysis.RegAllocMode;
 import util.graph.Node;
 
 
@@ -14,6 +15,14 @@ import static util.List.*;
 
 public class TestRegAlloc extends TestFlowGraphs {
 
+    /**
+     * Which register allocator to test. Override to run the same tests with
+     * another one.
+     */
+    protected RegAllocMode getRegAllocMode() {
+        return RegAlloc.mode;
+    }
+
     protected void test(AssemProc proc) {
 
         //To verify the coloring, let's make a list of the allowed colors.
@@ -26,7 +35,7 @@ public class TestRegAlloc extends TestFlowGraphs {
         }
 
         //Let's do register allocation and dump out the result.
-        RegAlloc alloc = RegAlloc.doit(proc);
+        RegAlloc alloc = RegAlloc.doit(proc, getRegAllocMode());
         System.out.println("RegAlloc ");
         System.out.println(alloc);
 
@@ -0,0 +1,58 @@
+package test.analysis;
+
+import ir.temp.Temp;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Translator;
+import util.SampleCode;
+
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.CodeGenerator;
+
+import analysis.RegAlloc;
+import analysis.RegAllocMode;
+import analysis.implementation.CoalescingRegAlloc;
+import analysis.implementation.SimpleRegAlloc;
+
+/**
+ * Runs the TestRegAlloc tests with the iterated register coalescing
+ * allocator, and checks that it eliminates moves, and spills no more temps
+ * than the spilling allocator.
+ */
+public class TestRegAllocCoalescing extends TestRegAlloc {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.COALESCING;
+    }
+
+    @Test
+    public void testFactorialMovesAndSpills() throws Exception {
+        Temp.newNumbering();
+        Assembly assembly = new CodeGenerator().apply(
+                Translator.translate(architecture, new File(SampleCode.sample_dir, "Factorial.java")));
+        int eliminated = 0;
+        int moves = 0;
+        int spilled = 0;
+        int spilledBySpilling = 0;
+        for (AssemFragment frag : assembly) {
+            if (frag instanceof AssemProc) {
+                // What the spilling allocator spills in its first round (which
+                // doesn't change the procedure)
+                spilledBySpilling += new SimpleRegAlloc((AssemProc) frag).getSpilled().size();
+                CoalescingRegAlloc alloc = (CoalescingRegAlloc) RegAlloc.doit((AssemProc) frag, getRegAllocMode());
+                eliminated += alloc.getMovesEliminated();
+                moves += alloc.getMovesTotal();
+                spilled += alloc.getSpilled().size();
+            }
+        }
+        Assertions.assertTrue(0 < eliminated && eliminated <= moves, eliminated + " of " + moves);
+        Assertions.assertTrue(spilled <= spilledBySpilling, spilled + " > " + spilledBySpilling);
+    }
+
+}
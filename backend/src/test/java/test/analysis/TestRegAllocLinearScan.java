@@ -0,0 +1,16 @@
+package test.analysis;
+
+import analysis.RegAllocMode;
+
+/**
+ * Runs the TestRegAlloc tests with the linear scan allocator of fast
+ * compile mode.
+ */
+public class TestRegAllocLinearScan extends TestRegAlloc {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.LINEAR_SCAN;
+    }
+
+}
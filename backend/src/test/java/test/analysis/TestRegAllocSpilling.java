@@ -0,0 +1,16 @@
+package test.analysis;
+
+import analysis.RegAllocMode;
+
+/**
+ * Runs the TestRegAlloc tests with the simple allocator that spills and
+ * tries again.
+ */
+public class TestRegAllocSpilling extends TestRegAlloc {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.SPILLING;
+    }
+
+}
@@ -0,0 +1,78 @@
+package test.benchmark;
+
+import java.io.File;
+
+import util.RunCommand;
+
+import codegen.x86_64.X86_64Muncher;
+import driver.Compiler;
+import driver.Runner;
+import driver.RuntimeMode;
+
+/**
+ * Compiles a MiniJava program that allocates many small objects, with and
+ * without inline allocation, links it with each runtime and reports the
+ * run time of the executable. Argument: the number of objects (default
+ * 5000000).
+ */
+public class AllocBenchmark {
+
+    private static final String PROGRAM =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Alloc().run(%d));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Alloc {\n" +
+            "  public int run(int n) {\n" +
+            "    int i; Pair p;\n" +
+            "    i = 0; p = new Pair();\n" +
+            "    while (i < n) {\n" +
+            "      p = new Pair().init(i, p);\n" +
+            "      if (p.value() < i) p = new Pair(); else { }\n" +
+            "      i = i + 1;\n" +
+            "    }\n" +
+            "    return p.value();\n" +
+            "  }\n" +
+            "}\n" +
+            "class Pair {\n" +
+            "  int v; Pair rest;\n" +
+            "  public Pair init(int x, Pair r) { v = x; rest = r; return this; }\n" +
+            "  public int value() { return v; }\n" +
+            "}\n";
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int objects = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        String program = String.format(PROGRAM, objects);
+        File assem = new File("allocbench.s");
+        boolean savedInline = X86_64Muncher.inlineAllocation;
+        RuntimeMode savedMode = Runner.mode;
+        try {
+            for (RuntimeMode mode : RuntimeMode.values()) {
+                for (boolean inline : new boolean[]{false, true}) {
+                    X86_64Muncher.inlineAllocation = inline;
+                    Runner.mode = mode;
+                    new Compiler().compile(program, assem);
+                    String result = new Runner().run(assem);
+                    long best = Long.MAX_VALUE;
+                    for (int i = 0; i < RUNS; i++) {
+                        long start = System.nanoTime();
+                        new RunCommand(new String[]{"./allocbench.exe"}, true, true);
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    System.out.printf("%-6s inline %-5b: %8.1f ms, output %s",
+                            mode, inline, best / 1e6, result);
+                }
+            }
+        } finally {
+            X86_64Muncher.inlineAllocation = savedInline;
+            Runner.mode = savedMode;
+            new File("allocbench.s").delete();
+            new File("allocbench.o").delete();
+            new File("allocbench.exe").delete();
+        }
+    }
+
+}
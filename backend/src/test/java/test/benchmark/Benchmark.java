@@ -0,0 +1,88 @@
+package test.benchmark;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import translate.Fragments;
+import translate.Translator;
+import util.SampleCode;
+
+import codegen.Assembly;
+import codegen.CodeGenerator;
+
+/**
+ * Helpers shared by the benchmark programs in this package.
+ * <p>
+ * The benchmarks are not unit tests (the surefire configuration doesn't pick
+ * them up). Run their main methods from the backend directory, so that
+ * {@link SampleCode#sample_dir} points at backend/sample.
+ */
+public class Benchmark {
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The MiniJava programs in the sample directory.
+     */
+    public static File[] samples() {
+        return SampleCode.sampleFiles("java");
+    }
+
+    public static Fragments translate(File program) throws Exception {
+        Temp.newNumbering();
+        return Translator.translate(X86_64Frame.factory, program);
+    }
+
+    /**
+     * Translate and munch a program, without register allocation.
+     */
+    public static Assembly codegen(File program) throws Exception {
+        return new CodeGenerator().apply(translate(program));
+    }
+
+    /**
+     * Bytes allocated by the current thread so far.
+     */
+    public static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The result of timing some piece of work.
+     */
+    public static class Measurement {
+        public final double micros;
+        public final long bytes;
+
+        Measurement(double micros, long bytes) {
+            this.micros = micros;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10.1f us %12d B", micros, bytes);
+        }
+    }
+
+    /**
+     * Run some work a number of times (after the same number of warm up runs)
+     * and report average time and allocation per run.
+     */
+    public static Measurement measure(int reps, Runnable work) {
+        for (int i = 0; i < reps; i++)
+            work.run();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i++)
+            work.run();
+        long time = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        return new Measurement(time / 1000.0 / reps, bytes / reps);
+    }
+
+}
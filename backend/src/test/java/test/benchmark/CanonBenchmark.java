@@ -0,0 +1,89 @@
+package test.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.function.Function;
+
+import ir.canon.Canon;
+import ir.canon.Linearizer;
+import ir.tree.IRStm;
+import translate.Fragment;
+import translate.ProcFragment;
+import util.List;
+
+/**
+ * Times linearizing the method bodies of the sample programs, and deep IR
+ * trees from {@link DeepIR}, with the book's recursive algorithm and with
+ * the {@link Linearizer}. Reports time and allocation per tree.
+ * <p>
+ * Everything runs in a thread with a big stack, so that the book's
+ * algorithm gets as far as it can; past that it reports the
+ * StackOverflowError.
+ */
+public class CanonBenchmark {
+
+    private static final int[] DEPTHS = { 1000, 10000, 100000 };
+    private static final int REPS = 20;
+
+    private static void time(String name, IRStm tree) {
+        System.out.printf("%-24s", name);
+        time(Canon::linearize, tree);
+        time(Linearizer::linearize, tree);
+        System.out.println();
+    }
+
+    private static void time(Function<IRStm, List<IRStm>> linearize, IRStm tree) {
+        try {
+            System.out.print(Benchmark.measure(REPS, () -> linearize.apply(tree)));
+        } catch (StackOverflowError e) {
+            System.out.printf("%29s", "StackOverflowError");
+        }
+    }
+
+    private static void time(Function<IRStm, List<IRStm>> linearize, IRStm[] trees) {
+        System.out.print(Benchmark.measure(REPS, () -> {
+            for (IRStm tree : trees)
+                linearize.apply(tree);
+        }));
+    }
+
+    private static void run() throws Exception {
+        System.out.printf("%-24s%29s%29s%n", "", "book", "explicit stack");
+        ArrayList<IRStm> bodies = new ArrayList<IRStm>();
+        for (File program : Benchmark.samples())
+            for (Fragment f : Benchmark.translate(program))
+                if (f instanceof ProcFragment)
+                    bodies.add(((ProcFragment) f).getBody());
+        IRStm[] samples = bodies.toArray(new IRStm[bodies.size()]);
+        System.out.printf("%-24s", samples.length + " sample bodies");
+        time(Canon::linearize, samples);
+        time(Linearizer::linearize, samples);
+        System.out.println();
+
+        for (int n : DEPTHS) {
+            DeepIR ir = new DeepIR(n);
+            time("right SEQs " + n, ir.rightSeqs(n));
+            time("left SEQs " + n, ir.leftSeqs(n));
+            time("if chain " + n, ir.ifChain(n));
+            time("long sum " + n, ir.longSum(n));
+            time("nested calls " + n, ir.nestedCalls(n));
+            time("random " + n, ir.random(n));
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "CanonBenchmark", 1L << 28);
+        t.start();
+        t.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+}
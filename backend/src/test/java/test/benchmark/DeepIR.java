@@ -0,0 +1,221 @@
+package test.benchmark;
+
+import java.util.Random;
+
+import ir.temp.Label;
+import ir.temp.Temp;
+import ir.tree.BINOP.Op;
+import ir.tree.CJUMP.RelOp;
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+import ir.tree.SEQ;
+import util.List;
+
+import static ir.tree.IR.*;
+
+/**
+ * Makes pathologically deep IR trees, of the kinds that long straight-line
+ * methods and long if-else chains translate to, and random ones. The trees
+ * are built bottom up, in loops, so depth n takes no more stack than depth
+ * 1.
+ * <p>
+ * Each tree uses a few Temps and Labels of its own, made before it is built.
+ */
+public class DeepIR {
+
+    private final Random random;
+    private final Temp[] temps = { new Temp(), new Temp(), new Temp(), new Temp() };
+    private final Label f = Label.generate("f");
+    private final Label g = Label.generate("g");
+
+    public DeepIR(long seed) {
+        random = new Random(seed);
+    }
+
+    private IRExp temp(int i) {
+        return TEMP(temps[i % temps.length]);
+    }
+
+    /**
+     * n statements of a long method, in a SEQ that nests to the right (as
+     * IR.SEQ makes them).
+     */
+    public IRStm rightSeqs(int n) {
+        IRStm s = statement(n - 1);
+        for (int i = n - 2; i >= 0; i--)
+            s = new SEQ(statement(i), s);
+        return s;
+    }
+
+    /**
+     * n statements of a long method, in a SEQ that nests to the left (as a
+     * translator that appends each statement to the ones before makes them).
+     */
+    public IRStm leftSeqs(int n) {
+        IRStm s = statement(0);
+        for (int i = 1; i < n; i++)
+            s = new SEQ(s, statement(i));
+        return s;
+    }
+
+    private IRStm statement(int i) {
+        switch (i % 4) {
+        case 0:
+            return MOVE(temp(i), PLUS(temp(i + 1), CONST(i)));
+        case 1:
+            return MOVE(MEM(PLUS(temp(i), 8)), temp(i + 2));
+        case 2:
+            return MOVE(temp(i), CALL(f, temp(i + 1), CONST(i)));
+        default:
+            return EXP(CALL(g, MEM(temp(i)), CALL(f, temp(i + 3))));
+        }
+    }
+
+    /**
+     * if (x < 0) a = 0; else if (x < 1) a = 1; else ... with n conditions.
+     */
+    public IRStm ifChain(int n) {
+        IRStm s = MOVE(temp(1), CONST(n));
+        for (int i = n - 1; i >= 0; i--) {
+            Label t = Label.gen();
+            Label e = Label.gen();
+            Label join = Label.gen();
+            s = SEQ(CJUMP(RelOp.LT, temp(0), CONST(i), t, e),
+                    LABEL(t),
+                    MOVE(temp(1), CONST(i)),
+                    JUMP(join),
+                    LABEL(e),
+                    s,
+                    LABEL(join));
+        }
+        return s;
+    }
+
+    /**
+     * A sum of n terms, each a call or an ESEQ that changes a Temp the
+     * terms before read: the canonicalizer has to save each sum so far in a
+     * new Temp.
+     */
+    public IRStm longSum(int n) {
+        IRExp e = temp(0);
+        for (int i = 0; i < n; i++) {
+            IRExp term = i % 2 == 0
+                    ? CALL(f, CONST(i))
+                    : ESEQ(MOVE(temp(0), PLUS(temp(1), CONST(i))), temp(0));
+            e = PLUS(e, term);
+        }
+        return MOVE(temp(2), e);
+    }
+
+    /**
+     * f(f(...f(x)...)), n deep, with an ESEQ in every other argument.
+     */
+    public IRStm nestedCalls(int n) {
+        IRExp e = temp(0);
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0)
+                e = CALL(f, e, CONST(i));
+            else
+                e = CALL(f, ESEQ(MOVE(temp(1), e), temp(1)), temp(2));
+        }
+        return EXP(e);
+    }
+
+    /**
+     * A random tree with a spine of n nodes: each node of the spine has the
+     * one below it and some small random trees as children. (The spine is
+     * built from a statement and an expression, so each step uses one of
+     * them, or both and makes a new one.)
+     */
+    public IRStm random(int n) {
+        IRStm s = smallStm(2);
+        IRExp e = smallExp(2);
+        for (int i = 0; i < n; i++) {
+            switch (random.nextInt(12)) {
+            case 0:
+                s = new SEQ(s, smallStm(2));
+                break;
+            case 1:
+                s = new SEQ(smallStm(2), s);
+                break;
+            case 2:
+                s = MOVE(temp(random.nextInt(4)), ESEQ(s, e));
+                e = smallExp(1);
+                break;
+            case 3:
+                s = MOVE(ESEQ(s, MEM(smallExp(1))), e);
+                e = smallExp(1);
+                break;
+            case 4:
+                s = EXP(ESEQ(s, e));
+                e = smallExp(1);
+                break;
+            case 5:
+                e = ESEQ(s, e);
+                s = smallStm(1);
+                break;
+            case 6:
+                e = BINOP(Op.PLUS, e, smallExp(2));
+                break;
+            case 7:
+                e = BINOP(Op.MINUS, smallExp(2), e);
+                break;
+            case 8:
+                e = MEM(e);
+                break;
+            case 9:
+                e = CALL(f, List.list(smallExp(1), e, smallExp(1)));
+                break;
+            case 10:
+                s = new SEQ(MOVE(MEM(e), smallExp(2)), s);
+                e = smallExp(1);
+                break;
+            default:
+                s = new SEQ(s, CJUMP(RelOp.NE, e, smallExp(1), Label.gen(), Label.gen()));
+                e = smallExp(1);
+                break;
+            }
+        }
+        return new SEQ(s, MOVE(temp(0), e));
+    }
+
+    private IRExp smallExp(int depth) {
+        int k = random.nextInt(depth == 0 ? 3 : 8);
+        switch (k) {
+        case 0:
+            return CONST(random.nextInt(10));
+        case 1:
+            return NAME(g);
+        case 2:
+            return temp(random.nextInt(4));
+        case 3:
+        case 4:
+            return BINOP(Op.PLUS, smallExp(depth - 1), temp(random.nextInt(4)));
+        case 5:
+            return MEM(smallExp(depth - 1));
+        case 6:
+            return CALL(f, List.list(smallExp(depth - 1), smallExp(depth - 1)));
+        default:
+            return ESEQ(smallStm(depth - 1), smallExp(depth - 1));
+        }
+    }
+
+    private IRStm smallStm(int depth) {
+        int k = random.nextInt(depth == 0 ? 2 : 6);
+        switch (k) {
+        case 0:
+            return MOVE(temp(random.nextInt(4)), smallExp(depth));
+        case 1:
+            return EXP(CONST(random.nextInt(3)));
+        case 2:
+            return MOVE(MEM(smallExp(depth - 1)), smallExp(depth - 1));
+        case 3:
+            return EXP(CALL(f, List.list(smallExp(depth - 1))));
+        case 4:
+            return MOVE(temp(random.nextInt(4)), CALL(g, List.list(smallExp(depth - 1))));
+        default:
+            return new SEQ(smallStm(depth - 1), smallStm(depth - 1));
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package test.benchmark;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+import translate.Translator;
+
+/**
+ * Times the translation of synthetic MiniJava classes with hundreds of
+ * fields, and a method with as many locals, whose statements refer to both.
+ * The translator looks each name up in its environment (a FunTable) of
+ * formals and locals; a field is a name it doesn't find there.
+ */
+public class EnvBenchmark {
+
+    private static final int[] SIZES = { 100, 300, 1000 };
+    private static final int REPS = 10;
+
+    static String program(int n) {
+        StringBuilder p = new StringBuilder();
+        p.append("class Main {\n");
+        p.append("  public static void main(String[] a) {\n");
+        p.append("    System.out.println(new Big().run(1));\n");
+        p.append("  }\n");
+        p.append("}\n");
+        p.append("class Big {\n");
+        for (int i = 0; i < n; i++)
+            p.append("  int f").append(i).append(";\n");
+        p.append("  public int run(int x) {\n");
+        for (int i = 0; i < n; i++)
+            p.append("    int l").append(i).append(";\n");
+        for (int i = 0; i < n; i++) {
+            int j = (i * 7 + 3) % n;
+            p.append("    l").append(i).append(" = f").append(j).append(" + l").append(j).append(" + x;\n");
+            p.append("    f").append(i).append(" = l").append(i).append(";\n");
+        }
+        p.append("    return l0;\n");
+        p.append("  }\n");
+        p.append("}\n");
+        return p.toString();
+    }
+
+    public static void main(String[] args) {
+        for (int n : SIZES) {
+            String program = program(n);
+            Benchmark.Measurement m = Benchmark.measure(REPS, () -> {
+                try {
+                    Temp.newNumbering();
+                    Translator.translate(X86_64Frame.factory, program);
+                } catch (Exception e) {
+                    throw new Error(e);
+                }
+            });
+            System.out.printf("%4d fields, %4d locals: %s%n", n, n, m);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package test.benchmark;
+
+import ir.temp.Color;
+import ir.temp.Temp;
+
+import java.util.Map;
+
+import util.List;
+import util.graph.Graph;
+import util.graph.Node;
+
+import codegen.assem.A_OPER;
+import codegen.assem.Instr;
+
+import analysis.FlowGraph;
+import analysis.InterferenceGraph;
+import analysis.Liveness;
+
+/**
+ * Scaling benchmark for building interference graphs on synthetic straight
+ * line methods with thousands of temps. Each temp is defined once and used
+ * again WINDOW instructions later, so about WINDOW temps are live at any point.
+ * <p>
+ * Compares the list based {@link Graph} representation (which is what the
+ * interference graph used to be, with every edge added in both directions)
+ * against the bit matrix representation of {@link InterferenceGraph}, using
+ * the same liveness information.
+ */
+public class InterferenceGraphBenchmark {
+
+    private static final int WINDOW = 64;
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %10s %28s %28s%n", "temps", "edges", "util.graph.Graph", "InterferenceGraph");
+        for (int temps = 250; temps <= 8000; temps *= 2) {
+            final FlowGraph<Instr> fg = FlowGraph.build(method(temps));
+            final Liveness<Instr> live = Liveness.build(fg);
+            int reps = Math.max(1, 4000 / temps);
+            final int[] edges = new int[1];
+            Benchmark.Measurement list = Benchmark.measure(reps, () -> {
+                Graph<Temp> g = new Graph<Temp>();
+                for (Node<Instr> n : fg.nodes())
+                    for (Temp def : fg.def(n))
+                        for (Temp out : live.liveOut(n))
+                            if (!def.equals(out)) {
+                                g.addEdge(g.nodeFor(def), g.nodeFor(out));
+                                g.addEdge(g.nodeFor(out), g.nodeFor(def));
+                            }
+            });
+            Benchmark.Measurement matrix = Benchmark.measure(reps, () -> {
+                InterferenceGraph g = new SyntheticGraph();
+                int count = 0;
+                for (Node<Instr> n : fg.nodes())
+                    for (Temp def : fg.def(n))
+                        for (Temp out : live.liveOut(n))
+                            if (!def.equals(out)) {
+                                g.addEdge(g.nodeFor(def), g.nodeFor(out));
+                                count++;
+                            }
+                edges[0] = count;
+            });
+            System.out.printf("%8d %10d %28s %28s%n", temps, edges[0], list, matrix);
+        }
+    }
+
+    /**
+     * A method of n instructions, the i-th defining temp i from temp i - WINDOW.
+     */
+    private static List<Instr> method(int n) {
+        Temp[] t = new Temp[n];
+        List<Instr> body = List.empty();
+        for (int i = 0; i < n; i++) {
+            t[i] = new Temp();
+            List<Temp> use = i >= WINDOW ? List.list(t[i - WINDOW]) : List.<Temp>list();
+            body.add(new A_OPER("op `d0", List.list(t[i]), use));
+        }
+        List<Temp> sink = List.empty();
+        for (int i = Math.max(0, n - WINDOW); i < n; i++)
+            sink.add(t[i]);
+        body.add(new A_OPER("# sink", List.<Temp>list(), sink));
+        return body;
+    }
+
+    private static class SyntheticGraph extends InterferenceGraph {
+        @Override
+        public List<Move> moves() {
+            return List.empty();
+        }
+
+        @Override
+        public String dotString(int K, Map<Temp, Color> xcolorMap) {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package test.benchmark;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.interp.Interp;
+import ir.interp.InterpMode;
+import ir.jvm.JvmProgram;
+import ir.temp.Temp;
+
+import java.io.File;
+
+import translate.Fragments;
+import translate.Translator;
+
+/**
+ * Runs the IR of every sample program, and of a longer running loop, in the
+ * IR interpreter, walking the trace scheduled IR, compiled to closures,
+ * compiled to closures over tagged words, and compiled to JVM bytecode, and
+ * reports the time and allocation per run of each (including the
+ * compilation). For the loop, it also reports the time of the bytecode
+ * without compiling it again for every run. Argument: the number of runs of
+ * each program (default 100).
+ */
+public class InterpBenchmark {
+
+    private static final InterpMode[] MODES = {InterpMode.TRACE_SCHEDULE, InterpMode.COMPILED, InterpMode.TAGGED, InterpMode.JVM};
+
+    private static final String LOOP =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Loop().run(20000));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Loop {\n" +
+            "  int[] data; int k;\n" +
+            "  public int run(int n) {\n" +
+            "    int i; int sum;\n" +
+            "    data = new int[16];\n" +
+            "    i = 0; sum = 0;\n" +
+            "    while (i < n) { sum = sum + this.step(i); i = i + 1; }\n" +
+            "    return sum;\n" +
+            "  }\n" +
+            "  public int step(int i) {\n" +
+            "    if (k < 15) k = k + 1; else k = 0;\n" +
+            "    data[k] = data[k] + i;\n" +
+            "    return data[k] * 2 - i;\n" +
+            "  }\n" +
+            "}\n";
+
+    private static void run(Fragments program, InterpMode mode) {
+        try {
+            new Interp(program, mode).run();
+        } catch (Error e) {
+            // Samples that fail on purpose
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int reps = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        double[] total = new double[MODES.length];
+        for (File f : Benchmark.samples()) {
+            Fragments program = Benchmark.translate(f);
+            total = add(total, measure(f.getName(), program, reps));
+        }
+        summary("Samples", total);
+
+        Temp.newNumbering();
+        Fragments loopProgram = Translator.translate(X86_64Frame.factory, LOOP);
+        double[] loop = measure("loop", loopProgram, reps / 10 + 1);
+        summary("Loop", loop);
+        JvmProgram jvm = new JvmProgram(loopProgram);
+        System.out.println("Loop, bytecode compiled once: " + Benchmark.measure(reps / 10 + 1, jvm::run));
+    }
+
+    private static void summary(String name, double[] micros) {
+        StringBuilder line = new StringBuilder(name + ":");
+        for (int m = 0; m < MODES.length; m++) {
+            line.append(String.format(" %s %.1f us", MODES[m], micros[m]));
+            if (m > 0)
+                line.append(String.format(" (%.2fx)", micros[0] / micros[m]));
+        }
+        System.out.println(line);
+    }
+
+    private static double[] add(double[] a, double[] b) {
+        for (int i = 0; i < a.length; i++)
+            a[i] += b[i];
+        return a;
+    }
+
+    /**
+     * Print and return the time per run of program in each mode.
+     */
+    private static double[] measure(String name, Fragments program, int reps) {
+        double[] micros = new double[MODES.length];
+        // Linearise and trace schedule up front, so only running is measured
+        run(program, InterpMode.TRACE_SCHEDULE);
+        StringBuilder line = new StringBuilder(String.format("%-24s", name));
+        for (int m = 0; m < MODES.length; m++) {
+            InterpMode mode = MODES[m];
+            Benchmark.Measurement r = Benchmark.measure(reps, () -> run(program, mode));
+            micros[m] = r.micros;
+            line.append(String.format(" %s: %s", mode, r));
+        }
+        System.out.println(line);
+        return micros;
+    }
+
+}
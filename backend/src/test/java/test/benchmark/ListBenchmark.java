@@ -0,0 +1,56 @@
+package test.benchmark;
+
+import util.List;
+
+/**
+ * Times the functional operations of {@link List} on lists of 10^5 to 10^6
+ * elements, with each {@link List.Backing}: appending one element, and
+ * replacing, deleting and inserting before an element near the end, and in
+ * the middle. Reports the average time per operation.
+ */
+public class ListBenchmark {
+
+    private static final int[] SIZES = { 100000, 300000, 1000000 };
+    private static final int OPS = 50;
+
+    private interface Op {
+        List<Integer> apply(List<Integer> l, int n, int i);
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-8s %-8s %12s %12s %12s %12s %12s%n", "backing", "size",
+                "append", "replace", "delete", "insert", "delete mid");
+        for (int n : SIZES) {
+            for (List.Backing backing : List.Backing.values()) {
+                List.backing = backing;
+                List<Integer> l = List.empty();
+                for (int i = 0; i < n; i++)
+                    l.add(i);
+                System.out.printf("%-8s %-8d %9.1f us %9.1f us %9.1f us %9.1f us %9.1f us%n",
+                        backing, n,
+                        time(l, n, (list, size, i) -> list.append(List.list(size + i))),
+                        time(l, n, (list, size, i) -> list.replace(size - 1 - i, -i)),
+                        time(l, n, (list, size, i) -> list.delete(size - 1 - i)),
+                        time(l, n, (list, size, i) -> list.insertBefore(size - 1, -i)),
+                        time(l, n, (list, size, i) -> list.delete(size / 2 + i)));
+            }
+        }
+        List.backing = List.Backing.ARRAY;
+    }
+
+    /**
+     * Average time of OPS applications of op, each to the result of the
+     * last one (after as many to warm up).
+     */
+    private static double time(List<Integer> start, int n, Op op) {
+        List<Integer> l = start;
+        for (int i = 0; i < OPS; i++)
+            l = op.apply(l, n, i);
+        l = start;
+        long t = System.nanoTime();
+        for (int i = 0; i < OPS; i++)
+            l = op.apply(l, n, i);
+        return (System.nanoTime() - t) / 1000.0 / OPS;
+    }
+
+}
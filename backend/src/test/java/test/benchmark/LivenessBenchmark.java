@@ -0,0 +1,48 @@
+package test.benchmark;
+
+import java.io.File;
+
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.assem.Instr;
+
+import analysis.FlowGraph;
+import analysis.Liveness;
+import analysis.implementation.BitSetLiveness;
+import analysis.implementation.LivenessImplementation;
+
+/**
+ * Compares the time and allocation per procedure of the two liveness
+ * implementations on every program in the sample directory.
+ */
+public class LivenessBenchmark {
+
+    private static final int REPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-40s %6s %28s %28s%n", "procedure", "instrs", "ActiveSet", "BitSet");
+        for (File program : Benchmark.samples()) {
+            Assembly assembly = Benchmark.codegen(program);
+            for (AssemFragment frag : assembly) {
+                if (frag instanceof AssemProc) {
+                    AssemProc proc = (AssemProc) frag;
+                    final FlowGraph<Instr> fg = FlowGraph.build(proc.getBody());
+                    Benchmark.Measurement activeSet = Benchmark.measure(REPS, () -> force(new LivenessImplementation<Instr>(fg)));
+                    Benchmark.Measurement bitSet = Benchmark.measure(REPS, () -> force(new BitSetLiveness<Instr>(fg)));
+                    System.out.printf("%-40s %6d %28s %28s%n",
+                            program.getName() + ":" + proc.getLabel(), proc.getBody().size(), activeSet, bitSet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ask for every liveOut set, like the interference graph construction does.
+     */
+    private static void force(Liveness<Instr> live) {
+        for (util.graph.Node<Instr> n : live.g.nodes())
+            live.liveOut(n);
+    }
+
+}
@@ -0,0 +1,78 @@
+package test.benchmark;
+
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import util.List;
+
+import translate.Fragment;
+import translate.ProcFragment;
+
+import codegen.muncher.MunchMode;
+import codegen.muncher.Muncher;
+import codegen.muncher.MuncherRules;
+import codegen.x86_64.X86_64Muncher;
+
+/**
+ * Compares the two ways {@link MuncherRules} select rules, on the trace
+ * scheduled bodies of every program in the sample directory: time and
+ * allocation to munch all procedures of a program, allocation per IR node,
+ * and the number of instructions emitted.
+ * <p>
+ * Allocation includes the emitted instructions themselves (and their
+ * operand lists), so it can't go to zero.
+ */
+public class MunchBenchmark {
+
+    private static final int REPS = 100;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-24s %6s %6s %28s %8s %6s %28s %8s %6s%n",
+                "program", "stms", "nodes", "PRIORITY", "B/node", "instrs", "MIN_COST", "B/node", "instrs");
+        for (File program : Benchmark.samples()) {
+            final ArrayList<ProcFragment> procs = new ArrayList<ProcFragment>();
+            int stms = 0;
+            int nodes = 0;
+            for (Fragment frag : Benchmark.translate(program)) {
+                if (frag instanceof ProcFragment) {
+                    ProcFragment proc = (ProcFragment) frag;
+                    procs.add(proc);
+                    for (IRStm stm : proc.getTraceScheduledBody()) {
+                        stms++;
+                        nodes += 1 + size(stm.kids());
+                    }
+                }
+            }
+            System.out.printf("%-24s %6d %6d", program.getName(), stms, nodes);
+            for (MunchMode mode : MunchMode.values()) {
+                MuncherRules.mode = mode;
+                final int[] instrs = new int[1];
+                Benchmark.Measurement m = Benchmark.measure(REPS, () -> instrs[0] = munch(procs));
+                System.out.printf(" %28s %8.1f %6d", m, (double) m.bytes / nodes, instrs[0]);
+            }
+            System.out.println();
+        }
+    }
+
+    private static int size(List<IRExp> exps) {
+        int size = 0;
+        for (IRExp exp : exps)
+            size += 1 + size(exp.kids());
+        return size;
+    }
+
+    private static int munch(ArrayList<ProcFragment> procs) {
+        int instrs = 0;
+        for (ProcFragment proc : procs) {
+            Muncher m = new X86_64Muncher(proc.getFrame(), false);
+            for (IRStm stm : proc.getTraceScheduledBody())
+                m.munch(stm);
+            instrs += m.getInstructions().size();
+        }
+        return instrs;
+    }
+
+}
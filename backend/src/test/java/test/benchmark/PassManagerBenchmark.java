@@ -0,0 +1,66 @@
+package test.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import analysis.PassManager;
+import analysis.RegAlloc;
+import analysis.RegAllocMode;
+import driver.DoItAll;
+import ir.temp.Temp;
+
+/**
+ * Times compiling each sample program with {@link DoItAll#go(File)}, with
+ * and without {@link PassManager#caching}: once printing the flow graph,
+ * liveness and interference graph of each procedure before allocating its
+ * registers (so each stage asks for the analyses again), and once only
+ * allocating registers, with the {@link RegAllocMode#SPILLING} allocator
+ * (which asks for the interference graph twice per round).
+ */
+public class PassManagerBenchmark {
+
+    private static final int REPS = 5;
+
+    private static final String[] DUMPS = { "flow=verbose", "live=verbose", "interference=verbose", "register=verbose" };
+    private static final String[] REGISTER = { "register=" };
+
+    private static Benchmark.Measurement time(File program, String[] args, boolean caching) {
+        PassManager.caching = caching;
+        return Benchmark.measure(REPS, () -> {
+            Temp.newNumbering();
+            new DoItAll(args).go(program);
+        });
+    }
+
+    public static void main(String[] args) {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        stdout.printf("%-24s %-10s %29s %29s%n", "", "", "cached", "not cached");
+        double[] total = new double[4];
+        for (File program : Benchmark.samples()) {
+            RegAlloc.mode = RegAllocMode.COALESCING;
+            Benchmark.Measurement dumpsCached = time(program, DUMPS, true);
+            Benchmark.Measurement dumps = time(program, DUMPS, false);
+            RegAlloc.mode = RegAllocMode.SPILLING;
+            Benchmark.Measurement spillingCached = time(program, REGISTER, true);
+            Benchmark.Measurement spilling = time(program, REGISTER, false);
+            stdout.printf("%-24s %-10s %s %s%n", program.getName(), "dumps", dumpsCached, dumps);
+            stdout.printf("%-24s %-10s %s %s%n", "", "spilling", spillingCached, spilling);
+            total[0] += dumpsCached.micros;
+            total[1] += dumps.micros;
+            total[2] += spillingCached.micros;
+            total[3] += spilling.micros;
+        }
+        stdout.printf("%-24s %-10s %10.1f us %26.1f us%n", "total", "dumps", total[0], total[1]);
+        stdout.printf("%-24s %-10s %10.1f us %26.1f us%n", "", "spilling", total[2], total[3]);
+        RegAlloc.mode = RegAllocMode.COALESCING;
+        PassManager.caching = true;
+        System.setOut(stdout);
+    }
+
+}
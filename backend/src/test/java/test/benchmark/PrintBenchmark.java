@@ -0,0 +1,83 @@
+package test.benchmark;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import translate.Translator;
+import x86_64sim.Program;
+import x86_64sim.State;
+
+import codegen.Assembly;
+import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+import driver.Compiler;
+import driver.Runner;
+
+/**
+ * Prints a million integers (or the number given as argument) from a
+ * MiniJava program, compiled and run natively, and on the x86_64
+ * simulator, and reports the time each takes. The output is discarded.
+ */
+public class PrintBenchmark {
+
+    private static final String PROGRAM =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Print().run(%d));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Print {\n" +
+            "  public int run(int n) {\n" +
+            "    int i;\n" +
+            "    i = 0 - n;\n" +
+            "    while (i < n) { System.out.println(i * 4099); i = i + 2; }\n" +
+            "    return i;\n" +
+            "  }\n" +
+            "}\n";
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String program = String.format(PROGRAM, lines);
+
+        File assem = new File("printbench.s");
+        try {
+            new Compiler().compile(program, assem);
+            new Runner().run(assem);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                new ProcessBuilder("./printbench.exe")
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("native:    %8.1f ms%n", best / 1e6);
+        } finally {
+            new File("printbench.s").delete();
+            new File("printbench.o").delete();
+            new File("printbench.exe").delete();
+        }
+
+        Temp.newNumbering();
+        Assembly assembly = new CodeGenerator().apply(Translator.translate(X86_64Frame.factory, program));
+        RegAlloc.doit(assembly);
+        Program p = SimLowering.lower(assembly);
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            State s = new State(p);
+            s.out = discard;
+            s.run();
+            System.out.printf("simulator: %8.1f ms, %d instructions%n",
+                    (System.nanoTime() - start) / 1e6, s.instructionsExecuted);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package test.benchmark;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+import driver.Compiler;
+import util.Phase;
+import util.Profile;
+
+/**
+ * Times compiling each sample program with {@link Compiler}, without and
+ * with a {@link Profile} being recorded, to show what profiling costs. Then
+ * reports where the time and allocation of compiling all the samples goes,
+ * by phase ("self" numbers, so that the time of, say, liveness isn't also
+ * counted in that of register allocation).
+ */
+public class ProfileBenchmark {
+
+    private static final int REPS = 5;
+
+    private static Benchmark.Measurement time(File program, File assem, boolean profile) {
+        return Benchmark.measure(REPS, () -> {
+            if (profile)
+                Profile.start(false);
+            try {
+                new Compiler().compile(program, assem);
+            } catch (Exception e) {
+                throw new Error(e);
+            } finally {
+                Profile.stop();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        File assem = File.createTempFile("profile", ".s");
+        assem.deleteOnExit();
+        System.out.printf("%-24s %29s %29s%n", "", "off", "on");
+        double off = 0;
+        double on = 0;
+        Map<Phase, long[]> phases = new EnumMap<Phase, long[]>(Phase.class);
+        for (File program : Benchmark.samples()) {
+            Benchmark.Measurement without = time(program, assem, false);
+            Benchmark.Measurement with = time(program, assem, true);
+            System.out.printf("%-24s %s %s%n", program.getName(), without, with);
+            off += without.micros;
+            on += with.micros;
+
+            Profile.start(false);
+            new Compiler().compile(program, assem);
+            for (Profile.Span span : Profile.stop().getSpans()) {
+                long[] sums = phases.get(span.phase);
+                if (sums == null) {
+                    sums = new long[3];
+                    phases.put(span.phase, sums);
+                }
+                sums[0] += span.getSelfWallNanos();
+                sums[1] += span.getSelfCpuNanos();
+                sums[2] += span.getSelfAllocatedBytes();
+            }
+        }
+        System.out.printf("%-24s %10.1f us %26.1f us%n", "total", off, on);
+
+        System.out.println();
+        System.out.printf("%-24s %13s %13s %14s%n", "phase (one compile each)", "wall", "cpu", "allocated");
+        for (Map.Entry<Phase, long[]> e : phases.entrySet()) {
+            long[] sums = e.getValue();
+            System.out.printf("%-24s %10.1f ms %10.1f ms %12d B%n", e.getKey().key(),
+                    sums[0] / 1e6, sums[1] / 1e6, sums[2]);
+        }
+    }
+
+}
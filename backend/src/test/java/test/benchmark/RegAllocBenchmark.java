@@ -0,0 +1,75 @@
+package test.benchmark;
+
+import java.io.File;
+
+import x86_64sim.Sim;
+import x86_64sim.State;
+
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+import analysis.RegAllocMode;
+import analysis.implementation.CoalescingRegAlloc;
+import analysis.implementation.LinearScanRegAlloc;
+
+/**
+ * Compiles every sample with each register allocator and simulates the
+ * result. Reports the time spent in register allocation, static and dynamic
+ * instruction counts, the moves eliminated (coalescing allocator) and the
+ * temps spilled (coalescing and linear scan allocators).
+ */
+public class RegAllocBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        RegAllocMode saved = RegAlloc.mode;
+        System.out.printf("%-24s %-12s %10s %8s %10s %10s %8s%n", "program", "allocator", "alloc ms", "static", "dynamic", "moves", "spills");
+        try {
+            for (File program : Benchmark.samples()) {
+                for (RegAllocMode mode : RegAllocMode.values()) {
+                    RegAlloc.mode = mode;
+                    run(program, mode);
+                }
+            }
+        } finally {
+            RegAlloc.mode = saved;
+        }
+    }
+
+    private static void run(File program, RegAllocMode mode) throws Exception {
+        Assembly assembly = Benchmark.codegen(program);
+        int moves = 0;
+        int eliminated = 0;
+        int spills = -1;
+        long time = 0;
+        for (AssemFragment frag : assembly) {
+            if (frag instanceof AssemProc) {
+                long start = System.nanoTime();
+                RegAlloc alloc = RegAlloc.doit((AssemProc) frag);
+                time += System.nanoTime() - start;
+                if (alloc instanceof CoalescingRegAlloc) {
+                    CoalescingRegAlloc coalescing = (CoalescingRegAlloc) alloc;
+                    moves += coalescing.getMovesTotal();
+                    eliminated += coalescing.getMovesEliminated();
+                    spills = Math.max(spills, 0) + coalescing.getSpilled().size();
+                } else if (alloc instanceof LinearScanRegAlloc) {
+                    spills = Math.max(spills, 0) + ((LinearScanRegAlloc) alloc).getSpilled().size();
+                }
+            }
+        }
+        State state;
+        try {
+            state = Sim.ulate(SimLowering.lower(assembly), false);
+        } catch (Error e) {
+            System.out.printf("%-24s %-12s failed: %s%n", program.getName(), mode, e.getMessage());
+            return;
+        }
+        String moveStats = moves == 0 ? "-" : eliminated + "/" + moves;
+        System.out.printf("%-24s %-12s %10.2f %8d %10d %10s %8s%n", program.getName(), mode, time / 1e6,
+                state.p.countInstructions(), state.instructionsExecuted, moveStats,
+                spills < 0 ? "-" : String.valueOf(spills));
+    }
+
+}
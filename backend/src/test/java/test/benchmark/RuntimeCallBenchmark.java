@@ -0,0 +1,87 @@
+package test.benchmark;
+
+import java.io.File;
+
+import util.RunCommand;
+
+import codegen.x86_64.X86_64Muncher;
+import driver.Compiler;
+import driver.Runner;
+
+/**
+ * Compiles MiniJava programs that call the runtime many times (printing,
+ * and allocating without inline allocation), links them with and without
+ * the register saving trampolines, and reports the run time of the
+ * executables. Argument: the number of calls (default 2000000).
+ */
+public class RuntimeCallBenchmark {
+
+    private static final String PRINT =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Print().run(%d));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Print {\n" +
+            "  public int run(int n) {\n" +
+            "    int i;\n" +
+            "    i = 0;\n" +
+            "    while (i < n) { System.out.println(i); i = i + 1; }\n" +
+            "    return i;\n" +
+            "  }\n" +
+            "}\n";
+
+    private static final String ALLOC =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Alloc().run(%d));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Alloc {\n" +
+            "  public int run(int n) {\n" +
+            "    int i; int[] arr; Alloc o;\n" +
+            "    i = 0;\n" +
+            "    while (i < n) { o = new Alloc(); arr = new int[2]; i = i + 1; }\n" +
+            "    return i;\n" +
+            "  }\n" +
+            "}\n";
+
+    private static final int RUNS = 5;
+
+    private static void run(String name, String program) throws Exception {
+        File assem = new File("callbench.s");
+        try {
+            new Compiler().compile(program, assem);
+            for (boolean trampolines : new boolean[]{true, false}) {
+                Runner.trampolines = trampolines;
+                new Runner().run(assem);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < RUNS; i++) {
+                    long start = System.nanoTime();
+                    new RunCommand(new String[]{"./callbench.exe"}, true, true);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.printf("%-6s trampolines %-5b: %8.1f ms%n", name, trampolines, best / 1e6);
+            }
+        } finally {
+            new File("callbench.s").delete();
+            new File("callbench.o").delete();
+            new File("callbench.exe").delete();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        boolean savedInline = X86_64Muncher.inlineAllocation;
+        boolean savedTrampolines = Runner.trampolines;
+        try {
+            X86_64Muncher.inlineAllocation = false;
+            run("print", String.format(PRINT, calls));
+            run("alloc", String.format(ALLOC, calls / 2));
+        } finally {
+            X86_64Muncher.inlineAllocation = savedInline;
+            Runner.trampolines = savedTrampolines;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package test.benchmark;
+
+import java.io.File;
+
+import x86_64sim.Program;
+import x86_64sim.State;
+
+import codegen.Assembly;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+
+/**
+ * Runs every sample program (or the ones named on the command line) on the
+ * x86_64 simulator and reports the dynamic instruction count and simulated
+ * instructions per second, both for register allocated code and for the
+ * unallocated code (temps rather than registers) that DSimulate runs.
+ */
+public class SimBenchmark {
+
+    private static final int REPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-24s %10s %14s %10s %14s%n", "program", "dynamic", "allocated/s", "dynamic", "temps/s");
+        for (File program : Benchmark.samples()) {
+            if (args.length > 0 && !selected(program, args))
+                continue;
+            Assembly temps = Benchmark.codegen(program);
+            Program unallocated = SimLowering.lower(temps);
+            Assembly assembly = Benchmark.codegen(program);
+            RegAlloc.doit(assembly);
+            Program allocated = SimLowering.lower(assembly);
+            System.out.printf("%-24s %s %s%n", program.getName(), run(allocated), run(unallocated));
+        }
+    }
+
+    private static boolean selected(File program, String[] names) {
+        for (String name : names)
+            if (program.getName().equals(name + ".java"))
+                return true;
+        return false;
+    }
+
+    private static String run(Program p) {
+        final long[] executed = new long[1];
+        Benchmark.Measurement m = Benchmark.measure(REPS, () -> {
+            State s = new State(p);
+            s.runForResult();
+            executed[0] = s.instructionsExecuted;
+        });
+        return String.format("%10d %14.0f", executed[0], executed[0] / m.micros * 1e6);
+    }
+
+}
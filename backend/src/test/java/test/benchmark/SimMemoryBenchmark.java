@@ -0,0 +1,73 @@
+package test.benchmark;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+
+import translate.Translator;
+import x86_64sim.Program;
+import x86_64sim.State;
+
+import codegen.Assembly;
+import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+
+/**
+ * Runs a MiniJava program on the x86_64 simulator that allocates a number
+ * of large arrays (touching every page of each), and reports the time and
+ * host memory used. Arguments: the number of arrays and their length
+ * (default 40 arrays of 100000 elements, about 32MB).
+ */
+public class SimMemoryBenchmark {
+
+    private static final String PROGRAM =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Alloc().run(%d, %d));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Alloc {\n" +
+            "  public int run(int n, int size) {\n" +
+            "    int i; int j; int sum; int[] arr;\n" +
+            "    i = 0; sum = 0;\n" +
+            "    while (i < n) {\n" +
+            "      arr = new int[size];\n" +
+            "      j = 0;\n" +
+            "      while (j < size) { arr[j] = i; j = j + 512; }\n" +
+            "      sum = sum + arr[0] + arr.length;\n" +
+            "      i = i + 1;\n" +
+            "    }\n" +
+            "    return sum;\n" +
+            "  }\n" +
+            "}\n";
+
+    public static void main(String[] args) throws Exception {
+        int arrays = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        long bytes = (long) arrays * (length + 1) * 8;
+        if (bytes > State.heapSize)
+            State.heapSize = bytes;
+
+        Temp.newNumbering();
+        Assembly assembly = new CodeGenerator().apply(
+                Translator.translate(X86_64Frame.factory, String.format(PROGRAM, arrays, length)));
+        RegAlloc.doit(assembly);
+        Program p = SimLowering.lower(assembly);
+
+        for (int i = 0; i < 5; i++) {
+            Runtime rt = Runtime.getRuntime();
+            System.gc();
+            long used = rt.totalMemory() - rt.freeMemory();
+            long start = System.nanoTime();
+            State s = new State(p);
+            s.runForResult();
+            long time = System.nanoTime() - start;
+            long after = rt.totalMemory() - rt.freeMemory();
+            System.out.printf("%d arrays, %.1f MB simulated: %8.1f ms, %d instructions, heap pages up to 0x%x, ~%.1f MB host, output %s",
+                    arrays, bytes / 1e6, time / 1e6, s.instructionsExecuted, s.ram.getMaxHeap(),
+                    (after - used) / 1e6, s.result);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package test.benchmark;
+
+import java.io.File;
+
+import x86_64sim.Program;
+import x86_64sim.parser.SimParser;
+
+import codegen.Assembly;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+
+/**
+ * Compares the two ways of getting an x86_64sim {@link Program} for every
+ * register allocated sample program: printing the assembly and parsing it
+ * back, and lowering the assembly directly with {@link SimLowering}. Also
+ * checks that both give the same program.
+ */
+public class SimSetupBenchmark {
+
+    private static final int REPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-24s %8s %28s %28s%n", "program", "instrs", "text + parse", "lowering");
+        double text = 0;
+        double direct = 0;
+        for (File program : Benchmark.samples()) {
+            final Assembly assembly = Benchmark.codegen(program);
+            RegAlloc.doit(assembly);
+            Program parsed = SimParser.parse(assembly.toString());
+            Program lowered = SimLowering.lower(assembly);
+            if (!parsed.dump().equals(lowered.dump()))
+                throw new Error("Lowering of " + program.getName() + " differs from parsing:\n" + lowered.dump());
+            Benchmark.Measurement t = Benchmark.measure(REPS, () -> SimParser.parse(assembly.toString()));
+            Benchmark.Measurement d = Benchmark.measure(REPS, () -> SimLowering.lower(assembly));
+            text += t.micros;
+            direct += d.micros;
+            System.out.printf("%-24s %8d %28s %28s%n", program.getName(), lowered.countInstructions(), t, d);
+        }
+        System.out.printf("%-24s %8s %25.1f us %25.1f us%n", "total", "", text, direct);
+    }
+
+}
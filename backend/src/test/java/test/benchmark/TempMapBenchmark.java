@@ -0,0 +1,85 @@
+package test.benchmark;
+
+import ir.temp.Temp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import util.IdMap;
+
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.assem.Instr;
+
+import analysis.FlowGraph;
+import analysis.InterferenceGraph;
+
+/**
+ * Microbenchmark for the map heavy parts of the backend.
+ * <p>
+ * The first three columns replay the Temp references of every instruction
+ * of a program against a map from Temp to a use count, the way the
+ * analyses build their side tables: keyed by Temp name (which is what a
+ * HashMap keyed by Temp used to cost, when Temps were compared by name), by
+ * Temp identity, and by Temp id in an {@link IdMap}. The last column is the
+ * time to build the interference graphs of all procedures of the program.
+ */
+public class TempMapBenchmark {
+
+    private static final int REPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-24s %6s %26s %26s %26s %26s%n",
+                "program", "refs", "HashMap<name>", "HashMap<Temp>", "IdMap<Temp>", "interference");
+        for (File program : Benchmark.samples()) {
+            Assembly assembly = Benchmark.codegen(program);
+            final ArrayList<Temp> refs = new ArrayList<Temp>();
+            final ArrayList<AssemProc> procs = new ArrayList<AssemProc>();
+            for (AssemFragment frag : assembly) {
+                if (frag instanceof AssemProc) {
+                    AssemProc proc = (AssemProc) frag;
+                    procs.add(proc);
+                    for (Instr instr : proc.getBody()) {
+                        for (Temp t : instr.use())
+                            refs.add(t);
+                        for (Temp t : instr.def())
+                            refs.add(t);
+                    }
+                }
+            }
+            Benchmark.Measurement byName = Benchmark.measure(REPS, () -> {
+                Map<String, Integer> m = new HashMap<String, Integer>();
+                for (Temp t : refs) {
+                    Integer count = m.get(t.getName());
+                    m.put(t.getName(), count == null ? 1 : count + 1);
+                }
+            });
+            Benchmark.Measurement byIdentity = Benchmark.measure(REPS, () -> {
+                Map<Temp, Integer> m = new HashMap<Temp, Integer>();
+                for (Temp t : refs) {
+                    Integer count = m.get(t);
+                    m.put(t, count == null ? 1 : count + 1);
+                }
+            });
+            Benchmark.Measurement byId = Benchmark.measure(REPS, () -> {
+                IdMap<Temp, Integer> m = new IdMap<Temp, Integer>();
+                for (Temp t : refs) {
+                    Integer count = m.get(t);
+                    m.put(t, count == null ? 1 : count + 1);
+                }
+            });
+            Benchmark.Measurement interference = Benchmark.measure(REPS / 10, () -> {
+                for (AssemProc proc : procs) {
+                    InterferenceGraph ig = FlowGraph.build(proc.getBody()).getInterferenceGraph();
+                    ig.moves();
+                }
+            });
+            System.out.printf("%-24s %6d %26s %26s %26s %26s%n",
+                    program.getName(), refs.size(), byName, byIdentity, byId, interference);
+        }
+    }
+
+}
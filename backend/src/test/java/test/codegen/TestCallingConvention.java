@@ -0,0 +1,56 @@
+package test.codegen;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Translator;
+import util.List;
+import util.SampleCode;
+
+import codegen.AssemFragment;
+import codegen.AssemProc;
+import codegen.Assembly;
+import codegen.CodeGenerator;
+import codegen.assem.Instr;
+
+/**
+ * The runtime's entry points are plain C functions (see runtime.c), so
+ * every call the code generator emits must treat all the registers that
+ * the System V calling convention lets a function clobber as defined by
+ * the call. Whether the stack is aligned at calls to the runtime is checked
+ * by the x86_64 simulator, on every run.
+ */
+public class TestCallingConvention {
+
+    private static final String[] SYSV_CALLER_SAVED = {
+            "%rax", "%rcx", "%rdx", "%rsi", "%rdi", "%r8", "%r9", "%r10", "%r11"
+    };
+
+    @Test
+    public void testCallsClobberCallerSaved() throws Exception {
+        int calls = 0;
+        for (File program : SampleCode.sampleFiles("java")) {
+            Temp.newNumbering();
+            Assembly assembly = new CodeGenerator().apply(Translator.translate(X86_64Frame.factory, program));
+            for (AssemFragment fragment : assembly) {
+                if (!(fragment instanceof AssemProc))
+                    continue;
+                for (Instr instr : ((AssemProc) fragment).getBody()) {
+                    if (!instr.assem.startsWith("call"))
+                        continue;
+                    calls++;
+                    List<Temp> defs = instr.def();
+                    for (String reg : SYSV_CALLER_SAVED)
+                        Assertions.assertTrue(defs.contains(Temp.get(reg)),
+                                program.getName() + ": " + instr.assem + " doesn't clobber " + reg);
+                }
+            }
+        }
+        Assertions.assertTrue(calls > 0);
+    }
+
+}
@@ -0,0 +1,129 @@
+package test.codegen;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Temp;
+
+import java.io.File;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Fragments;
+import translate.Translator;
+import util.GcMode;
+import util.SampleCode;
+import util.Utils;
+import x86_64sim.State;
+
+import codegen.Assembly;
+import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+
+/**
+ * Runs compiled programs on the x86_64 simulator with a heap that is much
+ * smaller than the total they allocate, so that they only finish if the
+ * garbage collector frees what is no longer reachable.
+ */
+public class TestGarbageCollection {
+
+    private static final long SMALL_HEAP = 64 << 10;
+
+    /**
+     * Builds a list that stays live and, each round, another one that
+     * becomes garbage. Every node also points to an array.
+     */
+    private static final String CHURN =
+            "class Main {\n" +
+            "  public static void main(String[] a) {\n" +
+            "    System.out.println(new Churn().run(200, 50));\n" +
+            "  }\n" +
+            "}\n" +
+            "class Churn {\n" +
+            "  public int run(int rounds, int n) {\n" +
+            "    int i; int total; Node keep; Node list;\n" +
+            "    keep = this.build(n);\n" +
+            "    i = 0; total = 0;\n" +
+            "    while (i < rounds) {\n" +
+            "      list = this.build(n);\n" +
+            "      total = total + list.sum() + keep.sum();\n" +
+            "      i = i + 1;\n" +
+            "    }\n" +
+            "    return total;\n" +
+            "  }\n" +
+            "  public Node build(int n) {\n" +
+            "    Node list;\n" +
+            "    list = new Node().end();\n" +
+            "    while (0 < n) { list = new Node().cons(n, list); n = n - 1; }\n" +
+            "    return list;\n" +
+            "  }\n" +
+            "}\n" +
+            "class Node {\n" +
+            "  Node next; int[] data; boolean last;\n" +
+            "  public Node end() { last = true; return this; }\n" +
+            "  public Node cons(int v, Node n) {\n" +
+            "    next = n; data = new int[4]; data[3] = v; last = false;\n" +
+            "    return this;\n" +
+            "  }\n" +
+            "  public int sum() {\n" +
+            "    int s;\n" +
+            "    if (last) s = 0; else s = data[3] + next.sum();\n" +
+            "    return s;\n" +
+            "  }\n" +
+            "}\n";
+
+    private final long savedHeap = State.heapSize;
+    private final GcMode savedMode = State.gcMode;
+
+    @AfterEach
+    public void restore() {
+        State.heapSize = savedHeap;
+        State.gcMode = savedMode;
+    }
+
+    private static State run(Fragments fragments) {
+        Assembly assembly = new CodeGenerator().apply(fragments);
+        RegAlloc.doit(assembly);
+        return new State(SimLowering.lower(assembly)).runForResult();
+    }
+
+    private static State run(String program) throws Exception {
+        Temp.newNumbering();
+        return run(Translator.translate(X86_64Frame.factory, program));
+    }
+
+    @Test
+    public void testChurn() throws Exception {
+        State.heapSize = SMALL_HEAP;
+        State.gcMode = GcMode.MARK_SWEEP;
+        State s = run(CHURN);
+        Assertions.assertEquals(200 * 50 * 51 + "\n", s.result);
+        Assertions.assertTrue(s.getGcCount() > 0);
+        Assertions.assertTrue(s.getGcPauseInstructions() > 0);
+        // At least the list that is kept: 50 nodes of 3 words, each with a 5 word array
+        Assertions.assertTrue(s.getGcLiveBytes() >= 50 * 8 * 8, "live bytes " + s.getGcLiveBytes());
+        Assertions.assertTrue(s.getGcLiveBytes() < SMALL_HEAP);
+    }
+
+    @Test
+    public void testChurnWithoutCollector() throws Exception {
+        State.heapSize = SMALL_HEAP;
+        State.gcMode = GcMode.NONE;
+        State s = run(CHURN);
+        Assertions.assertTrue(s.result.startsWith("Out of heap memory"), s.result);
+        Assertions.assertEquals(0, s.getGcCount());
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        State.heapSize = 4 << 10;
+        State.gcMode = GcMode.MARK_SWEEP;
+        for (File program : SampleCode.sampleFiles("java")) {
+            Temp.newNumbering();
+            State s = run(Translator.translate(X86_64Frame.factory, program));
+            Assertions.assertEquals(Utils.getExpected(program), s.result, program.getName());
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package test.codegen;
+
+import ir.temp.Temp;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Translator;
+import util.SampleCode;
+import x86_64sim.Sim;
+
+import codegen.Assembly;
+import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
+
+import analysis.RegAlloc;
+import analysis.RegAllocMode;
+
+/**
+ * Runs the TestSimulateFinal tests with the iterated register coalescing
+ * allocator, and checks that its code runs fewer instructions than that of
+ * the simple spilling allocator.
+ */
+public class TestSimulateCoalescing extends TestSimulateFinal {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.COALESCING;
+    }
+
+    private long instructionsExecuted(File program, RegAllocMode mode) throws Exception {
+        Temp.newNumbering();
+        Assembly assembly = new CodeGenerator().apply(Translator.translate(architecture, program));
+        RegAlloc.doit(assembly, mode);
+        return Sim.ulate(SimLowering.lower(assembly), false).instructionsExecuted;
+    }
+
+    @Test
+    public void testFewerInstructionsThanSpilling() throws Exception {
+        File factorial = new File(SampleCode.sample_dir, "Factorial.java");
+        long coalescing = instructionsExecuted(factorial, RegAllocMode.COALESCING);
+        long spilling = instructionsExecuted(factorial, RegAllocMode.SPILLING);
+        Assertions.assertTrue(coalescing < spilling, coalescing + " >= " + spilling);
+    }
+
+}
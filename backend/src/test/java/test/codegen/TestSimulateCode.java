@@ -13,7 +13,9 @@ import util.Utils;
 import x86_64sim.Sim;
 import x86_64sim.State;
 
+import codegen.Assembly;
 import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
 
 
 /**
@@ -69,17 +71,17 @@ public class TestSimulateCode extends TestTranslate {
 
     protected String test(Fragments ir_fragments) {
         CodeGenerator cogen = new CodeGenerator();
-        String program = cogen.apply(ir_fragments).toString();
+        Assembly assembly = cogen.apply(ir_fragments);
         String result = "";
         State state = null;
         try {
-            state = Sim.ulate(program, true);
+            state = Sim.ulate(SimLowering.lower(assembly), true);
         } catch (Error e) {
             result = e.getMessage();
             e.printStackTrace();
         }
         System.out.println("Program:");
-        System.out.print(program);
+        System.out.print(assembly);
         System.out.println("Output:");
         System.out.print(result);
         return state.result;
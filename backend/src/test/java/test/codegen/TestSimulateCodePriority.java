@@ -0,0 +1,28 @@
+package test.codegen;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import codegen.muncher.MunchMode;
+import codegen.muncher.MuncherRules;
+
+/**
+ * Runs the TestSimulateCode tests again, with the muncher applying the
+ * first matching rule (maximal munch) instead of a minimum cost tiling.
+ */
+public class TestSimulateCodePriority extends TestSimulateCode {
+
+    private MunchMode saved;
+
+    @BeforeEach
+    public void usePriority() {
+        saved = MuncherRules.mode;
+        MuncherRules.mode = MunchMode.PRIORITY;
+    }
+
+    @AfterEach
+    public void restoreMode() {
+        MuncherRules.mode = saved;
+    }
+
+}
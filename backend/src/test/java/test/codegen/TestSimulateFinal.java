@@ -10,13 +10,16 @@ import test.translate.TestTranslate;
 import translate.Fragments;
 import typechecker.TypeCheckerException;
 import util.Utils;
+import x86_64sim.Program;
 import x86_64sim.Sim;
 import x86_64sim.State;
 
 import codegen.Assembly;
 import codegen.CodeGenerator;
+import codegen.x86_64.SimLowering;
 
 import analysis.RegAlloc;
+import analysis.RegAllocMode;
 
 
 /**
@@ -51,6 +54,14 @@ public class TestSimulateFinal extends TestTranslate {
         return null; // means don't simulate IR code.
     }
 
+    /**
+     * Which register allocator to use. Override to run the same tests with
+     * another one.
+     */
+    protected RegAllocMode getRegAllocMode() {
+        return RegAlloc.mode;
+    }
+
     @Override
     protected boolean dumpIR() {
         return false;
@@ -78,8 +89,8 @@ public class TestSimulateFinal extends TestTranslate {
     protected String test(Fragments ir_fragments) {
         CodeGenerator cogen = new CodeGenerator();
         Assembly assembly = cogen.apply(ir_fragments);
-        RegAlloc.doit(assembly);
-        String program = assembly.toString();
+        RegAlloc.doit(assembly, getRegAllocMode());
+        Program program = lower(assembly);
         State state = null;
         String result;
         try {
@@ -90,7 +101,7 @@ public class TestSimulateFinal extends TestTranslate {
             e.printStackTrace();
         }
         System.out.println("Program:");
-        System.out.print(program);
+        System.out.print(assembly);
         System.out.println("Static: " + state.p.countInstructions() + " instructions generated");
         System.out.println("Dynamic: " + state.instructionsExecuted + " instructions executed");
         System.out.println("Output:");
@@ -98,6 +109,13 @@ public class TestSimulateFinal extends TestTranslate {
         return result;
     }
 
+    /**
+     * Turn the assembly into a program for the simulator.
+     */
+    protected Program lower(Assembly assembly) {
+        return SimLowering.lower(assembly);
+    }
+
     /**
      * This prints out a representation of the X86Muncher's pattern munching rules.
      * For debugging purposes.
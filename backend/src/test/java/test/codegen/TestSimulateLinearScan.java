@@ -0,0 +1,16 @@
+package test.codegen;
+
+import analysis.RegAllocMode;
+
+/**
+ * Runs the TestSimulateFinal tests with the linear scan allocator of fast
+ * compile mode.
+ */
+public class TestSimulateLinearScan extends TestSimulateFinal {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.LINEAR_SCAN;
+    }
+
+}
@@ -0,0 +1,16 @@
+package test.codegen;
+
+import analysis.RegAllocMode;
+
+/**
+ * Runs the TestSimulateFinal tests with the simple allocator that spills
+ * and tries again.
+ */
+public class TestSimulateSpilling extends TestSimulateFinal {
+
+    @Override
+    protected RegAllocMode getRegAllocMode() {
+        return RegAllocMode.SPILLING;
+    }
+
+}
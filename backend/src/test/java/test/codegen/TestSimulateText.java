@@ -0,0 +1,24 @@
+package test.codegen;
+
+import org.junit.jupiter.api.Assertions;
+import x86_64sim.Program;
+import x86_64sim.parser.SimParser;
+
+import codegen.Assembly;
+import codegen.x86_64.SimLowering;
+
+/**
+ * Simulates the assembly text that the compiler writes (what the assembler
+ * reads), parsed back by the simulator, rather than lowering the assembly
+ * directly. Also checks that both give the same program.
+ */
+public class TestSimulateText extends TestSimulateFinal {
+
+    @Override
+    protected Program lower(Assembly assembly) {
+        Program parsed = SimParser.parse(assembly.toString());
+        Assertions.assertEquals(parsed.dump(), SimLowering.lower(assembly).dump());
+        return parsed;
+    }
+
+}
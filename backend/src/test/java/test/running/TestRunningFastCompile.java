@@ -0,0 +1,15 @@
+package test.running;
+
+import driver.Compiler;
+
+/**
+ * Runs all the TestRunning programs again, compiled in fast compile mode
+ * (which allocates registers by linear scan).
+ */
+public class TestRunningFastCompile extends TestRunning {
+
+    public TestRunningFastCompile() {
+        compiler = new Compiler(true);
+    }
+
+}
@@ -0,0 +1,59 @@
+package test.running;
+
+import java.io.File;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.RunCommand;
+import util.Utils;
+
+import driver.Runner;
+import driver.RuntimeMode;
+
+/**
+ * Runs all the TestRunning programs again, linked with the garbage
+ * collected runtime (gcruntime.o), and then the programs in sample/gc,
+ * which allocate far more than fits in memory, and the runtime's own C
+ * stress test.
+ */
+public class TestRunningGc extends TestRunning {
+
+    private RuntimeMode saved;
+
+    @BeforeEach
+    public void useGcRuntime() {
+        saved = Runner.mode;
+        Runner.mode = RuntimeMode.GC;
+    }
+
+    @AfterEach
+    public void restoreRuntime() {
+        Runner.mode = saved;
+    }
+
+    private void testStress(String name) throws Exception {
+        File program = new File("sample/gc/" + name + ".java");
+        test(Utils.getExpected(program), program);
+    }
+
+    @Test
+    public void arrayChurn() throws Exception {
+        testStress("ArrayChurn");
+    }
+
+    @Test
+    public void listChurn() throws Exception {
+        testStress("ListChurn");
+    }
+
+    @Test
+    public void runtimeStressTest() throws Exception {
+        RunCommand make = new RunCommand(new String[]{"make", "-s", "-C", "runtime", "gctest.exe"}, true, true);
+        Assertions.assertEquals(0, make.getReturnCode(), make.getErrorOutput());
+        RunCommand test = new RunCommand(new String[]{"runtime/gctest.exe"}, true, true);
+        Assertions.assertEquals("ok\n", test.getOutput(), test.getErrorOutput());
+    }
+
+}
@@ -0,0 +1,122 @@
+package test.translate;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ir.canon.Canon;
+import ir.canon.Linearizer;
+import ir.temp.Temp;
+import ir.tree.IRStm;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import test.benchmark.DeepIR;
+import util.List;
+
+import static ir.tree.IR.*;
+
+/**
+ * Checks that the {@link Linearizer} gives exactly the same result as the
+ * book's algorithm in {@link Canon#linearize}: the same statements in the
+ * same order, with the same new Temps.
+ * <p>
+ * The book's algorithm recurses over the tree (and so does printing it), so
+ * the comparisons run in a thread with a big stack.
+ */
+public class TestLinearizer {
+
+    private static final Pattern tempName = Pattern.compile("\\bt(\\d+)\\b");
+
+    /**
+     * The number in the name of the next new Temp.
+     */
+    private static int nextTempNumber() {
+        return Integer.parseInt(new Temp().toString().substring(1)) + 1;
+    }
+
+    /**
+     * The statements, one per line, with the Temps made from number first
+     * on renamed to count from 0.
+     */
+    private static String text(List<IRStm> stms, int first) {
+        StringBuilder text = new StringBuilder();
+        for (IRStm s : stms)
+            text.append(s.onOneLine()).append('\n');
+        Matcher m = tempName.matcher(text);
+        StringBuffer renamed = new StringBuffer();
+        while (m.find()) {
+            int n = Integer.parseInt(m.group(1));
+            m.appendReplacement(renamed, n < first ? m.group() : "new" + (n - first));
+        }
+        m.appendTail(renamed);
+        return renamed.toString();
+    }
+
+    private static void assertSameAsBook(IRStm s) {
+        int first = nextTempNumber();
+        String expected = text(Canon.linearize(s), first);
+        first = nextTempNumber();
+        String actual = text(Linearizer.linearize(s), first);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private static void withBigStack(Runnable test) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                test.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "TestLinearizer", 1L << 30);
+        t.start();
+        t.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    @Test
+    public void testSmallRandomTrees() throws Throwable {
+        withBigStack(() -> {
+            for (int seed = 0; seed < 500; seed++) {
+                DeepIR ir = new DeepIR(seed);
+                assertSameAsBook(ir.random(seed % 50));
+            }
+        });
+    }
+
+    @Test
+    public void testNops() {
+        assertSameAsBook(NOP);
+        assertSameAsBook(SEQ(EXP(CONST(1)), EXP(CONST(2))));
+        assertSameAsBook(SEQ(EXP(CONST(1)), MOVE(MEM(CONST(8)), CONST(2)), EXP(CONST(3))));
+    }
+
+    @Test
+    public void testDeepTrees() throws Throwable {
+        int n = 20000;
+        withBigStack(() -> {
+            DeepIR ir = new DeepIR(411);
+            assertSameAsBook(ir.rightSeqs(n));
+            assertSameAsBook(ir.leftSeqs(n));
+            assertSameAsBook(ir.ifChain(n));
+            assertSameAsBook(ir.longSum(n));
+            assertSameAsBook(ir.nestedCalls(n));
+            assertSameAsBook(ir.random(n));
+        });
+    }
+
+    /**
+     * Too deep for the book's algorithm with the default stack size.
+     */
+    @Test
+    public void testVeryDeepTrees() {
+        int n = 200000;
+        DeepIR ir = new DeepIR(411);
+        // Every fourth statement needs two MOVEs first
+        Assertions.assertEquals(n / 4 * 6, Linearizer.linearize(ir.rightSeqs(n)).size());
+        Assertions.assertEquals(n / 4 * 6, Linearizer.linearize(ir.leftSeqs(n)).size());
+        Assertions.assertEquals(6 * n + 1, Linearizer.linearize(ir.ifChain(n)).size());
+        Assertions.assertThrows(StackOverflowError.class, () -> Canon.linearize(ir.leftSeqs(n)));
+    }
+
+}
@@ -5,6 +5,8 @@ import ast.Expression;
 import ast.Program;
 import parser.JCCMinijavaParser;
 import parser.ParseException;
+import util.Phase;
+import util.Profile;
 
 import java.io.*;
 
@@ -43,8 +45,13 @@ public class Parser {
      * caller's responsibility to close the Reader.
      */
     private static Program parse(Reader input) throws ParseException {
-        JCCMinijavaParser parser = new JCCMinijavaParser(input);
-        return parser.Program();
+        Profile.Span span = Profile.begin(Phase.PARSE, null);
+        try {
+            JCCMinijavaParser parser = new JCCMinijavaParser(input);
+            return parser.Program();
+        } finally {
+            Profile.end(span);
+        }
     }
 
     /**
@@ -9,6 +9,8 @@ import typechecker.implementation.ClassEntry;
 import typechecker.implementation.TypeCheckerImplementation;
 import util.ImpTable;
 import util.Pair;
+import util.Phase;
+import util.Profile;
 
 public class TranslateImplementation {
 
@@ -24,8 +26,10 @@ public class TranslateImplementation {
     }
 
     public Fragments translate() {
+        Profile.Span span = Profile.begin(Phase.TRANSLATE, null);
         TranslateVisitor vis = new TranslateVisitor(table, frameFactory);
         program.accept(vis);
+        Profile.end(span);
         return vis.getResult();
     }
 
@@ -7,6 +7,8 @@ import typechecker.TypeChecked;
 import typechecker.TypeCheckerException;
 import util.ImpTable;
 import util.Pair;
+import util.Phase;
+import util.Profile;
 
 
 public class TypeCheckerImplementation extends TypeChecked {
@@ -31,12 +33,17 @@ public class TypeCheckerImplementation extends TypeChecked {
     }
 
     public TypeChecked typeCheck() throws TypeCheckerException {
-        //Phase 1:
-        symbolTable = buildTable();
-        //Phase 2:
-        program.accept(new TypeCheckVisitor(symbolTable, errors));
-        //Th	row an exception if there were errors:
-        errors.close();
+        Profile.Span span = Profile.begin(Phase.TYPECHECK, null);
+        try {
+            //Phase 1:
+            symbolTable = buildTable();
+            //Phase 2:
+            program.accept(new TypeCheckVisitor(symbolTable, errors));
+            //Th	row an exception if there were errors:
+            errors.close();
+        } finally {
+            Profile.end(span);
+        }
         // If there was no exception:
         return this;
     }
@@ -0,0 +1,17 @@
+package test.translate;
+
+import ir.interp.InterpMode;
+
+/**
+ * This runs all the same tests as the TestTranslate test suite, with the IR
+ * of each method compiled to closures before it is run (see
+ * {@link ir.interp.CompiledProc}).
+ */
+public class TestCompiledInterp extends TestInterpTranslate {
+
+    @Override
+    protected InterpMode getSimulationMode() {
+        return InterpMode.COMPILED;
+    }
+
+}
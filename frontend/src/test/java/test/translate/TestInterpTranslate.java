@@ -0,0 +1,45 @@
+package test.translate;
+
+import ir.interp.Interp;
+import ir.interp.InterpMode;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Fragments;
+import translate.Translator;
+import util.SampleCode;
+
+/**
+ * The TestTranslate tests for an interpreter mode that compiles the trace
+ * scheduled code before running it. Besides those, it checks that, for
+ * every sample program, the compiled code prints exactly what the trace
+ * scheduled code prints, and fails in the same way.
+ */
+public abstract class TestInterpTranslate extends TestTranslate {
+
+    /**
+     * Run a program in the given mode, and return what it printed, or how
+     * it failed.
+     */
+    protected static String run(Fragments program, InterpMode mode) {
+        try {
+            return new Interp(program, mode).run();
+        } catch (Error e) {
+            return "Error: " + e.getMessage();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return "Out of bounds: " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void testSameAsTraceSchedule() throws Exception {
+        for (File f : SampleCode.sampleFiles("java")) {
+            Fragments program = Translator.translate(architecture, f);
+            Assertions.assertEquals(run(program, InterpMode.TRACE_SCHEDULE),
+                    run(program, getSimulationMode()), f.getName());
+        }
+    }
+
+}
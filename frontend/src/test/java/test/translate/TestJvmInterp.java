@@ -0,0 +1,51 @@
+package test.translate;
+
+import ir.frame.Frame;
+import ir.interp.InterpMode;
+import ir.temp.Label;
+import ir.tree.BINOP;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.DataFragment;
+import translate.Fragments;
+import translate.ProcFragment;
+import translate.TranslatorLabels;
+import util.List;
+
+import static ir.tree.IR.*;
+
+/**
+ * This runs all the same tests as the TestTranslate test suite, with the IR
+ * compiled to JVM bytecode (see {@link ir.jvm.JvmProgram}).
+ */
+public class TestJvmInterp extends TestInterpTranslate {
+
+    @Override
+    protected InterpMode getSimulationMode() {
+        return InterpMode.JVM;
+    }
+
+    /**
+     * A CALL through a table of procedures in a data fragment (which the
+     * translator doesn't produce yet), with more arguments than registers.
+     */
+    @Test
+    public void testIndirectCall() throws Exception {
+        Frame callee = architecture.newFrame(Label.get("Callee"), 8);
+        Fragments program = new Fragments(architecture);
+        program.add(new ProcFragment(callee, callee.procEntryExit1(
+                MOVE(callee.RV(), BINOP(BINOP.Op.MINUS, callee.getFormals().get(0).exp(callee.FP()),
+                        callee.getFormals().get(7).exp(callee.FP()))))));
+        Label table = Label.get("Table");
+        program.add(new DataFragment(architecture, DATA(table, List.list(CONST(5), NAME(callee.getLabel())))));
+        Frame main = architecture.newFrame(TranslatorLabels.L_MAIN, 0);
+        program.add(new ProcFragment(main, main.procEntryExit1(EXP(CALL(TranslatorLabels.L_PRINT,
+                CALL(MEM(PLUS(NAME(table), architecture.wordSize())), List.list(
+                        CONST(50), CONST(1), CONST(2), CONST(3), CONST(4), CONST(5), CONST(6),
+                        MEM(NAME(table)))))))));
+        Assertions.assertEquals("45\n", run(program, InterpMode.TRACE_SCHEDULE));
+        Assertions.assertEquals("45\n", run(program, InterpMode.JVM));
+    }
+
+}
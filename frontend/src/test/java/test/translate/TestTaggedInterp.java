@@ -0,0 +1,48 @@
+package test.translate;
+
+import ir.interp.InterpMode;
+import ir.temp.Temp;
+import ir.tree.IRStm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import translate.Fragments;
+import translate.ProcFragment;
+import translate.TranslatorLabels;
+
+import static ir.tree.IR.*;
+
+/**
+ * This runs all the same tests as the TestTranslate test suite, with the IR
+ * of each method compiled to closures over tagged words (see
+ * {@link ir.interp.TaggedProc}).
+ * <p>
+ * It also checks that the tagged code still catches reads outside of an
+ * array.
+ */
+public class TestTaggedInterp extends TestInterpTranslate {
+
+    @Override
+    protected InterpMode getSimulationMode() {
+        return InterpMode.TAGGED;
+    }
+
+    /**
+     * IR that reads the element just past the end of an array (which the
+     * translator's bounds checks never let through).
+     */
+    @Test
+    public void testOutOfBounds() throws Exception {
+        Temp array = new Temp();
+        IRStm body = SEQ(
+                MOVE(array, CALL(TranslatorLabels.L_NEW_ARRAY, CONST(2))),
+                EXP(CALL(TranslatorLabels.L_PRINT, MEM(PLUS(TEMP(array), 2 * architecture.wordSize())))));
+        Fragments program = new Fragments(architecture);
+        program.add(new ProcFragment(architecture.newFrame(TranslatorLabels.L_MAIN, 0), body));
+        // The message of the exception depends on the JDK
+        String expected = run(program, InterpMode.TRACE_SCHEDULE);
+        Assertions.assertTrue(expected.startsWith("Out of bounds"), expected);
+        Assertions.assertEquals(expected, run(program, InterpMode.TAGGED));
+    }
+
+}
@@ -232,6 +232,11 @@ public class Canon {
         else return List.cons(s, l);
     }
 
+    /**
+     * The book's algorithm. It recurses over the tree, so a deep enough
+     * tree overflows the stack. The compiler uses {@link Linearizer}, which
+     * gives the same result without recursing.
+     */
     static public List<IRStm> linearize(IRStm s) {
         return linear(do_stm(s), nullStmList);
     }
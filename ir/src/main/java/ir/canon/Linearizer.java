@@ -0,0 +1,315 @@
+package ir.canon;
+
+import java.util.Arrays;
+
+import util.List;
+import ir.temp.Temp;
+import ir.tree.CALL;
+import ir.tree.CONST;
+import ir.tree.ESEQ;
+import ir.tree.EXP;
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+import ir.tree.MOVE;
+import ir.tree.NAME;
+import ir.tree.SEQ;
+import ir.tree.TEMP;
+
+/**
+ * Linearizes IR the same way as {@link Canon#linearize}: the result has the
+ * same statements, in the same order, and the new Temps are made in the same
+ * order (so they get the same names). But rather than recursing over the
+ * tree, it keeps the work still to do on an explicit stack, so it works on
+ * trees of any depth, and it appends the statements to an array instead of
+ * building SEQ, ESEQ and StmExpList nodes.
+ * <p>
+ * A few facts about the book's algorithm make this possible:
+ * <ul>
+ * <li>Statements come out in the order in which it reaches them, except for
+ * the MOVE that saves the value of an expression into a new Temp before
+ * the rest of the list of expressions it is in. Whether that MOVE is
+ * needed is only known once the rest of the list has been done, so we
+ * leave an empty slot for it in the array, and fill it in then.
+ * <li>The rest of a list commutes with an expression unless the
+ * expression is a NAME or CONST, or the rest produced any statement that
+ * isn't a nop.
+ * <li>Nops (EXP(CONST)) disappear, unless all statements are nops: then
+ * the result is the last one.
+ * </ul>
+ */
+public class Linearizer {
+
+    private static final List<IRExp> noKids = List.theEmpty();
+
+    // What there is to do, on the work stack:
+
+    /** Linearize the statement node. */
+    private static final int DO_STM = 0;
+    /** Linearize the expression node, and push its value. */
+    private static final int DO_EXP = 1;
+    /** Pop arg values, and output the statement node built from them. */
+    private static final int BUILD_STM = 2;
+    /** Pop arg values, and push the expression node built from them. */
+    private static final int BUILD_EXP = 3;
+    /**
+     * Pop arg values, move the CALL node built from them into the Temp
+     * aux, and push that Temp.
+     */
+    private static final int BUILD_CALL = 4;
+    /**
+     * Pop arg values, and output the MOVE node with its CALL built from
+     * them.
+     */
+    private static final int MOVE_CALL = 5;
+    /** Pop arg values, and output an EXP of the CALL node built from them. */
+    private static final int EXP_CALL = 6;
+    /**
+     * The value on top of the value stack is an element of a list that
+     * isn't the last one: make room for the MOVE that may have to save it.
+     */
+    private static final int SAVE = 7;
+    /**
+     * The rest of a list is done: save the value arg places below the top
+     * of the value stack in a new Temp, if the rest doesn't commute with it.
+     */
+    private static final int DECIDE = 8;
+
+    private int[] op = new int[64];
+    private Object[] node = new Object[64];
+    private Temp[] aux = new Temp[64];
+    private int[] arg = new int[64];
+    private int work;
+
+    /**
+     * Values of expressions, and for the ones that SAVE has seen, the slot
+     * in out for the MOVE that may save them, and the number of statements
+     * output before the rest of their list.
+     */
+    private IRExp[] value = new IRExp[64];
+    private int[] slot = new int[64];
+    private int[] outputBefore = new int[64];
+    private int values;
+
+    /**
+     * The statements, with null in the slots for MOVEs that weren't needed.
+     */
+    private IRStm[] out = new IRStm[64];
+    private int length;
+    private int statements;
+    private IRStm lastNop;
+
+    private IRExp[] elements = new IRExp[16];
+
+    private Linearizer() {
+    }
+
+    public static List<IRStm> linearize(IRStm s) {
+        return new Linearizer().run(s);
+    }
+
+    private List<IRStm> run(IRStm s) {
+        push(DO_STM, s, null, 0);
+        while (work > 0) {
+            work--;
+            Object n = node[work];
+            node[work] = null;
+            switch (op[work]) {
+            case DO_STM:
+                stm((IRStm) n);
+                break;
+            case DO_EXP:
+                exp((IRExp) n);
+                break;
+            case BUILD_STM:
+                output(((IRStm) n).build(pop(arg[work])));
+                break;
+            case BUILD_EXP:
+                pushValue(((IRExp) n).build(pop(arg[work])));
+                break;
+            case BUILD_CALL: {
+                Temp t = aux[work];
+                aux[work] = null;
+                output(new MOVE(new TEMP(t), ((CALL) n).build(pop(arg[work]))));
+                pushValue(new TEMP(t));
+                break;
+            }
+            case MOVE_CALL: {
+                MOVE m = (MOVE) n;
+                output(new MOVE(m.dst, m.src.build(pop(arg[work]))));
+                break;
+            }
+            case EXP_CALL:
+                output(new EXP(((CALL) n).build(pop(arg[work]))));
+                break;
+            case SAVE:
+                save();
+                break;
+            case DECIDE:
+                decide(values - arg[work]);
+                break;
+            default:
+                throw new Error("Unknown op " + op[work]);
+            }
+        }
+        if (statements == 0)
+            return List.list(lastNop);
+        IRStm[] result = new IRStm[statements];
+        for (int i = 0, j = 0; i < length; i++)
+            if (out[i] != null)
+                result[j++] = out[i];
+        return List.list(result);
+    }
+
+    private void stm(IRStm s) {
+        if (s instanceof SEQ) {
+            SEQ seq = (SEQ) s;
+            push(DO_STM, seq.right, null, 0);
+            push(DO_STM, seq.left, null, 0);
+        } else if (s instanceof MOVE) {
+            MOVE m = (MOVE) s;
+            if (m.dst instanceof TEMP && m.src instanceof CALL) {
+                List<IRExp> kids = m.src.kids();
+                push(MOVE_CALL, m, null, kids.size());
+                reorder(kids);
+            } else if (m.dst instanceof ESEQ) {
+                ESEQ dst = (ESEQ) m.dst;
+                push(DO_STM, new MOVE(dst.exp, m.src), null, 0);
+                push(DO_STM, dst.stm, null, 0);
+            } else {
+                reorder(s, BUILD_STM, null);
+            }
+        } else if (s instanceof EXP && ((EXP) s).exp instanceof CALL) {
+            CALL call = (CALL) ((EXP) s).exp;
+            List<IRExp> kids = call.kids();
+            push(EXP_CALL, call, null, kids.size());
+            reorder(kids);
+        } else {
+            reorder(s, BUILD_STM, null);
+        }
+    }
+
+    private void exp(IRExp e) {
+        if (e instanceof ESEQ) {
+            ESEQ eseq = (ESEQ) e;
+            push(DO_EXP, eseq.exp, null, 0);
+            push(DO_STM, eseq.stm, null, 0);
+        } else if (e instanceof CALL) {
+            reorder(e, BUILD_CALL, new Temp());
+        } else {
+            reorder(e, BUILD_EXP, null);
+        }
+    }
+
+    /**
+     * Linearize the kids of n, then build it (with the build op) from their
+     * values.
+     */
+    private void reorder(Object n, int build, Temp t) {
+        List<IRExp> kids = n instanceof IRStm ? ((IRStm) n).kids() : ((IRExp) n).kids();
+        if (kids.isEmpty() && build == BUILD_EXP) {
+            pushValue(((IRExp) n).build(noKids));
+            return;
+        }
+        push(build, n, t, kids.size());
+        reorder(kids);
+    }
+
+    /**
+     * Push the work to linearize a list of expressions, leaving their
+     * values on the value stack (in the same order).
+     */
+    private void reorder(List<IRExp> exps) {
+        int n = 0;
+        for (IRExp e : exps) {
+            if (n == elements.length)
+                elements = Arrays.copyOf(elements, 2 * n);
+            elements[n++] = e;
+        }
+        for (int i = 0; i < n - 1; i++)
+            push(DECIDE, null, null, n - i);
+        for (int i = n - 1; i >= 0; i--) {
+            if (i < n - 1)
+                push(SAVE, null, null, 0);
+            push(DO_EXP, elements[i], null, 0);
+            elements[i] = null;
+        }
+    }
+
+    private void save() {
+        int top = values - 1;
+        IRExp e = value[top];
+        if (e instanceof NAME || e instanceof CONST) {
+            slot[top] = -1;
+        } else {
+            slot[top] = length;
+            outputBefore[top] = statements;
+            append(null);
+        }
+    }
+
+    private void decide(int i) {
+        if (slot[i] >= 0 && statements > outputBefore[i]) {
+            Temp t = new Temp();
+            out[slot[i]] = new MOVE(new TEMP(t), value[i]);
+            statements++;
+            value[i] = new TEMP(t);
+        }
+    }
+
+    private void output(IRStm s) {
+        if (Canon.isNop(s)) {
+            lastNop = s;
+        } else {
+            append(s);
+            statements++;
+        }
+    }
+
+    private void append(IRStm s) {
+        if (length == out.length)
+            out = Arrays.copyOf(out, 2 * length);
+        out[length++] = s;
+    }
+
+    private void push(int what, Object n, Temp t, int a) {
+        if (work == op.length) {
+            op = Arrays.copyOf(op, 2 * work);
+            node = Arrays.copyOf(node, 2 * work);
+            aux = Arrays.copyOf(aux, 2 * work);
+            arg = Arrays.copyOf(arg, 2 * work);
+        }
+        op[work] = what;
+        node[work] = n;
+        aux[work] = t;
+        arg[work] = a;
+        work++;
+    }
+
+    private void pushValue(IRExp e) {
+        if (values == value.length) {
+            value = Arrays.copyOf(value, 2 * values);
+            slot = Arrays.copyOf(slot, 2 * values);
+            outputBefore = Arrays.copyOf(outputBefore, 2 * values);
+        }
+        value[values] = e;
+        slot[values] = -1;
+        values++;
+    }
+
+    /**
+     * The top n values, as a list (and take them off the stack). Like the
+     * book's, the list is made of conses, so the tail that CALL.build takes
+     * of it is free.
+     */
+    private List<IRExp> pop(int n) {
+        if (n == 0)
+            return noKids;
+        List<IRExp> kids = noKids;
+        for (int i = 0; i < n; i++) {
+            kids = List.cons(value[--values], kids);
+            value[values] = null;
+        }
+        return kids;
+    }
+
+}
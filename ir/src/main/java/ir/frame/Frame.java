@@ -1,6 +1,7 @@
 package ir.frame;
 
 import util.DefaultIndentable;
+import util.IdMap;
 import util.IndentingWriter;
 import util.List;
 import ir.interp.Interp;
@@ -77,6 +78,13 @@ public abstract class Frame extends DefaultIndentable {
      */
     public abstract X86_64SimFrame newSimFrame(Interp interp, List<Word> args);
 
+    /**
+     * Like {@link #newSimFrame(Interp, List)}, but the temps that have a slot
+     * in slots are kept in an array (used by compiled procedures, see
+     * {@link ir.interp.CompiledProc}).
+     */
+    public abstract X86_64SimFrame newSimFrame(Interp interp, List<Word> args, IdMap<Temp, Integer> slots);
+
     //////////////////////////////////////////////////////////////////////
     /// Chapter 9 additions: (for codegeneration phase)
     ///
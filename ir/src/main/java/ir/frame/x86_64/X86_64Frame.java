@@ -5,6 +5,7 @@ import static ir.tree.IR.SEQ;
 import static ir.tree.IR.TEMP;
 import static util.List.list;
 
+import util.IdMap;
 import util.IndentingWriter;
 import util.List;
 import ir.frame.Access;
@@ -41,24 +42,24 @@ import ir.tree.IRStm;
 
 public class X86_64Frame extends Frame {
 
-    public static final Temp RAX = new Temp("%rax");
-    static final Temp RBX = new Temp("%rbx");
-    static final Temp RCX = new Temp("%rcx");
-    public static final Temp RDX = new Temp("%rdx");
-    public static final Temp RSI = new Temp("%rsi");
-    public static final Temp RDI = new Temp("%rdi");
-
-    static final Temp RBP = new Temp("%rbp");
-    static final Temp RSP = new Temp("%rsp");
-
-    static final Temp R8 = new Temp("%r8");
-    static final Temp R9 = new Temp("%r9");
-    static final Temp R10 = new Temp("%r10");
-    static final Temp R11 = new Temp("%r11");
-    static final Temp R12 = new Temp("%r12");
-    static final Temp R13 = new Temp("%r13");
-    static final Temp R14 = new Temp("%r14");
-    static final Temp R15 = new Temp("%r15");
+    public static final Temp RAX = Temp.get("%rax");
+    static final Temp RBX = Temp.get("%rbx");
+    static final Temp RCX = Temp.get("%rcx");
+    public static final Temp RDX = Temp.get("%rdx");
+    public static final Temp RSI = Temp.get("%rsi");
+    public static final Temp RDI = Temp.get("%rdi");
+
+    static final Temp RBP = Temp.get("%rbp");
+    static final Temp RSP = Temp.get("%rsp");
+
+    static final Temp R8 = Temp.get("%r8");
+    static final Temp R9 = Temp.get("%r9");
+    static final Temp R10 = Temp.get("%r10");
+    static final Temp R11 = Temp.get("%r11");
+    static final Temp R12 = Temp.get("%r12");
+    static final Temp R13 = Temp.get("%r13");
+    static final Temp R14 = Temp.get("%r14");
+    static final Temp R15 = Temp.get("%r15");
 
     public static final List<Temp> callerSave = list(RAX, R10, R11);
     public static final List<Temp> calleeSave = list(RBX, R12, R13, R14, R15);
@@ -191,6 +192,11 @@ public class X86_64Frame extends Frame {
         return new X86_64SimFrame(interp, this, args);
     }
 
+    @Override
+    public X86_64SimFrame newSimFrame(Interp interp, List<Word> args, IdMap<Temp, Integer> slots) {
+        return new X86_64SimFrame(interp, this, args, slots);
+    }
+
     //////////////////////////////////
     // Chapter 9 CodeGenerator phase
 
@@ -0,0 +1,437 @@
+package ir.interp;
+
+import ir.temp.Label;
+import ir.temp.Temp;
+import ir.tree.BINOP;
+import ir.tree.CALL;
+import ir.tree.CJUMP;
+import ir.tree.CONST;
+import ir.tree.EXP;
+import ir.tree.IRData;
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+import ir.tree.JUMP;
+import ir.tree.LABEL;
+import ir.tree.MEM;
+import ir.tree.MOVE;
+import ir.tree.NAME;
+import ir.tree.TEMP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import translate.ProcFragment;
+import util.IdMap;
+import util.List;
+
+/**
+ * A procedure simulated in the {@link InterpMode#COMPILED} mode.
+ * <p>
+ * On its first call, the trace scheduled body is compiled into an array of
+ * statement closures. Labels become indexes into that array, each temp
+ * gets a slot in the frame's temp array, and the labels of procedures and
+ * data are looked up once. Running the procedure is then a loop in which
+ * each statement returns the index of the next one, instead of walking
+ * the statement list and looking up every label and temp.
+ * <p>
+ * The closures call the same {@link Word} operations as the IR nodes'
+ * interp methods, in the same order, so the output (and any error) is the
+ * same as with {@link InterpMode#TRACE_SCHEDULE}. Statements and
+ * expressions that have no closure of their own (CMOVE, and operators the
+ * interp methods don't support) fall back on their interp method.
+ */
+public class CompiledProc extends Callable {
+
+    /**
+     * A compiled statement. Returns the index of the statement to run next,
+     * or -1 to return from the procedure.
+     */
+    private static abstract class Stm {
+        abstract int exec(X86_64SimFrame f);
+    }
+
+    /**
+     * A compiled expression.
+     */
+    private static abstract class Exp {
+        abstract Word eval(X86_64SimFrame f);
+    }
+
+    private final ProcFragment frag;
+
+    /**
+     * The compiled body, ending with a return (null until the first call).
+     */
+    private Stm[] code;
+    private IdMap<Temp, Integer> slots;
+    /**
+     * The index in code of each label in the body.
+     */
+    private HashMap<Label, Integer> labels;
+
+    // Only used while compiling
+    private Interp interp;
+    private ArrayList<Stm> stubs;
+    private int firstStub;
+
+    public CompiledProc(ProcFragment frag) {
+        this.frag = frag;
+    }
+
+    @Override
+    public Word call(Interp interp, List<Word> args) {
+        if (code == null)
+            compile(interp);
+        X86_64SimFrame frame = frag.getFrame().newSimFrame(interp, args, slots);
+        Stm[] code = this.code;
+        int pc = 0;
+        while (pc >= 0)
+            pc = code[pc].exec(frame);
+        return frame.getReturnValue();
+    }
+
+    private void compile(Interp interp) {
+        this.interp = interp;
+        List<IRStm> body = frag.getTraceScheduledBody();
+        slots = new IdMap<Temp, Integer>();
+        labels = new HashMap<Label, Integer>();
+        stubs = new ArrayList<Stm>();
+        int pc = 0;
+        for (IRStm stm : body) {
+            if (stm instanceof LABEL)
+                labels.put(((LABEL) stm).getLabel(), pc);
+            else
+                pc++;
+        }
+        // Labels at the very end go to the return statement
+        Stm[] code = new Stm[pc + 1];
+        firstStub = pc + 1;
+        pc = 0;
+        for (IRStm stm : body)
+            if (!(stm instanceof LABEL)) {
+                code[pc] = stm(stm, pc + 1);
+                pc++;
+            }
+        code[pc] = new Stm() {
+            @Override
+            int exec(X86_64SimFrame f) {
+                return -1;
+            }
+        };
+        if (!stubs.isEmpty()) {
+            code = Arrays.copyOf(code, code.length + stubs.size());
+            for (Stm stub : stubs)
+                code[++pc] = stub;
+        }
+        this.code = code;
+        this.interp = null;
+        this.stubs = null;
+    }
+
+    /**
+     * The index of the code for label. A label that isn't in the body gets
+     * a stub that fails when it is jumped to.
+     */
+    private int target(final Label label) {
+        Integer pc = labels.get(label);
+        if (pc == null) {
+            pc = firstStub + stubs.size();
+            stubs.add(new Stm() {
+                @Override
+                int exec(X86_64SimFrame f) {
+                    throw missing(label);
+                }
+            });
+        }
+        return pc;
+    }
+
+    private int slot(Temp temp) {
+        Integer slot = slots.get(temp);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(temp, slot);
+        }
+        return slot;
+    }
+
+    private Stm stm(final IRStm stm, final int next) {
+        if (stm instanceof MOVE)
+            return move((MOVE) stm, next);
+        if (stm instanceof EXP) {
+            final Exp e = exp(((EXP) stm).exp);
+            return new Stm() {
+                @Override
+                int exec(X86_64SimFrame f) {
+                    e.eval(f);
+                    return next;
+                }
+            };
+        }
+        if (stm instanceof JUMP && ((JUMP) stm).getExp() instanceof NAME
+                && labels.containsKey(((NAME) ((JUMP) stm).getExp()).getLabel())) {
+            final int to = labels.get(((NAME) ((JUMP) stm).getExp()).getLabel());
+            return new Stm() {
+                @Override
+                int exec(X86_64SimFrame f) {
+                    return to;
+                }
+            };
+        }
+        if (stm instanceof CJUMP) {
+            Stm s = cjump((CJUMP) stm);
+            if (s != null)
+                return s;
+        }
+        // Anything else runs its interp method
+        return new Stm() {
+            @Override
+            int exec(X86_64SimFrame f) {
+                Label to = stm.interp(f);
+                if (to == null)
+                    return next;
+                Integer pc = labels.get(to);
+                if (pc == null)
+                    throw missing(to);
+                return pc;
+            }
+        };
+    }
+
+    private Error missing(Label label) {
+        return new Error("Jump to a label that is not in " + frag.getLabel() + ": " + label);
+    }
+
+    private Stm move(final MOVE move, final int next) {
+        final Exp src = exp(move.src);
+        if (move.dst instanceof TEMP) {
+            final int slot = slot(((TEMP) move.dst).temp);
+            return new Stm() {
+                @Override
+                int exec(X86_64SimFrame f) {
+                    f.slots[slot] = src.eval(f);
+                    return next;
+                }
+            };
+        }
+        if (move.dst instanceof MEM) {
+            final Exp address = exp(((MEM) move.dst).exp);
+            return new Stm() {
+                @Override
+                int exec(X86_64SimFrame f) {
+                    Word value = src.eval(f);
+                    ((Ptr) address.eval(f)).set(value);
+                    return next;
+                }
+            };
+        }
+        return new Stm() {
+            @Override
+            int exec(X86_64SimFrame f) {
+                move.dst.set(src.eval(f), f);
+                return next;
+            }
+        };
+    }
+
+    private Stm cjump(CJUMP cjump) {
+        final Exp l = exp(cjump.left);
+        final Exp r = exp(cjump.right);
+        final int t = target(cjump.iftrue);
+        final int e = target(cjump.iffalse);
+        switch (cjump.relop) {
+            case LT:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isLT(r.eval(f)) ? t : e;
+                    }
+                };
+            case GE:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isLT(r.eval(f)) ? e : t;
+                    }
+                };
+            case ULT:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isULT(r.eval(f)) ? t : e;
+                    }
+                };
+            case UGE:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isULT(r.eval(f)) ? e : t;
+                    }
+                };
+            case NE:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isEQ(r.eval(f)) ? e : t;
+                    }
+                };
+            case EQ:
+                return new Stm() {
+                    @Override
+                    int exec(X86_64SimFrame f) {
+                        return l.eval(f).isEQ(r.eval(f)) ? t : e;
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    private Exp exp(final IRExp exp) {
+        if (exp instanceof CONST) {
+            final Word value = new Int(((CONST) exp).getValue());
+            return new Exp() {
+                @Override
+                Word eval(X86_64SimFrame f) {
+                    return value;
+                }
+            };
+        }
+        if (exp instanceof TEMP) {
+            final Temp temp = ((TEMP) exp).temp;
+            final int slot = slot(temp);
+            return new Exp() {
+                @Override
+                Word eval(X86_64SimFrame f) {
+                    Word value = f.slots[slot];
+                    return value != null ? value : new UninitializedWord("?" + temp);
+                }
+            };
+        }
+        if (exp instanceof MEM) {
+            final Exp address = exp(((MEM) exp).exp);
+            return new Exp() {
+                @Override
+                Word eval(X86_64SimFrame f) {
+                    return ((Ptr) address.eval(f)).get();
+                }
+            };
+        }
+        if (exp instanceof NAME) {
+            final Word value = label(((NAME) exp).getLabel());
+            return new Exp() {
+                @Override
+                Word eval(X86_64SimFrame f) {
+                    return value;
+                }
+            };
+        }
+        if (exp instanceof BINOP) {
+            Exp e = binop((BINOP) exp);
+            if (e != null)
+                return e;
+        }
+        if (exp instanceof CALL)
+            return call((CALL) exp);
+        // Anything else runs its interp method
+        return new Exp() {
+            @Override
+            Word eval(X86_64SimFrame f) {
+                return exp.interp(f);
+            }
+        };
+    }
+
+    /**
+     * What NAME(label) evaluates to: a procedure, the data of a data
+     * fragment, or a code address.
+     */
+    private Word label(Label label) {
+        Callable proc = interp.getProcLabel(label);
+        if (proc != null)
+            return proc;
+        IRData d = IRData.find(label);
+        if (d != null)
+            return d.interpAsValue();
+        return new LabelPtr(label);
+    }
+
+    private Exp binop(BINOP binop) {
+        final Exp l = exp(binop.left);
+        if (binop.binop == BINOP.Op.PLUS && binop.right instanceof CONST) {
+            // Adding an Int to either kind of word is the same as this
+            final int c = ((CONST) binop.right).getValue();
+            return new Exp() {
+                @Override
+                Word eval(X86_64SimFrame f) {
+                    return l.eval(f).add(c);
+                }
+            };
+        }
+        final Exp r = exp(binop.right);
+        switch (binop.binop) {
+            case PLUS:
+                return new Exp() {
+                    @Override
+                    Word eval(X86_64SimFrame f) {
+                        return l.eval(f).add(r.eval(f));
+                    }
+                };
+            case MINUS:
+                return new Exp() {
+                    @Override
+                    Word eval(X86_64SimFrame f) {
+                        return l.eval(f).minus(r.eval(f));
+                    }
+                };
+            case MUL:
+                return new Exp() {
+                    @Override
+                    Word eval(X86_64SimFrame f) {
+                        return l.eval(f).mul(r.eval(f));
+                    }
+                };
+            case DIV:
+                return new Exp() {
+                    @Override
+                    Word eval(X86_64SimFrame f) {
+                        return l.eval(f).div(r.eval(f));
+                    }
+                };
+            case ARSHIFT:
+                return new Exp() {
+                    @Override
+                    Word eval(X86_64SimFrame f) {
+                        return l.eval(f).arshift(r.eval(f));
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    private Exp call(CALL call) {
+        final Exp func = exp(call.getFunc());
+        List<IRExp> irArgs = call.getArgs();
+        final Exp[] args = new Exp[irArgs.size()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = exp(irArgs.get(i));
+        return new Exp() {
+            @Override
+            Word eval(X86_64SimFrame f) {
+                Callable proc = (Callable) func.eval(f);
+                List<Word> values = List.list();
+                for (Exp arg : args)
+                    values.add(arg.eval(f));
+                return proc.call(f.getInterp(), values);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledProc(" + frag.getLabel() + ")";
+    }
+
+}
@@ -1,5 +1,6 @@
 package ir.interp;
 
+import ir.jvm.JvmProgram;
 import ir.temp.Label;
 
 import java.io.StringWriter;
@@ -92,11 +93,36 @@ public class Interp {
      */
     public Interp(Fragments program, InterpMode simMode) {
         this.simulationMode = simMode;
+        if (simulationMode == InterpMode.TAGGED) {
+            // The TAGGED mode has its own procedures, data and memory
+            final TaggedMachine machine = new TaggedMachine(program);
+            main = new Callable() {
+                @Override
+                public Word call(Interp interp, List<Word> list) {
+                    machine.run(out);
+                    return UninitializedWord.the;
+                }
+            };
+            return;
+        }
+        if (simulationMode == InterpMode.JVM) {
+            final JvmProgram jvm = new JvmProgram(program);
+            main = new Callable() {
+                @Override
+                public Word call(Interp interp, List<Word> list) {
+                    out.append(jvm.run());
+                    return UninitializedWord.the;
+                }
+            };
+            return;
+        }
         Label mainLabel = TranslatorLabels.L_MAIN;
         for (Fragment fragment : program) {
             if (fragment instanceof ProcFragment) {
                 ProcFragment methodFrag = (ProcFragment) fragment;
-                SimProc callable = new SimProc(methodFrag, simulationMode);
+                Callable callable = simulationMode == InterpMode.COMPILED
+                        ? new CompiledProc(methodFrag)
+                        : new SimProc(methodFrag, simulationMode);
                 if (mainLabel.equals(methodFrag.getLabel())) {
                     wordSize = methodFrag.wordSize();
                     main = callable;
@@ -1,13 +1,16 @@
 package ir.interp;
 
 /**
- * There is a choice of three different methods for setting up the IR simulation
+ * There is a choice of four different methods for setting up the IR simulation
  * of methods/procedures.
  */
 public enum InterpMode {
 
     LINEARIZED_IR,    // Simulate execution with linearized IR
     BASIC_BLOCKS,    // Simulate execution with basic blocks
-    TRACE_SCHEDULE    // Simulate execution with the code produced by Trace Scheduling
+    TRACE_SCHEDULE,   // Simulate execution with the code produced by Trace Scheduling
+    COMPILED,         // Like TRACE_SCHEDULE, but compile each procedure to closures first (see CompiledProc)
+    TAGGED,           // Like COMPILED, but with words that are longs instead of objects (see TaggedProc)
+    JVM               // Compile the trace scheduled code to JVM bytecode and run that (see ir.jvm.JvmProgram)
 
 }
@@ -0,0 +1,56 @@
+package ir.interp;
+
+import java.util.Arrays;
+
+/**
+ * The memory of the {@link InterpMode#TAGGED} mode: a table of blocks of
+ * {@link TaggedWord}s, indexed by the handles that pointers hold.
+ * <p>
+ * Objects, arrays and data are never freed (the blocks live as long as the
+ * interpreter). Stack frames are released when their procedure returns, and
+ * their handles are reused by later frames.
+ */
+final class TaggedHeap {
+
+    /**
+     * The blocks, by handle. Handle 0 is never used.
+     */
+    long[][] blocks = new long[256][];
+    private int next = 1;
+
+    private int[] released = new int[16];
+    private int numReleased = 0;
+
+    /**
+     * Allocate a block of numWords words, all set to fill, and return its
+     * handle.
+     */
+    int alloc(int numWords, long fill) {
+        long[] block = new long[numWords];
+        if (fill != 0)
+            Arrays.fill(block, fill);
+        int handle;
+        if (numReleased > 0) {
+            handle = released[--numReleased];
+        } else {
+            if (next > TaggedWord.MAX_HANDLE)
+                throw new Error("Out of memory: too many blocks allocated");
+            if (next == blocks.length)
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            handle = next++;
+        }
+        blocks[handle] = block;
+        return handle;
+    }
+
+    /**
+     * Free the block of a handle, which may be reused by a later allocation.
+     */
+    void release(int handle) {
+        blocks[handle] = null;
+        if (numReleased == released.length)
+            released = Arrays.copyOf(released, numReleased * 2);
+        released[numReleased++] = handle;
+    }
+
+}
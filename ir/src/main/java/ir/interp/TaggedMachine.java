@@ -0,0 +1,321 @@
+package ir.interp;
+
+import ir.temp.Label;
+import ir.tree.CONST;
+import ir.tree.IRData;
+import ir.tree.IRExp;
+import ir.tree.NAME;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import translate.DataFragment;
+import translate.Fragment;
+import translate.Fragments;
+import translate.ProcFragment;
+import translate.TranslatorLabels;
+
+/**
+ * Runs a program in the {@link InterpMode#TAGGED} mode.
+ * <p>
+ * The procedures are {@link TaggedProc}s, compiled like
+ * {@link CompiledProc}s, but to code that computes with
+ * {@link TaggedWord}s (longs) instead of {@link Word} objects. The machine
+ * holds what they share: the memory, the table of code addresses, and the
+ * operations on words. The operations check the types of their operands as
+ * the Word classes do, and fail with the same messages.
+ */
+class TaggedMachine {
+
+    /**
+     * Something a code address can point to: a procedure, or just a label
+     * to JUMP to.
+     */
+    abstract static class Code {
+        final Label label;
+
+        Code(Label label) {
+            this.label = label;
+        }
+
+        abstract long call(long[] args);
+
+        /**
+         * Whether this is a procedure (rather than just a label).
+         */
+        boolean isProc() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return label.toString();
+        }
+    }
+
+    final TaggedHeap heap = new TaggedHeap();
+
+    /**
+     * The table that code addresses index.
+     */
+    private final ArrayList<Code> codes = new ArrayList<Code>();
+    private final Map<Label, Integer> codeIndex = new HashMap<Label, Integer>();
+    private final Map<Label, Integer> dataHandles = new HashMap<Label, Integer>();
+
+    private TaggedProc main = null;
+    private int wordSize;
+
+    /**
+     * Where the program prints to, while it runs.
+     */
+    private StringWriter out;
+
+    TaggedMachine(Fragments program) {
+        Label mainLabel = TranslatorLabels.L_MAIN;
+        ArrayList<IRData> data = new ArrayList<IRData>();
+        for (Fragment fragment : program) {
+            if (fragment instanceof ProcFragment) {
+                ProcFragment procFrag = (ProcFragment) fragment;
+                TaggedProc proc = new TaggedProc(this, procFrag);
+                if (mainLabel.equals(procFrag.getLabel())) {
+                    wordSize = procFrag.wordSize();
+                    main = proc;
+                } else
+                    define(proc);
+            } else if (fragment instanceof DataFragment) {
+                IRData d = ((DataFragment) fragment).getBody();
+                int size = 0;
+                for (IRExp ignored : d)
+                    size++;
+                dataHandles.put(d.getLabel(), heap.alloc(size, TaggedWord.UNINITIALIZED));
+                data.add(d);
+            } else {
+                throw new Error("IR Simulator doesn't know about fragments of this type: " + fragment.getClass());
+            }
+        }
+        defineSystemFunctions();
+        // Fill in the data once every label it may mention is known
+        for (IRData d : data) {
+            long[] block = heap.blocks[dataHandles.get(d.getLabel())];
+            int i = 0;
+            for (IRExp e : d)
+                block[i++] = constant(e);
+        }
+    }
+
+    private void define(Code code) {
+        codeIndex.put(code.label, codes.size());
+        codes.add(code);
+    }
+
+    private long constant(IRExp e) {
+        if (e instanceof CONST)
+            return TaggedWord.ofInt(((CONST) e).getValue());
+        if (e instanceof NAME)
+            return label(((NAME) e).getLabel());
+        throw new Error("Data can only hold CONSTs and NAMEs: " + e);
+    }
+
+    private void defineSystemFunctions() {
+        define(new Code(TranslatorLabels.L_PRINT) {
+            @Override
+            long call(long[] args) {
+                out.append(Integer.toString(asInt(args[0])));
+                out.append("\n");
+                return TaggedWord.UNINITIALIZED;
+            }
+        });
+        define(new Code(TranslatorLabels.L_NEW_OBJECT) {
+            @Override
+            long call(long[] args) {
+                int numBytes = asInt(args[0]);
+                assert (numBytes % wordSize == 0);
+                return TaggedWord.ptr(heap.alloc(numBytes / wordSize, TaggedWord.ofInt(0)), 0);
+            }
+        });
+        define(new Code(TranslatorLabels.L_NEW_ARRAY) {
+            @Override
+            long call(long[] args) {
+                // The same layout as in Interp: the length, then the elements
+                int numElements = asInt(args[0]);
+                int handle = heap.alloc(numElements + 1, TaggedWord.ofInt(0));
+                heap.blocks[handle][0] = TaggedWord.ofInt(numElements);
+                return TaggedWord.ptr(handle, 1);
+            }
+        });
+        define(new Code(TranslatorLabels.L_ERROR) {
+            @Override
+            long call(long[] args) {
+                out.append("MiniJava failure ");
+                out.append(Integer.toString(asInt(args[0])));
+                out.append("\n");
+                System.out.println(out.toString());
+                throw new Error(out.toString());
+            }
+        });
+    }
+
+    /**
+     * Run the program, printing to out.
+     */
+    void run(StringWriter out) {
+        this.out = out;
+        main.call(new long[0]);
+    }
+
+    int wordSize() {
+        return wordSize;
+    }
+
+    /**
+     * What NAME(label) evaluates to: a procedure, the data of a data
+     * fragment, or a code address.
+     */
+    long label(final Label label) {
+        Integer index = codeIndex.get(label);
+        if (index != null)
+            return TaggedWord.code(index);
+        Integer handle = dataHandles.get(label);
+        if (handle != null)
+            return TaggedWord.ptr(handle, 0);
+        define(new Code(label) {
+            @Override
+            long call(long[] args) {
+                throw new ClassCastException(label + " is not a procedure");
+            }
+
+            @Override
+            boolean isProc() {
+                return false;
+            }
+        });
+        return TaggedWord.code(codes.size() - 1);
+    }
+
+    /**
+     * The procedure or label a code address points to.
+     */
+    Code code(long w) {
+        if (TaggedWord.tag(w) != TaggedWord.CODE)
+            throw new ClassCastException(show(w) + " is not a code address");
+        return codes.get(TaggedWord.codeIndex(w));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Operations on words
+
+    int asInt(long w) {
+        if (!TaggedWord.isInt(w))
+            throw new Error("Not an Int");
+        return TaggedWord.intValue(w);
+    }
+
+    long add(long l, long r) {
+        if (TaggedWord.isInt(l))
+            return add(r, TaggedWord.intValue(l));
+        else if (TaggedWord.isInt(r))
+            return add(l, TaggedWord.intValue(r));
+        else
+            throw new Error("add -- at least one of the operands must be an Int");
+    }
+
+    long add(long w, int value) {
+        switch (TaggedWord.tag(w)) {
+            case TaggedWord.INT:
+                return TaggedWord.ofInt(TaggedWord.intValue(w) + value);
+            case TaggedWord.PTR:
+                assert (value % wordSize == 0);
+                return TaggedWord.ptr(TaggedWord.handle(w), TaggedWord.offset(w) + value / wordSize);
+            case TaggedWord.CODE:
+                if (code(w).isProc())
+                    throw new Error("add -- doesn't make sense on procedure addresses");
+                throw new Error("No address arithmetic on code pointers!");
+            default:
+                throw new Error("Operation performed on an unitialized word!");
+        }
+    }
+
+    long minus(long l, long r) {
+        if (TaggedWord.isInt(r))
+            return add(l, -TaggedWord.intValue(r));
+        throw new Error("minus -- operand types not supported " + show(l) + " " + show(r));
+    }
+
+    long mul(long l, long r) {
+        if (!TaggedWord.isInt(l))
+            throw new Error("mul -- only supported on Int");
+        return TaggedWord.ofInt(TaggedWord.intValue(l) * asInt(r));
+    }
+
+    long div(long l, long r) {
+        if (!TaggedWord.isInt(l))
+            throw new Error("div -- only supported on Int");
+        return TaggedWord.ofInt(TaggedWord.intValue(l) / asInt(r));
+    }
+
+    long arshift(long l, long r) {
+        if (!TaggedWord.isInt(l))
+            throw new Error("arshift -- only supported on Int");
+        return TaggedWord.ofInt(TaggedWord.intValue(l) >> asInt(r));
+    }
+
+    boolean isLT(long l, long r) {
+        if (!TaggedWord.isInt(l))
+            throw new Error("lessThan -- not supported for " + show(l) + " " + show(r));
+        return TaggedWord.intValue(l) < asInt(r);
+    }
+
+    boolean isULT(long l, long r) {
+        if (!TaggedWord.isInt(l))
+            throw new Error("unsignedLessThan -- not supported for " + show(l) + " " + show(r));
+        int value = TaggedWord.intValue(l);
+        return value < 0 ? false : value < asInt(r);
+    }
+
+    boolean isEQ(long l, long r) {
+        if (TaggedWord.isInt(l))
+            return TaggedWord.intValue(l) == asInt(r);
+        if (TaggedWord.tag(l) == TaggedWord.PTR && TaggedWord.offset(l) == 0) {
+            // Like Array.isEQ: a pointer to the start of a block isn't NULL
+            if (asInt(r) == 0)
+                return false;
+            throw new Error("EQ on " + show(l) + " only works to compare to 0, not " + show(r));
+        }
+        throw new Error("EQ -- not supported for " + show(l) + " " + show(r));
+    }
+
+    /**
+     * The word a pointer points to. Fails with an
+     * ArrayIndexOutOfBoundsException if the pointer is outside its block.
+     */
+    long load(long p) {
+        if (TaggedWord.tag(p) != TaggedWord.PTR)
+            throw new ClassCastException(show(p) + " is not a pointer");
+        return heap.blocks[TaggedWord.handle(p)][TaggedWord.offset(p)];
+    }
+
+    void store(long p, long value) {
+        if (TaggedWord.tag(p) != TaggedWord.PTR)
+            throw new ClassCastException(show(p) + " is not a pointer");
+        heap.blocks[TaggedWord.handle(p)][TaggedWord.offset(p)] = value;
+    }
+
+    /**
+     * A word as text, for error messages.
+     */
+    String show(long w) {
+        switch (TaggedWord.tag(w)) {
+            case TaggedWord.INT:
+                return Integer.toString(TaggedWord.intValue(w));
+            case TaggedWord.PTR:
+                return "#" + TaggedWord.handle(w) + "[" + TaggedWord.offset(w) + "]";
+            case TaggedWord.CODE:
+                return code(w).toString();
+            default:
+                return "?";
+        }
+    }
+
+}
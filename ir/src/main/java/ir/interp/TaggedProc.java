@@ -0,0 +1,496 @@
+package ir.interp;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Label;
+import ir.temp.Temp;
+import ir.tree.BINOP;
+import ir.tree.CALL;
+import ir.tree.CJUMP;
+import ir.tree.CMOVE;
+import ir.tree.CONST;
+import ir.tree.EXP;
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+import ir.tree.JUMP;
+import ir.tree.LABEL;
+import ir.tree.MEM;
+import ir.tree.MOVE;
+import ir.tree.NAME;
+import ir.tree.TEMP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import translate.ProcFragment;
+import util.IdMap;
+import util.List;
+
+/**
+ * A procedure simulated in the {@link InterpMode#TAGGED} mode.
+ * <p>
+ * This is compiled like a {@link CompiledProc}: on its first call, the trace
+ * scheduled body becomes an array of statement closures, with labels
+ * resolved to indexes and temps to slots. But the closures compute with
+ * {@link TaggedWord}s, so the temps are a long[], the stack frame is a
+ * block in the {@link TaggedHeap}, and arithmetic doesn't allocate.
+ * <p>
+ * The closures evaluate the operands in the same order as the IR nodes'
+ * interp methods, and the {@link TaggedMachine} operations fail like the
+ * {@link Word} ones, so a program prints (or fails with) the same as in the
+ * other modes.
+ */
+class TaggedProc extends TaggedMachine.Code {
+
+    /**
+     * A compiled statement. Returns the index of the statement to run next,
+     * or -1 to return from the procedure.
+     */
+    private static abstract class Stm {
+        abstract int exec(long[] t);
+    }
+
+    /**
+     * A compiled expression.
+     */
+    private static abstract class Exp {
+        abstract long eval(long[] t);
+    }
+
+    private final TaggedMachine m;
+    private final ProcFragment frag;
+
+    /**
+     * The compiled body, ending with a return (null until the first call).
+     */
+    private Stm[] code;
+    private int numSlots;
+    private int fpSlot;
+    private int rvSlot;
+    private int[] argSlots;
+    private int numLocals;
+
+    // Only used while compiling
+    private IdMap<Temp, Integer> slots;
+    private HashMap<Label, Integer> labels;
+    private ArrayList<Stm> stubs;
+    private int firstStub;
+
+    TaggedProc(TaggedMachine m, ProcFragment frag) {
+        super(frag.getLabel());
+        this.m = m;
+        this.frag = frag;
+    }
+
+    /**
+     * Lay out the frame like {@link X86_64SimFrame} does, run the body, and
+     * free the frame.
+     */
+    @Override
+    long call(long[] args) {
+        if (code == null)
+            compile();
+        long[] t = new long[numSlots];
+        Arrays.fill(t, TaggedWord.UNINITIALIZED);
+        int numRegArgs = argSlots.length;
+        int numStackArgs = args.length < numRegArgs ? 0 : args.length - numRegArgs;
+        int frame = m.heap.alloc(numStackArgs + 2 + numLocals, TaggedWord.UNINITIALIZED);
+        long[] frameWords = m.heap.blocks[frame];
+        int firstFormal = numLocals + X86_64Frame.FIRST_FORMAL_OFFSET / X86_64Frame.WORD_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            if (i < numRegArgs)
+                t[argSlots[i]] = args[i];
+            else
+                frameWords[firstFormal + i - numRegArgs] = args[i];
+        }
+        t[fpSlot] = TaggedWord.ptr(frame, numLocals);
+
+        Stm[] code = this.code;
+        int pc = 0;
+        while (pc >= 0)
+            pc = code[pc].exec(t);
+        m.heap.release(frame);
+        return t[rvSlot];
+    }
+
+    private void compile() {
+        X86_64Frame frame = (X86_64Frame) frag.getFrame();
+        List<IRStm> body = frag.getTraceScheduledBody();
+        numLocals = frame.numLocals();
+        slots = new IdMap<Temp, Integer>();
+        fpSlot = slot(X86_64Frame.FP);
+        rvSlot = slot(X86_64Frame.RV);
+        argSlots = new int[X86_64Frame.arguments.size()];
+        for (int i = 0; i < argSlots.length; i++)
+            argSlots[i] = slot(X86_64Frame.arguments.get(i));
+
+        labels = new HashMap<Label, Integer>();
+        stubs = new ArrayList<Stm>();
+        int pc = 0;
+        for (IRStm stm : body) {
+            if (stm instanceof LABEL)
+                labels.put(((LABEL) stm).getLabel(), pc);
+            else
+                pc++;
+        }
+        // Labels at the very end go to the return statement
+        Stm[] code = new Stm[pc + 1];
+        firstStub = pc + 1;
+        pc = 0;
+        for (IRStm stm : body)
+            if (!(stm instanceof LABEL)) {
+                code[pc] = stm(stm, pc + 1);
+                pc++;
+            }
+        code[pc] = new Stm() {
+            @Override
+            int exec(long[] t) {
+                return -1;
+            }
+        };
+        if (!stubs.isEmpty()) {
+            code = Arrays.copyOf(code, code.length + stubs.size());
+            for (Stm stub : stubs)
+                code[++pc] = stub;
+        }
+        numSlots = slots.size();
+        this.code = code;
+        this.slots = null;
+        this.stubs = null;
+    }
+
+    /**
+     * The index of the code for label. A label that isn't in the body gets
+     * a stub that fails when it is jumped to.
+     */
+    private int target(final Label label) {
+        Integer pc = labels.get(label);
+        if (pc == null) {
+            pc = firstStub + stubs.size();
+            stubs.add(new Stm() {
+                @Override
+                int exec(long[] t) {
+                    throw missing(label);
+                }
+            });
+        }
+        return pc;
+    }
+
+    private int slot(Temp temp) {
+        Integer slot = slots.get(temp);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(temp, slot);
+        }
+        return slot;
+    }
+
+    private Error missing(Label label) {
+        return new Error("Jump to a label that is not in " + frag.getLabel() + ": " + label);
+    }
+
+    /**
+     * A closure that fails, for IR that the interp methods don't support
+     * either. It only fails if it is run.
+     */
+    private Stm unsupported(final String message) {
+        return new Stm() {
+            @Override
+            int exec(long[] t) {
+                throw new Error(message);
+            }
+        };
+    }
+
+    private Stm stm(final IRStm stm, final int next) {
+        if (stm instanceof MOVE)
+            return move((MOVE) stm, next);
+        if (stm instanceof EXP) {
+            final Exp e = exp(((EXP) stm).exp);
+            return new Stm() {
+                @Override
+                int exec(long[] t) {
+                    e.eval(t);
+                    return next;
+                }
+            };
+        }
+        if (stm instanceof JUMP)
+            return jump((JUMP) stm);
+        if (stm instanceof CJUMP)
+            return cjump((CJUMP) stm);
+        if (stm instanceof CMOVE)
+            return cmove((CMOVE) stm, next);
+        return unsupported("Not supported by the TAGGED interpreter: " + stm);
+    }
+
+    private Stm jump(JUMP jump) {
+        if (jump.getExp() instanceof NAME && labels.containsKey(((NAME) jump.getExp()).getLabel())) {
+            final int to = labels.get(((NAME) jump.getExp()).getLabel());
+            return new Stm() {
+                @Override
+                int exec(long[] t) {
+                    return to;
+                }
+            };
+        }
+        final Exp e = exp(jump.getExp());
+        return new Stm() {
+            @Override
+            int exec(long[] t) {
+                TaggedMachine.Code to = m.code(e.eval(t));
+                if (to.isProc())
+                    throw new ClassCastException(to + " is not a label");
+                Integer pc = labels.get(to.label);
+                if (pc == null)
+                    throw missing(to.label);
+                return pc;
+            }
+        };
+    }
+
+    private Stm move(final MOVE move, final int next) {
+        final Exp src = exp(move.src);
+        if (move.dst instanceof TEMP) {
+            final int slot = slot(((TEMP) move.dst).temp);
+            return new Stm() {
+                @Override
+                int exec(long[] t) {
+                    t[slot] = src.eval(t);
+                    return next;
+                }
+            };
+        }
+        if (move.dst instanceof MEM) {
+            final Exp address = exp(((MEM) move.dst).exp);
+            return new Stm() {
+                @Override
+                int exec(long[] t) {
+                    long value = src.eval(t);
+                    m.store(address.eval(t), value);
+                    return next;
+                }
+            };
+        }
+        return unsupported("This IR " + move.dst + " is not legal as the LHS of a MOVE.");
+    }
+
+    private Stm cjump(CJUMP cjump) {
+        final Exp l = exp(cjump.left);
+        final Exp r = exp(cjump.right);
+        final int t = target(cjump.iftrue);
+        final int e = target(cjump.iffalse);
+        switch (cjump.relop) {
+            case LT:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isLT(l.eval(w), r.eval(w)) ? t : e;
+                    }
+                };
+            case GE:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isLT(l.eval(w), r.eval(w)) ? e : t;
+                    }
+                };
+            case ULT:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isULT(l.eval(w), r.eval(w)) ? t : e;
+                    }
+                };
+            case UGE:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isULT(l.eval(w), r.eval(w)) ? e : t;
+                    }
+                };
+            case NE:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isEQ(l.eval(w), r.eval(w)) ? e : t;
+                    }
+                };
+            case EQ:
+                return new Stm() {
+                    @Override
+                    int exec(long[] w) {
+                        return m.isEQ(l.eval(w), r.eval(w)) ? t : e;
+                    }
+                };
+            default:
+                return unsupported("Missing case? " + cjump.relop);
+        }
+    }
+
+    private Stm cmove(CMOVE cmove, final int next) {
+        final Exp l = exp(cmove.getLeft());
+        final Exp r = exp(cmove.getRight());
+        final Stm move = move(new MOVE(cmove.getDst(), cmove.getSrc()), next);
+        switch (cmove.getOp()) {
+            case LT:
+                return new Stm() {
+                    @Override
+                    int exec(long[] t) {
+                        return m.isLT(l.eval(t), r.eval(t)) ? move.exec(t) : next;
+                    }
+                };
+            case NE:
+                return new Stm() {
+                    @Override
+                    int exec(long[] t) {
+                        return m.isEQ(l.eval(t), r.eval(t)) ? next : move.exec(t);
+                    }
+                };
+            case EQ:
+                return new Stm() {
+                    @Override
+                    int exec(long[] t) {
+                        return m.isEQ(l.eval(t), r.eval(t)) ? move.exec(t) : next;
+                    }
+                };
+            default:
+                return unsupported("Missing case? " + cmove.getOp());
+        }
+    }
+
+    private Exp exp(final IRExp exp) {
+        if (exp instanceof CONST) {
+            final long value = TaggedWord.ofInt(((CONST) exp).getValue());
+            return new Exp() {
+                @Override
+                long eval(long[] t) {
+                    return value;
+                }
+            };
+        }
+        if (exp instanceof TEMP) {
+            final int slot = slot(((TEMP) exp).temp);
+            return new Exp() {
+                @Override
+                long eval(long[] t) {
+                    return t[slot];
+                }
+            };
+        }
+        if (exp instanceof MEM) {
+            final Exp address = exp(((MEM) exp).exp);
+            return new Exp() {
+                @Override
+                long eval(long[] t) {
+                    return m.load(address.eval(t));
+                }
+            };
+        }
+        if (exp instanceof NAME) {
+            final long value = m.label(((NAME) exp).getLabel());
+            return new Exp() {
+                @Override
+                long eval(long[] t) {
+                    return value;
+                }
+            };
+        }
+        if (exp instanceof BINOP)
+            return binop((BINOP) exp);
+        if (exp instanceof CALL)
+            return call((CALL) exp);
+        final String message = "Not supported by the TAGGED interpreter: " + exp;
+        return new Exp() {
+            @Override
+            long eval(long[] t) {
+                throw new Error(message);
+            }
+        };
+    }
+
+    private Exp binop(final BINOP binop) {
+        final Exp l = exp(binop.left);
+        if (binop.binop == BINOP.Op.PLUS && binop.right instanceof CONST) {
+            final int c = ((CONST) binop.right).getValue();
+            return new Exp() {
+                @Override
+                long eval(long[] t) {
+                    return m.add(l.eval(t), c);
+                }
+            };
+        }
+        final Exp r = exp(binop.right);
+        switch (binop.binop) {
+            case PLUS:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        return m.add(l.eval(t), r.eval(t));
+                    }
+                };
+            case MINUS:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        return m.minus(l.eval(t), r.eval(t));
+                    }
+                };
+            case MUL:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        return m.mul(l.eval(t), r.eval(t));
+                    }
+                };
+            case DIV:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        return m.div(l.eval(t), r.eval(t));
+                    }
+                };
+            case ARSHIFT:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        return m.arshift(l.eval(t), r.eval(t));
+                    }
+                };
+            default:
+                return new Exp() {
+                    @Override
+                    long eval(long[] t) {
+                        l.eval(t);
+                        r.eval(t);
+                        throw new Error("Binop case missing? " + binop.binop);
+                    }
+                };
+        }
+    }
+
+    private Exp call(CALL call) {
+        final Exp func = exp(call.getFunc());
+        List<IRExp> irArgs = call.getArgs();
+        final Exp[] args = new Exp[irArgs.size()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = exp(irArgs.get(i));
+        return new Exp() {
+            @Override
+            long eval(long[] t) {
+                TaggedMachine.Code proc = m.code(func.eval(t));
+                long[] values = new long[args.length];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = args[i].eval(t);
+                return proc.call(values);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "TaggedProc(" + frag.getLabel() + ")";
+    }
+
+}
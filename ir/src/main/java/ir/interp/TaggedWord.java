@@ -0,0 +1,76 @@
+package ir.interp;
+
+/**
+ * The words of the {@link InterpMode#TAGGED} mode. Instead of a {@link Word}
+ * object, a word is a long with a two bit tag at the top:
+ * <ul>
+ * <li>an int: the tag is 0, the low 32 bits are the value;
+ * <li>a pointer: the bits below the tag are the handle of a block of memory
+ * in a {@link TaggedHeap}, and the low 32 bits are the offset (in words) of
+ * the pointer into that block;
+ * <li>a code address: the low bits are an index into the
+ * {@link TaggedMachine}'s table of procedures and labels;
+ * <li>an uninitialized word.
+ * </ul>
+ * So, like the Words, these words are typed, and reading or writing through
+ * a pointer outside of its block fails, but no operation allocates.
+ */
+final class TaggedWord {
+
+    static final int INT = 0;
+    static final int PTR = 1;
+    static final int CODE = 2;
+    static final int UNINIT = 3;
+
+    private static final int TAG_SHIFT = 62;
+
+    /**
+     * The largest handle a pointer can hold.
+     */
+    static final int MAX_HANDLE = (1 << 30) - 1;
+
+    static final long UNINITIALIZED = (long) UNINIT << TAG_SHIFT;
+
+    private TaggedWord() {
+    }
+
+    static int tag(long w) {
+        return (int) (w >>> TAG_SHIFT);
+    }
+
+    static boolean isInt(long w) {
+        return w >>> TAG_SHIFT == INT;
+    }
+
+    static long ofInt(int value) {
+        return value & 0xFFFFFFFFL;
+    }
+
+    /**
+     * The value of an int (meaningless for other words).
+     */
+    static int intValue(long w) {
+        return (int) w;
+    }
+
+    static long ptr(int handle, int offset) {
+        return (long) PTR << TAG_SHIFT | (long) handle << 32 | offset & 0xFFFFFFFFL;
+    }
+
+    static int handle(long w) {
+        return (int) (w >>> 32) & MAX_HANDLE;
+    }
+
+    static int offset(long w) {
+        return (int) w;
+    }
+
+    static long code(int index) {
+        return (long) CODE << TAG_SHIFT | index;
+    }
+
+    static int codeIndex(long w) {
+        return (int) w;
+    }
+
+}
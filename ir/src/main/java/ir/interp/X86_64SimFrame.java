@@ -7,11 +7,8 @@ import ir.temp.Temp;
 import ir.tree.IRData;
 import ir.tree.IRExp;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import util.DefaultIndentable;
+import util.IdMap;
 import util.IndentingWriter;
 import util.List;
 
@@ -34,7 +31,19 @@ import util.List;
  */
 public class X86_64SimFrame extends DefaultIndentable {
 
-    private Map<Temp, Word> temps = new HashMap<Temp, Word>();
+    private IdMap<Temp, Word> temps = new IdMap<Temp, Word>();
+
+    /**
+     * The slots of the temps that are kept in {@link #slots} rather than in
+     * temps, or null if there are none.
+     */
+    private final IdMap<Temp, Integer> slotOf;
+
+    /**
+     * The values of the temps that have a slot (null if never written to).
+     * The code of a {@link CompiledProc} reads and writes them directly.
+     */
+    final Word[] slots;
 
     /**
      * Compile time counterpart of this frame (has some crucial information such
@@ -55,7 +64,13 @@ public class X86_64SimFrame extends DefaultIndentable {
     private Interp interp;
 
     public X86_64SimFrame(Interp interp, X86_64Frame frame, List<Word> args) {
+        this(interp, frame, args, null);
+    }
+
+    public X86_64SimFrame(Interp interp, X86_64Frame frame, List<Word> args, IdMap<Temp, Integer> slots) {
         this.interp = interp;
+        this.slotOf = slots;
+        this.slots = slots == null ? null : new Word[slots.size()];
         this.ct_frame = frame;
         this.frameBytes = new Array((args.size() < X86_64Frame.arguments.size() ? 0 : args.size() - X86_64Frame.arguments.size()) + 2 + frame.numLocals(), frame.wordSize());
 
@@ -84,7 +99,8 @@ public class X86_64SimFrame extends DefaultIndentable {
      * @return
      */
     public Word getTemp(Temp name) {
-        Word result = temps.get(name);
+        Integer slot = slotOf == null ? null : slotOf.get(name);
+        Word result = slot == null ? temps.get(name) : slots[slot];
         if (result == null) {
             return new UninitializedWord("?" + name);
         }
@@ -97,7 +113,11 @@ public class X86_64SimFrame extends DefaultIndentable {
      */
     public void setTemp(Temp name, Word value) {
         assert (value != null);
-        temps.put(name, value);
+        Integer slot = slotOf == null ? null : slotOf.get(name);
+        if (slot == null)
+            temps.put(name, value);
+        else
+            slots[slot] = value;
     }
 
     /**
@@ -140,9 +160,17 @@ public class X86_64SimFrame extends DefaultIndentable {
 
         out.println("temps : ");
         out.indent();
-        for (Entry<Temp, Word> entry : temps.entrySet()) {
-            out.print(entry.getKey() + " = ");
-            out.println(entry.getValue());
+        for (Temp temp : temps) {
+            out.print(temp + " = ");
+            out.println(temps.get(temp));
+        }
+        if (slotOf != null) {
+            for (Temp temp : slotOf) {
+                if (slots[slotOf.get(temp)] != null) {
+                    out.print(temp + " = ");
+                    out.println(slots[slotOf.get(temp)]);
+                }
+            }
         }
         out.outdent();
 
@@ -0,0 +1,253 @@
+package ir.jvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The code of a method being written by {@link JvmCompiler}. It keeps track
+ * of the depth of the operand stack (in slots, so a long counts two) and of
+ * the number of local variable slots, for the method's Code attribute.
+ */
+class Bytecode {
+
+    static final int ICONST_M1 = 2;
+    static final int LCONST_0 = 9;
+    static final int LCONST_1 = 10;
+    static final int BIPUSH = 16;
+    static final int LDC = 18;
+    static final int LDC_W = 19;
+    static final int LDC2_W = 20;
+    static final int LLOAD = 22;
+    static final int LSTORE = 55;
+    static final int POP2 = 88;
+    static final int LADD = 97;
+    static final int LSUB = 101;
+    static final int LMUL = 105;
+    static final int LDIV = 109;
+    static final int LSHR = 123;
+    static final int IAND = 126;
+    static final int IXOR = 130;
+    static final int I2L = 133;
+    static final int L2I = 136;
+    static final int LCMP = 148;
+    static final int IFEQ = 153;
+    static final int IFNE = 154;
+    static final int IFLT = 155;
+    static final int IFGE = 156;
+    static final int GOTO = 167;
+    static final int TABLESWITCH = 170;
+    static final int LRETURN = 173;
+    static final int GETSTATIC = 178;
+    static final int INVOKEVIRTUAL = 182;
+    static final int INVOKESTATIC = 184;
+    static final int ATHROW = 191;
+    static final int WIDE = 196;
+
+    /**
+     * A position in the code that jumps can go to before it is known.
+     */
+    static class Target {
+        private int position = -1;
+        /**
+         * For each jump to this target that is not resolved yet, the
+         * position of the jump instruction, and the position and size of
+         * its offset.
+         */
+        private final ArrayList<int[]> jumps = new ArrayList<int[]>();
+
+        boolean isMarked() {
+            return position >= 0;
+        }
+    }
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+
+    Bytecode(int numLocals) {
+        this.maxLocals = numLocals;
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Make room for at least numLocals local variable slots.
+     */
+    void useLocals(int numLocals) {
+        maxLocals = Math.max(maxLocals, numLocals);
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(code, length);
+    }
+
+    /**
+     * Append the code of another method body (which must not contain a
+     * tableswitch, whose padding depends on where it is).
+     */
+    void append(Bytecode other) {
+        ensure(other.length);
+        System.arraycopy(other.code, 0, code, length, other.length);
+        length += other.length;
+        maxStack = Math.max(maxStack, stack + other.maxStack);
+        maxLocals = Math.max(maxLocals, other.maxLocals);
+    }
+
+    private void ensure(int n) {
+        if (length + n > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + n));
+    }
+
+    void u1(int b) {
+        ensure(1);
+        code[length++] = (byte) b;
+    }
+
+    void u2(int s) {
+        u1(s >> 8);
+        u1(s);
+    }
+
+    void u4(int i) {
+        u2(i >> 16);
+        u2(i);
+    }
+
+    private void put2(int position, int s) {
+        code[position] = (byte) (s >> 8);
+        code[position + 1] = (byte) s;
+    }
+
+    /**
+     * Account for an instruction that changes the stack depth by delta.
+     */
+    void adjust(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * An instruction without operands.
+     */
+    void op(int opcode, int delta) {
+        u1(opcode);
+        adjust(delta);
+    }
+
+    /**
+     * An instruction with a constant pool index operand.
+     */
+    void op2(int opcode, int index, int delta) {
+        u1(opcode);
+        u2(index);
+        adjust(delta);
+    }
+
+    void loadLong(int slot) {
+        local(LLOAD, slot);
+        adjust(2);
+    }
+
+    void storeLong(int slot) {
+        local(LSTORE, slot);
+        adjust(-2);
+    }
+
+    private void local(int opcode, int slot) {
+        useLocals(slot + 2);
+        if (slot > 0xFF) {
+            u1(WIDE);
+            u1(opcode);
+            u2(slot);
+        } else {
+            u1(opcode);
+            u1(slot);
+        }
+    }
+
+    void loadString(int index) {
+        if (index > 0xFF) {
+            op2(LDC_W, index, 1);
+        } else {
+            u1(LDC);
+            u1(index);
+            adjust(1);
+        }
+    }
+
+    /**
+     * A jump to target, with a 16 bit offset. Does not change the stack
+     * depth, use adjust for the operands of conditional jumps.
+     */
+    void jump(int opcode, Target target) {
+        int start = length;
+        u1(opcode);
+        if (target.isMarked()) {
+            u2(offset(start, target.position));
+        } else {
+            target.jumps.add(new int[]{start, length, 2});
+            u2(0);
+        }
+    }
+
+    void mark(Target target) {
+        assert !target.isMarked();
+        target.position = length;
+        for (int[] jump : target.jumps) {
+            if (jump[2] == 4)
+                put4(jump[1], length - jump[0]);
+            else
+                put2(jump[1], offset(jump[0], length));
+        }
+        target.jumps.clear();
+    }
+
+    private int offset(int from, int to) {
+        int offset = to - from;
+        if (offset != (short) offset)
+            throw new Error("Method too big: jump offset out of range");
+        return offset;
+    }
+
+    /**
+     * A tableswitch on the int on top of the stack, for the cases 0 to
+     * targets.length - 1.
+     */
+    void tableswitch(Target defaultTarget, Target[] targets) {
+        int start = length;
+        op(TABLESWITCH, -1);
+        while (length % 4 != 0)
+            u1(0);
+        switchOffset(start, defaultTarget);
+        u4(0);
+        u4(targets.length - 1);
+        for (Target target : targets)
+            switchOffset(start, target);
+    }
+
+    private void switchOffset(int start, Target target) {
+        // The targets of a switch come after it
+        assert !target.isMarked();
+        target.jumps.add(new int[]{start, length, 4});
+        u4(0);
+    }
+
+    private void put4(int position, int i) {
+        put2(position, i >> 16);
+        put2(position + 2, i);
+    }
+
+}
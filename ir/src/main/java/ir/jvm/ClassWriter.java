@@ -0,0 +1,231 @@
+package ir.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a class file, with just what {@link JvmCompiler} needs: static
+ * fields, static methods, and the constants they refer to.
+ * <p>
+ * The class file version is 49, so the methods need no StackMapTable (the
+ * JVM verifies them by type inference instead).
+ */
+class ClassWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_Utf8 = 1;
+    private static final int CONSTANT_Long = 5;
+    private static final int CONSTANT_Class = 7;
+    private static final int CONSTANT_String = 8;
+    private static final int CONSTANT_Fieldref = 9;
+    private static final int CONSTANT_Methodref = 10;
+    private static final int CONSTANT_NameAndType = 12;
+
+    private final String name;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> constants = new HashMap<String, Integer>();
+    private int poolSize = 1;
+
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int numFields = 0;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int numMethods = 0;
+
+    /**
+     * @param name the internal name of the class (with / for .)
+     */
+    ClassWriter(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // The constant pool. Each of these returns the index of a constant,
+    // adding it if it isn't in the pool yet.
+
+    int utf8(String s) {
+        Integer index = constants.get("U" + s);
+        if (index == null) {
+            index = newConstant("U" + s, 1);
+            try {
+                pool.writeByte(CONSTANT_Utf8);
+                pool.writeUTF(s);
+            } catch (IOException e) {
+                throw new Error(e);
+            }
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        Integer index = constants.get("C" + internalName);
+        if (index == null) {
+            index = newConstant("C" + internalName, 1);
+            u1u2(CONSTANT_Class, nameIndex);
+        }
+        return index;
+    }
+
+    int string(String s) {
+        int utf8 = utf8(s);
+        Integer index = constants.get("S" + s);
+        if (index == null) {
+            index = newConstant("S" + s, 1);
+            u1u2(CONSTANT_String, utf8);
+        }
+        return index;
+    }
+
+    int longConstant(long value) {
+        Integer index = constants.get("J" + value);
+        if (index == null) {
+            // Longs take up two entries
+            index = newConstant("J" + value, 2);
+            try {
+                pool.writeByte(CONSTANT_Long);
+                pool.writeLong(value);
+            } catch (IOException e) {
+                throw new Error(e);
+            }
+        }
+        return index;
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_Fieldref, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_Methodref, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        String ntKey = "N" + name + " " + descriptor;
+        Integer nameAndType = constants.get(ntKey);
+        if (nameAndType == null) {
+            nameAndType = newConstant(ntKey, 1);
+            u1u2u2(CONSTANT_NameAndType, nameIndex, descriptorIndex);
+        }
+        String key = tag + owner + "." + name + " " + descriptor;
+        Integer index = constants.get(key);
+        if (index == null) {
+            index = newConstant(key, 1);
+            u1u2u2(tag, classIndex, nameAndType);
+        }
+        return index;
+    }
+
+    private int newConstant(String key, int entries) {
+        int index = poolSize;
+        if (index + entries > 0xFFFF)
+            throw new Error("Too many constants in class " + name);
+        poolSize += entries;
+        constants.put(key, index);
+        return index;
+    }
+
+    private void u1u2(int tag, int a) {
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(a);
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+    }
+
+    private void u1u2u2(int tag, int a, int b) {
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(a);
+            pool.writeShort(b);
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Members
+
+    void addField(int access, String name, String descriptor) {
+        try {
+            fields.writeShort(access);
+            fields.writeShort(utf8(name));
+            fields.writeShort(utf8(descriptor));
+            fields.writeShort(0); // no attributes
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+        numFields++;
+    }
+
+    void addMethod(int access, String name, String descriptor, Bytecode code) {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > 0xFFFF)
+            throw new Error("Method " + name + " is too big for the JVM");
+        try {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1);
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(12 + bytes.length);
+            methods.writeShort(code.getMaxStack());
+            methods.writeShort(code.getMaxLocals());
+            methods.writeInt(bytes.length);
+            methods.write(bytes);
+            methods.writeShort(0); // no exception handlers
+            methods.writeShort(0); // no attributes
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+        numMethods++;
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // no interfaces
+            out.writeShort(numFields);
+            fieldBytes.writeTo(out);
+            out.writeShort(numMethods);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // no attributes
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+        return bytes.toByteArray();
+    }
+
+}
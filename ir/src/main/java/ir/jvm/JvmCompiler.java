@@ -0,0 +1,522 @@
+package ir.jvm;
+
+import ir.frame.x86_64.X86_64Frame;
+import ir.temp.Label;
+import ir.temp.Temp;
+import ir.tree.BINOP;
+import ir.tree.CALL;
+import ir.tree.CJUMP;
+import ir.tree.CMOVE;
+import ir.tree.CONST;
+import ir.tree.EXP;
+import ir.tree.IRData;
+import ir.tree.IRExp;
+import ir.tree.IRStm;
+import ir.tree.JUMP;
+import ir.tree.LABEL;
+import ir.tree.MEM;
+import ir.tree.MOVE;
+import ir.tree.NAME;
+import ir.tree.TEMP;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import translate.DataFragment;
+import translate.Fragment;
+import translate.Fragments;
+import translate.ProcFragment;
+import translate.TranslatorLabels;
+import util.IdMap;
+import util.List;
+
+import static ir.jvm.Bytecode.*;
+
+/**
+ * Compiles the trace scheduled IR of a program to a class with a static
+ * method for each procedure.
+ * <p>
+ * A procedure with n formals becomes a method that takes n longs and
+ * returns a long (the value of the RV register). Each temp is a local
+ * variable, and words of memory are read and written through the
+ * {@link JvmRuntime}, which the class keeps in a static field. CALLs of a
+ * procedure by name become invokestatics, and CALLs of the runtime
+ * functions call the methods of the JvmRuntime. Other CALLs go through a
+ * dispatch method for their number of arguments, which switches on the
+ * code address.
+ * <p>
+ * The IR's arithmetic is on 32 bit ints, so the results of BINOPs are
+ * truncated to 32 bits (and sign extended).
+ */
+class JvmCompiler {
+
+    private static final String RUNTIME = "ir/jvm/JvmRuntime";
+    private static final String RUNTIME_DESC = "L" + RUNTIME + ";";
+    private static final String ERROR_DESC = "Ljava/lang/Error;";
+
+    /**
+     * The name of the static field that holds the JvmRuntime.
+     */
+    static final String RT = "rt";
+
+    private static final Map<Label, String> runtimeFunctions = new HashMap<Label, String>();
+
+    static {
+        runtimeFunctions.put(TranslatorLabels.L_PRINT, "println");
+        runtimeFunctions.put(TranslatorLabels.L_NEW_OBJECT, "newobject");
+        runtimeFunctions.put(TranslatorLabels.L_NEW_ARRAY, "newarray");
+        runtimeFunctions.put(TranslatorLabels.L_ERROR, "error");
+    }
+
+    private final ClassWriter cw;
+
+    private final ArrayList<ProcFragment> procs = new ArrayList<ProcFragment>();
+    private final Map<Label, Integer> procIndex = new HashMap<Label, Integer>();
+    private final ArrayList<String> methodNames = new ArrayList<String>();
+    private final Map<Label, Long> dataAddress = new HashMap<Label, Long>();
+    private final ArrayList<IRData> data = new ArrayList<IRData>();
+    private int dataWords = 0;
+    private String mainMethod;
+
+    /**
+     * The dispatch methods that the code calls, by number of arguments.
+     */
+    private final TreeMap<Integer, String> dispatchers = new TreeMap<Integer, String>();
+
+    // The procedure being compiled
+    private ProcFragment frag;
+    private Bytecode code;
+    private IdMap<Temp, Integer> locals;
+    private int numLocals;
+    private HashMap<Label, Target> targets;
+
+    JvmCompiler(String className, Fragments program) {
+        cw = new ClassWriter(className);
+        for (Fragment fragment : program) {
+            if (fragment instanceof ProcFragment) {
+                ProcFragment proc = (ProcFragment) fragment;
+                String name = "p" + procs.size() + "_" + proc.getLabel().toString().replaceAll("[^A-Za-z0-9_$]", "_");
+                procIndex.put(proc.getLabel(), procs.size());
+                procs.add(proc);
+                methodNames.add(name);
+                if (TranslatorLabels.L_MAIN.equals(proc.getLabel()))
+                    mainMethod = name;
+            } else if (fragment instanceof DataFragment) {
+                IRData d = ((DataFragment) fragment).getBody();
+                // Data starts at the second word of the heap
+                dataAddress.put(d.getLabel(), (long) (1 + dataWords) * X86_64Frame.WORD_SIZE);
+                for (IRExp ignored : d)
+                    dataWords++;
+                data.add(d);
+            } else {
+                throw new Error("JVM compiler doesn't know about fragments of this type: " + fragment.getClass());
+            }
+        }
+        if (mainMethod == null)
+            throw new Error("No " + TranslatorLabels.L_MAIN + " procedure");
+    }
+
+    String getMainMethod() {
+        return mainMethod;
+    }
+
+    /**
+     * The code address of a procedure. These are negative, so they can't be
+     * confused with addresses of memory.
+     */
+    private static long codeAddress(int procIndex) {
+        return ~procIndex;
+    }
+
+    /**
+     * The contents of the data fragments, which go at the start of the heap.
+     */
+    long[] dataImage() {
+        long[] image = new long[dataWords];
+        int i = 0;
+        for (IRData d : data) {
+            for (IRExp e : d) {
+                if (e instanceof CONST)
+                    image[i] = ((CONST) e).getValue();
+                else if (e instanceof NAME && procIndex.containsKey(((NAME) e).getLabel()))
+                    image[i] = codeAddress(procIndex.get(((NAME) e).getLabel()));
+                else if (e instanceof NAME && dataAddress.containsKey(((NAME) e).getLabel()))
+                    image[i] = dataAddress.get(((NAME) e).getLabel());
+                else
+                    throw new Error("Data can only hold CONSTs and NAMEs of procedures and data: " + e);
+                i++;
+            }
+        }
+        return image;
+    }
+
+    byte[] compile() {
+        cw.addField(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, RT, RUNTIME_DESC);
+        for (int i = 0; i < procs.size(); i++)
+            compileProc(i);
+        for (Map.Entry<Integer, String> d : dispatchers.entrySet())
+            compileDispatcher(d.getKey(), d.getValue());
+        return cw.toByteArray();
+    }
+
+    private static String descriptor(int numArgs) {
+        StringBuilder d = new StringBuilder("(");
+        for (int i = 0; i < numArgs; i++)
+            d.append('J');
+        return d.append(")J").toString();
+    }
+
+    private void compileProc(int index) {
+        frag = procs.get(index);
+        X86_64Frame frame = (X86_64Frame) frag.getFrame();
+        int numArgs = frame.getFormals().size();
+        numLocals = 2 * numArgs;
+        locals = new IdMap<Temp, Integer>();
+        targets = new HashMap<Label, Target>();
+        int frameSlot = newLocal();
+        int fpSlot = local(X86_64Frame.FP);
+        int rvSlot = local(X86_64Frame.RV);
+
+        code = new Bytecode(numLocals);
+        for (IRStm stm : frag.getTraceScheduledBody())
+            stm(stm);
+        // Labels at the very end of the body go here
+        Target done = new Target();
+        code.jump(GOTO, done);
+        // Fail on jumps to labels that are not in the body
+        for (Map.Entry<Label, Target> t : targets.entrySet()) {
+            if (!t.getValue().isMarked()) {
+                code.mark(t.getValue());
+                fail("Jump to a label that is not in " + frag.getLabel() + ": " + t.getKey());
+            }
+        }
+        code.mark(done);
+        runtime();
+        code.loadLong(frameSlot);
+        invokeRuntime("leave", "(J)V", -3);
+        code.loadLong(rvSlot);
+        code.op(LRETURN, -2);
+        Bytecode body = code;
+
+        // The prologue sets up the frame like ir.interp.X86_64SimFrame. It
+        // comes last, because the body may add temps that need clearing.
+        code = new Bytecode(numLocals);
+        for (int slot = 2 * numArgs; slot < numLocals; slot += 2) {
+            code.op(LCONST_0, 2);
+            code.storeLong(slot);
+        }
+        int numRegArgs = X86_64Frame.arguments.size();
+        int numStackArgs = numArgs < numRegArgs ? 0 : numArgs - numRegArgs;
+        runtime();
+        loadConstant(numStackArgs + 2 + frame.numLocals());
+        invokeRuntime("enter", "(J)J", -1);
+        code.storeLong(frameSlot);
+        code.loadLong(frameSlot);
+        loadConstant(frame.numLocals() * X86_64Frame.WORD_SIZE);
+        code.op(LADD, -2);
+        code.storeLong(fpSlot);
+        for (int i = 0; i < numArgs; i++) {
+            if (i < numRegArgs) {
+                code.loadLong(2 * i);
+                code.storeLong(local(X86_64Frame.arguments.get(i)));
+            } else {
+                runtime();
+                code.loadLong(2 * i);
+                code.loadLong(fpSlot);
+                loadConstant(X86_64Frame.FIRST_FORMAL_OFFSET + (i - numRegArgs) * X86_64Frame.FORMAL_INCREMENT);
+                code.op(LADD, -2);
+                invokeRuntime("store", "(JJ)V", -5);
+            }
+        }
+        code.append(body);
+        cw.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, methodNames.get(index), descriptor(numArgs), code);
+    }
+
+    private int newLocal() {
+        int slot = numLocals;
+        numLocals += 2;
+        return slot;
+    }
+
+    private int local(Temp temp) {
+        Integer slot = locals.get(temp);
+        if (slot == null) {
+            slot = newLocal();
+            locals.put(temp, slot);
+        }
+        return slot;
+    }
+
+    private Target target(Label label) {
+        Target t = targets.get(label);
+        if (t == null) {
+            t = new Target();
+            targets.put(label, t);
+        }
+        return t;
+    }
+
+    private void runtime() {
+        code.op2(GETSTATIC, cw.fieldRef(cw.getName(), RT, RUNTIME_DESC), 1);
+    }
+
+    private void invokeRuntime(String name, String descriptor, int delta) {
+        code.op2(INVOKEVIRTUAL, cw.methodRef(RUNTIME, name, descriptor), delta);
+    }
+
+    private void loadConstant(long value) {
+        if (value == 0)
+            code.op(LCONST_0, 2);
+        else if (value == 1)
+            code.op(LCONST_1, 2);
+        else
+            code.op2(LDC2_W, cw.longConstant(value), 2);
+    }
+
+    /**
+     * Throw an Error with a message.
+     */
+    private void fail(String message) {
+        runtime();
+        code.loadString(cw.string(message));
+        invokeRuntime("fail", "(Ljava/lang/String;)" + ERROR_DESC, -1);
+        code.op(ATHROW, -1);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Statements. Each leaves the operand stack empty.
+
+    private void stm(IRStm stm) {
+        if (stm instanceof LABEL) {
+            code.mark(target(((LABEL) stm).getLabel()));
+        } else if (stm instanceof MOVE) {
+            move(((MOVE) stm).dst, ((MOVE) stm).src);
+        } else if (stm instanceof EXP) {
+            exp(((EXP) stm).exp);
+            code.op(POP2, -2);
+        } else if (stm instanceof JUMP) {
+            IRExp to = ((JUMP) stm).getExp();
+            if (to instanceof NAME)
+                code.jump(GOTO, target(((NAME) to).getLabel()));
+            else
+                fail("Not supported by the JVM compiler: " + stm);
+        } else if (stm instanceof CJUMP) {
+            cjump((CJUMP) stm);
+        } else if (stm instanceof CMOVE) {
+            cmove((CMOVE) stm);
+        } else {
+            fail("Not supported by the JVM compiler: " + stm);
+        }
+    }
+
+    private void move(IRExp dst, IRExp src) {
+        if (dst instanceof TEMP) {
+            exp(src);
+            code.storeLong(local(((TEMP) dst).temp));
+        } else if (dst instanceof MEM) {
+            runtime();
+            exp(src);
+            exp(((MEM) dst).exp);
+            invokeRuntime("store", "(JJ)V", -5);
+        } else {
+            fail("This IR " + dst + " is not legal as the LHS of a MOVE.");
+        }
+    }
+
+    /**
+     * Compare left and right, and jump to target if relop holds (or if it
+     * doesn't, if negate). Returns false if relop isn't supported.
+     */
+    private boolean branch(CJUMP.RelOp relop, IRExp left, IRExp right, boolean negate, Target target) {
+        switch (relop) {
+            case LT:
+            case GE:
+            case EQ:
+            case NE:
+                exp(left);
+                exp(right);
+                code.op(LCMP, -3);
+                int opcode = relop == CJUMP.RelOp.LT ? IFLT
+                        : relop == CJUMP.RelOp.GE ? IFGE
+                        : relop == CJUMP.RelOp.EQ ? IFEQ : IFNE;
+                if (negate)
+                    opcode = opcode == IFLT ? IFGE : opcode == IFGE ? IFLT : opcode == IFEQ ? IFNE : IFEQ;
+                code.jump(opcode, target);
+                code.adjust(-1);
+                return true;
+            case ULT:
+            case UGE:
+                exp(left);
+                exp(right);
+                code.op2(INVOKESTATIC, cw.methodRef(RUNTIME, "ult", "(JJ)Z"), -3);
+                code.jump((relop == CJUMP.RelOp.ULT) != negate ? IFNE : IFEQ, target);
+                code.adjust(-1);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void cjump(CJUMP cjump) {
+        if (!branch(cjump.relop, cjump.left, cjump.right, false, target(cjump.iftrue)))
+            fail("Missing case? " + cjump.relop);
+        else
+            code.jump(GOTO, target(cjump.iffalse));
+    }
+
+    private void cmove(CMOVE cmove) {
+        switch (cmove.getOp()) {
+            case LT:
+            case EQ:
+            case NE:
+                Target skip = new Target();
+                branch(cmove.getOp(), cmove.getLeft(), cmove.getRight(), true, skip);
+                move(cmove.getDst(), cmove.getSrc());
+                code.mark(skip);
+                break;
+            default:
+                fail("Missing case? " + cmove.getOp());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Expressions. Each pushes a long.
+
+    private void exp(IRExp exp) {
+        if (exp instanceof CONST) {
+            loadConstant(((CONST) exp).getValue());
+        } else if (exp instanceof TEMP) {
+            code.loadLong(local(((TEMP) exp).temp));
+        } else if (exp instanceof MEM) {
+            runtime();
+            exp(((MEM) exp).exp);
+            invokeRuntime("load", "(J)J", -1);
+        } else if (exp instanceof NAME) {
+            Label label = ((NAME) exp).getLabel();
+            if (procIndex.containsKey(label) && !runtimeFunctions.containsKey(label))
+                loadConstant(codeAddress(procIndex.get(label)));
+            else if (dataAddress.containsKey(label))
+                loadConstant(dataAddress.get(label));
+            else
+                failExp("The JVM compiler has no address for " + label);
+        } else if (exp instanceof BINOP) {
+            binop((BINOP) exp);
+        } else if (exp instanceof CALL) {
+            call((CALL) exp);
+        } else {
+            failExp("Not supported by the JVM compiler: " + exp);
+        }
+    }
+
+    /**
+     * Throw an Error where an expression is expected.
+     */
+    private void failExp(String message) {
+        fail(message);
+        // Not reached, but the code that follows expects a long
+        code.adjust(2);
+    }
+
+    private void binop(BINOP binop) {
+        exp(binop.left);
+        exp(binop.right);
+        switch (binop.binop) {
+            case PLUS:
+                code.op(LADD, -2);
+                break;
+            case MINUS:
+                code.op(LSUB, -2);
+                break;
+            case MUL:
+                code.op(LMUL, -2);
+                break;
+            case DIV:
+                code.op(LDIV, -2);
+                break;
+            case ARSHIFT:
+                // An int shift: only the low 5 bits of the count matter. A
+                // long shift of a sign extended int gives the same result.
+                code.op(L2I, -1);
+                code.op(BIPUSH, 1);
+                code.u1(31);
+                code.op(IAND, -1);
+                code.op(LSHR, -1);
+                return;
+            default:
+                code.op(POP2, -2);
+                code.op(POP2, -2);
+                failExp("Binop case missing? " + binop.binop);
+                return;
+        }
+        truncate();
+    }
+
+    /**
+     * Truncate the long on top of the stack to 32 bits, sign extended.
+     */
+    private void truncate() {
+        code.op(L2I, -1);
+        code.op(I2L, 1);
+    }
+
+    private void call(CALL call) {
+        IRExp func = call.getFunc();
+        List<IRExp> args = call.getArgs();
+        Label label = func instanceof NAME ? ((NAME) func).getLabel() : null;
+        if (label != null && runtimeFunctions.containsKey(label)) {
+            runtime();
+            for (IRExp arg : args)
+                exp(arg);
+            invokeRuntime(runtimeFunctions.get(label), descriptor(args.size()), 1 - 2 * args.size());
+        } else if (label != null && procIndex.containsKey(label)) {
+            for (IRExp arg : args)
+                exp(arg);
+            code.op2(INVOKESTATIC, cw.methodRef(cw.getName(), methodNames.get(procIndex.get(label)),
+                    descriptor(args.size())), 2 - 2 * args.size());
+        } else {
+            exp(func);
+            for (IRExp arg : args)
+                exp(arg);
+            String dispatcher = dispatchers.get(args.size());
+            if (dispatcher == null) {
+                dispatcher = "call" + args.size();
+                dispatchers.put(args.size(), dispatcher);
+            }
+            code.op2(INVOKESTATIC, cw.methodRef(cw.getName(), dispatcher, descriptor(args.size() + 1)),
+                    -2 * args.size());
+        }
+    }
+
+    /**
+     * A method that calls the procedure with numArgs formals that its first
+     * argument is the code address of.
+     */
+    private void compileDispatcher(int numArgs, String name) {
+        code = new Bytecode(2 * (numArgs + 1));
+        code.loadLong(0);
+        code.op(L2I, -1);
+        code.op(ICONST_M1, 1);
+        code.op(IXOR, -1);
+        Target fail = new Target();
+        Target[] cases = new Target[procs.size()];
+        for (int i = 0; i < cases.length; i++)
+            cases[i] = procs.get(i).getFrame().getFormals().size() == numArgs ? new Target() : fail;
+        code.tableswitch(fail, cases);
+        for (int i = 0; i < cases.length; i++) {
+            if (cases[i] != fail) {
+                code.mark(cases[i]);
+                for (int a = 1; a <= numArgs; a++)
+                    code.loadLong(2 * a);
+                code.op2(INVOKESTATIC, cw.methodRef(cw.getName(), methodNames.get(i), descriptor(numArgs)),
+                        2 - 2 * numArgs);
+                code.op(LRETURN, -2);
+            }
+        }
+        code.mark(fail);
+        fail("Not a procedure with " + numArgs + " arguments");
+        cw.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, name, descriptor(numArgs + 1), code);
+    }
+
+}
@@ -0,0 +1,77 @@
+package ir.jvm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import translate.Fragments;
+
+/**
+ * Runs the IR of a program as JVM bytecode (see {@link JvmCompiler}), to
+ * test translations at close to the speed of the compiled program, without
+ * an assembler.
+ * <p>
+ * The class is compiled and loaded (by a class loader of its own) once,
+ * and each call of {@link #run()} runs the program from the start, with a
+ * fresh memory. It prints what {@link ir.interp.Interp#run()} prints, and
+ * fails with the same Errors when the program calls cs411error. It doesn't
+ * catch everything the interpreter catches though: see {@link JvmRuntime}.
+ */
+public class JvmProgram {
+
+    private static final String CLASS_NAME = "MiniJavaProgram";
+
+    private static class Loader extends ClassLoader {
+        Loader() {
+            super(JvmRuntime.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] classFile) {
+            return defineClass(CLASS_NAME, classFile, 0, classFile.length);
+        }
+    }
+
+    private final byte[] classFile;
+    private final long[] data;
+    private final Class<?> program;
+    private final Method main;
+
+    public JvmProgram(Fragments fragments) {
+        JvmCompiler compiler = new JvmCompiler(CLASS_NAME, fragments);
+        classFile = compiler.compile();
+        data = compiler.dataImage();
+        program = new Loader().define(classFile);
+        try {
+            main = program.getMethod(compiler.getMainMethod());
+        } catch (NoSuchMethodException e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * The class file of the program.
+     */
+    public byte[] getClassFile() {
+        return classFile.clone();
+    }
+
+    /**
+     * Run the program and return its output.
+     */
+    public String run() {
+        JvmRuntime rt = new JvmRuntime(data);
+        try {
+            program.getField(JvmCompiler.RT).set(null, rt);
+            main.invoke(null);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new Error(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+        return rt.getOutput();
+    }
+
+}
@@ -0,0 +1,141 @@
+package ir.jvm;
+
+import java.util.Arrays;
+
+/**
+ * The memory and the runtime functions of a program compiled by
+ * {@link JvmCompiler}. The compiled code calls these methods (so they are
+ * public: the code is in a class of its own class loader).
+ * <p>
+ * Words are longs. Ints are kept sign extended, and addresses are byte
+ * addresses below 2^31, so both fit the 32 bit arithmetic of the IR.
+ * There are two areas of memory, each a long[] that grows as needed: the
+ * heap, which holds the data fragments and the objects and arrays the
+ * program allocates (never freed), and the stack, which holds the frames of
+ * the procedures, and starts at {@link #STACK_BASE}. Code addresses are
+ * negative.
+ * <p>
+ * Unlike {@link ir.interp.Interp}, this doesn't check that a pointer stays
+ * within the block of memory it points into, nor that words are
+ * initialized.
+ */
+public final class JvmRuntime {
+
+    static final long STACK_BASE = 1L << 30;
+    private static final int WORD_SIZE = 8;
+
+    private long[] heap;
+    private int heapTop;
+
+    private long[] stack = new long[1024];
+    private long sp = STACK_BASE;
+
+    private final StringBuilder out = new StringBuilder();
+
+    /**
+     * @param data the initial contents of the heap (the data fragments)
+     */
+    JvmRuntime(long[] data) {
+        // Address 0 is NULL, so the data starts at the second word
+        heap = new long[Math.max(1024, 2 * (data.length + 1))];
+        System.arraycopy(data, 0, heap, 1, data.length);
+        heapTop = data.length + 1;
+    }
+
+    String getOutput() {
+        return out.toString();
+    }
+
+    public long load(long address) {
+        if (address >= STACK_BASE)
+            return stack[(int) ((address - STACK_BASE) >>> 3)];
+        return heap[(int) (address >>> 3)];
+    }
+
+    /**
+     * Store a value (which is evaluated before the address, in the IR).
+     */
+    public void store(long value, long address) {
+        if (address >= STACK_BASE)
+            stack[(int) ((address - STACK_BASE) >>> 3)] = value;
+        else
+            heap[(int) (address >>> 3)] = value;
+    }
+
+    /**
+     * Push a frame of words words, and return its address.
+     */
+    public long enter(long words) {
+        long frame = sp;
+        sp += words * WORD_SIZE;
+        int top = (int) ((sp - STACK_BASE) >>> 3);
+        if (sp >= 2 * STACK_BASE)
+            throw new Error("Stack overflow");
+        if (top > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(top, stack.length * 2));
+        return frame;
+    }
+
+    /**
+     * Pop the frame at address frame, and all the frames above it.
+     */
+    public void leave(long frame) {
+        sp = frame;
+    }
+
+    private long alloc(int words) {
+        int address = heapTop;
+        if ((long) address + words >= STACK_BASE / WORD_SIZE)
+            throw new Error("Out of memory");
+        heapTop += words;
+        if (heapTop > heap.length)
+            heap = Arrays.copyOf(heap, Math.max(heapTop, heap.length * 2));
+        return (long) address * WORD_SIZE;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // The runtime functions (see TranslatorLabels)
+
+    public long println(long value) {
+        out.append((int) value).append('\n');
+        return 0;
+    }
+
+    public long newobject(long bytes) {
+        assert (bytes % WORD_SIZE == 0);
+        return alloc((int) bytes / WORD_SIZE);
+    }
+
+    public long newarray(long length) {
+        // As in Interp: the length, followed by the elements
+        if (length < 0)
+            throw new NegativeArraySizeException("" + (length + 1));
+        long address = alloc((int) length + 1);
+        heap[(int) (address >>> 3)] = length;
+        return address + WORD_SIZE;
+    }
+
+    public long error(long code) {
+        out.append("MiniJava failure ").append((int) code).append('\n');
+        System.out.println(out.toString());
+        throw new Error(out.toString());
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Helpers for the compiled code
+
+    /**
+     * The ULT of {@link ir.interp.Int}.
+     */
+    public static boolean ult(long l, long r) {
+        return l < 0 ? false : l < r;
+    }
+
+    /**
+     * An error for the compiled code to throw.
+     */
+    public Error fail(String message) {
+        return new Error(message);
+    }
+
+}
@@ -3,6 +3,7 @@ package ir.temp;
 import java.util.HashMap;
 import java.util.Map;
 
+import util.Numbered;
 import util.Utils;
 
 /**
@@ -16,32 +17,24 @@ import util.Utils;
  * the Label class without having to change all the code that uses it.
  * Also, it is important to distinguish the "get" from the "generate" method,
  * which would be hard with constructors since they have the same parameter name.
+ * <p>
+ * Every label carries a dense integer id, so it can be used as a key in
+ * an {@link util.IdMap}.
  */
-public class Label {
+public class Label implements Numbered {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((name == null) ? 0 : name.hashCode());
-        return result;
+        return id;
     }
 
+    /**
+     * Labels are compared by identity: {@link #get(String)} returns the same
+     * Label for the same name and generated Labels are always unique.
+     */
     @Override
     public boolean equals(Object obj) {
-        if (this == obj)
-            return true;
-        if (obj == null)
-            return false;
-        if (getClass() != obj.getClass())
-            return false;
-        Label other = (Label) obj;
-        if (name == null) {
-            if (other.name != null)
-                return false;
-        } else if (!name.equals(other.name))
-            return false;
-        return true;
+        return this == obj;
     }
 
     /**
@@ -53,6 +46,9 @@ public class Label {
     private String name;
     private static int count;
 
+    private static int nextId;
+    private final int id;
+
     /**
      * a printable representation of the label, for use in assembly
      * language output.
@@ -73,6 +69,15 @@ public class Label {
      */
     private Label(String printsAs) {
         name = printsAs;
+        id = nextId++;
+    }
+
+    /**
+     * A small integer that uniquely identifies this label.
+     */
+    @Override
+    public int getId() {
+        return id;
     }
 
     /**
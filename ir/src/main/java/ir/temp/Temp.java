@@ -1,37 +1,63 @@
 package ir.temp;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import util.Numbered;
+
+
+/**
+ * A Temp is a "virtual register" (or, when it is pre-colored, an actual
+ * register).
+ * <p>
+ * Every Temp carries a small integer id, so that analyses can keep
+ * information about Temps in arrays (see {@link util.IdMap} and
+ * {@link util.IdSet}) rather than in hash maps. Ids are handed out densely
+ * from a numbering context; a compiler starts a new context for each
+ * compilation by calling {@link #newNumbering()}.
+ * <p>
+ * Temps are compared by identity. Only the registers are interned: there
+ * is one register Temp with a given name, see {@link #get(String)}, and
+ * its id is the same in every numbering context.
+ */
+public class Temp implements Comparable<Temp>, Numbered {
 
-
-public class Temp implements Comparable<Temp> {
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((name == null) ? 0 : name.hashCode());
-        return result;
+        return id;
     }
 
     @Override
     public boolean equals(Object obj) {
-        if (this == obj)
-            return true;
-        if (obj == null)
-            return false;
-        if (getClass() != obj.getClass())
-            return false;
-        Temp other = (Temp) obj;
-        if (name == null) {
-            if (other.name != null)
-                return false;
-        } else if (!name.equals(other.name))
-            return false;
-        return true;
+        return this == obj;
     }
 
     private static int count;
 
+    /**
+     * The ids below this number are the registers'. Those of the other
+     * Temps start after them, in every numbering context.
+     */
+    private static final int MAX_REGISTERS = 64;
+
+    /**
+     * The ids handed out to the Temps of one compilation.
+     */
+    private static class Numbering {
+        private int nextId = MAX_REGISTERS;
+    }
+
+    private static Numbering numbering = new Numbering();
+
+    /**
+     * Interned register Temps (see the get method).
+     */
+    private static Map<String, Temp> registers = new HashMap<String, Temp>();
+
+    private final int id;
+
     protected Color color = null;
 
     private String name;
@@ -50,17 +76,55 @@ public class Temp implements Comparable<Temp> {
 
     public Temp() {
         name = "t" + ndigit(count++, 3);
+        id = numbering.nextId++;
+    }
+
+    /**
+     * Retrieve the register Temp with a given name (which starts with a
+     * "%"). A new Temp will be created only if a Temp with this name does
+     * not yet exist.
+     * <p>
+     * The Temp is pre-colored. This means the Temp represents an actual
+     * register. A new and unique color object is created to represent this
+     * register so that other temps can be colored with it.
+     */
+    public static Temp get(String name) {
+        if (!name.startsWith("%"))
+            throw new Error("Not a register: " + name);
+        Temp existing = registers.get(name);
+        if (existing != null) return existing;
+        if (registers.size() == MAX_REGISTERS)
+            throw new Error("Too many registers: " + name);
+        Temp newTemp = new Temp(name, registers.size());
+        registers.put(name, newTemp);
+        return newTemp;
+    }
+
+    /**
+     * Create a new Temp with the given name, in the current numbering
+     * context. Used to read back textual IR, which names its Temps; unlike
+     * a register, it is not interned, so the reader must keep track of the
+     * Temps it has seen.
+     */
+    public static Temp named(String name) {
+        if (name.startsWith("%"))
+            return get(name);
+        return new Temp(name, numbering.nextId++);
     }
 
     /**
-     * Create a new Temp, which is pre-colored. This means the Temp
-     * represents an actual register. A new and unique color object is
-     * created to represent this register so that other temps can be
-     * colored with it.
+     * Start a new numbering context. The ids of Temps created from now on
+     * may coincide with those of (non register) Temps created before, so
+     * those older Temps must no longer be used as keys of IdMaps and IdSets.
      */
-    public Temp(String registerName) {
-        this.name = registerName;
-        if (registerName.startsWith("%")) {
+    public static void newNumbering() {
+        numbering = new Numbering();
+    }
+
+    private Temp(String name, int id) {
+        this.name = name;
+        this.id = id;
+        if (name.startsWith("%")) {
             this.color = new Color() {
                 @Override
                 public String toString() {
@@ -102,9 +166,22 @@ public class Temp implements Comparable<Temp> {
         return r;
     }
 
+    /**
+     * A small integer that identifies this Temp within its numbering context.
+     */
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Temps are ordered by name, and Temps with the same name (from
+     * different compilations, or read back from textual IR) by id.
+     */
     @Override
     public int compareTo(Temp arg0) {
-        return getName().compareTo(arg0.getName());
+        int byName = getName().compareTo(arg0.getName());
+        return byName != 0 ? byName : Integer.compare(getId(), arg0.getId());
     }
 }
 
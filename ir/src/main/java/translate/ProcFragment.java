@@ -1,7 +1,7 @@
 package translate;
 
 import ir.canon.BasicBlocks;
-import ir.canon.Canon;
+import ir.canon.Linearizer;
 import ir.canon.TraceSchedule;
 import ir.frame.Frame;
 import ir.temp.Label;
@@ -10,6 +10,8 @@ import ir.tree.LABEL;
 import ir.tree.SEQ;
 import util.IndentingWriter;
 import util.List;
+import util.Phase;
+import util.Profile;
 
 import static util.List.cons;
 import static util.List.empty;
@@ -63,21 +65,29 @@ public class ProcFragment extends Fragment {
 
     public List<IRStm> getLinearizedBody() {
         if (linearizedBody == null) {
-            linearizedBody = Canon.linearize(body);
+            Profile.Span span = Profile.begin(Phase.LINEARIZE, getLabel());
+            linearizedBody = Linearizer.linearize(body);
+            Profile.end(span);
         }
         return linearizedBody;
     }
 
     public BasicBlocks getBasicBlocks() {
         if (blocks == null) {
-            blocks = new BasicBlocks(getLinearizedBody());
+            List<IRStm> linearized = getLinearizedBody();
+            Profile.Span span = Profile.begin(Phase.BASIC_BLOCKS, getLabel());
+            blocks = new BasicBlocks(linearized);
+            Profile.end(span);
         }
         return blocks;
     }
 
     public List<IRStm> getTraceScheduledBody() {
         if (traceScheduled == null) {
-            traceScheduled = new TraceSchedule(getBasicBlocks()).getProgram();
+            BasicBlocks basicBlocks = getBasicBlocks();
+            Profile.Span span = Profile.begin(Phase.TRACE_SCHEDULE, getLabel());
+            traceScheduled = new TraceSchedule(basicBlocks).getProgram();
+            Profile.end(span);
         }
         return traceScheduled;
     }
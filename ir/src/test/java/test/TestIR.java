@@ -97,6 +97,38 @@ public class TestIR {
         }
     }
 
+    @Test
+    public void testNumbering() throws Exception {
+        Temp.newNumbering();
+        Temp t = new Temp(), t2 = new Temp();
+        Assertions.assertEquals(t.getId() + 1, t2.getId());
+        // Reading IR back doesn't intern its Temps, or take up ids for good
+        String text = "MethodFragment {\n" +
+                "   X86_64Frame { label = cs411main\n" +
+                "      nextLocalOffset = -8\n" +
+                "      formals = List {\n" +
+                "      }\n" +
+                "   }\n" +
+                "   List {\n" +
+                "      MOVE(\n" +
+                "         t900 <-\n" +
+                "         CONST 5)\n" +
+                "      EXP(CALL(\n" +
+                "         NAME(cs411println),\n" +
+                "         t900))\n" +
+                "   }\n" +
+                "}\n";
+        for (int i = 0; i < 2; i++)
+            Parser.parse(text);
+        Temp.newNumbering();
+        Assertions.assertEquals(t.getId(), new Temp().getId());
+
+        Assertions.assertSame(Temp.get("%rax"), Temp.get("%rax"));
+        Temp same = Temp.named(t.getName());
+        Assertions.assertNotEquals(t, same);
+        Assertions.assertNotEquals(0, t.compareTo(same));
+    }
+
     private boolean dumpIR() {
         return true;
     }
@@ -1,12 +1,15 @@
 package irsim;
 
+import ir.temp.Label;
 import ir.tree.*;
 import translate.DataFragment;
 import translate.Fragment;
 import translate.Fragments;
 import translate.ProcFragment;
+import util.Memory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +70,116 @@ public class Program {
 		return labels.get(label);
 	}
 
+	/**
+	 * The runtime functions that calls to a NAME may refer to. They are
+	 * simulated rather than called. 
+	 */
+	static final byte NOT_RUNTIME = 0, PRINTLN = 1, NEWOBJECT = 2, NEWARRAY = 3, ERROR = 4;
+
+	/**
+	 * Address of each Label used by the instructions, indexed by Label id.
+	 */
+	private long[] labelAddress = new long[0];
+	/**
+	 * The runtime function each Label names, indexed by Label id.
+	 */
+	private byte[] runtimeFunction = new byte[0];
+	/**
+	 * Branch targets of the CJUMP at each pc.
+	 */
+	int[] trueTarget, falseTarget;
+	private boolean linked = false;
+
+	/**
+	 * Resolve the labels used by the instructions to addresses, so that the
+	 * simulator never looks up a label by name. Unknown labels are an Error
+	 * here, rather than when the jump is executed. Done once, when the
+	 * program is loaded into a {@link State}.
+	 */
+	void link() {
+		if (linked)
+			return;
+		trueTarget = new int[instructions.size()];
+		falseTarget = new int[instructions.size()];
+		for (int pc = 0; pc < instructions.size(); pc++) {
+			IRStm s = instructions.get(pc);
+			if (s instanceof CJUMP) {
+				CJUMP cj = (CJUMP) s;
+				trueTarget[pc] = (int) resolve(cj.getTrueLabel());
+				falseTarget[pc] = (int) resolve(cj.getFalseLabel());
+			}
+			if (s instanceof IRRet)
+				continue;
+			for (IRExp e : s.kids())
+				link(e);
+		}
+		linked = true;
+	}
+
+	private void link(IRExp e) {
+		if (e instanceof CALL && ((CALL) e).getFunc() instanceof NAME) {
+			Label l = ((NAME) ((CALL) e).getFunc()).getLabel();
+			byte kind = runtimeFunction(l.toString());
+			if (kind != NOT_RUNTIME) {
+				grow(l.getId());
+				runtimeFunction[l.getId()] = kind;
+				for (IRExp arg : ((CALL) e).getArgs())
+					link(arg);
+				return;
+			}
+		}
+		if (e instanceof NAME) {
+			resolve(((NAME) e).getLabel());
+			return;
+		}
+		for (IRExp kid : e.kids())
+			link(kid);
+	}
+
+	private static byte runtimeFunction(String label) {
+		if (label.startsWith("_"))
+			label = label.substring(1);
+		switch (label) {
+			case "cs411println": return PRINTLN;
+			case "cs411newobject": return NEWOBJECT;
+			case "cs411newarray": return NEWARRAY;
+			case "cs411error": return ERROR;
+			default: return NOT_RUNTIME;
+		}
+	}
+
+	private long resolve(Label l) {
+		Long addr = labels.get(l.toString());
+		if (addr == null)
+			throw new Error("Unknown label " + l);
+		grow(l.getId());
+		labelAddress[l.getId()] = addr;
+		return addr;
+	}
+
+	private void grow(int id) {
+		if (id >= labelAddress.length) {
+			int size = Math.max(id + 1, labelAddress.length * 2);
+			labelAddress = Arrays.copyOf(labelAddress, size);
+			runtimeFunction = Arrays.copyOf(runtimeFunction, size);
+		}
+	}
+
+	/**
+	 * The address of a label used by the program (only valid once linked).
+	 */
+	long address(Label l) {
+		return labelAddress[l.getId()];
+	}
+
+	/**
+	 * Which runtime function a label names, or NOT_RUNTIME.
+	 */
+	byte runtimeFunction(Label l) {
+		int id = l.getId();
+		return id < runtimeFunction.length ? runtimeFunction[id] : NOT_RUNTIME;
+	}
+
 	public void doData() {
 		inText = false;
 	}
@@ -172,7 +285,10 @@ public class Program {
 		}
 		for (Long addr : relocationData.keySet()) {
 			String value = relocationData.get(addr);
-			ram.write(addr, labels.get(value));
+			Long target = labels.get(value);
+			if (target == null)
+				throw new Error("Unknown label " + value);
+			ram.write(addr, target);
 		}
 		return dc;
 	}
@@ -39,6 +39,9 @@ public class Sim {
 		System.out.println("Static: " + p.countInstructions() + " instructions generated");
 		System.out.println("Dynamic: " + s.instructionsExecuted + " instructions executed");
         System.out.println("Memory: " + (s.ram.nReads + s.ram.nWrites) + " references");
+		if (s.getGcCount() > 0)
+			System.out.println("GC: " + s.getGcCount() + " collections, " + s.getGcPauseInstructions()
+					+ " pause instructions, " + s.getGcLiveBytes() + " bytes live");
 		return s;
 	}
     public static void main(String[] args) {
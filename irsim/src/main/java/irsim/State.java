@@ -10,11 +10,23 @@ import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.*;
 
-import static org.junit.Assert.assertTrue;
+import util.Collector;
+import util.GcMode;
+import util.Memory;
+import util.PrintBuffer;
 
-public class State {
-	public static final long HEAP_BASE = 0x1000L, HEAP_SIZE = 0x1000L;
-	public static final long STACK_BASE = 0x8000L, STACK_SIZE = 0x1000L;
+public class State implements Collector.Mutator {
+	public static final long HEAP_BASE = 0x1000L;
+	/**
+	 * Limits of the heap and the stack, in bytes, for States created from
+	 * now on. Memory is only allocated as it is used.
+	 */
+	public static long heapSize = 64L << 20;
+	public static long stackSize = 8L << 20;
+	/**
+	 * Whether States created from now on collect garbage when the heap is full.
+	 */
+	public static GcMode gcMode = GcMode.NONE;
 	static final long DONE = 99999999999999L;
 	public boolean beVerbose = false;
 	public long maxInstructions = 10000000;
@@ -29,9 +41,6 @@ public class State {
 	final static String FP = "%rbp";
 	final static String ARG1 = "%rdi";
 	final static String AX = "%rax";
-	static {
-		assertTrue(HEAP_BASE + HEAP_SIZE < STACK_BASE - STACK_SIZE);
-	}
 	public Program p;
 	public Memory ram;
 	Map<String, Long> registers;
@@ -40,42 +49,92 @@ public class State {
 	public long conditionr;
 	public long pc;
 	public long hp;
+	private Collector collector;
 	public PrintStream out = System.out;
+	/**
+	 * What the program printed that hasn't been written to out yet.
+	 */
+	private final PrintBuffer printer = new PrintBuffer();
 	public long instructionsExecuted = 0L;
 	public String result;
 	private String moveTarget = AX;
 	private List<String> returnTarget = new ArrayList<String>();
 
 	public State(Program p) {
-		ram = new Memory(HEAP_BASE, HEAP_BASE + HEAP_SIZE, STACK_BASE - STACK_SIZE, STACK_BASE);
+		p.link();
+		ram = new Memory(HEAP_BASE, heapSize, stackSize);
 		registers = new HashMap<String, Long>();
 		registerstack = new LinkedList<Map<String, Long>>();
 		returnTarget.add(null);
 		pc = p.findMain();
 		this.p = p;
-		long sp = STACK_BASE - Memory.SIZEOF_LONG;
+		long sp = ram.stackEnd() - Memory.SIZEOF_LONG;
 		ram.write(sp, DONE);
 		sp -= Memory.SIZEOF_LONG;
 		ram.write(sp, 0);
 		setReg(SP, sp);
 		setReg(FP, sp);
 		hp = p.writeStatic(ram);
+		if (gcMode == GcMode.MARK_SWEEP)
+			collector = new Collector(ram, hp);
 	}
 
 	public long alloc(long size) {
-		assertTrue(hp + size <= HEAP_BASE + HEAP_SIZE);
+		if (collector != null)
+			// Every object gets its own block, even one without fields
+			return collector.allocate(this, size == 0 ? Memory.SIZEOF_LONG : size, false);
+		checkHeap(size);
 		long answer = hp;
 		hp += size;
 		return answer;
 	}
 	public long allocArray(long nElements) {
 		long size = (nElements + 1) * Memory.SIZEOF_LONG;
-		assertTrue(hp + size <= HEAP_BASE + HEAP_SIZE);
-		long answer = hp;
+		long answer;
+		if (collector != null) {
+			answer = collector.allocate(this, size, true);
+		} else {
+			checkHeap(size);
+			answer = hp;
+			hp += size;
+		}
 		ram.write(answer, nElements);
-		hp += size;
 		return answer + Memory.SIZEOF_LONG;
 	}
+	@Override
+	public long getHeapPointer() {
+		return hp;
+	}
+
+	@Override
+	public void setHeapPointer(long hp) {
+		this.hp = hp;
+	}
+
+	@Override
+	public void checkHeap(long size) {
+		if (size < 0 || hp + size > ram.heapEnd())
+			throw new Error("Out of heap memory: can't allocate " + size + " bytes (heap limit is " + heapSize + " bytes)");
+	}
+
+	/**
+	 * Give the collector every word that may point into the heap: the
+	 * registers and temps of this call and the ones saved by its callers,
+	 * and the stack.
+	 */
+	@Override
+	public void scanRoots(Collector c) {
+		for (Long value : registers.values())
+			if (value != null)
+				c.root(value);
+		for (Map<String, Long> saved : registerstack)
+			for (Long value : saved.values())
+				if (value != null)
+					c.root(value);
+		for (long a = getReg(SP); a < ram.stackEnd(); a += Memory.SIZEOF_LONG)
+			c.root(ram.peek(a));
+	}
+
 	public void do_call() {
 		Map<String, Long> newregisters = new HashMap<String, Long>();
 		for (int i = 0; i < regs.length; ++i) 
@@ -118,37 +177,37 @@ public class State {
 		}
 	}
 	public static boolean conditionTrue(String condition, long conditionl, long conditionr) {
-		if (! (condition.equals("l") || condition.equals("e") ||
-				condition.equals("g") || condition.equals("le") ||
-				condition.equals("ne") || condition.equals("ge") ||
-				condition.equals("b") || condition.equals("be") ||
-				condition.equals("a") || condition.equals("ae"))) {
-			System.out.println("Illegal condition in branch " + condition);
+		return conditionTrue(relOp(condition), conditionl, conditionr);
+	}
+	private static RelOp relOp(String condition) {
+		switch (condition) {
+			case "l": return RelOp.LT;
+			case "e": return RelOp.EQ;
+			case "g": return RelOp.GT;
+			case "le": return RelOp.LE;
+			case "ne": return RelOp.NE;
+			case "ge": return RelOp.GE;
+			case "b": return RelOp.ULT;
+			case "be": return RelOp.ULE;
+			case "a": return RelOp.UGT;
+			case "ae": return RelOp.UGE;
 		}
-		return 
-				condition.equals("l") && conditionl < conditionr ||
-				condition.equals("b") && unsignedCompare(conditionl, conditionr) < 0 ||
-				condition.equals("e") && conditionl == conditionr ||
-				condition.equals("g") && conditionl > conditionr ||
-				condition.equals("a") && unsignedCompare(conditionl, conditionr) > 0 ||
-				condition.equals("le") && conditionl <= conditionr ||
-				condition.equals("be") && unsignedCompare(conditionl, conditionr) <= 0 ||
-				condition.equals("ne") && conditionl != conditionr ||
-				condition.equals("ge") && (conditionr < 0 || conditionl >= conditionr) ||
-				condition.equals("ae") && unsignedCompare(conditionl, conditionr) >= 0;
+		throw new Error("Illegal condition in branch " + condition);
 	}
 	public static boolean conditionTrue(RelOp op, long conditionl, long conditionr) {
-		return 
-				op == RelOp.LT && conditionl < conditionr ||
-				op == RelOp.ULT && unsignedCompare(conditionl, conditionr) < 0 ||
-				op == RelOp.EQ && conditionl == conditionr ||
-				op == RelOp.GT && conditionl > conditionr ||
-				op == RelOp.UGT && unsignedCompare(conditionl, conditionr) > 0 ||
-				op == RelOp.LE && conditionl <= conditionr ||
-				op == RelOp.ULE && unsignedCompare(conditionl, conditionr) <= 0 ||
-				op == RelOp.NE && conditionl != conditionr ||
-				op == RelOp.GE && (conditionr < 0 || conditionl >= conditionr) ||
-				op == RelOp.UGE && unsignedCompare(conditionl, conditionr) >= 0;
+		switch (op) {
+			case LT: return conditionl < conditionr;
+			case ULT: return unsignedCompare(conditionl, conditionr) < 0;
+			case EQ: return conditionl == conditionr;
+			case GT: return conditionl > conditionr;
+			case UGT: return unsignedCompare(conditionl, conditionr) > 0;
+			case LE: return conditionl <= conditionr;
+			case ULE: return unsignedCompare(conditionl, conditionr) <= 0;
+			case NE: return conditionl != conditionr;
+			case GE: return conditionr < 0 || conditionl >= conditionr;
+			case UGE: return unsignedCompare(conditionl, conditionr) >= 0;
+			default: throw new Error("Illegal condition " + op);
+		}
 	}
 	public boolean conditionTrue(String condition) {
 		return conditionTrue(condition, conditionl, conditionr);
@@ -162,6 +221,13 @@ public class State {
 	public long getLabel(String label) {
 		return p.labels.get(label);
 	}
+	/**
+	 * Run until the program is done, or has executed max instructions.
+	 */
+	void runUntil(long max) {
+		while (pc != DONE && instructionsExecuted < max)
+			step();
+	}
 	public void step() {
 		IRStm i = p.instructions.get((int)pc);
 		if (beVerbose)
@@ -236,8 +302,9 @@ public class State {
 					System.out.println("CJump taken to " + cj.getTrueLabel());
 				else
 					System.out.println("CJump not taken, falling through to " + cj.getFalseLabel());
-			Label target = dojump ? cj.getTrueLabel() : cj.getFalseLabel(); 
-			jump(target.toString());
+			// step() has already moved pc past this CJUMP
+			int at = (int) pc - 1;
+			jump(dojump ? p.trueTarget[at] : p.falseTarget[at]);
 		} else if (i instanceof CMOVE) {
 			CMOVE cm = (CMOVE) i;
 			long left = execute(cm.left);
@@ -291,8 +358,7 @@ public class State {
 			throw new Error("Can't evaluate the binop " + b.binop.toString());
 		} else if (i instanceof NAME) {
 			NAME n = (NAME) i;
-			Label lab = n.label;
-			return getLabel(lab.toString());
+			return p.address(n.label);
 		} else if (i instanceof TEMP) {
 			TEMP t = (TEMP) i;
 			long val = getReg(t.temp.getName());
@@ -302,11 +368,11 @@ public class State {
 		} else if (i instanceof CALL) {
 			CALL c = (CALL) i;
 			IRExp funcexp = c.getFunc();
-			String label = "bogus";
+			Label label = null;
 			long func = DONE;
 			if (funcexp instanceof NAME) {
 				NAME fname = (NAME) funcexp;
-				label = fname.label.toString();
+				label = fname.label;
 			} else {
 				func = execute(c.getFunc());
 			}
@@ -341,26 +407,25 @@ public class State {
 				jump(func);
 				returnTarget.add(moveTarget);
 			} else {
-				if (label.equals("_cs411println")  || label.equals("cs411println")) {
+				byte kind = p.runtimeFunction(label);
+				if (kind == Program.PRINTLN) {
 					// Simulate println
-					out.print(getReg(ARG1) + "\n");
+					println(getReg(ARG1));
 					if (beVerbose)
 						System.out.println("Return to " + pc + " " + p.getFunctionAt(pc));
-				} else if (label.equals("_cs411newobject") || label.equals("cs411newobject")) {
+				} else if (kind == Program.NEWOBJECT) {
 					// Simulate new object
 					setReg(AX, alloc(getReg(ARG1)));
 					if (beVerbose)
 						System.out.println("Return to " + pc + " " + p.getFunctionAt(pc));
-				} else if (label.equals("_cs411newarray") || label.equals("cs411newarray")) {
+				} else if (kind == Program.NEWARRAY) {
 					// Simulate new array
 					setReg(AX, allocArray(getReg(ARG1)));
 					if (beVerbose)
 						System.out.println("Return to " + pc + " " + p.getFunctionAt(pc));
-				} else if (label.equals("_cs411error") || label.equals("cs411error")) {
+				} else if (kind == Program.ERROR) {
 					// Simulate error
-					out.println("MiniJava failure " + getReg(ARG1));
-					throw new Error("MiniJava failure " + getReg(ARG1) + "\n");
-					// Bail
+					fail(getReg(ARG1));
 				} else {
 					// push ra
 					long sp = getReg(SP) - Memory.SIZEOF_LONG;
@@ -372,7 +437,7 @@ public class State {
 					setReg(FP, newfp);
 					setReg(SP, sp);
 					do_call();
-					jump(label);
+					jump(p.address(label));
 					returnTarget.add(moveTarget);
 				}
 			}
@@ -389,15 +454,56 @@ public class State {
 		}
 	}
 
+	/**
+	 * Number of garbage collections so far.
+	 */
+	public long getGcCount() {
+		return collector == null ? 0L : collector.collections;
+	}
+
+	/**
+	 * Work done by the collector so far, counting one instruction for each
+	 * root or heap word examined and each block swept.
+	 */
+	public long getGcPauseInstructions() {
+		return collector == null ? 0L : collector.pauseInstructions;
+	}
+
+	/**
+	 * Bytes of heap found live by the last collection.
+	 */
+	public long getGcLiveBytes() {
+		return collector == null ? 0L : collector.liveBytes;
+	}
+
+	/**
+	 * Simulate println. The output is buffered, except when tracing, so
+	 * that it stays in order with the trace.
+	 */
+	public void println(long value) {
+		printer.println(value, out);
+		if (beVerbose)
+			printer.flush(out);
+	}
+
+	/**
+	 * Simulate error: flush what the program printed, print the failure
+	 * and bail.
+	 */
+	void fail(long code) {
+		printer.flush(out);
+		out.println("MiniJava failure " + code);
+		throw new Error("MiniJava failure " + code + "\n");
+	}
+
 	public String hex(long reg) {
 		return "0x" + Long.toString(reg, 16);
 	}
 
 	public void run() {
 		result = "";
-		while (pc != DONE) {
-			step();
-		}
+		runUntil(Long.MAX_VALUE);
+		printer.flush(out);
 	}
 
 	public void run(File out) {
@@ -406,11 +512,10 @@ public class State {
 		} catch (FileNotFoundException e) {
 			// do nothing, use System.out
 		}
-		while (pc != DONE && instructionsExecuted < maxInstructions) {
-			step();
-		}
+		runUntil(maxInstructions);
 		if (instructionsExecuted >= maxInstructions)
 			throw new Error("X86_64 simulator exceeded max instructions\n");
+		printer.flush(this.out);
 		this.out.close();
 	}
 
@@ -419,16 +524,17 @@ public class State {
 		os = new ByteArrayOutputStream();
 		this.out = new PrintStream(os);
 		try {
-			while (pc != DONE && instructionsExecuted < maxInstructions) {
-				step();
-			}
+			runUntil(maxInstructions);
 			if (instructionsExecuted >= maxInstructions)
 				throw new Error("X86_64 simulator exceeded max instructions\n");
+			printer.flush(this.out);
 			this.out.close();
 			result = os.toString();
 		} catch (Error e) {
 			if (e.getMessage().startsWith("MiniJava failure")) {
 				result = e.getMessage();
+			} else if (e.getMessage().startsWith("Stack overflow")) {
+				result = "MiniJava failure 2\n";
 			} else {
 				result = e.getMessage() + "The program was:\n" + p;
 			}
@@ -0,0 +1,443 @@
+package irsim;
+
+import ir.tree.*;
+import ir.tree.CJUMP.RelOp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instructions of a {@link Program}, pre-decoded for {@link ThreadedState}:
+ * each IRStm is flattened into a few operations in one int[], so that running
+ * it needs no instanceof tests, no recursion over the IR tree and no register
+ * lookups by name.
+ * <p>
+ * An operation is an opcode followed by its operands. Registers are indexes
+ * into the register file of the current call, which holds the machine
+ * registers (in the order of {@link State#regs}), then the temps of the
+ * procedure, then scratch registers for the values of subexpressions. Small
+ * constants (and addresses of labels) are inlined as immediate operands, and
+ * jump targets are positions in the code. The first operation of each IRStm
+ * has the {@link #COUNT} bit set, so that the simulator counts instructions
+ * as {@link State} does.
+ * <p>
+ * Procedures are the instructions up to and including each IRRet. Values
+ * that the program sees, such as return addresses and function pointers,
+ * are still pcs of {@link Program#instructions}; {@link #entry} maps them to
+ * positions in the code.
+ * <p>
+ * Only programs in the form the translator produces are decoded: a CALL must
+ * be the source of a MOVE to a TEMP, or the expression of an EXP, and there
+ * may be no ESEQs. {@link #decode} returns null for anything else, and
+ * ThreadedState runs such programs the way State does.
+ */
+final class ThreadedCode {
+	static final int NOP = 0, CONST = 1, MOV = 2,
+			ADD = 3, ADDI = 4, SUB = 5, SUBI = 6, MUL = 7, MULI = 8,
+			LOAD = 9, STORE = 10, STOREI = 11,
+			JUMP = 12, JUMPR = 13, CJ = 14, CJI = 15, SKIP = 16, SKIPI = 17,
+			PUSH = 18, PUSHI = 19, CALL = 20, CALLR = 21, RUNTIME = 22, RET = 23,
+			FAIL = 24, END = 25;
+	/**
+	 * Set in the first operation of each instruction.
+	 */
+	static final int COUNT = 0x100;
+	static final int OPCODE = COUNT - 1;
+
+	static final int NUM_MACHINE_REGS = State.regs.length;
+	static final int R_AX = machineReg(State.AX), R_SP = machineReg(State.SP),
+			R_FP = machineReg(State.FP), R_ARG1 = machineReg(State.ARG1);
+	private static final int[] ARGREGS = new int[State.argregs.length];
+	static {
+		for (int i = 0; i < ARGREGS.length; i++)
+			ARGREGS[i] = machineReg(State.argregs[i]);
+	}
+
+	static final RelOp[] RELOPS = RelOp.values();
+
+	final int[] code;
+	/**
+	 * Position in code of each pc. The one past the last instruction holds
+	 * an END.
+	 */
+	final int[] entry;
+	/**
+	 * Size of the register file of the procedure of each pc.
+	 */
+	final int[] frameSize;
+	/**
+	 * Messages of the FAIL operations.
+	 */
+	final String[] messages;
+
+	private ThreadedCode(int[] code, int[] entry, int[] frameSize, String[] messages) {
+		this.code = code;
+		this.entry = entry;
+		this.frameSize = frameSize;
+		this.messages = messages;
+	}
+
+	private static int machineReg(String name) {
+		return Arrays.asList(State.regs).indexOf(name);
+	}
+
+	/**
+	 * The pc of the instruction whose code starts at position at.
+	 */
+	int pcAt(int at) {
+		int pc = Arrays.binarySearch(entry, at);
+		if (pc < 0)
+			throw new Error("Not the start of an instruction: " + at);
+		return pc;
+	}
+
+	/**
+	 * Decode a linked program, or return null if it has instructions this
+	 * doesn't decode.
+	 */
+	static ThreadedCode decode(Program p) {
+		try {
+			return new Decoder(p).decode();
+		} catch (Unsupported e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class Unsupported extends RuntimeException {
+	}
+
+	/**
+	 * A decoded expression that needs no operations: a register or a
+	 * constant.
+	 */
+	private static class Operand {
+		final boolean isConst;
+		final int value;
+
+		Operand(boolean isConst, int value) {
+			this.isConst = isConst;
+			this.value = value;
+		}
+	}
+
+	private static class Decoder {
+		private final Program p;
+		private int[] code = new int[1024];
+		private int length = 0;
+		private final List<String> messages = new ArrayList<String>();
+		/**
+		 * Positions in code that hold a pc to jump to, to be replaced by
+		 * its position, and the same for the targets of direct calls, which
+		 * are followed by the frame size of the callee.
+		 */
+		private final List<Integer> jumps = new ArrayList<Integer>();
+		private final List<Integer> calls = new ArrayList<Integer>();
+
+		private final Map<String, Integer> registers = new HashMap<String, Integer>();
+		private int scratchBase;
+		private int scratch;
+		private int maxScratch;
+
+		Decoder(Program p) {
+			this.p = p;
+		}
+
+		ThreadedCode decode() {
+			int n = p.instructions.size();
+			int[] entry = new int[n + 1];
+			int[] frameSize = new int[n];
+			int start = 0;
+			for (int pc = 0; pc < n; pc++) {
+				if (pc == start)
+					beginProcedure(start);
+				entry[pc] = length;
+				instruction(p.instructions.get(pc), pc);
+				if (p.instructions.get(pc) instanceof IRRet || pc == n - 1) {
+					Arrays.fill(frameSize, start, pc + 1, scratchBase + maxScratch);
+					start = pc + 1;
+				}
+			}
+			entry[n] = length;
+			emit(END | COUNT);
+			for (int at : jumps)
+				code[at] = entry[code[at]];
+			for (int at : calls) {
+				code[at + 1] = frameSize[code[at]];
+				code[at] = entry[code[at]];
+			}
+			return new ThreadedCode(Arrays.copyOf(code, length), entry, frameSize,
+					messages.toArray(new String[messages.size()]));
+		}
+
+		/**
+		 * Number the temps of the procedure that starts at pc start.
+		 */
+		private void beginProcedure(int start) {
+			registers.clear();
+			for (int i = 0; i < NUM_MACHINE_REGS; i++)
+				registers.put(State.regs[i], i);
+			for (int pc = start; pc < p.instructions.size(); pc++) {
+				IRStm s = p.instructions.get(pc);
+				if (s instanceof IRRet)
+					break;
+				if (s instanceof MOVE) {
+					temps(((MOVE) s).dst);
+					temps(((MOVE) s).src);
+				} else if (s instanceof CMOVE) {
+					CMOVE cm = (CMOVE) s;
+					temps(cm.left);
+					temps(cm.right);
+					temps(cm.dst);
+					temps(cm.src);
+				} else if (s instanceof CJUMP) {
+					temps(((CJUMP) s).left);
+					temps(((CJUMP) s).right);
+				} else if (s instanceof JUMP) {
+					temps(((JUMP) s).getExp());
+				} else if (s instanceof EXP) {
+					temps(((EXP) s).exp);
+				} else {
+					throw new Unsupported();
+				}
+			}
+			scratchBase = registers.size();
+			maxScratch = 0;
+		}
+
+		private void temps(IRExp e) {
+			if (e instanceof TEMP) {
+				String name = ((TEMP) e).temp.getName();
+				if (!registers.containsKey(name))
+					registers.put(name, registers.size());
+			} else if (e instanceof BINOP) {
+				temps(((BINOP) e).left);
+				temps(((BINOP) e).right);
+			} else if (e instanceof MEM) {
+				temps(((MEM) e).exp);
+			} else if (e instanceof CALL) {
+				temps(((CALL) e).getFunc());
+				for (IRExp arg : ((CALL) e).getArgs())
+					temps(arg);
+			} else if (!(e instanceof CONST || e instanceof NAME)) {
+				throw new Unsupported();
+			}
+		}
+
+		private void emit(int... words) {
+			if (length + words.length > code.length)
+				code = Arrays.copyOf(code, Math.max(2 * code.length, length + words.length));
+			System.arraycopy(words, 0, code, length, words.length);
+			length += words.length;
+		}
+
+		private int newScratch() {
+			int r = scratchBase + scratch++;
+			maxScratch = Math.max(maxScratch, scratch);
+			return r;
+		}
+
+		private int message(String message) {
+			messages.add(message);
+			return messages.size() - 1;
+		}
+
+		private void instruction(IRStm s, int pc) {
+			int start = length;
+			scratch = 0;
+			if (s instanceof MOVE) {
+				MOVE m = (MOVE) s;
+				move(m.dst, m.src, pc);
+			} else if (s instanceof EXP) {
+				IRExp e = ((EXP) s).exp;
+				if (e instanceof CALL)
+					call((CALL) e, -1, pc);
+				else
+					operand(e);
+			} else if (s instanceof IRRet) {
+				emit(RET);
+			} else if (s instanceof JUMP) {
+				IRExp e = ((JUMP) s).getExp();
+				if (e instanceof NAME) {
+					emit(JUMP, (int) p.address(((NAME) e).label));
+					jumps.add(length - 1);
+				} else {
+					emit(JUMPR, register(operand(e)));
+				}
+			} else if (s instanceof CJUMP) {
+				CJUMP cj = (CJUMP) s;
+				compare(CJ, cj.getOp(), cj.left, cj.right);
+				emit(p.trueTarget[pc], p.falseTarget[pc]);
+				jumps.add(length - 2);
+				jumps.add(length - 1);
+			} else if (s instanceof CMOVE) {
+				CMOVE cm = (CMOVE) s;
+				if (cm.src instanceof CALL)
+					throw new Unsupported();
+				compare(SKIP, cm.getOp(), cm.left, cm.right);
+				emit(0);
+				int skip = length - 1;
+				move(cm.dst, cm.src, pc);
+				code[skip] = length;
+			} else {
+				throw new Unsupported();
+			}
+			if (length == start)
+				emit(NOP);
+			code[start] |= COUNT;
+		}
+
+		/**
+		 * The opcode and first operands of a CJ or SKIP (or their I forms,
+		 * which follow them).
+		 */
+		private void compare(int opcode, RelOp op, IRExp left, IRExp right) {
+			Operand l = operand(left);
+			Operand r = operand(right);
+			if (r.isConst)
+				emit(opcode + 1, op.ordinal(), register(l), r.value);
+			else
+				emit(opcode, op.ordinal(), register(l), r.value);
+		}
+
+		private void move(IRExp dst, IRExp src, int pc) {
+			if (dst instanceof TEMP) {
+				int d = registers.get(((TEMP) dst).temp.getName());
+				if (src instanceof CALL)
+					call((CALL) src, d, pc);
+				else
+					into(src, d);
+			} else if (dst instanceof MEM) {
+				if (src instanceof CALL)
+					throw new Unsupported();
+				int[] address = address((MEM) dst);
+				Operand value = operand(src);
+				if (value.isConst)
+					emit(STOREI, address[0], address[1], value.value);
+				else
+					emit(STORE, address[0], address[1], value.value);
+			} else {
+				throw new Unsupported();
+			}
+		}
+
+		/**
+		 * The base register and offset of the address of a MEM.
+		 */
+		private int[] address(MEM mem) {
+			if (mem.exp instanceof BINOP) {
+				BINOP b = (BINOP) mem.exp;
+				if (b.binop == BINOP.Op.PLUS && b.right instanceof CONST)
+					return new int[] { register(operand(b.left)), ((CONST) b.right).getValue() };
+			}
+			return new int[] { register(operand(mem.exp)), 0 };
+		}
+
+		private void call(CALL c, int d, int pc) {
+			IRExp func = c.getFunc();
+			byte kind = Program.NOT_RUNTIME;
+			int f = -1;
+			if (func instanceof NAME)
+				kind = p.runtimeFunction(((NAME) func).label);
+			else
+				f = register(operand(func));
+			for (int arg = c.args.size() - 1; arg >= 0; --arg) {
+				IRExp a = c.args.get(arg);
+				if (arg < ARGREGS.length) {
+					into(a, ARGREGS[arg]);
+				} else {
+					Operand value = operand(a);
+					emit(value.isConst ? PUSHI : PUSH, value.value);
+				}
+			}
+			if (f >= 0) {
+				emit(CALLR, f, pc + 1, d);
+			} else if (kind != Program.NOT_RUNTIME) {
+				emit(RUNTIME, kind, d);
+			} else {
+				emit(CALL, (int) p.address(((NAME) func).label), 0, pc + 1, d);
+				calls.add(length - 4);
+			}
+		}
+
+		/**
+		 * Decode e, adding the operations that compute its value if it isn't
+		 * a register or a constant.
+		 */
+		private Operand operand(IRExp e) {
+			if (e instanceof TEMP)
+				return new Operand(false, registers.get(((TEMP) e).temp.getName()));
+			if (e instanceof CONST)
+				return new Operand(true, ((CONST) e).getValue());
+			if (e instanceof NAME)
+				return new Operand(true, (int) p.address(((NAME) e).label));
+			int r = newScratch();
+			into(e, r);
+			return new Operand(false, r);
+		}
+
+		private int register(Operand o) {
+			if (!o.isConst)
+				return o.value;
+			int r = newScratch();
+			emit(CONST, r, o.value);
+			return r;
+		}
+
+		/**
+		 * Add the operations that compute e into register d.
+		 */
+		private void into(IRExp e, int d) {
+			if (e instanceof TEMP) {
+				emit(MOV, d, registers.get(((TEMP) e).temp.getName()));
+			} else if (e instanceof CONST || e instanceof NAME) {
+				emit(CONST, d, operand(e).value);
+			} else if (e instanceof MEM) {
+				int[] address = address((MEM) e);
+				emit(LOAD, d, address[0], address[1]);
+			} else if (e instanceof BINOP) {
+				binop((BINOP) e, d);
+			} else {
+				throw new Unsupported();
+			}
+		}
+
+		private void binop(BINOP b, int d) {
+			Operand l = operand(b.left);
+			Operand r = operand(b.right);
+			int opcode;
+			switch (b.binop) {
+			case PLUS:
+				opcode = ADD;
+				break;
+			case MINUS:
+				opcode = SUB;
+				break;
+			case MUL:
+				opcode = MUL;
+				break;
+			default:
+				emit(FAIL, message("Can't evaluate the binop " + b.binop.toString()));
+				return;
+			}
+			if (l.isConst && r.isConst) {
+				long value = opcode == ADD ? (long) l.value + r.value
+						: opcode == SUB ? (long) l.value - r.value
+						: (long) l.value * r.value;
+				if (value == (int) value) {
+					emit(CONST, d, (int) value);
+					return;
+				}
+			}
+			if (r.isConst)
+				emit(opcode + 1, d, register(l), r.value);
+			else if (l.isConst && opcode != SUB)
+				emit(opcode + 1, d, r.value, l.value);
+			else
+				emit(opcode, d, register(l), r.value);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package irsim;
+
+import static irsim.ThreadedCode.*;
+
+import java.util.Arrays;
+
+import util.Collector;
+import util.Memory;
+
+/**
+ * A faster simulator: it decodes the program once, when it is loaded (see
+ * {@link ThreadedCode}), and then runs it with a tight loop that dispatches
+ * on one opcode at a time.
+ * <p>
+ * It prints the same output, reads and writes the same memory, counts the
+ * same instructions and fails with the same errors as {@link State}, which
+ * remains the reference. The registers and temps of each call are a long[]
+ * instead of a map, and only the machine registers are copied into the
+ * State's map when the simulation stops. When tracing (beVerbose), or if
+ * the program can't be decoded, it runs as a State does.
+ */
+public class ThreadedState extends State {
+	private final ThreadedCode decoded;
+	/**
+	 * The registers of the current call, and the ones saved by its callers.
+	 */
+	private long[] frame;
+	private long[][] saved = new long[64][];
+	private int depth = 0;
+	/**
+	 * For each call, the register that gets %rax when it returns, or -1.
+	 */
+	private int[] returnTargets = new int[64];
+	private int calls = 0;
+
+	public ThreadedState(Program p) {
+		super(p);
+		decoded = ThreadedCode.decode(p);
+	}
+
+	/**
+	 * Whether the program could be decoded.
+	 */
+	public boolean isDecoded() {
+		return decoded != null;
+	}
+
+	@Override
+	void runUntil(long max) {
+		if (decoded == null || beVerbose) {
+			super.runUntil(max);
+			return;
+		}
+		if (pc == DONE)
+			return;
+		if (frame == null) {
+			// Only the call of main is on the stack
+			frame = new long[decoded.frameSize[(int) pc]];
+			for (int i = 0; i < NUM_MACHINE_REGS; i++)
+				frame[i] = getReg(regs[i]);
+			returnTargets[calls++] = -1;
+		}
+		final int[] code = decoded.code;
+		final int[] entry = decoded.entry;
+		final Memory ram = this.ram;
+		long[] r = frame;
+		long executed = instructionsExecuted;
+		int ip = entry[(int) pc];
+		// Where the current instruction starts
+		int at = ip;
+		boolean failed = true;
+		try {
+			loop: for (;;) {
+				int op = code[ip];
+				if (op >= COUNT) {
+					if (executed >= max)
+						break;
+					executed++;
+					at = ip;
+					op &= OPCODE;
+				}
+				switch (op) {
+				case NOP:
+					ip += 1;
+					break;
+				case CONST:
+					r[code[ip + 1]] = code[ip + 2];
+					ip += 3;
+					break;
+				case MOV:
+					r[code[ip + 1]] = r[code[ip + 2]];
+					ip += 3;
+					break;
+				case ADD:
+					r[code[ip + 1]] = r[code[ip + 2]] + r[code[ip + 3]];
+					ip += 4;
+					break;
+				case ADDI:
+					r[code[ip + 1]] = r[code[ip + 2]] + code[ip + 3];
+					ip += 4;
+					break;
+				case SUB:
+					r[code[ip + 1]] = r[code[ip + 2]] - r[code[ip + 3]];
+					ip += 4;
+					break;
+				case SUBI:
+					r[code[ip + 1]] = r[code[ip + 2]] - code[ip + 3];
+					ip += 4;
+					break;
+				case MUL:
+					r[code[ip + 1]] = r[code[ip + 2]] * r[code[ip + 3]];
+					ip += 4;
+					break;
+				case MULI:
+					r[code[ip + 1]] = r[code[ip + 2]] * code[ip + 3];
+					ip += 4;
+					break;
+				case LOAD:
+					r[code[ip + 1]] = ram.read(r[code[ip + 2]] + code[ip + 3]);
+					ip += 4;
+					break;
+				case STORE:
+					ram.write(r[code[ip + 1]] + code[ip + 2], r[code[ip + 3]]);
+					ip += 4;
+					break;
+				case STOREI:
+					ram.write(r[code[ip + 1]] + code[ip + 2], code[ip + 3]);
+					ip += 4;
+					break;
+				case JUMP:
+					ip = code[ip + 1];
+					break;
+				case JUMPR: {
+					long address = r[code[ip + 1]];
+					if (address == DONE) {
+						pc = DONE;
+						break loop;
+					}
+					ip = entry[(int) address];
+					break;
+				}
+				case CJ:
+					ip = conditionTrue(RELOPS[code[ip + 1]], r[code[ip + 2]], r[code[ip + 3]])
+							? code[ip + 4] : code[ip + 5];
+					break;
+				case CJI:
+					ip = conditionTrue(RELOPS[code[ip + 1]], r[code[ip + 2]], code[ip + 3])
+							? code[ip + 4] : code[ip + 5];
+					break;
+				case SKIP:
+					ip = conditionTrue(RELOPS[code[ip + 1]], r[code[ip + 2]], r[code[ip + 3]])
+							? ip + 5 : code[ip + 4];
+					break;
+				case SKIPI:
+					ip = conditionTrue(RELOPS[code[ip + 1]], r[code[ip + 2]], code[ip + 3])
+							? ip + 5 : code[ip + 4];
+					break;
+				case PUSH:
+					push(r, r[code[ip + 1]]);
+					ip += 2;
+					break;
+				case PUSHI:
+					push(r, code[ip + 1]);
+					ip += 2;
+					break;
+				case CALL:
+					r = call(r, code[ip + 2], code[ip + 3], code[ip + 4]);
+					ip = code[ip + 1];
+					break;
+				case CALLR: {
+					int func = (int) r[code[ip + 1]];
+					r = call(r, decoded.frameSize[func], code[ip + 2], code[ip + 3]);
+					ip = entry[func];
+					break;
+				}
+				case RUNTIME:
+					runtime(r, code[ip + 1], code[ip + 2]);
+					ip += 3;
+					break;
+				case RET: {
+					long fp = r[R_FP];
+					long newfp = ram.read(fp);
+					long ra = ram.read(fp + Memory.SIZEOF_LONG);
+					r[R_SP] = fp + 2 * Memory.SIZEOF_LONG;
+					r[R_FP] = newfp;
+					r = doReturn();
+					if (ra == DONE) {
+						pc = DONE;
+						break loop;
+					}
+					ip = entry[(int) ra];
+					break;
+				}
+				case FAIL:
+					throw new Error(decoded.messages[code[ip + 1]]);
+				case END:
+					// Fail as State does
+					p.instructions.get(p.instructions.size());
+				default:
+					throw new Error("Bad opcode " + op + " at " + ip);
+				}
+			}
+			failed = false;
+		} finally {
+			// Like State, don't count an instruction that failed, but move
+			// the pc past it
+			if (failed) {
+				pc = decoded.pcAt(at) + 1;
+				executed--;
+			} else if (pc != DONE) {
+				pc = decoded.pcAt(ip);
+			}
+			instructionsExecuted = executed;
+			for (int i = 0; i < NUM_MACHINE_REGS; i++)
+				setReg(regs[i], frame[i]);
+		}
+	}
+
+	private void push(long[] r, long value) {
+		long sp = r[R_SP] - Memory.SIZEOF_LONG;
+		ram.write(sp, value);
+		r[R_SP] = sp;
+	}
+
+	/**
+	 * Push the return address and frame pointer, and the registers of the
+	 * caller, and return the registers of the callee.
+	 */
+	private long[] call(long[] r, int frameSize, long returnAddress, int target) {
+		long sp = r[R_SP] - Memory.SIZEOF_LONG;
+		ram.write(sp, returnAddress);
+		sp -= Memory.SIZEOF_LONG;
+		ram.write(sp, r[R_FP]);
+		r[R_FP] = sp;
+		r[R_SP] = sp;
+		long[] callee = new long[frameSize];
+		System.arraycopy(r, 0, callee, 0, NUM_MACHINE_REGS);
+		if (depth == saved.length)
+			saved = Arrays.copyOf(saved, 2 * depth);
+		saved[depth++] = r;
+		if (calls == returnTargets.length)
+			returnTargets = Arrays.copyOf(returnTargets, 2 * calls);
+		returnTargets[calls++] = target;
+		return frame = callee;
+	}
+
+	/**
+	 * Pop the registers of the caller, copying the machine registers back,
+	 * and return them.
+	 */
+	private long[] doReturn() {
+		if (depth > 0) {
+			long[] caller = saved[--depth];
+			saved[depth] = null;
+			System.arraycopy(frame, 0, caller, 0, NUM_MACHINE_REGS);
+			frame = caller;
+		}
+		int target = returnTargets[--calls];
+		if (target >= 0)
+			frame[target] = frame[R_AX];
+		return frame;
+	}
+
+	private void runtime(long[] r, int kind, int target) {
+		switch (kind) {
+		case Program.PRINTLN:
+			println(r[R_ARG1]);
+			break;
+		case Program.NEWOBJECT:
+			r[R_AX] = alloc(r[R_ARG1]);
+			break;
+		case Program.NEWARRAY:
+			r[R_AX] = allocArray(r[R_ARG1]);
+			break;
+		case Program.ERROR:
+			fail(r[R_ARG1]);
+		}
+		if (target >= 0)
+			r[target] = r[R_AX];
+	}
+
+	@Override
+	public void scanRoots(Collector c) {
+		if (frame == null) {
+			super.scanRoots(c);
+			return;
+		}
+		for (long value : frame)
+			c.root(value);
+		for (int i = 0; i < depth; i++)
+			for (long value : saved[i])
+				c.root(value);
+		for (long a = frame[R_SP]; a < ram.stackEnd(); a += Memory.SIZEOF_LONG)
+			c.root(ram.peek(a));
+	}
+}
@@ -0,0 +1,62 @@
+package irsim.test;
+
+import ir.parser.Parser;
+import irsim.Program;
+import irsim.State;
+import irsim.ThreadedState;
+import translate.Fragments;
+import util.SampleCode;
+
+import java.io.File;
+
+/**
+ * Runs the sample IR programs on {@link State} and on {@link ThreadedState},
+ * checks that they agree, and reports the time each takes (best of a few
+ * runs, after warming up). Not a unit test: run its main method from the
+ * irsim directory, so that the samples are found.
+ */
+public class IrSimBenchmark {
+	private static final int RUNS = 5;
+
+	interface Engine {
+		State load(Program p);
+	}
+
+	public static void main(String[] args) throws Exception {
+		long totalState = 0, totalThreaded = 0;
+		System.out.printf("%-28s %12s %10s %10s %8s%n", "program", "instructions", "State", "Threaded", "speedup");
+		for (File file : SampleCode.sampleFiles("ir")) {
+			Fragments f = Parser.parse(file);
+			Program p = new Program(f);
+			State reference = new State(p).runForResult();
+			ThreadedState threaded = new ThreadedState(p);
+			if (!threaded.isDecoded())
+				System.out.println(file.getName() + " can't be decoded, it runs as on State");
+			threaded.runForResult();
+			if (!reference.result.equals(threaded.result)
+					|| reference.instructionsExecuted != threaded.instructionsExecuted
+					|| reference.ram.nReads != threaded.ram.nReads
+					|| reference.ram.nWrites != threaded.ram.nWrites)
+				throw new Error(file + ": the simulators disagree");
+			long state = best(p, State::new);
+			long fast = best(p, ThreadedState::new);
+			totalState += state;
+			totalThreaded += fast;
+			System.out.printf("%-28s %12d %8.2f ms %8.2f ms %7.1fx%n", file.getName(),
+					reference.instructionsExecuted, state / 1e6, fast / 1e6, (double) state / fast);
+		}
+		System.out.printf("%-28s %12s %8.2f ms %8.2f ms %7.1fx%n", "total", "",
+				totalState / 1e6, totalThreaded / 1e6, (double) totalState / totalThreaded);
+	}
+
+	private static long best(Program p, Engine engine) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 2 * RUNS; i++) {
+			long start = System.nanoTime();
+			engine.load(p).runForResult();
+			if (i >= RUNS)
+				best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+}
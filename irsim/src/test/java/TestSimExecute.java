@@ -1,14 +1,19 @@
 package irsim.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import ir.parser.ParseException;
 import ir.parser.Parser;
 import ir.tree.IR;
 import irsim.Program;
 import irsim.Sim;
 import irsim.State;
+import irsim.ThreadedState;
 import org.junit.Test;
 import test.TestIR;
 import translate.Fragments;
+import util.GcMode;
 import util.SampleCode;
 
 import java.io.File;
@@ -119,4 +124,69 @@ public class TestSimExecute {
 			}
 		}
 	}
+
+	@Test
+	public void testThreadedSameAsState() throws Exception {
+		compareThreaded();
+	}
+
+	/**
+	 * Allocates 2000 objects of 16 bytes, only one of them live at a time.
+	 */
+	private static final String GARBAGE =
+			"MethodFragment {\n" +
+			"   X86_64Frame { label = _cs411main\n" +
+			"      nextLocalOffset = -8\n" +
+			"      formals = List {\n" +
+			"      }\n" +
+			"   }\n" +
+			"   List {\n" +
+			"      MOVE(t1 <- CONST 0)\n" +
+			"      MOVE(t2 <- CONST 0)\n" +
+			"      LABEL _loop_1\n" +
+			"      MOVE(t3 <- CALL(NAME(_cs411newobject), CONST 16))\n" +
+			"      MOVE(MEM(BINOP(PLUS, t3, CONST 8)) <- t1)\n" +
+			"      MOVE(t2 <- BINOP(PLUS, t2, MEM(BINOP(PLUS, t3, CONST 8))))\n" +
+			"      MOVE(t1 <- BINOP(PLUS, t1, CONST 1))\n" +
+			"      CJUMP(LT, t1, CONST 2000, _loop_1, _done_2)\n" +
+			"      LABEL _done_2\n" +
+			"      EXP(CALL(NAME(_cs411println), t2))\n" +
+			"   }\n" +
+			"}\n";
+
+	@Test
+	public void testThreadedSameAsStateCollecting() throws Exception {
+		long heapSize = State.heapSize;
+		State.gcMode = GcMode.MARK_SWEEP;
+		State.heapSize = 4096;
+		try {
+			Program p = new Program(Parser.parse(GARBAGE));
+			State expected = new State(p).runForResult();
+			ThreadedState actual = new ThreadedState(p);
+			actual.runForResult();
+			assertEquals("1999000\n", expected.result);
+			assertEquals(expected.result, actual.result);
+			assertTrue(actual.getGcCount() > 0);
+			assertEquals(expected.getGcCount(), actual.getGcCount());
+			compareThreaded();
+		} finally {
+			State.gcMode = GcMode.NONE;
+			State.heapSize = heapSize;
+		}
+	}
+
+	private void compareThreaded() throws Exception {
+		for (File file : SampleCode.sampleFiles("ir")) {
+			Program p = new Program(Parser.parse(file));
+			State expected = new State(p).runForResult();
+			ThreadedState actual = new ThreadedState(p);
+			assertTrue(file.getName(), actual.isDecoded());
+			actual.runForResult();
+			assertEquals(file.getName(), expected.result, actual.result);
+			assertEquals(file.getName(), expected.instructionsExecuted, actual.instructionsExecuted);
+			assertEquals(file.getName(), expected.ram.nReads, actual.ram.nReads);
+			assertEquals(file.getName(), expected.ram.nWrites, actual.ram.nWrites);
+			assertEquals(file.getName(), expected.getGcCount(), actual.getGcCount());
+		}
+	}
 }
@@ -1,6 +1,8 @@
 package util;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -72,6 +74,34 @@ class ArrList<E> extends List<E> implements Iterable<E> {
         allowMutation = false;
     }
 
+    /**
+     * Iterates over the elements directly, rather than through a tail
+     * list for each one (as the default iterator does).
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < elements.size();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return elements.get(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new Error("Can't remove, this is an immutable data structure");
+            }
+        };
+    }
+
     /* (non-Javadoc)
      * @see util.List#tail()
      */
@@ -0,0 +1,227 @@
+package util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A conservative, non-moving mark-sweep garbage collector for the simulated
+ * heap, used by the simulators when their gcMode is {@link GcMode#MARK_SWEEP}.
+ * The simulator tells it where the heap pointer is and what the roots are,
+ * as a {@link Mutator}.
+ * <p>
+ * MiniJava objects have no header, so the collector keeps its own table of
+ * allocated blocks: where each one starts, whether it is an array, and the
+ * size of each object. The size of an array comes from the length word in
+ * front of it. Arrays only hold ints, so they are never scanned; every word
+ * of an object, register and stack slot that points into (or just past) a
+ * block keeps that block alive.
+ * <p>
+ * Allocation uses the free chunks found by the last sweep (best fit), then
+ * the bump pointer. A collection happens only when the bump pointer reaches
+ * the end of the heap. Freed memory is zeroed by the sweep, so allocated
+ * memory is always zero, as it is without a collector.
+ */
+public class Collector {
+    private static final int WORD = Memory.SIZEOF_LONG;
+
+    /**
+     * The program whose heap is collected: the state of a simulator.
+     */
+    public interface Mutator {
+        /**
+         * The first free address above the blocks bumped so far.
+         */
+        long getHeapPointer();
+
+        void setHeapPointer(long hp);
+
+        /**
+         * Fail unless size bytes fit between the heap pointer and the end
+         * of the heap.
+         */
+        void checkHeap(long size);
+
+        /**
+         * Give the collector every word that may point into the heap, by
+         * calling {@link Collector#root(long)} on it.
+         */
+        void scanRoots(Collector c);
+    }
+
+    private final Memory ram;
+    /**
+     * The first heap address, above the static data.
+     */
+    private final long start;
+    /**
+     * Blocks, by the word index of their first word from start.
+     */
+    private final BitSet blocks = new BitSet();
+    private final BitSet arrays = new BitSet();
+    private final BitSet marks = new BitSet();
+    /**
+     * Size in words of each object block (arrays use their length word).
+     */
+    private int[] sizes = new int[1024];
+    /**
+     * Free chunks between the live blocks, by size in bytes.
+     */
+    private final TreeMap<Long, ArrayDeque<Long>> free = new TreeMap<>();
+    private int[] work = new int[256];
+    private int top = 0;
+    /**
+     * The bump pointer when the current collection started.
+     */
+    private long limit;
+
+    /**
+     * Number of collections so far.
+     */
+    public long collections = 0L;
+    /**
+     * One for each root or heap word examined and each block swept.
+     */
+    public long pauseInstructions = 0L;
+    /**
+     * Bytes found live by the last collection.
+     */
+    public long liveBytes = 0L;
+
+    public Collector(Memory ram, long start) {
+        this.ram = ram;
+        this.start = start;
+    }
+
+    /**
+     * Allocate a zeroed block of size bytes, collecting if the heap is full.
+     */
+    public long allocate(Mutator s, long size, boolean array) {
+        size = (size + WORD - 1) & -WORD;
+        long address = size < 0 ? -1 : fromFreeList(size);
+        if (address < 0) {
+            if (size >= 0 && s.getHeapPointer() + size > ram.heapEnd()) {
+                collect(s);
+                address = fromFreeList(size);
+            }
+            if (address < 0) {
+                s.checkHeap(size);
+                address = s.getHeapPointer();
+                s.setHeapPointer(address + size);
+            }
+        }
+        int b = word(address);
+        blocks.set(b);
+        if (array) {
+            arrays.set(b);
+        } else {
+            arrays.clear(b);
+            if (b >= sizes.length)
+                sizes = Arrays.copyOf(sizes, Math.max(b + 1, sizes.length * 2));
+            sizes[b] = (int) (size / WORD);
+        }
+        return address;
+    }
+
+    private long fromFreeList(long size) {
+        Map.Entry<Long, ArrayDeque<Long>> chunks = free.ceilingEntry(size);
+        if (chunks == null)
+            return -1;
+        long address = chunks.getValue().pop();
+        if (chunks.getValue().isEmpty())
+            free.remove(chunks.getKey());
+        if (chunks.getKey() > size)
+            release(address + size, chunks.getKey() - size);
+        return address;
+    }
+
+    private void release(long address, long size) {
+        free.computeIfAbsent(size, k -> new ArrayDeque<>()).push(address);
+    }
+
+    /**
+     * Mark everything reachable from the roots of s, then free the rest.
+     */
+    public void collect(Mutator s) {
+        limit = s.getHeapPointer();
+        marks.clear();
+        s.scanRoots(this);
+        while (top > 0) {
+            int b = work[--top];
+            long address = address(b);
+            for (int i = 0; i < sizes[b]; i++)
+                root(ram.peek(address + (long) i * WORD));
+        }
+        sweep(s);
+        collections++;
+    }
+
+    /**
+     * Keep alive the block that value points into, or just past the end of
+     * (an array pointer skips the length word, so a pointer to an empty array
+     * points to the end of its block).
+     */
+    public void root(long value) {
+        pauseInstructions++;
+        if (value >= start && value < limit)
+            mark(find(value));
+        if (value > start && value <= limit)
+            mark(find(value - 1));
+    }
+
+    private int find(long address) {
+        int w = word(address);
+        int b = blocks.previousSetBit(w);
+        if (b < 0 || w >= b + size(b))
+            return -1;
+        return b;
+    }
+
+    private void mark(int b) {
+        if (b < 0 || marks.get(b))
+            return;
+        marks.set(b);
+        if (arrays.get(b))
+            return;
+        if (top == work.length)
+            work = Arrays.copyOf(work, work.length * 2);
+        work[top++] = b;
+    }
+
+    private void sweep(Mutator s) {
+        free.clear();
+        liveBytes = 0L;
+        long end = start;
+        for (int b = blocks.nextSetBit(0); b >= 0; b = blocks.nextSetBit(b + 1)) {
+            pauseInstructions++;
+            long address = address(b);
+            long size = (long) size(b) * WORD;
+            if (marks.get(b)) {
+                if (address > end)
+                    release(end, address - end);
+                end = address + size;
+                liveBytes += size;
+            } else {
+                blocks.clear(b);
+                arrays.clear(b);
+                ram.clear(address, size);
+            }
+        }
+        // Everything above the last live block is free again
+        s.setHeapPointer(end);
+    }
+
+    private int size(int b) {
+        return arrays.get(b) ? (int) ram.peek(address(b)) + 1 : sizes[b];
+    }
+
+    private int word(long address) {
+        return (int) ((address - start) / WORD);
+    }
+
+    private long address(int b) {
+        return start + (long) b * WORD;
+    }
+}
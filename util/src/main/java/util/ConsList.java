@@ -20,15 +20,33 @@ class ConsList<E> extends List<E> {
         this.cdr = cdr;
     }
 
+    /**
+     * The list after the conses at the front of this one. This and the
+     * methods below loop rather than recurse, so that long chains of conses
+     * don't overflow the stack.
+     */
+    private List<E> end() {
+        List<E> l = this;
+        while (l instanceof ConsList)
+            l = ((ConsList<E>) l).cdr;
+        return l;
+    }
+
     @Override
     public void add(E e) {
-        cdr.add(e);
+        end().add(e);
     }
 
     @Override
     public E get(int i) {
-        if (i == 0) return car;
-        else return cdr.get(i - 1);
+        List<E> l = this;
+        while (i > 0 && l instanceof ConsList) {
+            l = ((ConsList<E>) l).cdr;
+            i--;
+        }
+        if (l instanceof ConsList)
+            return ((ConsList<E>) l).car;
+        return l.get(i);
     }
 
     @Override
@@ -38,7 +56,13 @@ class ConsList<E> extends List<E> {
 
     @Override
     public int size() {
-        return 1 + cdr.size();
+        int conses = 0;
+        List<E> l = this;
+        while (l instanceof ConsList) {
+            l = ((ConsList<E>) l).cdr;
+            conses++;
+        }
+        return conses + l.size();
     }
 
     @Override
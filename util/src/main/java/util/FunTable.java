@@ -21,11 +21,13 @@ import java.util.NoSuchElementException;
  * table class to be replaced with a better, more optimised one (e.g. as
  * described in exercise 1.1 of the book) without altering the rest of the code.
  * <p>
- * The current implementation is not particularly efficient since it uses a linearly
- * linked list of entries. You may consider implementing a more efficient version of
- * this that uses some kind of tree data structure internally to efficiently represent
- * a functional style symbol table.
- *
+ * The entries are a linked list, newest first, which is what iterating over
+ * a table gives (including entries that a newer one with the same id
+ * shadows). Each table also has an index of its newest entry for each id: a
+ * persistent hash trie ({@link HashTrie}) that shares all but O(log n) of its
+ * nodes with the index of the table it extends. So insert and lookup take
+ * O(log32 n) time rather than lookup taking O(n).
+ * <p>
  * @author kdvolder
  */
 public abstract class FunTable<V> extends DefaultIndentable
@@ -71,19 +73,15 @@ public abstract class FunTable<V> extends DefaultIndentable
      * exists in the table.
      */
     public V lookup(String id) {
-        //Note: the book suggests a recursive implementation for this
-        //function, which is also a good way to implement it.
-        //However, in Java there is no proper tail call optimization and
-        //so recursive implementations can make large, unnecessary demand
-        //on the stack. This implementation makes use of our implementation
-        //Iterable and is equally readable yet more efficient
-        //(no unbounded stack growth).
-        for (Entry<V> entry : this)
-            if (entry.getId().equals(id))
-                return entry.getValue();
-        return null;
+        Entry<V> entry = index().get(id);
+        return entry == null ? null : entry.getValue();
     }
 
+    /**
+     * The newest entry for each id.
+     */
+    abstract HashTrie<Entry<V>> index();
+
     /**
      * Returns true if and only if this table is empty.
      */
@@ -104,11 +102,25 @@ public abstract class FunTable<V> extends DefaultIndentable
         private String id;
         private V value;
         private FunTable<V> tail;
+        private final HashTrie<Entry<V>> index;
+        private final int size;
 
         private Entry(String id, V value, FunTable<V> table) {
             this.id = id;
             this.value = value;
             this.tail = table;
+            this.index = table.index().put(id, this);
+            this.size = table.size() + 1;
+        }
+
+        @Override
+        HashTrie<Entry<V>> index() {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
 
         @Override
@@ -126,8 +138,19 @@ public abstract class FunTable<V> extends DefaultIndentable
 
         @Override
         public FunTable<V> merge(FunTable<V> superEntries) {
-            FunTable<V> rest = tail.merge(superEntries);
-            return new Entry<V>(id, value, rest);
+            // Insert the entries of this table, oldest first, in front of
+            // superEntries (in a loop, so long tables don't overflow the stack)
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Entry<V>[] entries = new Entry[size];
+            int n = 0;
+            for (Entry<V> entry : this)
+                entries[n++] = entry;
+            FunTable<V> result = superEntries;
+            while (n > 0) {
+                Entry<V> entry = entries[--n];
+                result = new Entry<V>(entry.id, entry.value, result);
+            }
+            return result;
         }
 
     }
@@ -137,11 +160,10 @@ public abstract class FunTable<V> extends DefaultIndentable
         return new TableIterator(this);
     }
 
-    public int size() {
-        int count = 0;
-        for (Entry<V> entry : this) count++;
-        return count;
-    }
+    /**
+     * The number of entries, counting the ones that newer entries shadow.
+     */
+    public abstract int size();
 
     /**
      * Merge two tables together into a new table.
@@ -169,6 +191,16 @@ public abstract class FunTable<V> extends DefaultIndentable
             return true;
         }
 
+        @Override
+        HashTrie<Entry<V>> index() {
+            return HashTrie.empty();
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
         @Override
         public FunTable<V> merge(FunTable<V> superEntries) {
             return superEntries;
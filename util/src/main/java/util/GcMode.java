@@ -0,0 +1,11 @@
+package util;
+
+/**
+ * How the simulated heap is managed, by the simulators' State.gcMode.
+ */
+public enum GcMode {
+
+    NONE,          // Bump allocation only, nothing is ever freed
+    MARK_SWEEP     // Collect with a conservative mark-sweep collector when the heap is full
+
+}
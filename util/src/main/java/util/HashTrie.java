@@ -0,0 +1,182 @@
+package util;
+
+/**
+ * A persistent map from Strings to values, as a hash array mapped trie:
+ * each level of the trie uses 5 bits of the hash of a key to pick one of up
+ * to 32 children, and a node only has room for the children it has (a
+ * bitmap says which ones). Keys with the same hash share a collision node.
+ * <p>
+ * {@link #put} copies the path to the key it adds or changes and shares the
+ * rest with the original map, so both take O(log32 n) time. This is the
+ * index that makes lookups in a {@link FunTable} fast.
+ */
+final class HashTrie<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final HashTrie EMPTY = new HashTrie(new BitmapNode(0, new Object[0]));
+
+    private final Node root;
+
+    private HashTrie(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> HashTrie<V> empty() {
+        return EMPTY;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The value of key, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof CollisionNode)
+                return (V) ((CollisionNode) node).get(hash, key);
+            BitmapNode b = (BitmapNode) node;
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((b.bitmap & bit) == 0)
+                return null;
+            int i = 2 * Integer.bitCount(b.bitmap & (bit - 1));
+            Object k = b.array[i];
+            if (k == null) {
+                node = (Node) b.array[i + 1];
+            } else {
+                return key.equals(k) ? (V) b.array[i + 1] : null;
+            }
+        }
+    }
+
+    /**
+     * A map with the same keys and values, except that key has value.
+     */
+    HashTrie<V> put(String key, V value) {
+        Node newRoot = root.put(0, hash(key), key, value);
+        return newRoot == root ? this : new HashTrie<V>(newRoot);
+    }
+
+    private static abstract class Node {
+        abstract Node put(int shift, int hash, String key, Object value);
+    }
+
+    /**
+     * Children, as pairs in array: a key and its value, or null and a node
+     * for the keys that share these bits of their hash.
+     */
+    private static final class BitmapNode extends Node {
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Node put(int shift, int hash, String key, Object value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                return new BitmapNode(bitmap | bit, a);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            Object child;
+            if (k == null) {
+                child = ((Node) v).put(shift + BITS, hash, key, value);
+                if (child == v)
+                    return this;
+            } else if (key.equals(k)) {
+                if (value == v)
+                    return this;
+                return with(i + 1, value);
+            } else {
+                child = pair(shift + BITS, (String) k, v, hash, key, value);
+            }
+            BitmapNode n = with(i + 1, child);
+            n.array[i] = null;
+            return n;
+        }
+
+        private BitmapNode with(int i, Object x) {
+            Object[] a = array.clone();
+            a[i] = x;
+            return new BitmapNode(bitmap, a);
+        }
+    }
+
+    /**
+     * A node for two keys that were in the same place in the trie above
+     * shift.
+     */
+    private static Node pair(int shift, String k1, Object v1, int h2, String k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2)
+            return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+        return new BitmapNode(0, new Object[0])
+                .put(shift, h1, k1, v1)
+                .put(shift, h2, k2, v2);
+    }
+
+    /**
+     * Keys and values, as pairs in array, of keys that all have the same
+     * hash.
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        Object get(int hash, String key) {
+            if (hash == this.hash)
+                for (int i = 0; i < array.length; i += 2)
+                    if (key.equals(array[i]))
+                        return array[i + 1];
+            return null;
+        }
+
+        @Override
+        Node put(int shift, int hash, String key, Object value) {
+            if (hash != this.hash) {
+                // Move this node down into a bitmap node
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[] { null, this }).put(shift, hash, key, value);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value)
+                        return this;
+                    Object[] a = array.clone();
+                    a[i + 1] = value;
+                    return new CollisionNode(hash, a);
+                }
+            }
+            Object[] a = new Object[array.length + 2];
+            System.arraycopy(array, 0, a, 0, array.length);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            return new CollisionNode(hash, a);
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from {@link Numbered} keys to values, represented as an array
+ * indexed by the key's id. Lookups and updates are a single array access
+ * (no hashing, no equals calls), which makes this a good replacement for
+ * a HashMap when the ids of the keys are dense.
+ * <p>
+ * Null values are not supported: get returns null for absent keys.
+ * Iteration over the keys is in order of increasing id.
+ * <p>
+ * Ids are only unique within one numbering (see Temp.newNumbering), so
+ * keys are also compared by identity: a key only finds the entry it put,
+ * not that of another key with the same id, and putting it replaces the
+ * other key's entry.
+ */
+public class IdMap<K extends Numbered, V> implements Iterable<K> {
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+
+    public IdMap() {
+        this(16);
+    }
+
+    /**
+     * @param capacity One more than the largest id we expect to see.
+     */
+    public IdMap(int capacity) {
+        keys = new Object[Math.max(capacity, 1)];
+        values = new Object[keys.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int id = key.getId();
+        return id < keys.length && keys[id] == key ? (V) values[id] : null;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value associated with the key, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        assert value != null : "IdMap does not support null values";
+        int id = key.getId();
+        if (id >= values.length) {
+            int capacity = Math.max(id + 1, values.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        V old = keys[id] == key ? (V) values[id] : null;
+        if (keys[id] == null)
+            size++;
+        keys[id] = key;
+        values[id] = value;
+        return old;
+    }
+
+    /**
+     * @return the value that was associated with the key, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        int id = key.getId();
+        if (id >= keys.length || keys[id] != key)
+            return null;
+        V old = (V) values[id];
+        keys[id] = null;
+        values[id] = null;
+        size--;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == null)
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                K key = (K) keys[next];
+                next = advance(next + 1);
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("{");
+        for (K key : this) {
+            if (s.length() > 1)
+                s.append(", ");
+            s.append(key).append("=").append(get(key));
+        }
+        return s.append("}").toString();
+    }
+
+}
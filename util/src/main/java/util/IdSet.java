@@ -0,0 +1,134 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of {@link Numbered} elements, represented as a bitset indexed by
+ * the elements' ids (plus an array of the elements themselves, so that the
+ * set can be iterated). Iteration is in order of increasing id.
+ * <p>
+ * Like {@link IdMap}, elements are also compared by identity, so an element
+ * with the same id as one in the set isn't contained in it, and adding it
+ * replaces the other.
+ */
+public class IdSet<E extends Numbered> implements Iterable<E> {
+
+    private long[] bits;
+    private Object[] elements;
+    private int size;
+
+    public IdSet() {
+        this(64);
+    }
+
+    /**
+     * @param capacity One more than the largest id we expect to see.
+     */
+    public IdSet(int capacity) {
+        bits = new long[(Math.max(capacity, 1) + 63) >>> 6];
+        elements = new Object[bits.length << 6];
+    }
+
+    public boolean contains(E e) {
+        int id = e.getId();
+        int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0 && elements[id] == e;
+    }
+
+    /**
+     * @return true if the element was not yet in the set.
+     */
+    public boolean add(E e) {
+        int id = e.getId();
+        int word = id >>> 6;
+        if (word >= bits.length) {
+            bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+            elements = Arrays.copyOf(elements, bits.length << 6);
+        }
+        long mask = 1L << id;
+        if ((bits[word] & mask) == 0) {
+            bits[word] |= mask;
+            size++;
+        } else if (elements[id] == e) {
+            return false;
+        }
+        elements[id] = e;
+        return true;
+    }
+
+    /**
+     * @return true if the element was in the set.
+     */
+    public boolean remove(E e) {
+        if (!contains(e))
+            return false;
+        int id = e.getId();
+        bits[id >>> 6] &= ~(1L << id);
+        elements[id] = null;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0);
+        Arrays.fill(elements, null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                int word = from >>> 6;
+                if (word >= bits.length)
+                    return Integer.MAX_VALUE;
+                long w = bits[word] & (-1L << from);
+                while (w == 0) {
+                    if (++word >= bits.length)
+                        return Integer.MAX_VALUE;
+                    w = bits[word];
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(w);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != Integer.MAX_VALUE;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                E e = (E) elements[next];
+                next = advance(next + 1);
+                return e;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("{");
+        for (E e : this) {
+            if (s.length() > 1)
+                s.append(", ");
+            s.append(e);
+        }
+        return s.append("}").toString();
+    }
+
+}
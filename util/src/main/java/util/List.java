@@ -1,5 +1,6 @@
 package util;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -140,7 +141,31 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
         return new ConsList<E>(car, cdr);
     }
 
+    /**
+     * The representations that {@link #list(Object[])} and {@link #empty()}
+     * can make.
+     */
+    public enum Backing {
+        /**
+         * An {@link ArrList}: an ArrayList, which conses and functional
+         * updates turn into a linked list in front of it.
+         */
+        ARRAY,
+        /**
+         * A {@link VecList}: a persistent vector, for long lists that are
+         * appended to or updated functionally.
+         */
+        VECTOR
+    }
+
+    /**
+     * The representation of lists made from now on.
+     */
+    public static Backing backing = Backing.ARRAY;
+
     public static <E> List<E> list(E... elements) {
+        if (backing == Backing.VECTOR)
+            return new VecList<E>(elements);
         return new ArrList<E>(elements);
     }
 
@@ -183,6 +208,31 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
         return reversed;
     }
 
+    /**
+     * The part of this list that starts with the first occurrence of an
+     * element, or null if it isn't found. The elements before it are added
+     * to prefix.
+     */
+    private List<E> find(E e, java.util.List<E> prefix) {
+        List<E> rest = this;
+        while (!rest.isEmpty()) {
+            if (e.equals(rest.head()))
+                return rest;
+            prefix.add(rest.head());
+            rest = rest.tail();
+        }
+        return null;
+    }
+
+    /**
+     * Cons the elements of prefix, in order, to the front of a list.
+     */
+    private static <E> List<E> consAll(java.util.List<E> prefix, List<E> rest) {
+        for (int i = prefix.size() - 1; i >= 0; i--)
+            rest = cons(prefix.get(i), rest);
+        return rest;
+    }
+
     /**
      * A "functional" append: returns a new list, doesn't
      * modify original lists.
@@ -190,8 +240,10 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
     public List<E> append(List<E> more) {
         if (this.isEmpty())
             return more;
-        else
-            return cons(head(), tail().append(more));
+        java.util.List<E> prefix = new ArrayList<E>(size());
+        for (E e : this)
+            prefix.add(e);
+        return consAll(prefix, more);
     }
 
     /**
@@ -202,12 +254,11 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
      * modify original list.
      */
     public List<E> delete(E e) {
-        if (isEmpty())
+        java.util.List<E> prefix = new ArrayList<E>();
+        List<E> rest = find(e, prefix);
+        if (rest == null)
             throw new IllegalArgumentException("List.delete -- Element not in the list");
-        if (e.equals(head()))
-            return tail();
-        else
-            return cons(head(), tail().delete(e));
+        return consAll(prefix, rest.tail());
     }
 
     /**
@@ -218,12 +269,14 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
      * modify original list.
      */
     public List<E> deleteAll(E e) {
-        if (isEmpty())
-            return this;
-        else if (e.equals(head()))
-            return tail().deleteAll(e);
-        else
-            return cons(head(), tail().deleteAll(e));
+        java.util.List<E> kept = new ArrayList<E>();
+        List<E> rest = this;
+        while (!rest.isEmpty()) {
+            if (!e.equals(rest.head()))
+                kept.add(rest.head());
+            rest = rest.tail();
+        }
+        return consAll(kept, rest);
     }
 
     public List<E> union(List<E> add) {
@@ -236,39 +289,35 @@ public abstract class List<E> extends DefaultIndentable implements Iterable<E> {
     }
 
     public List<E> replace(E olde, E newe) {
-        if (isEmpty())
+        java.util.List<E> prefix = new ArrayList<E>();
+        List<E> rest = find(olde, prefix);
+        if (rest == null)
             throw new IllegalArgumentException("List.replace -- Element not in the list");
-        if (olde.equals(head()))
-            return cons(newe, tail());
-        else
-            return cons(head(), tail().replace(olde, newe));
+        return consAll(prefix, cons(newe, rest.tail()));
     }
 
     public List<E> replace(E olde, List<E> newl) {
-        if (isEmpty())
+        java.util.List<E> prefix = new ArrayList<E>();
+        List<E> rest = find(olde, prefix);
+        if (rest == null)
             throw new IllegalArgumentException("List.replace -- Element not in the list");
-        if (olde.equals(head()))
-            return newl.append(tail());
-        else
-            return cons(head(), tail().replace(olde, newl));
+        return consAll(prefix, newl.append(rest.tail()));
     }
 
     public List<E> insertBefore(E marker, E newe) {
-        if (isEmpty())
+        java.util.List<E> prefix = new ArrayList<E>();
+        List<E> rest = find(marker, prefix);
+        if (rest == null)
             throw new IllegalArgumentException("List.insertAfter -- marker element not in the list");
-        if (marker.equals(head()))
-            return cons(newe, cons(head(), tail()));
-        else
-            return cons(head(), tail().insertBefore(marker, newe));
+        return consAll(prefix, cons(newe, cons(rest.head(), rest.tail())));
     }
 
     public List<E> insertBefore(E marker, List<E> newl) {
-        if (isEmpty())
+        java.util.List<E> prefix = new ArrayList<E>();
+        List<E> rest = find(marker, prefix);
+        if (rest == null)
             throw new IllegalArgumentException("List.insertAfter -- marker element not in the list");
-        if (marker.equals(head()))
-            return newl.append(cons(head(), tail()));
-        else
-            return cons(head(), tail().insertBefore(marker, newl));
+        return consAll(prefix, newl.append(cons(rest.head(), rest.tail())));
     }
 
 
@@ -0,0 +1,146 @@
+package util;
+
+/**
+ * The simulated address space: a heap that starts at a fixed base and grows
+ * up, and a stack that grows down from the top. In between is an unmapped
+ * gap; the part of it just below the stack limit acts as a guard, so that
+ * running off the end of the stack is reported as a stack overflow.
+ * <p>
+ * Memory is divided into pages which are allocated the first time they are
+ * written, so the limits can be large without costing anything up front.
+ * Reading a page that was never written gives 0. The page directory is a
+ * flat array covering the whole address range, so the common case of an
+ * access to a mapped page is one range check and two array loads.
+ */
+public class Memory {
+    public static final int SIZEOF_LONG = 8;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_LONGS = 1 << (PAGE_SHIFT - 3);
+    private static final long PAGE_SIZE = 1L << PAGE_SHIFT;
+
+    /**
+     * Size of the guard region just below the stack.
+     */
+    public static final long GUARD_SIZE = 16 * PAGE_SIZE;
+
+    public long nReads = 0L, nWrites = 0L;
+
+    private final long base;
+    private final long heapEnd;
+    private final long stackStart, stackEnd;
+    private final long size;
+    private final long[][] pages;
+    private long maxHeap;
+
+    /**
+     * @param heapBase  The lowest heap address.
+     * @param heapSize  Maximum size of the heap in bytes.
+     * @param stackSize Maximum size of the stack in bytes.
+     */
+    public Memory(long heapBase, long heapSize, long stackSize) {
+        this.base = heapBase;
+        this.heapEnd = heapBase + pageAlign(heapSize);
+        this.stackStart = heapEnd + GUARD_SIZE;
+        this.stackEnd = stackStart + pageAlign(stackSize);
+        this.size = stackEnd - base;
+        this.pages = new long[(int) (size >>> PAGE_SHIFT)][];
+        this.maxHeap = heapBase;
+    }
+
+    private static long pageAlign(long n) {
+        return (n + PAGE_SIZE - 1) & ~(PAGE_SIZE - 1);
+    }
+
+    /**
+     * The first address above the heap.
+     */
+    public long heapEnd() {
+        return heapEnd;
+    }
+
+    /**
+     * The first address above the stack (the initial stack pointer).
+     */
+    public long stackEnd() {
+        return stackEnd;
+    }
+
+    public long read(long address) {
+        long offset = address - base;
+        if ((offset & (SIZEOF_LONG - 1)) == 0 && Long.compareUnsigned(offset, size) < 0) {
+            long[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+            if (page != null) {
+                nReads ++;
+                return page[(int) (offset >>> 3) & (PAGE_LONGS - 1)];
+            }
+        }
+        check(address, "Read");
+        nReads ++;
+        return 0L;
+    }
+
+    public void write(long address, long value) {
+        long offset = address - base;
+        if ((offset & (SIZEOF_LONG - 1)) == 0 && Long.compareUnsigned(offset, size) < 0) {
+            long[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+            if (page != null) {
+                nWrites ++;
+                page[(int) (offset >>> 3) & (PAGE_LONGS - 1)] = value;
+                return;
+            }
+        }
+        check(address, "Write");
+        nWrites ++;
+        long[] page = new long[PAGE_LONGS];
+        pages[(int) (offset >>> PAGE_SHIFT)] = page;
+        if (address < heapEnd)
+            maxHeap = Math.max(maxHeap, base + ((offset >>> PAGE_SHIFT) + 1 << PAGE_SHIFT));
+        page[(int) (offset >>> 3) & (PAGE_LONGS - 1)] = value;
+    }
+
+    /**
+     * Read a word without counting the reference. Addresses that are not
+     * mapped (or not valid at all) read as 0. Used by the garbage collector,
+     * which looks at words that may or may not be pointers.
+     */
+    public long peek(long address) {
+        long offset = address - base;
+        if ((offset & (SIZEOF_LONG - 1)) != 0 || Long.compareUnsigned(offset, size) >= 0)
+            return 0L;
+        long[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+        return page == null ? 0L : page[(int) (offset >>> 3) & (PAGE_LONGS - 1)];
+    }
+
+    /**
+     * Zero size bytes from an aligned address, without counting the writes.
+     * Pages that were never written are zero already and stay unmapped.
+     */
+    public void clear(long address, long size) {
+        for (long a = address; a < address + size; a += SIZEOF_LONG) {
+            long offset = a - base;
+            long[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+            if (page != null)
+                page[(int) (offset >>> 3) & (PAGE_LONGS - 1)] = 0L;
+        }
+    }
+
+    /**
+     * Slow path: fail unless address is an aligned address in the heap or the
+     * stack (on a page that hasn't been mapped yet).
+     */
+    private void check(long address, String access) {
+        if (address % SIZEOF_LONG != 0)
+            throw new Error(access + " at address " + address + " fails, bad alignment");
+        if (stackStart - GUARD_SIZE <= address && address < stackStart)
+            throw new Error("Stack overflow: " + access + " at address " + address);
+        if (!(base <= address && address < heapEnd || stackStart <= address && address < stackEnd))
+            throw new Error(access + " at address " + address + " out of bounds");
+    }
+
+    /**
+     * The end of the highest heap page that has been written.
+     */
+    public long getMaxHeap() {
+        return maxHeap;
+    }
+}
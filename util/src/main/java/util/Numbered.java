@@ -0,0 +1,13 @@
+package util;
+
+/**
+ * Implemented by objects that carry a small non-negative integer id which
+ * is unique among the objects of their kind (for example Temps and Labels).
+ * Such objects can be used as keys of the array backed {@link IdMap} and
+ * {@link IdSet}.
+ */
+public interface Numbered {
+
+    int getId();
+
+}
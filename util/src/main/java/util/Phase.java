@@ -0,0 +1,29 @@
+package util;
+
+/**
+ * The phases of the compiler that a {@link Profile} times, in the order
+ * they run. Some run inside others: allocating registers asks for the
+ * flow graph, liveness and interference graph, and trace scheduling asks
+ * for the basic blocks, which ask for the linearized body.
+ */
+public enum Phase {
+    PARSE,
+    TYPECHECK,
+    TRANSLATE,
+    LINEARIZE,
+    BASIC_BLOCKS,
+    TRACE_SCHEDULE,
+    MUNCH,
+    FLOW_GRAPH,
+    LIVENESS,
+    INTERFERENCE,
+    REGALLOC, // One round of the register allocator.
+    EMIT;
+
+    /**
+     * The name of the phase in reports.
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
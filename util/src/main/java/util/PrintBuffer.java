@@ -0,0 +1,58 @@
+package util;
+
+import java.io.PrintStream;
+
+/**
+ * The output of a simulated MiniJava program: each println(long) is
+ * formatted as decimal ASCII straight into a byte buffer, without building
+ * a String, and the buffer is written to a stream when it fills up or is
+ * flushed. The bytes are the same as those of PrintStream.print(value + "\n").
+ */
+public class PrintBuffer {
+
+    private static final int SIZE = 8192;
+    /**
+     * The longest line: "-9223372036854775808\n".
+     */
+    private static final int MAX_LINE = 21;
+
+    private final byte[] buf = new byte[SIZE];
+    private int len = 0;
+
+    /**
+     * Append value and a newline, first writing the buffer to out if it
+     * may not have room for them.
+     */
+    public void println(long value, PrintStream out) {
+        if (len > SIZE - MAX_LINE)
+            flush(out);
+        // Work with the negative value, which also covers Long.MIN_VALUE
+        if (value < 0)
+            buf[len++] = '-';
+        else
+            value = -value;
+        int first = len;
+        do {
+            buf[len++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = first, j = len - 1; i < j; i++, j--) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
+        buf[len++] = '\n';
+    }
+
+    /**
+     * Write what is buffered to out.
+     */
+    public void flush(PrintStream out) {
+        if (len > 0) {
+            out.write(buf, 0, len);
+            len = 0;
+        }
+        out.flush();
+    }
+
+}
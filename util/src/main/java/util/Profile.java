@@ -0,0 +1,377 @@
+package util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of each {@link Phase}
+ * of a compilation, for each procedure and in total, and reports them as
+ * JSON. Optionally it also commits a JFR event for each (see PhaseEvent,
+ * which is only built on JDK 11 and later, since Java 8 has no jdk.jfr).
+ * <p>
+ * Profiling is off unless a profile was {@link #start(boolean) started}.
+ * While it is off {@link #begin(Phase, Object)} returns null and
+ * {@link #end(Span)} does nothing, so timing a phase costs a read of a
+ * static field and a null check. Phases are timed like this:
+ *
+ * <pre>
+ * Profile.Span span = Profile.begin(Phase.MUNCH, getLabel());
+ * ...
+ * Profile.end(span);
+ * </pre>
+ *
+ * Spans nest: the time of a span includes that of the spans begun (and
+ * ended) inside it, and its "self" time doesn't. Only the thread that
+ * started the profile is measured, and one profile is recorded at a time.
+ */
+public class Profile {
+
+    /**
+     * Got by the first {@link #start(boolean)}, so that nothing is done
+     * for it while profiling is off.
+     */
+    private static com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Commits JFR events for spans. Implemented by PhaseEvent.Sink, which
+     * is loaded by name so that this class doesn't need jdk.jfr.
+     */
+    public interface EventSink {
+        /**
+         * Start timing an event for a span that is beginning.
+         */
+        Object begin();
+
+        /**
+         * Commit the event that begin returned, for a span that ended.
+         */
+        void end(Object event, Span span);
+    }
+
+    /**
+     * The profile being recorded, or null when profiling is off.
+     */
+    private static Profile current;
+
+    /**
+     * Where to commit events, or null for none.
+     */
+    private final EventSink events;
+    private final long thread;
+
+    /**
+     * All spans, in the order they began.
+     */
+    private final ArrayList<Span> spans = new ArrayList<Span>();
+
+    /**
+     * The innermost span that hasn't ended yet.
+     */
+    private Span open;
+
+    private final long startWall;
+    private final long startCpu;
+    private final long startBytes;
+    private long wall;
+    private long cpu;
+    private long bytes;
+
+    private Profile(EventSink events) {
+        this.events = events;
+        this.thread = Thread.currentThread().getId();
+        this.startWall = System.nanoTime();
+        this.startCpu = threads.getCurrentThreadCpuTime();
+        this.startBytes = threads.getThreadAllocatedBytes(thread);
+    }
+
+    /**
+     * Start recording a profile of the current thread, and commit JFR
+     * events for its spans if events is true (and this JVM has JFR, and
+     * PhaseEvent was built; otherwise there are no events).
+     */
+    public static Profile start(boolean events) {
+        if (threads == null)
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        current = new Profile(events ? eventSink() : null);
+        return current;
+    }
+
+    private static EventSink eventSink() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventSink) Class.forName("util.PhaseEvent$Sink").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop recording, and return what was recorded (null if nothing was).
+     * Spans that haven't ended (because their phase threw) are left out of
+     * the report.
+     */
+    public static Profile stop() {
+        Profile p = current;
+        current = null;
+        if (p != null) {
+            p.wall = System.nanoTime() - p.startWall;
+            p.cpu = threads.getCurrentThreadCpuTime() - p.startCpu;
+            p.bytes = threads.getThreadAllocatedBytes(p.thread) - p.startBytes;
+        }
+        return p;
+    }
+
+    /**
+     * Begin timing a phase, for a procedure (anything whose toString names
+     * it), or for the whole program if procedure is null.
+     */
+    public static Span begin(Phase phase, Object procedure) {
+        return begin(phase, procedure, 0);
+    }
+
+    /**
+     * Begin timing a round of a phase that is repeated for a procedure.
+     * Rounds are numbered from 1.
+     */
+    public static Span begin(Phase phase, Object procedure, int iteration) {
+        Profile p = current;
+        if (p == null || Thread.currentThread().getId() != p.thread)
+            return null;
+        Span span = new Span(p, phase, procedure == null ? null : procedure.toString(), iteration);
+        p.spans.add(span);
+        p.open = span;
+        return span;
+    }
+
+    /**
+     * Stop timing a phase. Any spans begun inside it that are still open
+     * are dropped.
+     */
+    public static void end(Span span) {
+        if (span != null)
+            span.end();
+    }
+
+    /**
+     * The time and allocation of one phase, from {@link #begin} to
+     * {@link #end}.
+     */
+    public static class Span {
+        private final Profile profile;
+        private final Span parent;
+        public final Phase phase;
+        public final String procedure;
+        public final int iteration;
+        private final Object event;
+
+        private final long startWall;
+        private final long startCpu;
+        private final long startBytes;
+        private boolean ended;
+        private long wall;
+        private long cpu;
+        private long bytes;
+        private long innerWall;
+        private long innerCpu;
+        private long innerBytes;
+
+        private Span(Profile profile, Phase phase, String procedure, int iteration) {
+            this.profile = profile;
+            this.parent = profile.open;
+            this.phase = phase;
+            this.procedure = procedure;
+            this.iteration = iteration;
+            this.event = profile.events == null ? null : profile.events.begin();
+            this.startWall = System.nanoTime();
+            this.startCpu = threads.getCurrentThreadCpuTime();
+            this.startBytes = threads.getThreadAllocatedBytes(profile.thread);
+        }
+
+        private void end() {
+            wall = System.nanoTime() - startWall;
+            cpu = threads.getCurrentThreadCpuTime() - startCpu;
+            bytes = threads.getThreadAllocatedBytes(profile.thread) - startBytes;
+            ended = true;
+            if (parent != null) {
+                parent.innerWall += wall;
+                parent.innerCpu += cpu;
+                parent.innerBytes += bytes;
+            }
+            profile.open = parent;
+            if (event != null)
+                profile.events.end(event, this);
+        }
+
+        public long getWallNanos() {
+            return wall;
+        }
+
+        public long getCpuNanos() {
+            return cpu;
+        }
+
+        public long getAllocatedBytes() {
+            return bytes;
+        }
+
+        /**
+         * Wall time not spent in the spans inside this one.
+         */
+        public long getSelfWallNanos() {
+            return wall - innerWall;
+        }
+
+        public long getSelfCpuNanos() {
+            return cpu - innerCpu;
+        }
+
+        public long getSelfAllocatedBytes() {
+            return bytes - innerBytes;
+        }
+    }
+
+    /**
+     * The spans that ended, in the order they began.
+     */
+    public java.util.List<Span> getSpans() {
+        java.util.List<Span> ended = new ArrayList<Span>();
+        for (Span span : spans)
+            if (span.ended)
+                ended.add(span);
+        return ended;
+    }
+
+    /**
+     * The sums of the spans of each phase.
+     */
+    private static class Totals {
+        int calls;
+        long wall, cpu, bytes, selfWall, selfCpu, selfBytes;
+
+        void add(Span span) {
+            calls++;
+            wall += span.wall;
+            cpu += span.cpu;
+            bytes += span.bytes;
+            selfWall += span.getSelfWallNanos();
+            selfCpu += span.getSelfCpuNanos();
+            selfBytes += span.getSelfAllocatedBytes();
+        }
+
+        void json(StringBuilder out) {
+            out.append("{\"calls\": ").append(calls)
+                    .append(", \"wallNanos\": ").append(wall)
+                    .append(", \"cpuNanos\": ").append(cpu)
+                    .append(", \"allocatedBytes\": ").append(bytes)
+                    .append(", \"selfWallNanos\": ").append(selfWall)
+                    .append(", \"selfCpuNanos\": ").append(selfCpu)
+                    .append(", \"selfAllocatedBytes\": ").append(selfBytes)
+                    .append("}");
+        }
+    }
+
+    private static void json(StringBuilder out, String indent, Map<Phase, Totals> totals) {
+        out.append("{");
+        String sep = "\n";
+        for (Map.Entry<Phase, Totals> e : totals.entrySet()) {
+            out.append(sep).append(indent).append("  ").append(quote(e.getKey().key())).append(": ");
+            e.getValue().json(out);
+            sep = ",\n";
+        }
+        out.append("\n").append(indent).append("}");
+    }
+
+    /**
+     * The report: the time and allocation of the whole compilation, the
+     * totals of each phase, the totals of each phase for each procedure,
+     * and every span.
+     */
+    public String toJson() {
+        Map<Phase, Totals> total = new EnumMap<Phase, Totals>(Phase.class);
+        Map<String, Map<Phase, Totals>> procedures = new LinkedHashMap<String, Map<Phase, Totals>>();
+        java.util.List<Span> ended = getSpans();
+        for (Span span : ended) {
+            totals(total, span.phase).add(span);
+            if (span.procedure != null) {
+                Map<Phase, Totals> proc = procedures.get(span.procedure);
+                if (proc == null) {
+                    proc = new EnumMap<Phase, Totals>(Phase.class);
+                    procedures.put(span.procedure, proc);
+                }
+                totals(proc, span.phase).add(span);
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("{\n  \"wallNanos\": ").append(wall)
+                .append(",\n  \"cpuNanos\": ").append(cpu)
+                .append(",\n  \"allocatedBytes\": ").append(bytes)
+                .append(",\n  \"phases\": ");
+        json(out, "  ", total);
+        out.append(",\n  \"procedures\": {");
+        String sep = "\n";
+        for (Map.Entry<String, Map<Phase, Totals>> e : procedures.entrySet()) {
+            out.append(sep).append("    ").append(quote(e.getKey())).append(": ");
+            json(out, "    ", e.getValue());
+            sep = ",\n";
+        }
+        out.append("\n  },\n  \"spans\": [");
+        sep = "\n";
+        for (Span span : ended) {
+            out.append(sep).append("    {\"phase\": ").append(quote(span.phase.key()));
+            if (span.procedure != null)
+                out.append(", \"procedure\": ").append(quote(span.procedure));
+            if (span.iteration > 0)
+                out.append(", \"iteration\": ").append(span.iteration);
+            out.append(", \"wallNanos\": ").append(span.wall)
+                    .append(", \"cpuNanos\": ").append(span.cpu)
+                    .append(", \"allocatedBytes\": ").append(span.bytes)
+                    .append(", \"selfWallNanos\": ").append(span.getSelfWallNanos())
+                    .append(", \"selfCpuNanos\": ").append(span.getSelfCpuNanos())
+                    .append(", \"selfAllocatedBytes\": ").append(span.getSelfAllocatedBytes())
+                    .append("}");
+            sep = ",\n";
+        }
+        out.append("\n  ]\n}\n");
+        return out.toString();
+    }
+
+    private static Totals totals(Map<Phase, Totals> totals, Phase phase) {
+        Totals t = totals.get(phase);
+        if (t == null) {
+            t = new Totals();
+            totals.put(phase, t);
+        }
+        return t;
+    }
+
+    private static String quote(String s) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c < ' ')
+                out.append(String.format("\\u%04x", (int) c));
+            else
+                out.append(c);
+        }
+        return out.append('"').toString();
+    }
+
+    public void write(File report) {
+        Utils.setContents(report, toJson());
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+}
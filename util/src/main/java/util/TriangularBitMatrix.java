@@ -0,0 +1,92 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A symmetric boolean relation over small non-negative ints (for example
+ * the "interferes with" relation between densely numbered Temps).
+ * <p>
+ * Only the lower triangle (i &gt; j) is stored, one bit per pair, so membership
+ * tests and updates are O(1) and the matrix for n elements takes about
+ * n*n/16 bytes. The relation is irreflexive: get(i, i) is always false and
+ * set(i, i) is ignored.
+ * <p>
+ * The matrix grows as needed. Since the position of pair (i, j) doesn't
+ * depend on the size of the matrix, growing just extends the bit array.
+ */
+public class TriangularBitMatrix {
+
+    private long[] bits;
+
+    public TriangularBitMatrix() {
+        this(64);
+    }
+
+    /**
+     * @param size The number of elements we expect to be related.
+     */
+    public TriangularBitMatrix(int size) {
+        bits = new long[words(size)];
+    }
+
+    private static int words(int size) {
+        long pairs = (long) size * (size - 1) / 2;
+        return (int) ((pairs + 63) >>> 6) + 1;
+    }
+
+    private static long index(int i, int j) {
+        if (i < j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return (long) i * (i - 1) / 2 + j;
+    }
+
+    public boolean get(int i, int j) {
+        if (i == j)
+            return false;
+        long index = index(i, j);
+        int word = (int) (index >>> 6);
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Relate i and j.
+     *
+     * @return true if they were not related before.
+     */
+    public boolean set(int i, int j) {
+        if (i == j)
+            return false;
+        long index = index(i, j);
+        int word = (int) (index >>> 6);
+        if (word >= bits.length)
+            bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        long mask = 1L << index;
+        if ((bits[word] & mask) != 0)
+            return false;
+        bits[word] |= mask;
+        return true;
+    }
+
+    /**
+     * Remove the relation between i and j.
+     *
+     * @return true if they were related before.
+     */
+    public boolean clear(int i, int j) {
+        if (i == j)
+            return false;
+        long index = index(i, j);
+        int word = (int) (index >>> 6);
+        if (word >= bits.length)
+            return false;
+        long mask = 1L << index;
+        if ((bits[word] & mask) == 0)
+            return false;
+        bits[word] &= ~mask;
+        return true;
+    }
+
+}
@@ -0,0 +1,380 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of the {@link List} interface as a persistent vector: a
+ * trie with 32 way branching, whose last (up to) 32 elements are kept in a
+ * separate "tail" array. Lists are made with this representation when
+ * {@link List#backing} is {@link List.Backing#VECTOR}.
+ * <p>
+ * Getting, replacing and appending an element take O(log32 n) time, and
+ * appending another list takes that for each element of the other list.
+ * Deleting or inserting elements copies only the part of the list after
+ * them. None of the operations recurse over the elements, so they work on
+ * lists of any length.
+ * <p>
+ * The functional operations never change a trie node or tail array that
+ * another list may see: they copy the path to what they change. The
+ * destructive {@link #add} changes the tail array in place, but only when
+ * no other list shares it.
+ * <p>
+ * The tail of a vector is a vector that shares the elements, but starts one
+ * further. Unlike the tail of an {@link ArrList}, it doesn't see elements
+ * that are added to the original list later.
+ * <p>
+ * This class is not public. The idea is to only use the static methods in
+ * the {@link List} interface to create List instances.
+ */
+class VecList<E> extends List<E> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+
+    /**
+     * The number of elements, counting the ones before start.
+     */
+    private int count;
+    /**
+     * The elements before this index are not part of this list (it is the
+     * tail of another).
+     */
+    private int start;
+    /**
+     * The number of bits of an index that the children of the root use.
+     */
+    private int shift;
+    private Object[] root;
+    private Object[] tail;
+    /**
+     * Whether no other list shares tail, so add can change it in place.
+     */
+    private boolean ownsTail;
+
+    @SafeVarargs
+    VecList(E... elements) {
+        this(0, 0, BITS, EMPTY_NODE, new Object[Math.min(WIDTH, Math.max(elements.length, 1))]);
+        ownsTail = true;
+        for (E e : elements)
+            push(e);
+    }
+
+    private VecList(int count, int start, int shift, Object[] root, Object[] tail) {
+        this.count = count;
+        this.start = start;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * A new list with the same elements, to be changed by push and set.
+     */
+    private VecList<E> copy() {
+        ownsTail = false;
+        return new VecList<E>(count, start, shift, root, tail);
+    }
+
+    private int tailOffset() {
+        return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * The trie node (or tail) that holds the element at index.
+     */
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset())
+            return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Object[]) node[(index >>> level) & MASK];
+        return node;
+    }
+
+    private int index(int i) {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+        return start + i;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        int index = index(i);
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    @Override
+    public int size() {
+        return count - start;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void add(E e) {
+        push(e);
+    }
+
+    @Override
+    public List<E> tail() {
+        if (isEmpty())
+            throw new IllegalArgumentException("Empty list has no tail");
+        VecList<E> tail = copy();
+        tail.start++;
+        return tail;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index = start;
+            private final int end = count;
+            private Object[] leaf = index < end ? leafFor(index) : null;
+
+            @Override
+            public boolean hasNext() {
+                return index < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= end)
+                    throw new NoSuchElementException();
+                if ((index & MASK) == 0)
+                    leaf = leafFor(index);
+                return (E) leaf[index++ & MASK];
+            }
+
+            @Override
+            public void remove() {
+                throw new Error("Can't remove, this is an immutable data structure");
+            }
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Changing a list that nobody else has seen yet
+
+    /**
+     * Append e to the end of this list.
+     */
+    private void push(E e) {
+        int inTail = count - tailOffset();
+        if (inTail < WIDTH) {
+            if (!ownsTail || inTail == tail.length) {
+                tail = Arrays.copyOf(tail, ownsTail ? WIDTH : Math.min(WIDTH, inTail + 1));
+                ownsTail = true;
+            }
+            tail[inTail] = e;
+            count++;
+            return;
+        }
+        // The tail is full: put it in the trie
+        if ((count >>> BITS) > (1 << shift)) {
+            Object[] newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            root = newRoot;
+            shift += BITS;
+        } else {
+            root = pushTail();
+        }
+        tail = new Object[WIDTH];
+        tail[0] = e;
+        ownsTail = true;
+        count++;
+    }
+
+    /**
+     * A copy of root with the full tail added as the leaf for the indexes
+     * tailOffset() to count - 1.
+     */
+    private Object[] pushTail() {
+        int index = count - 1;
+        Object[] newRoot = root.clone();
+        Object[] node = newRoot;
+        for (int level = shift; level > BITS; level -= BITS) {
+            int i = (index >>> level) & MASK;
+            Object[] child = (Object[]) node[i];
+            child = child == null ? new Object[WIDTH] : child.clone();
+            node[i] = child;
+            node = child;
+        }
+        node[(index >>> BITS) & MASK] = tail;
+        return newRoot;
+    }
+
+    /**
+     * A path of new nodes from a level to leaf.
+     */
+    private static Object[] newPath(int level, Object[] leaf) {
+        Object[] node = leaf;
+        for (; level > 0; level -= BITS) {
+            Object[] parent = new Object[WIDTH];
+            parent[0] = node;
+            node = parent;
+        }
+        return node;
+    }
+
+    /**
+     * Replace the element at index (counting from 0, not start).
+     */
+    private void set(int index, E e) {
+        if (index >= tailOffset()) {
+            tail = tail.clone();
+            ownsTail = true;
+            tail[index & MASK] = e;
+            return;
+        }
+        root = root.clone();
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int i = (index >>> level) & MASK;
+            Object[] child = ((Object[]) node[i]).clone();
+            node[i] = child;
+            node = child;
+        }
+        node[index & MASK] = e;
+    }
+
+    /**
+     * Drop the elements from index n (counting from 0, not start) on. The
+     * trie keeps the nodes for them, but they are never read again: push
+     * copies the path to each new leaf, which replaces the old one.
+     */
+    private void truncate(int n) {
+        assert start <= n && n <= count;
+        if (n > tailOffset()) {
+            tail = Arrays.copyOf(tail, n - tailOffset());
+        } else if (n == 0) {
+            tail = new Object[1];
+        } else {
+            Object[] leaf = leafFor(n - 1);
+            tail = Arrays.copyOf(leaf, ((n - 1) & MASK) + 1);
+        }
+        ownsTail = true;
+        count = n;
+    }
+
+    private void pushAll(Iterable<E> elements) {
+        for (E e : elements)
+            push(e);
+    }
+
+    /**
+     * Push the elements of this list from index (counting from 0, not
+     * start) to the end onto another.
+     */
+    private void pushRest(VecList<E> to, int index) {
+        for (; index < count; index++) {
+            @SuppressWarnings("unchecked")
+            E e = (E) leafFor(index)[index & MASK];
+            to.push(e);
+        }
+    }
+
+    /**
+     * The index (counting from 0, not start) of the first element equal
+     * to e, or -1.
+     */
+    private int find(E e) {
+        int index = start;
+        for (E x : this) {
+            if (e.equals(x))
+                return index;
+            index++;
+        }
+        return -1;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // The functional operations
+
+    @Override
+    public List<E> append(List<E> more) {
+        if (isEmpty())
+            return more;
+        VecList<E> result = copy();
+        result.pushAll(more);
+        return result;
+    }
+
+    @Override
+    public List<E> delete(E e) {
+        int index = find(e);
+        if (index < 0)
+            throw new IllegalArgumentException("List.delete -- Element not in the list");
+        if (index == start)
+            return tail();
+        VecList<E> result = copy();
+        result.truncate(index);
+        pushRest(result, index + 1);
+        return result;
+    }
+
+    @Override
+    public List<E> deleteAll(E e) {
+        VecList<E> result = new VecList<E>();
+        for (E x : this)
+            if (!e.equals(x))
+                result.push(x);
+        return result;
+    }
+
+    @Override
+    public List<E> replace(E olde, E newe) {
+        int index = find(olde);
+        if (index < 0)
+            throw new IllegalArgumentException("List.replace -- Element not in the list");
+        VecList<E> result = copy();
+        result.set(index, newe);
+        return result;
+    }
+
+    @Override
+    public List<E> replace(E olde, List<E> newl) {
+        int index = find(olde);
+        if (index < 0)
+            throw new IllegalArgumentException("List.replace -- Element not in the list");
+        VecList<E> result = copy();
+        result.truncate(index);
+        result.pushAll(newl);
+        pushRest(result, index + 1);
+        return result;
+    }
+
+    @Override
+    public List<E> insertBefore(E marker, E newe) {
+        int index = find(marker);
+        if (index < 0)
+            throw new IllegalArgumentException("List.insertAfter -- marker element not in the list");
+        VecList<E> result = copy();
+        result.truncate(index);
+        result.push(newe);
+        pushRest(result, index);
+        return result;
+    }
+
+    @Override
+    public List<E> insertBefore(E marker, List<E> newl) {
+        int index = find(marker);
+        if (index < 0)
+            throw new IllegalArgumentException("List.insertAfter -- marker element not in the list");
+        VecList<E> result = copy();
+        result.truncate(index);
+        result.pushAll(newl);
+        pushRest(result, index);
+        return result;
+    }
+
+}
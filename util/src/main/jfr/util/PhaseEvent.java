@@ -0,0 +1,66 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one {@link Profile.Span}, so that the
+ * phases of the compiler show up in a recording next to GC and JIT events.
+ * Only made when a profile is started with events on, and only committed
+ * while a recording is running.
+ * <p>
+ * Java 8 has no jdk.jfr, so this is in a source directory of its own,
+ * built only on JDK 11 and later (see the "jfr" profile in util/pom.xml).
+ * {@link Profile} finds it by name.
+ */
+@Name("minijava.Phase")
+@Label("Compiler Phase")
+@Category("MiniJava")
+@Description("A phase of the MiniJava compiler, for one procedure or the whole program")
+class PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Procedure")
+    String procedure;
+
+    @Label("Iteration")
+    int iteration;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+
+    public static class Sink implements Profile.EventSink {
+        @Override
+        public Object begin() {
+            PhaseEvent event = new PhaseEvent();
+            event.begin();
+            return event;
+        }
+
+        @Override
+        public void end(Object started, Profile.Span span) {
+            PhaseEvent event = (PhaseEvent) started;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = span.phase.key();
+                event.procedure = span.procedure;
+                event.iteration = span.iteration;
+                event.cpuTime = span.getCpuNanos();
+                event.allocated = span.getAllocatedBytes();
+                event.commit();
+            }
+        }
+    }
+
+}
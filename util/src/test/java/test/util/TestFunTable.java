@@ -1,5 +1,10 @@
 package test.util;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import util.FunTable;
@@ -79,4 +84,72 @@ public class TestFunTable {
         Assertions.assertEquals(20, (int) tab.lookup("y")); // tab "overrides" superTab
         Assertions.assertEquals(300, (int) tab.lookup("a"));
     }
+
+    @Test
+    public void testManyInsertsWithShadowing() {
+        Random random = new Random(411);
+        Map<String, Integer> expected = new HashMap<>();
+        java.util.List<String> order = new ArrayList<>();
+        FunTable<Integer> tab = FunTable.theEmpty();
+        java.util.List<FunTable<Integer>> versions = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String id = "v" + random.nextInt(5000);
+            tab = tab.insert(id, i);
+            expected.put(id, i);
+            order.add(0, id);
+            if (i == 1000)
+                versions.add(tab);
+        }
+        Assertions.assertEquals(20000, tab.size());
+        for (Map.Entry<String, Integer> e : expected.entrySet())
+            Assertions.assertEquals(e.getValue(), tab.lookup(e.getKey()));
+        Assertions.assertNull(tab.lookup("v5000"));
+
+        // Iteration gives every entry, newest first, shadowed ones too
+        int n = 0;
+        for (FunTable.Entry<Integer> entry : tab)
+            Assertions.assertEquals(order.get(n++), entry.getId());
+        Assertions.assertEquals(20000, n);
+
+        // Older tables are unchanged
+        FunTable<Integer> old = versions.get(0);
+        Assertions.assertEquals(1001, old.size());
+        java.util.Set<String> seen = new java.util.HashSet<>();
+        for (FunTable.Entry<Integer> entry : old)
+            if (seen.add(entry.getId()))
+                Assertions.assertEquals(entry.getValue(), old.lookup(entry.getId()), entry.getId());
+    }
+
+    @Test
+    public void testSameHashCode() {
+        // "Aa" and "BB" have the same hashCode, and so do their combinations
+        String[] ids = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        Assertions.assertEquals(ids[0].hashCode(), ids[3].hashCode());
+        FunTable<Integer> tab = FunTable.theEmpty();
+        for (int i = 0; i < ids.length; i++)
+            tab = tab.insert(ids[i], i);
+        tab = tab.insert("other", 10);
+        tab = tab.insert("AaBB", 20);
+        Assertions.assertEquals(0, (int) tab.lookup("AaAa"));
+        Assertions.assertEquals(20, (int) tab.lookup("AaBB"));
+        Assertions.assertEquals(2, (int) tab.lookup("BBAa"));
+        Assertions.assertEquals(3, (int) tab.lookup("BBBB"));
+        Assertions.assertEquals(10, (int) tab.lookup("other"));
+        Assertions.assertNull(tab.lookup("AaAaAa"));
+    }
+
+    @Test
+    public void testMergeLongTables() {
+        FunTable<Integer> tab = FunTable.theEmpty();
+        FunTable<Integer> superTab = FunTable.theEmpty();
+        for (int i = 0; i < 100000; i++) {
+            tab = tab.insert("x" + i, i);
+            superTab = superTab.insert("x" + (2 * i), -i);
+        }
+        FunTable<Integer> merged = tab.merge(superTab);
+        Assertions.assertEquals(200000, merged.size());
+        Assertions.assertEquals(99999, (int) merged.lookup("x99999"));
+        Assertions.assertEquals(-60000, (int) merged.lookup("x120000"));
+        Assertions.assertEquals("x99999", merged.iterator().next().getId());
+    }
 }
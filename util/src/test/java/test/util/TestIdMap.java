@@ -0,0 +1,107 @@
+package test.util;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.IdMap;
+import util.IdSet;
+import util.Numbered;
+
+/**
+ * Tests for the id indexed side tables.
+ */
+public class TestIdMap {
+
+    private static class Key implements Numbered {
+        private final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "k" + id;
+        }
+    }
+
+    @Test
+    public void testMap() {
+        IdMap<Key, String> m = new IdMap<Key, String>(2);
+        Key a = new Key(0);
+        Key b = new Key(7);
+        Key c = new Key(1000);
+        Assertions.assertNull(m.get(c));
+        Assertions.assertNull(m.put(a, "a"));
+        Assertions.assertNull(m.put(c, "c"));
+        Assertions.assertEquals("a", m.put(a, "A"));
+        Assertions.assertEquals(2, m.size());
+        Assertions.assertEquals("A", m.get(a));
+        Assertions.assertEquals("c", m.get(c));
+        Assertions.assertFalse(m.containsKey(b));
+        Assertions.assertEquals("{k0=A, k1000=c}", m.toString());
+        Assertions.assertEquals("A", m.remove(a));
+        Assertions.assertNull(m.remove(a));
+        Assertions.assertEquals(1, m.size());
+        m.clear();
+        Assertions.assertTrue(m.isEmpty());
+        Assertions.assertFalse(m.iterator().hasNext());
+    }
+
+    @Test
+    public void testSet() {
+        IdSet<Key> s = new IdSet<Key>(1);
+        ArrayList<Key> keys = new ArrayList<Key>();
+        for (int i = 0; i < 500; i += 3)
+            keys.add(new Key(i));
+        for (Key k : keys)
+            Assertions.assertTrue(s.add(k));
+        Assertions.assertFalse(s.add(keys.get(5)));
+        Assertions.assertEquals(keys.size(), s.size());
+        Assertions.assertTrue(s.contains(keys.get(7)));
+        Assertions.assertFalse(s.contains(new Key(4)));
+        Assertions.assertFalse(s.contains(new Key(100000)));
+        int i = 0;
+        for (Key k : s)
+            Assertions.assertSame(keys.get(i++), k);
+        Assertions.assertEquals(keys.size(), i);
+        Assertions.assertTrue(s.remove(keys.get(0)));
+        Assertions.assertFalse(s.remove(keys.get(0)));
+        Assertions.assertSame(keys.get(1), s.iterator().next());
+        Assertions.assertEquals(keys.size() - 1, s.size());
+    }
+
+    @Test
+    public void testSameId() {
+        // As after Temp.newNumbering: a key from an earlier numbering has
+        // the id of a new one.
+        Key old = new Key(3);
+        Key key = new Key(3);
+        IdMap<Key, String> m = new IdMap<Key, String>();
+        m.put(key, "new");
+        Assertions.assertNull(m.get(old));
+        Assertions.assertFalse(m.containsKey(old));
+        Assertions.assertNull(m.remove(old));
+        Assertions.assertEquals("new", m.get(key));
+        Assertions.assertNull(m.put(old, "old"));
+        Assertions.assertEquals(1, m.size());
+        Assertions.assertNull(m.get(key));
+        Assertions.assertEquals("old", m.get(old));
+
+        IdSet<Key> s = new IdSet<Key>();
+        s.add(key);
+        Assertions.assertFalse(s.contains(old));
+        Assertions.assertFalse(s.remove(old));
+        Assertions.assertTrue(s.add(old));
+        Assertions.assertEquals(1, s.size());
+        Assertions.assertFalse(s.contains(key));
+        Assertions.assertSame(old, s.iterator().next());
+    }
+
+}
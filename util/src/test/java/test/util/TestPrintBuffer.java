@@ -0,0 +1,49 @@
+package test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.PrintBuffer;
+
+/**
+ * Tests that PrintBuffer prints exactly what PrintStream.print does.
+ */
+public class TestPrintBuffer {
+
+    private static void check(long... values) {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        PrintStream expectedOut = new PrintStream(expected);
+        PrintStream actualOut = new PrintStream(actual);
+        PrintBuffer buffer = new PrintBuffer();
+        for (long value : values) {
+            expectedOut.print(value + "\n");
+            buffer.println(value, actualOut);
+        }
+        buffer.flush(actualOut);
+        expectedOut.flush();
+        Assertions.assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testValues() {
+        check(0, 1, -1, 9, 10, -10, 99, 100, 12345, -67890,
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testFlushWhenFull() {
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (i % 2 == 0 ? 1 : -1) * (long) i * i * i * i * i;
+        check(values);
+    }
+
+    @Test
+    public void testNothing() {
+        check();
+    }
+
+}
@@ -0,0 +1,114 @@
+package test.util;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.Phase;
+import util.Profile;
+
+/**
+ * Tests that Profile records nothing unless started, and that nested spans
+ * add up.
+ */
+public class TestProfile {
+
+    private static long[] sink;
+
+    private static void work(int n) {
+        long[] a = new long[n];
+        for (int i = 1; i < n; i++)
+            a[i] = a[i - 1] * 31 + i;
+        sink = a;
+    }
+
+    @AfterEach
+    public void stop() {
+        Profile.stop();
+    }
+
+    @Test
+    public void testOff() {
+        Assertions.assertNull(Profile.begin(Phase.PARSE, null));
+        Profile.end(null);
+        Assertions.assertNull(Profile.stop());
+    }
+
+    @Test
+    public void testNested() {
+        Profile.start(false);
+        Profile.Span regalloc = Profile.begin(Phase.REGALLOC, "f", 1);
+        Profile.Span liveness = Profile.begin(Phase.LIVENESS, "f");
+        work(100000);
+        Profile.end(liveness);
+        work(100000);
+        Profile.end(regalloc);
+        Profile.Span emit = Profile.begin(Phase.EMIT, null);
+        Profile.end(emit);
+        Profile profile = Profile.stop();
+
+        List<Profile.Span> spans = profile.getSpans();
+        Assertions.assertEquals(3, spans.size());
+        Assertions.assertSame(regalloc, spans.get(0));
+        Assertions.assertSame(liveness, spans.get(1));
+        Assertions.assertSame(emit, spans.get(2));
+        Assertions.assertEquals(1, regalloc.iteration);
+        Assertions.assertEquals("f", liveness.procedure);
+        Assertions.assertNull(emit.procedure);
+
+        Assertions.assertTrue(liveness.getAllocatedBytes() >= 800000);
+        Assertions.assertEquals(liveness.getAllocatedBytes(), liveness.getSelfAllocatedBytes());
+        Assertions.assertEquals(regalloc.getAllocatedBytes() - liveness.getAllocatedBytes(),
+                regalloc.getSelfAllocatedBytes());
+        Assertions.assertTrue(regalloc.getSelfAllocatedBytes() >= 800000);
+        Assertions.assertEquals(regalloc.getWallNanos() - liveness.getWallNanos(),
+                regalloc.getSelfWallNanos());
+        Assertions.assertTrue(liveness.getWallNanos() <= regalloc.getWallNanos());
+        Assertions.assertTrue(liveness.getCpuNanos() <= regalloc.getCpuNanos());
+
+        String json = profile.toJson();
+        Assertions.assertTrue(json.contains("\"regalloc\": {\"calls\": 1,"));
+        Assertions.assertTrue(json.contains("\"procedures\": {\n    \"f\": {"));
+        Assertions.assertTrue(json.contains("{\"phase\": \"regalloc\", \"procedure\": \"f\", \"iteration\": 1,"));
+        Assertions.assertTrue(json.contains("{\"phase\": \"emit\", \"wallNanos\": "));
+    }
+
+    @Test
+    public void testEvents() {
+        // With or without JFR, the spans are the same.
+        Profile.start(true);
+        Profile.Span span = Profile.begin(Phase.MUNCH, "f");
+        work(1000);
+        Profile.end(span);
+        Assertions.assertEquals(1, Profile.stop().getSpans().size());
+    }
+
+    @Test
+    public void testUnended() {
+        Profile.start(false);
+        Profile.Span outer = Profile.begin(Phase.TYPECHECK, null);
+        Profile.begin(Phase.PARSE, null);
+        Profile.end(outer);
+        Profile.Span after = Profile.begin(Phase.TRANSLATE, null);
+        Profile.end(after);
+        List<Profile.Span> spans = Profile.stop().getSpans();
+        // The parse span never ended, and doesn't count in typecheck.
+        Assertions.assertEquals(2, spans.size());
+        Assertions.assertSame(outer, spans.get(0));
+        Assertions.assertSame(after, spans.get(1));
+        Assertions.assertEquals(outer.getAllocatedBytes(), outer.getSelfAllocatedBytes());
+    }
+
+    @Test
+    public void testOtherThread() throws InterruptedException {
+        Profile.start(false);
+        Profile.Span[] span = new Profile.Span[1];
+        Thread t = new Thread(() -> span[0] = Profile.begin(Phase.PARSE, null));
+        t.start();
+        t.join();
+        Assertions.assertNull(span[0]);
+        Assertions.assertTrue(Profile.stop().getSpans().isEmpty());
+    }
+
+}
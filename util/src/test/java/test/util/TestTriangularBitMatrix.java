@@ -0,0 +1,59 @@
+package test.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TriangularBitMatrix;
+
+/**
+ * Tests for the bit matrix used to represent interference.
+ */
+public class TestTriangularBitMatrix {
+
+    @Test
+    public void testEmpty() {
+        TriangularBitMatrix m = new TriangularBitMatrix();
+        Assertions.assertFalse(m.get(0, 1));
+        Assertions.assertFalse(m.get(1000, 5));
+        Assertions.assertFalse(m.clear(1000, 5));
+    }
+
+    @Test
+    public void testSymmetric() {
+        TriangularBitMatrix m = new TriangularBitMatrix();
+        Assertions.assertTrue(m.set(3, 7));
+        Assertions.assertTrue(m.get(3, 7));
+        Assertions.assertTrue(m.get(7, 3));
+        Assertions.assertFalse(m.set(7, 3));
+        Assertions.assertFalse(m.get(3, 6));
+    }
+
+    @Test
+    public void testIrreflexive() {
+        TriangularBitMatrix m = new TriangularBitMatrix();
+        Assertions.assertFalse(m.set(4, 4));
+        Assertions.assertFalse(m.get(4, 4));
+    }
+
+    @Test
+    public void testClear() {
+        TriangularBitMatrix m = new TriangularBitMatrix();
+        m.set(1, 2);
+        m.set(2, 3);
+        Assertions.assertTrue(m.clear(2, 1));
+        Assertions.assertFalse(m.get(1, 2));
+        Assertions.assertTrue(m.get(3, 2));
+        Assertions.assertFalse(m.clear(1, 2));
+    }
+
+    @Test
+    public void testGrow() {
+        TriangularBitMatrix m = new TriangularBitMatrix(2);
+        for (int i = 0; i < 3000; i += 7)
+            for (int j = 0; j < i; j += 13)
+                m.set(i, j);
+        for (int i = 0; i < 3000; i++)
+            for (int j = 0; j < i; j += 5)
+                Assertions.assertEquals(i % 7 == 0 && j % 13 == 0, m.get(j, i));
+    }
+
+}
@@ -0,0 +1,237 @@
+package test.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.List;
+
+/**
+ * Tests of the persistent vector representation of {@link List}, comparing
+ * it with a java.util.ArrayList, and checking that older versions of a list
+ * don't change.
+ */
+public class TestVecList {
+
+    private static final int BIG = 100000;
+
+    @AfterEach
+    public void resetBacking() {
+        List.backing = List.Backing.ARRAY;
+    }
+
+    private static List<Integer> vector(int n) {
+        List.backing = List.Backing.VECTOR;
+        List<Integer> l = List.empty();
+        for (int i = 0; i < n; i++)
+            l.add(i);
+        return l;
+    }
+
+    private static void assertSame(java.util.List<Integer> expected, List<Integer> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (int i = 0; i < expected.size(); i++)
+            Assertions.assertEquals(expected.get(i), actual.get(i));
+        ArrayList<Integer> iterated = new ArrayList<Integer>();
+        for (Integer e : actual)
+            iterated.add(e);
+        Assertions.assertEquals(expected, iterated);
+    }
+
+    private static ArrayList<Integer> range(int n) {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++)
+            l.add(i);
+        return l;
+    }
+
+    @Test
+    public void testBacking() {
+        Assertions.assertEquals("ArrList", List.list(1, 2).getClass().getSimpleName());
+        List.backing = List.Backing.VECTOR;
+        Assertions.assertEquals("VecList", List.list(1, 2).getClass().getSimpleName());
+        Assertions.assertEquals("VecList", List.empty().getClass().getSimpleName());
+    }
+
+    @Test
+    public void testAdd() {
+        for (int n : new int[] { 0, 1, 31, 32, 33, 1024, 1025, 32 * 32 * 32 + 33 })
+            assertSame(range(n), vector(n));
+    }
+
+    @Test
+    public void testListOfElements() {
+        List.backing = List.Backing.VECTOR;
+        List<Integer> l = List.list(0, 1, 2, 3);
+        assertSame(range(4), l);
+        l.add(4);
+        assertSame(range(5), l);
+    }
+
+    @Test
+    public void testTail() {
+        List<Integer> l = vector(100);
+        ArrayList<Integer> expected = range(100);
+        while (!l.isEmpty()) {
+            List<Integer> tail = l.tail();
+            expected.remove(0);
+            assertSame(expected, tail);
+            l = tail;
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, l::tail);
+    }
+
+    @Test
+    public void testGetOutOfBounds() {
+        List<Integer> l = vector(40);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> l.get(40));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> l.tail().get(39));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> l.get(-1));
+    }
+
+    @Test
+    public void testAppendOneAtATime() {
+        List.backing = List.Backing.VECTOR;
+        List<Integer> l = List.empty();
+        ArrayList<List<Integer>> versions = new ArrayList<List<Integer>>();
+        for (int i = 0; i < BIG; i++) {
+            l = l.append(List.list(i));
+            if (i % 10007 == 0)
+                versions.add(l);
+        }
+        assertSame(range(BIG), l);
+        for (int v = 0; v < versions.size(); v++)
+            assertSame(range(v * 10007 + 1), versions.get(v));
+    }
+
+    @Test
+    public void testPersistence() {
+        List<Integer> l = vector(1000);
+        List<Integer> replaced = l.replace(500, -1);
+        List<Integer> deleted = l.delete(10);
+        List<Integer> inserted = l.insertBefore(999, -2);
+        List<Integer> appended = l.append(List.list(1000));
+        l.add(1000);
+        List<Integer> added = l;
+
+        assertSame(range(1001), added);
+        ArrayList<Integer> expected = range(1000);
+        expected.set(500, -1);
+        assertSame(expected, replaced);
+        expected = range(1000);
+        expected.remove(10);
+        assertSame(expected, deleted);
+        expected = range(1000);
+        expected.add(999, -2);
+        assertSame(expected, inserted);
+        assertSame(range(1001), appended);
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(411);
+        List<Integer> l = vector(0);
+        ArrayList<Integer> expected = new ArrayList<Integer>();
+        int next = 0;
+        for (int step = 0; step < 5000; step++) {
+            int op = random.nextInt(expected.isEmpty() ? 2 : 8);
+            Integer some = expected.isEmpty() ? null : expected.get(random.nextInt(expected.size()));
+            switch (op) {
+            case 0:
+                l = l.append(List.list(next, next + 1));
+                expected.add(next++);
+                expected.add(next++);
+                break;
+            case 1:
+                l.add(next);
+                expected.add(next++);
+                break;
+            case 2:
+                l = l.delete(some);
+                expected.remove(some);
+                break;
+            case 3:
+                l = l.replace(some, next);
+                expected.set(expected.indexOf(some), next++);
+                break;
+            case 4:
+                l = l.replace(some, List.list(next, next + 1));
+                int at = expected.indexOf(some);
+                expected.set(at, next++);
+                expected.add(at + 1, next++);
+                break;
+            case 5:
+                l = l.insertBefore(some, next);
+                expected.add(expected.indexOf(some), next++);
+                break;
+            case 6:
+                l = l.insertBefore(some, List.cons(next, List.list(next + 1)));
+                at = expected.indexOf(some);
+                expected.add(at, next++);
+                expected.add(at + 1, next++);
+                break;
+            case 7:
+                l = l.tail();
+                expected.remove(0);
+                break;
+            }
+            if (step % 100 == 0)
+                assertSame(expected, l);
+        }
+        assertSame(expected, l);
+    }
+
+    @Test
+    public void testDeleteAll() {
+        List.backing = List.Backing.VECTOR;
+        List<Integer> l = List.list(1, 2, 1, 3, 1);
+        assertSame(java.util.Arrays.asList(2, 3), l.deleteAll(1));
+        assertSame(java.util.Arrays.asList(1, 2, 1, 3, 1), l.deleteAll(4));
+    }
+
+    @Test
+    public void testNotFound() {
+        List<Integer> l = vector(10);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> l.delete(10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> l.replace(10, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> l.insertBefore(10, 1));
+    }
+
+    @Test
+    public void testMixedRepresentations() {
+        List<Integer> vec = vector(50);
+        List.backing = List.Backing.ARRAY;
+        List<Integer> arr = List.list(50, 51);
+        List<Integer> consed = List.cons(-1, vec);
+
+        ArrayList<Integer> expected = range(52);
+        assertSame(expected, vec.append(arr));
+        expected = range(50);
+        expected.add(0, -1);
+        assertSame(expected, consed);
+        expected.addAll(range(50));
+        assertSame(expected, consed.append(vec));
+        expected = range(52);
+        expected.addAll(range(50));
+        assertSame(expected, vec.append(arr).append(vec));
+        expected = range(50);
+        expected.addAll(0, java.util.Arrays.asList(-5, -6, -7));
+        assertSame(expected, arr.append(vec).replace(50, List.list(-5, -6)).delete(51).insertBefore(0, -7));
+    }
+
+    @Test
+    public void testLongArrayListsDontOverflowTheStack() {
+        List<Integer> l = List.empty();
+        for (int i = 0; i < BIG; i++)
+            l.add(i);
+        List<Integer> deleted = l.delete(BIG - 1).replace(BIG - 2, -1).insertBefore(-1, -2);
+        Assertions.assertEquals(BIG, deleted.size());
+        Assertions.assertEquals(-2, (int) deleted.get(BIG - 2));
+        Assertions.assertEquals(2 * BIG, l.append(l).size());
+    }
+
+}
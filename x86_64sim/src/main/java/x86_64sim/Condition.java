@@ -0,0 +1,70 @@
+package x86_64sim;
+
+/**
+ * The condition suffixes of conditional jumps and moves (jl, cmovne, ...),
+ * decoded once when the instruction is built. Conditions compare the
+ * operands of the last cmpq: l is the target operand, r the source.
+ */
+public enum Condition {
+	L("l"), E("e"), G("g"), LE("le"), NE("ne"), GE("ge"), B("b"), A("a"), BE("be"), AE("ae");
+
+	private final String suffix;
+
+	Condition(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * The condition for a suffix, or an Error if there is no such condition.
+	 */
+	public static Condition decode(String suffix) {
+		switch (suffix) {
+			case "l": return L;
+			case "e": return E;
+			case "g": return G;
+			case "le": return LE;
+			case "ne": return NE;
+			case "ge": return GE;
+			case "b": return B;
+			case "a": return A;
+			case "be": return BE;
+			case "ae": return AE;
+		}
+		throw new Error("Illegal condition " + suffix);
+	}
+
+	public boolean test(long l, long r) {
+		switch (this) {
+			case L: return l < r;
+			case E: return l == r;
+			case G: return l > r;
+			case LE: return l <= r;
+			case NE: return l != r;
+			case GE: return r < 0 || l >= r;
+			case B: return unsignedCompare(l, r) < 0;
+			case A: return unsignedCompare(l, r) > 0;
+			case BE: return unsignedCompare(l, r) <= 0;
+			default: return unsignedCompare(l, r) >= 0;
+		}
+	}
+
+	private static long unsignedCompare(long conditionl, long conditionr) {
+		if (conditionl < 0 && conditionr < 0) {
+			// more negative is smaller unsigned
+			return conditionl - conditionr;
+		} else if (conditionl < 0 && conditionr > 0) {
+			// negative is bigger than any positive
+			return 1;
+		} else if (conditionl > 0 && conditionr < 0) {
+			// negative is still bigger than any positive
+			return -1;
+		} else {
+			return conditionl - conditionr;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return suffix;
+	}
+}
@@ -1,5 +1,6 @@
 package x86_64sim;
 
+import util.Memory;
 import x86_64sim.instruction.Instruction;
 
 import java.util.ArrayList;
@@ -19,15 +20,89 @@ public class Program {
 	private boolean inText = true;
 	private long pc;
 	private long dc = State.HEAP_BASE;
+
+	/**
+	 * Data labels defined by the (simulated) runtime: the allocation pointer
+	 * and limit that compiled code bumps to allocate objects inline.
+	 */
+	public static final String ALLOC_PTR = "cs411allocptr", ALLOC_LIMIT = "cs411alloclimit";
+
+	/**
+	 * Register file slot of each register name. The machine registers come
+	 * first, in the order of {@link State#REGISTERS}; the temps of code that
+	 * hasn't been register allocated get the slots after them.
+	 */
+	private Map<String, Integer> registers = new HashMap<String, Integer>();
+
 	public Program() {
 		instructions = new ArrayList<Instruction>();
 		labels = new HashMap<String, Long>();
 		pc = 0;
+		for (String reg : State.REGISTERS)
+			registers.put(reg, registers.size());
+		labels.put(ALLOC_PTR, dc);
+		labels.put(ALLOC_LIMIT, dc + 8);
+		dc += 16;
+	}
+
+	/**
+	 * The register file slot of a register, assigning a new slot if the
+	 * name hasn't been seen before.
+	 */
+	public int register(String name) {
+		Integer slot = registers.get(name);
+		if (slot == null) {
+			slot = registers.size();
+			registers.put(name, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * The register file slot of a register, or -1 if this program doesn't
+	 * use it.
+	 */
+	public int registerIfPresent(String name) {
+		Integer slot = registers.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Size of the register file: the machine registers plus the temps.
+	 */
+	public int registerCount() {
+		return registers.size();
 	}
 
 	public long getLabel(String label) {
 		return labels.get(label);
 	}
+
+	/**
+	 * The address of a label, or an Error if there is no such label.
+	 */
+	public long resolveLabel(String label) {
+		Long addr = labels.get(label);
+		if (addr == null)
+			throw new Error("Unknown label " + label);
+		return addr;
+	}
+
+	private boolean linked = false;
+
+	/**
+	 * Resolve the registers and labels used by the instructions (see
+	 * {@link Instruction#resolve}). Done once, when the program is loaded
+	 * into a {@link State}, since a jump may refer to a label that is
+	 * defined after it.
+	 */
+	public void link() {
+		if (linked)
+			return;
+		for (Instruction i : instructions)
+			i.resolve(this);
+		linked = true;
+	}
     public Instruction getInstruction(int addr) {
         return instructions.get(addr);
     }
@@ -137,7 +212,7 @@ public class Program {
 		}
 		for (Long addr : relocationData.keySet()) {
 			String value = relocationData.get(addr);
-			ram.write(addr, labels.get(value));
+			ram.write(addr, resolveLabel(value));
 		}
 		return dc;
 	}
@@ -22,6 +22,13 @@ public class Sim {
 		}
 		//			System.out.println("Program:");
 		//			System.out.println(p.dump());
+		return ulate(p, beVerbose);
+	}
+
+	/**
+	 * Run a Program that was built directly, rather than parsed from text.
+	 */
+	public static State ulate(Program p, boolean beVerbose) {
 		State s = new State(p);
 		s.beVerbose = beVerbose;
 		String result = s.runForResult().result;
@@ -29,6 +36,9 @@ public class Sim {
 		System.out.println("Static: " + p.countInstructions() + " instructions generated");
 		System.out.println("Dynamic: " + s.instructionsExecuted + " instructions executed");
         System.out.println("Memory: " + s.getMemoryReferences() + " references");
+		if (s.getGcCount() > 0)
+			System.out.println("GC: " + s.getGcCount() + " collections, " + s.getGcPauseInstructions()
+					+ " pause instructions, " + s.getGcLiveBytes() + " bytes live");
 		return s;
 	}
 
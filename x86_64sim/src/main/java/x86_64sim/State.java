@@ -6,123 +6,229 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import util.Collector;
+import util.GcMode;
+import util.Memory;
+import util.PrintBuffer;
 
-public class State {
+public class State implements Collector.Mutator {
 	public static final long HEAP_BASE = 0x1000L;
-    private static final long HEAP_SIZE = 0x1000L;
-	private static final long STACK_BASE = 0x8000L, STACK_SIZE = 0x1000L;
+	/**
+	 * Limits of the heap and the stack, in bytes, for States created from
+	 * now on. Memory is only allocated as it is used.
+	 */
+	public static long heapSize = 64L << 20;
+	public static long stackSize = 8L << 20;
+	/**
+	 * Whether States created from now on collect garbage when the heap is full.
+	 */
+	public static GcMode gcMode = GcMode.NONE;
 	private static final long DONE = 99999999999999L;
 	public boolean beVerbose = false;
 	private long maxInstructions = 10000000;
-	private final static String[] regs = { Instruction.AX /*"%rax"*/, "%rbx", "%rcx", Instruction.DX /*"%rdx"*/, "%rsi", Instruction.ARG1 /*"%rdi"*/, Instruction.SP, Instruction.BP,
+	/**
+	 * The machine registers, in register file order.
+	 */
+	public final static String[] REGISTERS = { Instruction.AX /*"%rax"*/, "%rbx", "%rcx", Instruction.DX /*"%rdx"*/, "%rsi", Instruction.ARG1 /*"%rdi"*/, Instruction.SP, Instruction.BP,
 		"%r8", "%r9", "%r10", "%r11", "%r12", "%r13", "%r14", "%r15" };
-	static {
-		assertTrue(HEAP_BASE + HEAP_SIZE < STACK_BASE - STACK_SIZE);
-	}
+	/**
+	 * Register file slots of the registers that instructions use implicitly.
+	 */
+	public final static int AX = 0, DX = 3, ARG1 = 5, SP = 6, BP = 7;
+	/**
+	 * Register file slots of the registers that a call may clobber in the
+	 * System V calling convention, which the runtime functions follow.
+	 */
+	private final static int[] CALLER_SAVED = { AX, 2, DX, 4, ARG1, 8, 9, 10, 11 };
+	/**
+	 * What the simulated runtime functions leave in the registers they
+	 * clobber, so that code which expects them to survive a call fails.
+	 */
+	public final static long CLOBBERED = 0xbad0bad0bad0L;
+	private final static int MACHINE_REGISTERS = REGISTERS.length;
 	public Program p;
 	public Memory ram;
-	private Map<String, Long> registers;
-	private List<Map<String, Long>> registerstack;
+	/**
+	 * The register file: the machine registers, followed by the temps of
+	 * code that hasn't been register allocated. Temps are local to a
+	 * procedure, so a call saves them on the shadow stack (and clears them)
+	 * and the matching return restores them.
+	 */
+	private long[] registers;
+	private final int temps;
+	private long[] shadow;
+	private int depth = 0;
 	public long conditionl;
 	public long conditionr;
 	public long pc;
 	public long hp;
+	private Collector collector;
+	/**
+	 * Address of the allocation pointer that compiled code bumps to allocate
+	 * objects inline. Without a collector it is the heap pointer, so hp is
+	 * only up to date while the runtime allocates.
+	 */
+	private final long allocPtr;
 	public PrintStream out = System.out;
+	/**
+	 * What the program printed that hasn't been written to out yet.
+	 */
+	private final PrintBuffer printer = new PrintBuffer();
 	public long instructionsExecuted = 0L;
 	public String result;
 
 	public State(Program p) {
-		ram = new Memory(HEAP_BASE, HEAP_BASE + HEAP_SIZE, STACK_BASE - STACK_SIZE, STACK_BASE);
-		registers = new HashMap<String, Long>();
-		registerstack = new LinkedList<Map<String, Long>>();
+		p.link();
+		ram = new Memory(HEAP_BASE, heapSize, stackSize);
+		registers = new long[p.registerCount()];
+		temps = registers.length - MACHINE_REGISTERS;
+		shadow = new long[temps * 64];
 		pc = p.findMain();
 		this.p = p;
-		long sp = STACK_BASE - Memory.SIZEOF_LONG;
+		long sp = ram.stackEnd() - Memory.SIZEOF_LONG;
 		ram.write(sp, DONE);
-		setReg(Instruction.SP, sp);
+		setReg(SP, sp);
 		hp = p.writeStatic(ram);
+		allocPtr = p.resolveLabel(Program.ALLOC_PTR);
+		if (gcMode == GcMode.MARK_SWEEP) {
+			// The collector must see every object: leave the inline
+			// allocation limit at 0, so that all of them come through alloc
+			collector = new Collector(ram, hp);
+		} else {
+			ram.write(allocPtr, hp);
+			ram.write(p.resolveLabel(Program.ALLOC_LIMIT), ram.heapEnd());
+		}
 	}
 
 	public long alloc(long size) {
-		assertTrue(hp + size <= HEAP_BASE + HEAP_SIZE);
+		if (collector != null)
+			// Every object gets its own block, even one without fields
+			return collector.allocate(this, size == 0 ? Memory.SIZEOF_LONG : size, false);
+		hp = ram.read(allocPtr);
+		checkHeap(size);
 		long answer = hp;
 		hp += size;
+		ram.write(allocPtr, hp);
 		return answer;
 	}
 	public long allocArray(long nElements) {
 		long size = (nElements + 1) * Memory.SIZEOF_LONG;
-		assertTrue(hp + size <= HEAP_BASE + HEAP_SIZE);
-		long answer = hp;
+		long answer;
+		if (collector != null) {
+			answer = collector.allocate(this, size, true);
+		} else {
+			hp = ram.read(allocPtr);
+			checkHeap(size);
+			answer = hp;
+			hp += size;
+			ram.write(allocPtr, hp);
+		}
 		ram.write(answer, nElements);
-		hp += size;
 		return answer + Memory.SIZEOF_LONG;
 	}
+	/**
+	 * Check the calling convention of a call to a runtime function: the
+	 * stack must be 16 byte aligned, as it is for any System V call.
+	 */
+	public void enterRuntime() {
+		if ((registers[SP] & 15) != 0)
+			throw new Error("Misaligned stack in call to the runtime: %rsp is " + hex(registers[SP]));
+	}
+
+	/**
+	 * Return from a runtime function with value in %rax, clobbering the
+	 * other caller-saved registers like the compiled C code may.
+	 */
+	public void exitRuntime(long value) {
+		for (int r : CALLER_SAVED)
+			registers[r] = CLOBBERED;
+		registers[AX] = value;
+	}
+
+	@Override
+	public long getHeapPointer() {
+		return hp;
+	}
+
+	@Override
+	public void setHeapPointer(long hp) {
+		this.hp = hp;
+	}
+
+	@Override
+	public void checkHeap(long size) {
+		if (size < 0 || hp + size > ram.heapEnd())
+			throw new Error("Out of heap memory: can't allocate " + size + " bytes (heap limit is " + heapSize + " bytes)");
+	}
+
+	/**
+	 * Give the collector every word that may point into the heap: the
+	 * registers, the temps saved by calls, and the stack.
+	 */
+	@Override
+	public void scanRoots(Collector c) {
+		for (long value : registers)
+			c.root(value);
+		for (int i = 0; i < depth * temps; i++)
+			c.root(shadow[i]);
+		for (long a = registers[SP]; a < ram.stackEnd(); a += Memory.SIZEOF_LONG)
+			c.root(ram.peek(a));
+	}
+
 	public void do_call() {
-		Map<String, Long> newregisters = new HashMap<String, Long>();
-		for (String reg : regs)
-			newregisters.put(reg, registers.get(reg));
-		registerstack.add(0, registers);
-		registers = newregisters;
+		if (temps > 0) {
+			int at = depth * temps;
+			if (at + temps > shadow.length)
+				shadow = Arrays.copyOf(shadow, shadow.length * 2);
+			System.arraycopy(registers, MACHINE_REGISTERS, shadow, at, temps);
+			Arrays.fill(registers, MACHINE_REGISTERS, registers.length, 0L);
+		}
+		depth++;
 	}
 
 	public void do_return() {
 		// If there is nothing on the stack, we are returning off the end so do nothing
-		if (registerstack.size() > 0) {
-			Map<String, Long> oldregisters = registerstack.remove(0);
-			for (String reg : regs)
-				oldregisters.put(reg, registers.get(reg));
-			registers = oldregisters;
+		if (depth > 0) {
+			depth--;
+			if (temps > 0)
+				System.arraycopy(shadow, depth * temps, registers, MACHINE_REGISTERS, temps);
 		}
 	}
 
+	public void setReg(int reg, long value) {
+		registers[reg] = value;
+	}
+
+	public long getReg(int reg) {
+		return registers[reg];
+	}
+
+	/**
+	 * Set a register by name. Slower than {@link #setReg(int, long)}, and
+	 * only registers known to the program can be set.
+	 */
 	public void setReg(String reg, long value) {
-		registers.put(reg, value);
+		int slot = p.registerIfPresent(reg);
+		if (slot < 0)
+			throw new Error("Unknown register " + reg);
+		registers[slot] = value;
 	}
 
+	/**
+	 * Get a register by name. Registers the program doesn't use are 0.
+	 */
 	public long getReg(String reg) {
-		Long l = registers.get(reg);
-		return (l == null) ? 0 : l;
-	}
-
-	private static long unsignedCompare(long conditionl, long conditionr) {
-		if (conditionl < 0 && conditionr < 0) {
-			// more negative is smaller unsigned
-			return conditionl - conditionr;
-		} else if (conditionl < 0 && conditionr > 0) {
-			// negative is bigger than any positive
-			return 1;
-		} else if (conditionl > 0 && conditionr < 0) {
-			// negative is still bigger than any positive
-			return -1;
-		} else {
-			return conditionl - conditionr;
-		}
+		int slot = p.registerIfPresent(reg);
+		return slot < 0 ? 0 : registers[slot];
 	}
+
 	public static boolean conditionTrue(String condition, long conditionl, long conditionr) {
-		if (! (condition.equals("l") || condition.equals("e") ||
-				condition.equals("g") || condition.equals("le") ||
-				condition.equals("ne") || condition.equals("ge") ||
-				condition.equals("b") || condition.equals("be") ||
-				condition.equals("a") || condition.equals("ae"))) {
-			System.out.println("Illegal condition in branch " + condition);
-		}
-		return 
-				condition.equals("l") && conditionl < conditionr ||
-				condition.equals("b") && unsignedCompare(conditionl, conditionr) < 0 ||
-				condition.equals("e") && conditionl == conditionr ||
-				condition.equals("g") && conditionl > conditionr ||
-				condition.equals("a") && unsignedCompare(conditionl, conditionr) > 0 ||
-				condition.equals("le") && conditionl <= conditionr ||
-				condition.equals("be") && unsignedCompare(conditionl, conditionr) <= 0 ||
-				condition.equals("ne") && conditionl != conditionr ||
-				condition.equals("ge") && (conditionr < 0 || conditionl >= conditionr) ||
-				condition.equals("ae") && unsignedCompare(conditionl, conditionr) >= 0;
+		return Condition.decode(condition).test(conditionl, conditionr);
+	}
+	public boolean conditionTrue(Condition condition) {
+		return condition.test(conditionl, conditionr);
 	}
 	public boolean conditionTrue(String condition) {
 		return conditionTrue(condition, conditionl, conditionr);
@@ -144,13 +250,29 @@ public class State {
 		i.execute(this);
 		instructionsExecuted ++;
 	}
+
+	/**
+	 * Simulate println. The output is buffered, except when tracing, so
+	 * that it stays in order with the trace.
+	 */
+	public void println(long value) {
+		printer.println(value, out);
+		if (beVerbose)
+			printer.flush(out);
+	}
+
 	public String hex(long reg) {
 		return "0x" + Long.toString(reg, 16);
 	}
 
 	public void run() {
-		while (pc != DONE) {
-			step();
+		try {
+			while (pc != DONE) {
+				step();
+			}
+		} finally {
+			// Print what the program printed before it failed, too.
+			printer.flush(out);
 		}
 	}
 
@@ -160,11 +282,15 @@ public class State {
 		} catch (FileNotFoundException e) {
 			// do nothing, use System.out
 		}
-		while (pc != DONE && instructionsExecuted < maxInstructions) {
-			step();
+		try {
+			while (pc != DONE && instructionsExecuted < maxInstructions) {
+				step();
+			}
+			if (instructionsExecuted >= maxInstructions)
+				throw new Error("X86_64 simulator exceeded max instructions\n");
+		} finally {
+			printer.flush(this.out);
 		}
-		if (instructionsExecuted >= maxInstructions)
-			throw new Error("X86_64 simulator exceeded max instructions\n");
 		this.out.close();
 	}
 
@@ -178,21 +304,16 @@ public class State {
 			}
 			if (instructionsExecuted >= maxInstructions)
 				throw new Error("X86_64 simulator exceeded max instructions\n");
+			printer.flush(this.out);
 			this.out.close();
 			result = os.toString();
 		} catch (Error e) {
 		    String msg = e.getMessage();
 			if (msg.startsWith("MiniJava failure")) {
                 result = msg;
-            } else if (msg.startsWith("Write at address ")) {
-			    String addressStr = msg.replaceAll("Write at address ", "").replaceAll(" out of bounds", "");
-                long address = Long.parseLong(addressStr);
-                if (address <= STACK_BASE - STACK_SIZE && STACK_BASE - 2 * STACK_SIZE <= address) {
-                    // This is a stack overflow, so just report a minijava failure
-                    result = "MiniJava failure 2\n";
-                } else {
-                    result = msg + "\nThe program was:\n" + p;
-                }
+            } else if (msg.startsWith("Stack overflow")) {
+                // Just report a minijava failure
+                result = "MiniJava failure 2\n";
             } else {
 				result = msg + "\nThe program was:\n" + p;
 			}
@@ -203,4 +324,26 @@ public class State {
 	public long getMemoryReferences() {
 	    return ram.nReads + ram.nWrites;
     }
+
+	/**
+	 * Number of garbage collections so far.
+	 */
+	public long getGcCount() {
+		return collector == null ? 0L : collector.collections;
+	}
+
+	/**
+	 * Work done by the collector so far, counting one instruction for each
+	 * root or heap word examined and each block swept.
+	 */
+	public long getGcPauseInstructions() {
+		return collector == null ? 0L : collector.pauseInstructions;
+	}
+
+	/**
+	 * Bytes of heap found live by the last collection.
+	 */
+	public long getGcLiveBytes() {
+		return collector == null ? 0L : collector.liveBytes;
+	}
 }
@@ -1,8 +1,16 @@
 package x86_64sim.args;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public abstract class Arg {
+    /**
+     * Called when the Program is linked, to look up the register file slots
+     * of any registers and the address of any label.
+     */
+    public void resolve(Program p) {
+    }
+
     abstract public long read(State state);
     abstract public void write(State state, long value);
 }
@@ -1,16 +1,23 @@
 package x86_64sim.args;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class IdLiteralArg extends Arg {
     private String id;
+    private long addr;
 
     public IdLiteralArg(String id) {
         this.id = id;
     }
 
+    @Override
+    public void resolve(Program p) {
+        addr = p.resolveLabel(id);
+    }
+
     public long read(State state) {
-        return state.getLabel(id);
+        return addr;
     }
 
     public void write(State state, long id) {
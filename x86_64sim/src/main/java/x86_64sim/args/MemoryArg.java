@@ -1,9 +1,11 @@
 package x86_64sim.args;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class MemoryArg extends Arg {
     private String base, index;
+    private int baseReg = -1, indexReg = -1;
     private long scale, offset;
 
     public MemoryArg(long offset, String base, String index, long scale) {
@@ -14,18 +16,25 @@ public class MemoryArg extends Arg {
         if (scale != 1 && scale != 2 && scale != 4 && scale != 8) throw new UnsupportedOperationException("Illegal scale " + scale + " in " + this);
     }
 
+    @Override
+    public void resolve(Program p) {
+        if (base != null)
+            baseReg = p.register(base);
+        if (index != null)
+            indexReg = p.register(index);
+    }
+
     public long addr(State state) {
-        long ptr = (base == null ? 0 : state.getReg(base)) + offset + (index == null ? 0 : state.getReg(index) * scale);
+        long ptr = (baseReg < 0 ? 0 : state.getReg(baseReg)) + offset + (indexReg < 0 ? 0 : state.getReg(indexReg) * scale);
         return ptr;
     }
     public long read(State state) {
-        long ptr = (base == null ? 0 : state.getReg(base)) + offset + (index == null ? 0 : state.getReg(index) * scale);
-        long value = state.ram.read(ptr);
+        long value = state.ram.read(addr(state));
         return value;
     }
 
     public void write(State state, long value) {
-        long ptr = (base == null ? 0 : state.getReg(base)) + offset + (index == null ? 0 : state.getReg(index) * scale);
+        long ptr = addr(state);
         if (state.beVerbose)
             System.out.println(toString() + " <- " + value);
         state.ram.write(ptr, value);
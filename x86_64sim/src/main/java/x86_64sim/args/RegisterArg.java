@@ -1,23 +1,30 @@
 package x86_64sim.args;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class RegisterArg extends Arg {
     private String name;
+    private int reg = -1;
 
     public RegisterArg(String name) {
         this.name = name;
     }
 
+    @Override
+    public void resolve(Program p) {
+        reg = p.register(name);
+    }
+
     public long read(State state) {
-        long value = state.getReg(name);
+        long value = state.getReg(reg);
         return value;
     }
 
     public void write(State state, long value) {
         if (state.beVerbose)
             System.out.println(toString() + " <- " + value);
-        state.setReg(name, value);
+        state.setReg(reg, value);
     }
 
     public String toString() {
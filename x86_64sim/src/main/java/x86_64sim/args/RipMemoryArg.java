@@ -1,22 +1,31 @@
 package x86_64sim.args;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class RipMemoryArg extends MemoryArg {
     String label;
+    private long addr;
     public RipMemoryArg(String label) {
         super(0, null, null, 1);
         this.label = label;
     }
 
     public long read(State state) {
-        throw new UnsupportedOperationException("Can't read a RipMemoryArg");
+        return state.ram.read(addr);
     }
+    @Override
+    public void resolve(Program p) {
+        addr = p.resolveLabel(label);
+    }
+
     public long addr(State state) {
-        return state.getLabel(label);
+        return addr;
     }
     public void write(State state, long value) {
-        throw new UnsupportedOperationException("Can't write a RipMemoryArg");
+        if (state.beVerbose)
+            System.out.println(toString() + " <- " + value);
+        state.ram.write(addr, value);
     }
 
     public String toString() {
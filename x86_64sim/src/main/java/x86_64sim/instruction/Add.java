@@ -1,5 +1,6 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 import x86_64sim.args.Arg;
 
@@ -11,6 +12,12 @@ public class Add extends Instruction {
 		this.target = target;
 	}
 	
+	@Override
+	public void resolve(Program p) {
+		source.resolve(p);
+		target.resolve(p);
+	}
+
 	@Override
 	public void execute(State state) {
 		long value = source.read(state) + target.read(state);
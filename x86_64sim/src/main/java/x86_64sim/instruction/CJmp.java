@@ -1,21 +1,30 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Condition;
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class CJmp extends Instruction {
-	private String condition, label;
+	private Condition condition;
+	private String label;
+	private long target;
 
 	public CJmp(String condition, String label) {
-		this.condition = condition;
+		this.condition = Condition.decode(condition);
 		this.label = label;
 	}
 
+	@Override
+	public void resolve(Program p) {
+		target = p.resolveLabel(label);
+	}
+
 	@Override
 	public void execute(State state) {
 		if (state.conditionTrue(condition)) {
 			if (state.beVerbose)
 				System.out.println("j" + condition + " taken -> " + label);
-			state.jump(label);
+			state.jump(target);
 		}
 	}
 
@@ -1,18 +1,26 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Condition;
+import x86_64sim.Program;
 import x86_64sim.State;
 import x86_64sim.args.Arg;
 
 public class CMov extends Instruction {
-	private String condition;
+	private Condition condition;
 	private Arg target, source;
 
 	public CMov(String condition, Arg source, Arg target) {
-		this.condition = condition;
+		this.condition = Condition.decode(condition);
 		this.source = source;
 		this.target = target;
 	}
 
+	@Override
+	public void resolve(Program p) {
+		source.resolve(p);
+		target.resolve(p);
+	}
+
 	@Override
 	public void execute(State state) {
 		if (state.conditionTrue(condition)) {
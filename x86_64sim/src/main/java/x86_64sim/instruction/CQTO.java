@@ -8,11 +8,11 @@ public class CQTO extends Instruction {
 
 	@Override
 	public void execute(State state) {
-		long ax = state.getReg(Instruction.AX);
+		long ax = state.getReg(State.AX);
 		long dx = ax > 0 ? 0 : -1;
 		if (state.beVerbose) 
 			System.out.println(DX + " <- " +  dx);
-		state.setReg(DX, dx);
+		state.setReg(State.DX, dx);
 	}
 	@Override
 	public String toString() {
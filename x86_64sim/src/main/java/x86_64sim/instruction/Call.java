@@ -1,65 +1,94 @@
 package x86_64sim.instruction;
 
-import x86_64sim.Memory;
+import util.Memory;
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class Call extends Instruction {
+	/**
+	 * What a call does, decided when it is built: the runtime functions are
+	 * simulated, other calls go to a label or through a register.
+	 */
+	private static final int DIRECT = 0, INDIRECT = 1, PRINTLN = 2, NEWOBJECT = 3, NEWARRAY = 4, ERROR = 5;
+
 	private String label;
 	private String register;
+	private int kind;
+	private int slot;
+	private long target;
 
 	public Call(String label) {
 		this.label = label;
+		this.kind = runtimeFunction(label);
 	}
 
 	public Call(String star, String register) {
 		this.register = register;
+		this.kind = INDIRECT;
+	}
+
+	private static int runtimeFunction(String label) {
+		if (label.startsWith("_"))
+			label = label.substring(1);
+		switch (label) {
+			case "cs411println": return PRINTLN;
+			case "cs411newobject": return NEWOBJECT;
+			case "cs411newarray": return NEWARRAY;
+			case "cs411error": return ERROR;
+			default: return DIRECT;
+		}
 	}
 
 	@Override
-	public void execute(State state) {
+	public void resolve(Program p) {
+		if (kind == INDIRECT)
+			slot = p.register(register);
+		else if (kind == DIRECT)
+			target = p.resolveLabel(label);
+	}
 
-		if (register != null) {
-			// An indirect call
-			if (state.beVerbose)
-				System.out.println("Call *" + register + "(" + state.getReg(register) + ")");
-			long sp = state.getReg(Instruction.SP) - Memory.SIZEOF_LONG;
-			state.ram.write(sp, state.pc);
-			state.setReg(Instruction.SP, sp);
-			long addr = state.getReg(register);
-			state.do_call();
-			state.jump(addr);
-		} else {
-			if (state.beVerbose)
-				System.out.println("Call " + label);
-			if (label.equals("_cs411println")  || label.equals("cs411println")) {
+	@Override
+	public void execute(State state) {
+		if (state.beVerbose)
+			System.out.println(kind == INDIRECT ? "Call *" + register + "(" + state.getReg(slot) + ")" : "Call " + label);
+		switch (kind) {
+			case INDIRECT:
+				call(state, state.getReg(slot));
+				return;
+			case DIRECT:
+				call(state, target);
+				return;
+		}
+		state.enterRuntime();
+		switch (kind) {
+			case PRINTLN:
 				// Simulate println
-				state.out.print(state.getReg(Instruction.ARG1) + "\n");
-				if (state.beVerbose)
-					System.out.println("Return to " + state.pc + " " + state.p.getFunctionAt(state.pc));
-			} else if (label.equals("_cs411newobject") || label.equals("cs411newobject")) {
+				state.println(state.getReg(State.ARG1));
+				state.exitRuntime(State.CLOBBERED);
+				break;
+			case NEWOBJECT:
 				// Simulate new object
-				state.setReg(Instruction.AX, state.alloc(state.getReg(Instruction.ARG1)));
-				if (state.beVerbose)
-					System.out.println("Return to " + state.pc + " " + state.p.getFunctionAt(state.pc) + " " + state.getReg(AX));
-			} else if (label.equals("_cs411newarray") || label.equals("cs411newarray")) {
+				state.exitRuntime(state.alloc(state.getReg(State.ARG1)));
+				break;
+			case NEWARRAY:
 				// Simulate new array
-				state.setReg(Instruction.AX, state.allocArray(state.getReg(Instruction.ARG1)));
-				if (state.beVerbose)
-					System.out.println("Return to " + state.pc + " " + state.p.getFunctionAt(state.pc) + " " + state.getReg(AX));
-			} else if (label.equals("_cs411error") || label.equals("cs411error")) {
+				state.exitRuntime(state.allocArray(state.getReg(State.ARG1)));
+				break;
+			default:
 				// Simulate error
-				// System.err.println("MiniJava failure " + state.getReg(Instruction.ARG1));
-				throw new Error("MiniJava failure " + state.getReg(Instruction.ARG1) + "\n");
-				// Bail
-			} else {
-				// push ra
-				long sp = state.getReg(Instruction.SP) - Memory.SIZEOF_LONG;
-				state.ram.write(sp, state.pc);
-				state.setReg(Instruction.SP, sp);
-				state.do_call();
-				state.jump(label);
-			}
+				throw new Error("MiniJava failure " + state.getReg(State.ARG1) + "\n");
 		}
+		if (state.beVerbose)
+			System.out.println("Return to " + state.pc + " " + state.p.getFunctionAt(state.pc) + " " + state.getReg(State.AX));
+	}
+
+	private static void call(State state, long addr) {
+		// push ra
+		long sp = state.getReg(State.SP) - Memory.SIZEOF_LONG;
+		state.ram.write(sp, state.pc);
+		state.setReg(State.SP, sp);
+		state.do_call();
+		state.jump(addr);
 	}
 
 	@Override
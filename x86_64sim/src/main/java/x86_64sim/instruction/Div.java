@@ -1,5 +1,6 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 import x86_64sim.args.Arg;
 
@@ -10,16 +11,21 @@ public class Div extends Instruction {
 		this.source = source;
 	}
 	
+	@Override
+	public void resolve(Program p) {
+		source.resolve(p);
+	}
+
 	@Override
 	public void execute(State state) {
-		long ax = state.getReg(Instruction.AX);
+		long ax = state.getReg(State.AX);
 		long src = source.read(state);
 		long quot = ax / src;
 		long rem = ax % src;
 		if (state.beVerbose) 
 			System.out.println(Instruction.AX + " <- " + quot + "; " + Instruction.DX + " <- " + rem);
-		state.setReg(Instruction.AX, quot);
-		state.setReg(Instruction.DX, rem);
+		state.setReg(State.AX, quot);
+		state.setReg(State.DX, rem);
 	}
 
 	@Override
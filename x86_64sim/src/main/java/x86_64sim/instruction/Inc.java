@@ -1,5 +1,6 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 import x86_64sim.args.Arg;
 
@@ -10,6 +11,11 @@ public class Inc extends Instruction {
 		this.target = target;
 	}
 	
+	@Override
+	public void resolve(Program p) {
+		target.resolve(p);
+	}
+
 	@Override
 	public void execute(State state) {
 		long value = target.read(state) + 1;
@@ -1,5 +1,6 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public abstract class Instruction {
@@ -9,6 +10,13 @@ public abstract class Instruction {
 	public static final String AX = "%rax";
 	public static final String DX = "%rdx";
 
+	/**
+	 * Called when the Program is linked, to look up the register file slots
+	 * of the registers and the addresses of the labels this instruction uses.
+	 */
+	public void resolve(Program p) {
+	}
+
 	abstract public void execute(State state);
 	abstract public String toString();
 }
@@ -0,0 +1,115 @@
+package x86_64sim.instruction;
+
+import x86_64sim.args.Arg;
+import x86_64sim.args.MemoryArg;
+import x86_64sim.args.RegisterArg;
+
+/**
+ * Builds simulator instructions from a mnemonic and already decoded operands,
+ * for clients that produce a {@link x86_64sim.Program} directly instead of
+ * going through the assembly text and the parser. The accepted forms are the
+ * same as those of the parser.
+ */
+public class Instructions {
+
+    /**
+     * An instruction whose operands (if any) are all registers, memory
+     * references or literals. Operands are in AT&amp;T order (source first).
+     */
+    public static Instruction make(String mnemonic, Arg... operands) {
+        switch (mnemonic) {
+            case "addq":
+                check(mnemonic, operands, 2);
+                return new Add(operands[0], operands[1]);
+            case "subq":
+                check(mnemonic, operands, 2);
+                return new Sub(operands[0], operands[1]);
+            case "xorq":
+                check(mnemonic, operands, 2);
+                return new Xor(operands[0], operands[1]);
+            case "cmpq":
+                check(mnemonic, operands, 2);
+                return new Cmp(operands[0], operands[1]);
+            case "movq":
+                check(mnemonic, operands, 2);
+                return new Move(operands[0], operands[1]);
+            case "sarq":
+                check(mnemonic, operands, 2);
+                return new Sar(operands[0], operands[1]);
+            case "leaq":
+                check(mnemonic, operands, 2);
+                if (!(operands[0] instanceof MemoryArg))
+                    throw new Error("leaq needs a memory operand");
+                return new Lea((MemoryArg) operands[0], operands[1]);
+            case "imulq":
+                if (operands.length == 3)
+                    return new Mul(operands[0], operands[1], operands[2]);
+                check(mnemonic, operands, 2);
+                return new Mul(operands[0], operands[1]);
+            case "idivq":
+                check(mnemonic, operands, 1);
+                return new Div(operands[0]);
+            case "incq":
+                check(mnemonic, operands, 1);
+                return new Inc(operands[0]);
+            case "decq":
+                check(mnemonic, operands, 1);
+                return new Dec(operands[0]);
+            case "negq":
+                check(mnemonic, operands, 1);
+                return new Neg(operands[0]);
+            case "pushq":
+                check(mnemonic, operands, 1);
+                return new Push(operands[0].toString());
+            case "cqto":
+                check(mnemonic, operands, 0);
+                return new CQTO();
+            case "leave":
+                check(mnemonic, operands, 0);
+                return new Leave();
+            case "ret":
+                check(mnemonic, operands, 0);
+                return new Ret();
+            case "call":
+                check(mnemonic, operands, 1);
+                if (!(operands[0] instanceof RegisterArg))
+                    throw new Error("Indirect call needs a register operand");
+                return new Call("*", operands[0].toString());
+        }
+        if (mnemonic.startsWith("cmov")) {
+            check(mnemonic, operands, 2);
+            return new CMov(condition(mnemonic, 4), operands[0], operands[1]);
+        }
+        throw new Error("Unknown instruction " + mnemonic);
+    }
+
+    /**
+     * A jump or call to a label.
+     */
+    public static Instruction branch(String mnemonic, String label) {
+        switch (mnemonic) {
+            case "jmp":
+                return new Jmp(label);
+            case "call":
+                return new Call(label);
+        }
+        if (mnemonic.startsWith("j"))
+            return new CJmp(condition(mnemonic, 1), label);
+        throw new Error("Unknown branch " + mnemonic);
+    }
+
+    private static String condition(String mnemonic, int prefix) {
+        String condition = mnemonic.substring(prefix);
+        switch (condition) {
+            case "l": case "e": case "g": case "le": case "ne":
+            case "ge": case "b": case "a": case "be": case "ae":
+                return condition;
+        }
+        throw new Error("Illegal condition in " + mnemonic);
+    }
+
+    private static void check(String mnemonic, Arg[] operands, int count) {
+        if (operands.length != count)
+            throw new Error(mnemonic + " takes " + count + " operands, not " + operands.length);
+    }
+}
@@ -1,19 +1,26 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class Jmp extends Instruction {
 	private String label;
+	private long target;
 
 	public Jmp(String label) {
 		this.label = label;
 	}
 
+	@Override
+	public void resolve(Program p) {
+		target = p.resolveLabel(label);
+	}
+
 	@Override
 	public void execute(State state) {
 		if (state.beVerbose)
 			System.out.println("jmp -> " + label);
-		state.jump(label);
+		state.jump(target);
 	}
 	
 	@Override
@@ -1,6 +1,6 @@
 package x86_64sim.instruction;
 
-import x86_64sim.Memory;
+import util.Memory;
 import x86_64sim.State;
 
 public class Leave extends Instruction {
@@ -9,15 +9,15 @@ public class Leave extends Instruction {
 
 	@Override
 	public void execute(State state) {
-		long sp = state.getReg(BP);
+		long sp = state.getReg(State.BP);
 		long bp = state.ram.read(sp);
 		long newsp = sp + Memory.SIZEOF_LONG;
 		if (state.beVerbose) {
 			System.out.println(BP + " <- " +  state.hex(bp));
 			System.out.println(SP + " <- " +  state.hex(newsp));
 		}
-		state.setReg(BP, bp);
-		state.setReg(SP, newsp);
+		state.setReg(State.BP, bp);
+		state.setReg(State.SP, newsp);
 	}
 	@Override
 	public String toString() {
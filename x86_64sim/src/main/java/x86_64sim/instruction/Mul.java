@@ -1,5 +1,6 @@
 package x86_64sim.instruction;
 
+import x86_64sim.Program;
 import x86_64sim.State;
 import x86_64sim.args.Arg;
 
@@ -18,6 +19,14 @@ public class Mul extends Instruction {
         this.target = target;
     }
 
+	@Override
+	public void resolve(Program p) {
+		if (extra != null)
+			extra.resolve(p);
+		source.resolve(p);
+		target.resolve(p);
+	}
+
     @Override
 	public void execute(State state) {
         long value;
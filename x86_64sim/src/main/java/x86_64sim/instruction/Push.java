@@ -1,26 +1,33 @@
 package x86_64sim.instruction;
 
-import x86_64sim.Memory;
+import util.Memory;
+import x86_64sim.Program;
 import x86_64sim.State;
 
 public class Push extends Instruction {
     private String reg;
+    private int slot;
 	
 	public Push(String reg) {
 		this.reg = reg;
 	}
 	
+	@Override
+	public void resolve(Program p) {
+		slot = p.register(reg);
+	}
+
 	@Override
 	public void execute(State state) {
-		long sp = state.getReg(SP);
+		long sp = state.getReg(State.SP);
 		long newsp = sp - Memory.SIZEOF_LONG;
-		long value = state.getReg(reg);
+		long value = state.getReg(slot);
 		if (state.beVerbose) {
 			System.out.println("M[" + state.hex(newsp) + "] <- " + value);
 			System.out.println(SP + " <- " +  state.hex(newsp));
 		}
 		state.ram.write(newsp, value);
-		state.setReg(SP, newsp);
+		state.setReg(State.SP, newsp);
 	}
 
 	@Override
@@ -1,6 +1,6 @@
 package x86_64sim.instruction;
 
-import x86_64sim.Memory;
+import util.Memory;
 import x86_64sim.State;
 
 public class Ret extends Instruction {
@@ -9,14 +9,14 @@ public class Ret extends Instruction {
 
 	@Override
 	public void execute(State state) {
-		long sp = state.getReg(SP);
+		long sp = state.getReg(State.SP);
 		long ra = state.ram.read(sp);
 		long newsp = sp + Memory.SIZEOF_LONG;
 		if (state.beVerbose) {
-			System.out.println("Return to " + ra + " " + state.p.getFunctionAt(ra) + " " + state.getReg(AX));
+			System.out.println("Return to " + ra + " " + state.p.getFunctionAt(ra) + " " + state.getReg(State.AX));
 			System.out.println(SP + " <- " +  state.hex(newsp));
 		}
-		state.setReg(SP, newsp);
+		state.setReg(State.SP, newsp);
 		state.do_return();
 		state.jump(ra);
 	}
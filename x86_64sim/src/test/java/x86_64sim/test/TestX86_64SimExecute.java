@@ -3,6 +3,7 @@ package x86_64sim.test;
 
 import org.junit.jupiter.api.Test;
 import util.SampleCode;
+import util.Utils;
 import x86_64sim.Program;
 import x86_64sim.Sim;
 import x86_64sim.State;
@@ -12,6 +13,8 @@ import java.io.File;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -140,6 +143,20 @@ public class TestX86_64SimExecute {
         }
 	}
 
+	@Test
+	public void testUnknownLabel() throws Exception {
+		Program p = SimParser.parse("main:\n" +
+				"cmpq    $1, %rax\n" +
+				"jl      nowhere\n" +
+				"ret\n");
+		try {
+			new State(p);
+			fail("Expected Error");
+		} catch (Error e) {
+			assertTrue(e.getMessage().contains("nowhere"));
+		}
+	}
+
 	@Test
 	public void testMemoryW() throws Exception {
 		String program = "movq $4096, %rbx\n" +
@@ -188,6 +205,46 @@ public class TestX86_64SimExecute {
 		}
 	}
 
+	@Test
+	public void testRuntimeCallConvention() throws Exception {
+		// main is entered like a function, 8 bytes below a 16 byte boundary
+		State s = accept("main:\n" +
+				"subq $8, %rsp\n" +
+				"movq $7, %rdi\n" +
+				"movq $5, %rbx\n" +
+				"call cs411println\n" +
+				"addq $8, %rsp\n" +
+				"ret\n");
+		assertEquals(State.CLOBBERED, s.getReg(State.ARG1));
+		assertEquals(5, s.getReg(1));
+		assertThrows(Error.class, () -> accept("main:\n" +
+				"movq $7, %rdi\n" +
+				"call cs411println\n" +
+				"ret\n"));
+	}
+
+	@Test
+	public void testOutputBeforeFailure() throws Exception {
+		// What the program printed before it failed is still written out.
+		Program p = SimParser.parse("main:\n" +
+				"subq $8, %rsp\n" +
+				"movq $7, %rdi\n" +
+				"call cs411println\n" +
+				"movq $1, %rdi\n" +
+				"call cs411error\n" +
+				"addq $8, %rsp\n" +
+				"ret\n");
+		File out = File.createTempFile("failure", ".out");
+		out.deleteOnExit();
+		try {
+			new State(p).run(out);
+			fail("Expected Error");
+		} catch (Error e) {
+			assertTrue(e.getMessage().startsWith("MiniJava failure 1"));
+		}
+		assertEquals("7\n", Utils.getContents(out));
+	}
+
 	@Test 
 	public void testExecuteSampleSCode() throws Exception {
 		File[] files = SampleCode.sampleSFiles();